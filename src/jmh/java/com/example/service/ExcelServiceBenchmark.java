@@ -0,0 +1,138 @@
+package com.example.service;
+
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Benchmarks each sheet of the ageing report, the directly written list sheet parts, writing the finished
+ * workbook, and generating the whole report. Each sheet is created in a new workbook of the kind the report would use for the item count, so
+ * large ledgers are measured with the streaming workbook. Workbooks are written to a stream that discards
+ * them, so disk and network speed don't affect the results.
+ */
+public class ExcelServiceBenchmark {
+
+    /**
+     * A new workbook with the report's empty sheets for each invocation
+     */
+    @State(Scope.Thread)
+    public static class EmptyWorkbook {
+
+        Workbook workbook;
+        CellStyleRegistry styles;
+        Sheet summarySheet;
+        Sheet ageingSheet;
+        Sheet customerSheet;
+        Sheet itemsSheet;
+
+        @Setup(Level.Invocation)
+        public void setUp(ReportData data) {
+            workbook = data.excelService.createWorkbook(data.itemCount);
+            styles = new CellStyleRegistry(workbook);
+            ReportStyles.LIST_SHEET_STYLES.forEach(styles::get);
+            summarySheet = workbook.createSheet("Summary");
+            ageingSheet = workbook.createSheet("Ageing Report");
+            customerSheet = workbook.createSheet("Customer List");
+            itemsSheet = workbook.createSheet("Open Items");
+        }
+
+        @TearDown(Level.Invocation)
+        public void tearDown() throws IOException {
+            close(workbook);
+        }
+    }
+
+    /**
+     * A new workbook with every sheet of the report created, ready to write, for each invocation
+     */
+    @State(Scope.Thread)
+    public static class FilledWorkbook {
+
+        Workbook workbook;
+
+        @Setup(Level.Invocation)
+        public void setUp(ReportData data) throws IOException {
+            workbook = data.excelService.createWorkbook(data.itemCount);
+            data.excelService.createReportSheets(workbook, data.ageingData, data.customerData,
+                    data.itemData.iterator(), data.companySummary, ExcelService.ListSheets.IN_WORKBOOK);
+        }
+
+        @TearDown(Level.Invocation)
+        public void tearDown() throws IOException {
+            close(workbook);
+        }
+    }
+
+    @Benchmark
+    public Sheet summarySheet(ReportData data, EmptyWorkbook workbook) {
+        data.excelService.createSummarySheet(workbook.workbook, workbook.styles, workbook.summarySheet,
+                data.companySummary, data.customerData, data.itemCount);
+        return workbook.summarySheet;
+    }
+
+    @Benchmark
+    public Sheet ageingReportSheet(ReportData data, EmptyWorkbook workbook) {
+        data.excelService.createAgeingReportSheet(workbook.workbook, workbook.styles, workbook.ageingSheet,
+                data.ageingData);
+        return workbook.ageingSheet;
+    }
+
+    @Benchmark
+    public Sheet customerListSheet(ReportData data, EmptyWorkbook workbook) {
+        data.excelService.createCustomerListSheet(workbook.workbook, workbook.styles, workbook.customerSheet,
+                data.customerData);
+        return workbook.customerSheet;
+    }
+
+    @Benchmark
+    public int openItemsSheet(ReportData data, EmptyWorkbook workbook) {
+        return data.excelService.createOpenItemsSheet(workbook.styles, workbook.itemsSheet,
+                data.itemData.iterator(), data.customerData);
+    }
+
+    @Benchmark
+    public void customerListPart(ReportData data, EmptyWorkbook workbook) throws IOException {
+        try (SheetXmlWriter part = new SheetXmlWriter(12, true)) {
+            data.excelService.writeCustomerListPart(workbook.styles, part, data.customerData);
+            part.writeTo(OutputStream.nullOutputStream());
+        }
+    }
+
+    @Benchmark
+    public int openItemsPart(ReportData data, EmptyWorkbook workbook) throws IOException {
+        try (SheetXmlWriter part = new SheetXmlWriter(10, true)) {
+            int itemCount = data.excelService.writeOpenItemsPart(workbook.styles, part, data.itemData.iterator(),
+                    data.customerData);
+            part.writeTo(OutputStream.nullOutputStream());
+            return itemCount;
+        }
+    }
+
+    @Benchmark
+    public void writeWorkbook(ReportData data, FilledWorkbook workbook) throws IOException {
+        data.excelService.writeWorkbook(workbook.workbook, OutputStream.nullOutputStream());
+    }
+
+    @Benchmark
+    public void generateAgeingReport(ReportData data) throws IOException {
+        data.excelService.generateAgeingReport(data.ageingData, data.customerData, data.itemData,
+                data.companySummary, OutputStream.nullOutputStream());
+    }
+
+    private static void close(Workbook workbook) throws IOException {
+        // Removes the temp files of a streaming workbook that was never written
+        if (workbook instanceof SXSSFWorkbook streamingWorkbook) {
+            streamingWorkbook.dispose();
+        }
+        workbook.close();
+    }
+}
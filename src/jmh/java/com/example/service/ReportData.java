@@ -0,0 +1,81 @@
+package com.example.service;
+
+import com.example.model.AgeingByMonth;
+import com.example.model.CompanySummary;
+import com.example.model.Customer;
+import com.example.model.Item;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.core.convert.support.DefaultConversionService;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.core.env.MutablePropertySources;
+import org.springframework.core.io.support.ResourcePropertySource;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The report data and {@link ExcelService} shared by the benchmarks. The service is created in a small
+ * application context with the settings from application.properties, so it is benchmarked as configured;
+ * any of them can be overridden with a system property in the benchmark JVM's arguments.
+ */
+@State(Scope.Benchmark)
+public class ReportData {
+
+    private static final String COMPANY_ID = "BENCHMARK";
+
+    @Param({"30", "2000"})
+    public int customerCount;
+
+    @Param({"150", "100000"})
+    public int itemCount;
+
+    private AnnotationConfigApplicationContext context;
+
+    ExcelService excelService;
+    List<AgeingByMonth> ageingData;
+    List<Customer> customerData;
+    List<Item> itemData;
+    CompanySummary companySummary;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        context = new AnnotationConfigApplicationContext();
+        // Converts list properties such as mock.items.type-weights the way Spring Boot does
+        context.getBeanFactory().setConversionService(new DefaultConversionService());
+
+        MutablePropertySources properties = context.getEnvironment().getPropertySources();
+        properties.addLast(new MapPropertySource("benchmark", Map.of(
+                // Every invocation renders its sheets rather than reusing those rendered by the one before
+                "excel.incremental.enabled", "false",
+                // The same data for every run, so results can be compared
+                "mock.seed", "1")));
+        properties.addLast(new ResourcePropertySource("classpath:application.properties"));
+
+        context.registerBean(MeterRegistry.class, SimpleMeterRegistry::new);
+        context.register(MockDataGenerator.class, ReportMetrics.class, ReportFileWriter.class, SheetPartCache.class,
+                ReportRecordingService.class, ExcelService.class);
+        context.refresh();
+        excelService = context.getBean(ExcelService.class);
+
+        MockDataGenerator generator = context.getBean(MockDataGenerator.class);
+        ageingData = generator.generateAgeingByMonth(COMPANY_ID);
+        customerData = generator.generateCustomers(COMPANY_ID, customerCount);
+        List<String> customerIds = customerData.stream().map(Customer::getCustomerId).toList();
+        itemData = generator.generateItems(generator.seed(COMPANY_ID, "items"), customerIds, 0, itemCount);
+        companySummary = generator.generateCompanySummary(COMPANY_ID);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+}
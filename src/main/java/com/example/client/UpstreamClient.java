@@ -0,0 +1,239 @@
+package com.example.client;
+
+import com.example.model.AgeingByMonth;
+import com.example.model.CompanySummary;
+import com.example.model.Customer;
+import com.example.model.Item;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Client for the upstream accounting and lending APIs. One {@link HttpClient} is shared by every call, so
+ * connections are pooled and kept alive between requests; over HTTPS the client negotiates HTTP/2 and
+ * multiplexes concurrent calls over a single connection. Responses are decoded as they are read from the
+ * connection rather than being buffered as a whole first.
+ */
+@Component
+@ConditionalOnProperty(name = "upstream.mode", havingValue = "http")
+public class UpstreamClient {
+
+    private static final Logger logger = LoggerFactory.getLogger(UpstreamClient.class);
+
+    private final ObjectMapper objectMapper;
+
+    @Value("${upstream.base-url:http://localhost:8089}")
+    private String baseUrl;
+
+    @Value("${upstream.connect-timeout-ms:2000}")
+    private long connectTimeoutMs;
+
+    // Time allowed for the response headers of each call
+    @Value("${upstream.request-timeout-ms:10000}")
+    private long requestTimeoutMs;
+
+    // How long an idle pooled connection is kept open
+    @Value("${upstream.keep-alive-seconds:30}")
+    private int keepAliveSeconds;
+
+    // Maximum pooled HTTP/1.1 connections; 0 leaves the pool unbounded
+    @Value("${upstream.max-connections:0}")
+    private int maxConnections;
+
+    private ExecutorService executor;
+    private HttpClient httpClient;
+
+    @Autowired
+    public UpstreamClient(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Creates the shared HTTP client
+     */
+    @PostConstruct
+    void start() {
+        // The JDK client only reads its pool settings from system properties, once, so they are set
+        // before the first client is built; values given on the command line take precedence
+        setDefaultProperty("jdk.httpclient.keepalive.timeout", String.valueOf(keepAliveSeconds));
+        setDefaultProperty("jdk.httpclient.connectionPoolSize", String.valueOf(maxConnections));
+
+        executor = Executors.newVirtualThreadPerTaskExecutor();
+        httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(Duration.ofMillis(connectTimeoutMs))
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .executor(executor)
+                .build();
+        logger.info("Upstream client using {}", baseUrl);
+    }
+
+    /**
+     * Closes pooled connections on shutdown
+     */
+    @PreDestroy
+    void stop() {
+        httpClient.close();
+        executor.close();
+    }
+
+    /**
+     * Calls GET /lending/companies/{companyId}/ageingByMonth
+     * @param companyId the company ID to retrieve data for
+     * @return List of ageing data by month
+     */
+    public List<AgeingByMonth> getAgeingByMonth(String companyId) {
+        return getAgeingByMonth(companyId, null).body();
+    }
+
+    /**
+     * Calls GET /lending/companies/{companyId}/ageingByMonth, conditionally if validators are given
+     * @param companyId the company ID to retrieve data for
+     * @param previous validators of the previously fetched data, or null
+     * @return the ageing data by month, or a not modified response
+     */
+    public UpstreamResponse<List<AgeingByMonth>> getAgeingByMonth(String companyId, Validators previous) {
+        return getList("/lending/companies/" + encode(companyId) + "/ageingByMonth", AgeingByMonth.class, previous);
+    }
+
+    /**
+     * Calls GET /accounting/companies/{companyId}/customers
+     * @param companyId the company ID to retrieve customers for
+     * @return List of customers with outstanding balances
+     */
+    public List<Customer> getCustomers(String companyId) {
+        return getCustomers(companyId, null).body();
+    }
+
+    /**
+     * Calls GET /accounting/companies/{companyId}/customers, conditionally if validators are given
+     * @param companyId the company ID to retrieve customers for
+     * @param previous validators of the previously fetched customers, or null
+     * @return the customers with outstanding balances, or a not modified response
+     */
+    public UpstreamResponse<List<Customer>> getCustomers(String companyId, Validators previous) {
+        return getList("/accounting/companies/" + encode(companyId) + "/customers", Customer.class, previous);
+    }
+
+    /**
+     * Calls GET /accounting/companies/{companyId}/items?page={pageNumber}&size={pageSize}
+     * @param companyId the company ID to retrieve items for
+     * @param pageNumber the page to get, starting at 0
+     * @param pageSize the number of items per page
+     * @return the items on the page; fewer than pageSize on the last page
+     */
+    public List<Item> getOpenItemsPage(String companyId, int pageNumber, int pageSize) {
+        return getOpenItemsPage(companyId, pageNumber, pageSize, null).body();
+    }
+
+    /**
+     * Calls GET /accounting/companies/{companyId}/items?page={pageNumber}&size={pageSize}, conditionally if
+     * validators are given
+     * @param companyId the company ID to retrieve items for
+     * @param pageNumber the page to get, starting at 0
+     * @param pageSize the number of items per page
+     * @param previous validators of the previously fetched page, or null
+     * @return the items on the page, or a not modified response
+     */
+    public UpstreamResponse<List<Item>> getOpenItemsPage(String companyId, int pageNumber, int pageSize,
+                                                         Validators previous) {
+        return getList("/accounting/companies/" + encode(companyId) + "/items?page=" + pageNumber
+                + "&size=" + pageSize, Item.class, previous);
+    }
+
+    /**
+     * Calls GET /summary/{companyId}
+     * @param companyId the company ID to retrieve the summary for
+     * @return company information and summary data
+     */
+    public CompanySummary getCompanySummary(String companyId) {
+        List<CompanySummary> summary = getList("/summary/" + encode(companyId), CompanySummary.class, null).body();
+        if (summary.size() != 1) {
+            throw new UpstreamException("Expected one company summary for company ID: " + companyId, 200);
+        }
+        return summary.get(0);
+    }
+
+    private <T> UpstreamResponse<List<T>> getList(String path, Class<T> type, Validators previous) {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .timeout(Duration.ofMillis(requestTimeoutMs))
+                .header("Accept", "application/json")
+                .GET();
+        if (previous != null && previous.etag() != null) {
+            request.header("If-None-Match", previous.etag());
+        }
+        if (previous != null && previous.lastModified() != null) {
+            request.header("If-Modified-Since", previous.lastModified());
+        }
+
+        long start = System.nanoTime();
+        try {
+            HttpResponse<InputStream> response = httpClient.send(request.build(), HttpResponse.BodyHandlers.ofInputStream());
+            try (InputStream body = response.body()) {
+                if (response.statusCode() == 304 && previous != null) {
+                    logger.debug("Upstream {} not modified", path);
+                    return new UpstreamResponse<>(null, validators(response, previous));
+                }
+                if (response.statusCode() != 200) {
+                    throw new UpstreamException("Upstream returned " + response.statusCode() + " for " + path,
+                            response.statusCode());
+                }
+
+                // A single object is read as a one element list, so every endpoint decodes the same way
+                List<T> values = new ArrayList<>();
+                try (MappingIterator<T> decoded = objectMapper.readerFor(type).readValues(body)) {
+                    while (decoded.hasNextValue()) {
+                        values.add(decoded.nextValue());
+                    }
+                }
+                logger.debug("Fetched {} {} from {} in {} ms", values.size(), type.getSimpleName(), path,
+                        (System.nanoTime() - start) / 1_000_000);
+                return new UpstreamResponse<>(values, validators(response, null));
+            }
+        } catch (IOException e) {
+            throw new UpstreamException("Failed to call upstream " + path, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new UpstreamException("Interrupted calling upstream " + path, e);
+        }
+    }
+
+    private static Validators validators(HttpResponse<?> response, Validators previous) {
+        // A 304 may leave out validators that haven't changed
+        String etag = response.headers().firstValue("ETag").orElse(previous != null ? previous.etag() : null);
+        String lastModified = response.headers().firstValue("Last-Modified")
+                .orElse(previous != null ? previous.lastModified() : null);
+        return new Validators(etag, lastModified);
+    }
+
+    private static String encode(String pathSegment) {
+        return URLEncoder.encode(pathSegment, StandardCharsets.UTF_8).replace("+", "%20");
+    }
+
+    private static void setDefaultProperty(String name, String value) {
+        if (System.getProperty(name) == null) {
+            System.setProperty(name, value);
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.example.client;
+
+/**
+ * Thrown when an upstream API call fails or returns an error status
+ */
+public class UpstreamException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int statusCode;
+
+    public UpstreamException(String message, int statusCode) {
+        super(message);
+        this.statusCode = statusCode;
+    }
+
+    public UpstreamException(String message, Throwable cause) {
+        super(message, cause);
+        this.statusCode = 0;
+    }
+
+    /**
+     * @return the HTTP status returned by the upstream API, or 0 if no response was received
+     */
+    public int getStatusCode() {
+        return statusCode;
+    }
+}
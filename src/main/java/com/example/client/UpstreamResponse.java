@@ -0,0 +1,16 @@
+package com.example.client;
+
+/**
+ * The result of a conditional upstream call
+ * @param body the decoded body, or null if the upstream reported it unchanged (304 Not Modified)
+ * @param validators validators for revalidating the body next time
+ */
+public record UpstreamResponse<T>(T body, Validators validators) {
+
+    /**
+     * @return whether the previously fetched body is still current
+     */
+    public boolean isNotModified() {
+        return body == null;
+    }
+}
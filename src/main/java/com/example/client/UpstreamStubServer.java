@@ -0,0 +1,249 @@
+package com.example.client;
+
+import com.example.model.CompanySummary;
+import com.example.model.Customer;
+import com.example.model.Item;
+import com.example.service.MockDataGenerator;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Local stand-in for the upstream accounting and lending APIs, serving generated data on the loopback
+ * interface so the upstream client can be measured and tuned offline. Latency and payload sizes are
+ * configurable. Each company's customers, item count and summary are fixed the first time they are
+ * requested, so paged item requests and repeated summaries stay consistent, and conditional requests are
+ * answered with 304 Not Modified.
+ */
+@Component
+@ConditionalOnProperty(name = "upstream.stub.enabled", havingValue = "true")
+public class UpstreamStubServer {
+
+    private static final Logger logger = LoggerFactory.getLogger(UpstreamStubServer.class);
+
+    private static final Pattern AGEING_PATH = Pattern.compile("/lending/companies/([^/]+)/ageingByMonth");
+    private static final Pattern CUSTOMERS_PATH = Pattern.compile("/accounting/companies/([^/]+)/customers");
+    private static final Pattern ITEMS_PATH = Pattern.compile("/accounting/companies/([^/]+)/items");
+    private static final Pattern SUMMARY_PATH = Pattern.compile("/summary/([^/]+)");
+    private static final Pattern PAGE_PARAM = Pattern.compile("(?:^|&)page=(\\d{1,9})");
+    private static final Pattern SIZE_PARAM = Pattern.compile("(?:^|&)size=(\\d{1,9})");
+
+    private final MockDataGenerator mockDataGenerator;
+    private final ObjectMapper objectMapper;
+    private final Map<String, StubCompany> companies = new ConcurrentHashMap<>();
+
+    @Value("${upstream.stub.port:8089}")
+    private int port;
+
+    // Delay before each response, plus up to the jitter at random
+    @Value("${upstream.stub.latency-ms:0}")
+    private long latencyMs;
+
+    @Value("${upstream.stub.latency-jitter-ms:0}")
+    private long latencyJitterMs;
+
+    // Payload sizes per company; 0 uses the mock data's usual random sizes
+    @Value("${upstream.stub.customers:0}")
+    private int customerCount;
+
+    @Value("${upstream.stub.items:0}")
+    private int itemCount;
+
+    private ExecutorService executor;
+    private HttpServer server;
+
+    /**
+     * The data served for one company
+     */
+    private record StubCompany(String companyId, CompanySummary summary, List<Customer> customers,
+                               List<String> customerIds, int itemCount, long ledgerSeed) {
+    }
+
+    @Autowired
+    public UpstreamStubServer(MockDataGenerator mockDataGenerator, ObjectMapper objectMapper) {
+        this.mockDataGenerator = mockDataGenerator;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Starts serving on the loopback interface
+     */
+    @PostConstruct
+    void start() throws IOException {
+        executor = Executors.newVirtualThreadPerTaskExecutor();
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+        server.start();
+        logger.info("Upstream stub server listening on port {} with {} ms latency", port, latencyMs);
+    }
+
+    /**
+     * Stops the server on shutdown
+     */
+    @PreDestroy
+    void stop() {
+        server.stop(0);
+        executor.close();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            simulateLatency();
+
+            String path = exchange.getRequestURI().getRawPath();
+            Matcher matcher;
+            if ((matcher = AGEING_PATH.matcher(path)).matches()) {
+                StubCompany company = company(matcher);
+                if (!isNotModified(exchange, company)) {
+                    send(exchange, mockDataGenerator.generateAgeingByMonth(company.companyId()));
+                }
+            } else if ((matcher = CUSTOMERS_PATH.matcher(path)).matches()) {
+                StubCompany company = company(matcher);
+                if (!isNotModified(exchange, company)) {
+                    send(exchange, company.customers());
+                }
+            } else if ((matcher = ITEMS_PATH.matcher(path)).matches()) {
+                StubCompany company = company(matcher);
+                if (isNotModified(exchange, company)) {
+                    return;
+                }
+                String query = exchange.getRequestURI().getRawQuery();
+                int page = intParam(PAGE_PARAM, query, 0);
+                int size = intParam(SIZE_PARAM, query, 1000);
+                sendItems(exchange, company, page, size);
+            } else if ((matcher = SUMMARY_PATH.matcher(path)).matches()) {
+                send(exchange, company(matcher).summary());
+            } else {
+                exchange.sendResponseHeaders(404, -1);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private StubCompany company(Matcher matcher) {
+        String companyId = URLDecoder.decode(matcher.group(1), StandardCharsets.UTF_8);
+        return companies.computeIfAbsent(companyId, id -> {
+            List<Customer> customers = customerCount > 0
+                    ? mockDataGenerator.generateCustomers(id, customerCount)
+                    : mockDataGenerator.generateCustomers(id);
+            List<String> customerIds = customers.stream().map(Customer::getCustomerId).toList();
+            int items = itemCount > 0 ? itemCount : mockDataGenerator.generateItemCount(id, customers.size());
+            return new StubCompany(id, mockDataGenerator.generateCompanySummary(id), customers, customerIds,
+                    items, mockDataGenerator.seed(id, "items"));
+        });
+    }
+
+    /**
+     * Adds validators to the response and answers a conditional request with 304 Not Modified if it is
+     * still current. The data only changes when the company's data is loaded, so the load date versions it.
+     * @return whether a 304 was sent
+     */
+    private boolean isNotModified(HttpExchange exchange, StubCompany company) throws IOException {
+        ZonedDateTime loaded = company.summary().getLastDataLoadDate().atZone(ZoneId.systemDefault())
+                .truncatedTo(ChronoUnit.SECONDS);
+        String lastModified = DateTimeFormatter.RFC_1123_DATE_TIME.format(loaded.withZoneSameInstant(ZoneOffset.UTC));
+        String etag = "\"" + Integer.toHexString(Objects.hash(exchange.getRequestURI().toString(),
+                company.summary().getLastDataLoadDate())) + "\"";
+        exchange.getResponseHeaders().set("ETag", etag);
+        exchange.getResponseHeaders().set("Last-Modified", lastModified);
+
+        String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+        String ifModifiedSince = exchange.getRequestHeaders().getFirst("If-Modified-Since");
+        boolean current;
+        if (ifNoneMatch != null) {
+            current = ifNoneMatch.equals(etag);
+        } else if (ifModifiedSince != null) {
+            try {
+                current = !loaded.isAfter(ZonedDateTime.parse(ifModifiedSince, DateTimeFormatter.RFC_1123_DATE_TIME));
+            } catch (DateTimeParseException e) {
+                current = false;
+            }
+        } else {
+            current = false;
+        }
+        if (current) {
+            exchange.sendResponseHeaders(304, -1);
+        }
+        return current;
+    }
+
+    private void send(HttpExchange exchange, Object body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        // Length 0 sends the body chunked, as the real APIs do for large responses
+        exchange.sendResponseHeaders(200, 0);
+        try (OutputStream out = exchange.getResponseBody()) {
+            objectMapper.writeValue(out, body);
+        }
+    }
+
+    private void sendItems(HttpExchange exchange, StubCompany company, int page, int size) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, 0);
+
+        // Items are generated as they are written, so a large page is never held in memory
+        int count = (int) Math.max(0, Math.min(size, company.itemCount() - (long) page * size));
+        try (JsonGenerator json = objectMapper.createGenerator(exchange.getResponseBody())) {
+            json.writeStartArray();
+            if (!company.customerIds().isEmpty()) {
+                for (int i = 0; i < count; i++) {
+                    Item item = mockDataGenerator.generateItem(company.ledgerSeed(), company.customerIds(),
+                            (long) page * size + i);
+                    json.writeObject(item);
+                }
+            }
+            json.writeEndArray();
+        }
+    }
+
+    private void simulateLatency() throws InterruptedException {
+        long delay = latencyMs + (latencyJitterMs > 0 ? ThreadLocalRandom.current().nextLong(latencyJitterMs + 1) : 0);
+        if (delay > 0) {
+            Thread.sleep(delay);
+        }
+    }
+
+    private static int intParam(Pattern param, String query, int defaultValue) {
+        if (query == null) {
+            return defaultValue;
+        }
+        Matcher matcher = param.matcher(query);
+        return matcher.find() ? Integer.parseInt(matcher.group(1)) : defaultValue;
+    }
+}
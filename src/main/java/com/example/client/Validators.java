@@ -0,0 +1,16 @@
+package com.example.client;
+
+/**
+ * Cache validators returned with an upstream response, sent back to revalidate it with a conditional request
+ * @param etag the response's ETag header, or null
+ * @param lastModified the response's Last-Modified header, or null
+ */
+public record Validators(String etag, String lastModified) {
+
+    /**
+     * @return whether there is anything to revalidate with
+     */
+    public boolean isPresent() {
+        return etag != null || lastModified != null;
+    }
+}
@@ -4,127 +4,315 @@ import com.example.model.AgeingByMonth;
 import com.example.model.CompanySummary;
 import com.example.model.Customer;
 import com.example.model.Item;
-import com.example.service.AgeingDataService;
+import com.example.model.ReportData;
+import com.example.service.BatchReportService;
 import com.example.service.CompanySummaryService;
-import com.example.service.CustomerService;
 import com.example.service.ExcelService;
-import com.example.service.ItemService;
+import com.example.service.ReportAdmissionService;
+import com.example.service.ReportCache;
+import com.example.service.ReportCapacityException;
+import com.example.service.ReportDataService;
+import com.example.service.ReportFileWriter;
+import com.example.service.ReportMetrics;
+import com.example.service.TeeOutputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+import org.springframework.web.context.request.async.WebAsyncUtils;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.ZoneId;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.stream.Collectors;
 
 @RestController
 public class ExcelGeneratorController {
 
     private static final Logger logger = LoggerFactory.getLogger(ExcelGeneratorController.class);
-    private final AgeingDataService ageingDataService;
-    private final CustomerService customerService;
-    private final ItemService itemService;
+
+    // Seconds a client is asked to wait before retrying when the server is too busy to generate a report
+    private static final String RETRY_AFTER_SECONDS = "30";
+
     private final CompanySummaryService companySummaryService;
+    private final ReportDataService reportDataService;
     private final ExcelService excelService;
+    private final ReportCache reportCache;
+    private final BatchReportService batchReportService;
+    private final ReportAdmissionService reportAdmissionService;
+    private final ReportMetrics reportMetrics;
     
     @Value("${excel.default.output.path:/users/mathewbroughton}")
     private String defaultOutputPath;
 
     @Autowired
     public ExcelGeneratorController(
-            AgeingDataService ageingDataService,
-            CustomerService customerService,
-            ItemService itemService,
             CompanySummaryService companySummaryService,
-            ExcelService excelService) {
-        this.ageingDataService = ageingDataService;
-        this.customerService = customerService;
-        this.itemService = itemService;
+            ReportDataService reportDataService,
+            ExcelService excelService,
+            ReportCache reportCache,
+            BatchReportService batchReportService,
+            ReportAdmissionService reportAdmissionService,
+            ReportMetrics reportMetrics) {
         this.companySummaryService = companySummaryService;
+        this.reportDataService = reportDataService;
         this.excelService = excelService;
+        this.reportCache = reportCache;
+        this.batchReportService = batchReportService;
+        this.reportAdmissionService = reportAdmissionService;
+        this.reportMetrics = reportMetrics;
     }
 
     /**
-     * Endpoint to generate an Excel file with ageing data, customer list and open items
+     * Endpoint to generate an Excel file with ageing data, customer list and open items.
+     * The workbook is streamed straight to the response (and optionally to disk) as it is written.
+     * Reports are cached per company until its data is next loaded, and conditional requests
+     * for an unchanged report are answered with 304 Not Modified. A report saved to the configured output path
+     * for the current data load is served from disk, with support for Range requests. When too many large reports
+     * are being generated at once the request is rejected with 503. A company without a data load date has
+     * no report version, so its report is always generated and never cached.
      * @param companyId the company ID to generate the report for
-     * @param outputPath optional path to save the Excel file (defaults to configured path)
+     * @param outputPath optional path to save the Excel file (defaults to configured path); a report served
+     *                   from the cache or from disk isn't generated, so it isn't saved again
+     * @param webRequest the request, to check If-None-Match and If-Modified-Since
      * @return Excel file as a download
      */
     @GetMapping("/generate/{companyId}")
-    public ResponseEntity<byte[]> generateExcel(
+    public ResponseEntity<?> generateExcel(
             @PathVariable String companyId,
-            @RequestParam(required = false) String outputPath) {
-        
-        try {
-            // Get ageing data from service
-            List<AgeingByMonth> ageingData = ageingDataService.getAgeingByMonth(companyId);
-            
-            // Get customer data from service
-            List<Customer> customerData = customerService.getCustomersWithOutstandingBalance(companyId);
-            logger.info("Retrieved {} customers for company ID: {}", customerData.size(), companyId);
-
-            // Get open items data from service
-            List<Item> itemData = itemService.getOpenItems(companyId);
-            logger.info("Retrieved {} open items for company ID: {}", itemData.size(), companyId);
-
-            // Validate that all items have valid customer IDs
-            Set<String> customerIds = customerData.stream()
-                    .map(Customer::getCustomerId)
-                    .collect(Collectors.toSet());
-
-            long invalidItems = itemData.stream()
-                    .filter(item -> !customerIds.contains(item.getCustomerId()))
-                    .count();
-
-            if (invalidItems > 0) {
-                logger.warn("{} items have customer IDs that don't match any customer in the customer data", invalidItems);
+            @RequestParam(required = false) String outputPath,
+            WebRequest webRequest) {
+
+        // Get the company summary first; its data load date identifies the version of the report
+        CompanySummary companySummary = companySummaryService.getCompanySummary(companyId);
+        logger.info("Retrieved company summary for company ID: {}", companyId);
+        Instant dataVersion = companySummary.getLastDataLoadDate() != null
+                ? companySummary.getLastDataLoadDate().atZone(ZoneId.systemDefault()).toInstant() : null;
+        String eTag = dataVersion != null ? "W/\"" + Long.toHexString(dataVersion.toEpochMilli()) + "\"" : null;
+        if (dataVersion != null && webRequest.checkNotModified(eTag, dataVersion.toEpochMilli())) {
+            return null;
+        }
+
+        // Generate filename for the report
+        String fileName = "SummaryReport_" + companyId + ".xlsx";
+        String filePath = outputPath != null ? outputPath : defaultOutputPath;
+
+        // Set up response headers for file download
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.parseMediaType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet"));
+        headers.setContentDispositionFormData("attachment", fileName);
+        headers.setCacheControl("must-revalidate, post-check=0, pre-check=0");
+        ReportCache.Key cacheKey = null;
+        if (dataVersion != null) {
+            headers.setETag(eTag);
+            headers.setLastModified(dataVersion);
+
+            // Serve the cached report if the data hasn't been loaded since it was generated
+            cacheKey = new ReportCache.Key(companyId, dataVersion);
+            Resource cachedReport = reportCache.get(cacheKey);
+            if (cachedReport != null) {
+                logger.info("Serving cached report for company ID: {}", companyId);
+                return ResponseEntity.ok()
+                        .headers(headers)
+                        .body(cachedReport);
             }
-            
-            // Get company summary data
-            CompanySummary companySummary = companySummaryService.getCompanySummary(companyId);
-            logger.info("Retrieved company summary for company ID: {}", companyId);
-
-            // Generate Excel file with all sheets including the new summary sheet
-            byte[] excelContent = excelService.generateAgeingReport(ageingData, customerData, itemData, companySummary);
-            
-            // Generate filename for the report
-            String fileName = "SummaryReport_" + companyId + ".xlsx";
-            
-            // If outputPath is provided, save the file to disk
-            String filePath = outputPath != null ? outputPath : defaultOutputPath;
-            if (filePath != null && !filePath.isEmpty()) {
-                try {
-                    excelService.saveExcelToFile(excelContent, filePath, fileName);
-                    logger.info("Excel file saved to: {}", Paths.get(filePath, fileName));
-                } catch (IOException e) {
-                    logger.error("Failed to save Excel file to disk", e);
-                    // Continue to return the file even if saving to disk fails
-                }
+
+            // Otherwise serve the report saved to disk, if it was generated from the current data load
+            Resource savedReport = findSavedReport(fileName, dataVersion);
+            if (savedReport != null) {
+                logger.info("Serving saved report for company ID: {}", companyId);
+                return ResponseEntity.ok()
+                        .headers(headers)
+                        .body(savedReport);
             }
-            
-            // Set up response headers for file download
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.parseMediaType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet"));
-            headers.setContentDispositionFormData("attachment", fileName);
-            headers.setCacheControl("must-revalidate, post-check=0, pre-check=0");
-            
-            return ResponseEntity.ok()
-                    .headers(headers)
-                    .body(excelContent);
-                    
+        }
+
+        // Get ageing data, customers and open items concurrently
+        ReportData reportData;
+        long fetchStart = System.nanoTime();
+        try {
+            reportData = reportDataService.getReportData(companyId, companySummary);
+            reportMetrics.recordPhase("fetch", System.nanoTime() - fetchStart);
         } catch (IOException e) {
-            logger.error("Error generating Excel report", e);
+            logger.error("Error fetching report data", e);
             return ResponseEntity.internalServerError().build();
         }
+        List<AgeingByMonth> ageingData = reportData.getAgeingData();
+        List<Customer> customerData = reportData.getCustomerData();
+        List<Item> itemData = reportData.getItemData();
+        logger.info("Retrieved {} customers for company ID: {}", customerData.size(), companyId);
+        logger.info("Retrieved {} open items for company ID: {}", itemData.size(), companyId);
+
+        // Validate that all items have valid customer IDs
+        Set<String> customerIds = customerData.stream()
+                .map(Customer::getCustomerId)
+                .collect(Collectors.toSet());
+
+        long invalidItems = itemData.stream()
+                .filter(item -> !customerIds.contains(item.getCustomerId()))
+                .count();
+
+        if (invalidItems > 0) {
+            logger.warn("{} items have customer IDs that don't match any customer in the customer data", invalidItems);
+        }
+
+        // Wait for enough of the report memory budget to build the workbook, or turn the request away
+        ReportAdmissionService.Admission admission;
+        try {
+            admission = reportAdmissionService.admit(customerData.size(), itemData.size());
+        } catch (ReportCapacityException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, RETRY_AFTER_SECONDS)
+                    .build();
+        }
+
+        // Generate the Excel file with all sheets while it is sent, copying it to the cache and to disk if a path is set.
+        // Everything opened for the report is opened inside the try, so the admission is released if it fails.
+        ReportCache.Key reportCacheKey = cacheKey;
+        StreamingResponseBody body = responseStream -> {
+            try (admission;
+                 ReportFileWriter.PendingFile fileStream = openReportFile(filePath, fileName);
+                 ReportCache.Capture cacheCapture = reportCacheKey != null ? reportCache.capture(reportCacheKey) : null;
+                 TeeOutputStream cachedStream = new TeeOutputStream(responseStream, cacheCapture);
+                 TeeOutputStream reportStream = new TeeOutputStream(cachedStream, fileStream)) {
+                // Includes waiting for the client to read the report as it is written
+                long generateStart = System.nanoTime();
+                excelService.generateAgeingReport(ageingData, customerData, itemData, companySummary, reportStream);
+                reportMetrics.recordPhase("generate", System.nanoTime() - generateStart);
+                if (cacheCapture != null) {
+                    cacheCapture.commit();
+                }
+                if (fileStream != null && !reportStream.hasBranchFailed()) {
+                    commitReportFile(fileStream, dataVersion);
+                }
+            } catch (IOException e) {
+                logger.error("Error generating Excel report", e);
+                throw e;
+            }
+        };
+        // The body may never run, e.g. if the request times out or the client goes away first, so the admission
+        // is also released when the async request completes; releasing it twice has no effect
+        WebAsyncUtils.getAsyncManager(webRequest).registerCallableInterceptor(admission,
+                new CallableProcessingInterceptor() {
+                    @Override
+                    public <T> void afterCompletion(NativeWebRequest request, Callable<T> task) {
+                        admission.close();
+                    }
+                });
+
+        return ResponseEntity.ok()
+                .headers(headers)
+                .body(body);
+    }
+
+    /**
+     * Endpoint to generate reports for many companies at once, as a zip with one workbook per company.
+     * Workbooks are generated in parallel and streamed into the zip as each one finishes.
+     * Companies whose report fails are listed in a failures.txt entry.
+     * @param companyIds the company IDs to generate reports for
+     * @return zip file as a download
+     */
+    @PostMapping("/generate/batch")
+    public ResponseEntity<StreamingResponseBody> generateBatch(@RequestBody List<String> companyIds) {
+        if (companyIds == null || companyIds.isEmpty()) {
+            return ResponseEntity.badRequest().build();
+        }
+        logger.info("Generating batch of {} reports", companyIds.size());
+
+        StreamingResponseBody body = responseStream -> {
+            try {
+                batchReportService.generateReports(companyIds, responseStream);
+            } catch (IOException e) {
+                logger.error("Error generating batch of reports", e);
+                throw e;
+            }
+        };
+
+        // Set up response headers for file download
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.parseMediaType("application/zip"));
+        headers.setContentDispositionFormData("attachment", "SummaryReports.zip");
+
+        return ResponseEntity.ok()
+                .headers(headers)
+                .body(body);
+    }
+
+    /**
+     * Opens the file the report is copied to while it streams to the client; it is written in the background
+     * @return stream to the file, or null if no path is configured or the path is invalid
+     */
+    private ReportFileWriter.PendingFile openReportFile(String filePath, String fileName) {
+        if (filePath == null || filePath.isEmpty()) {
+            return null;
+        }
+        try {
+            return excelService.openExcelFile(filePath, fileName);
+        } catch (InvalidPathException e) {
+            logger.error("Failed to save Excel file to disk", e);
+            // Continue to return the file even if saving to disk fails
+            return null;
+        }
+    }
+
+    /**
+     * Finds a previously saved report that is still current. Only the configured output path is searched, never
+     * a path given by the client. It is returned as a file resource so it is copied straight from disk, and Range
+     * requests can resume a partial download.
+     * @return the saved report, or null if there is none or it was generated from another data load
+     */
+    private Resource findSavedReport(String fileName, Instant dataVersion) {
+        if (defaultOutputPath == null || defaultOutputPath.isEmpty()) {
+            return null;
+        }
+        try {
+            Path directory = Paths.get(defaultOutputPath).toAbsolutePath().normalize();
+            Path savedFile = directory.resolve(fileName).normalize();
+            // A saved report's modification time is set to the data load date it was generated from
+            if (!directory.equals(savedFile.getParent()) || !Files.isRegularFile(savedFile)
+                    || Files.getLastModifiedTime(savedFile).toMillis() != dataVersion.toEpochMilli()) {
+                return null;
+            }
+            return new FileSystemResource(savedFile);
+        } catch (IOException | InvalidPathException e) {
+            logger.warn("Failed to check saved Excel file", e);
+            return null;
+        }
+    }
+
+    /**
+     * Moves the saved copy of a complete report into place once its remaining bytes are written, recording the
+     * data load it was generated from as its modification time
+     */
+    private void commitReportFile(ReportFileWriter.PendingFile fileStream, Instant dataVersion) {
+        try {
+            fileStream.commit(dataVersion);
+        } catch (IOException e) {
+            logger.error("Failed to save Excel file to disk", e);
+            // The report has been sent, so saving it is best effort
+        }
     }
 }
@@ -0,0 +1,94 @@
+package com.example.controller;
+
+import com.example.model.ReportJob;
+import com.example.service.ReportJobService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Endpoints to generate reports in the background: queue a report, poll its status, then download it
+ */
+@RestController
+public class ReportJobController {
+
+    // Seconds a client is asked to wait before retrying when the job queue is full
+    private static final String RETRY_AFTER_SECONDS = "30";
+
+    private final ReportJobService reportJobService;
+
+    @Autowired
+    public ReportJobController(ReportJobService reportJobService) {
+        this.reportJobService = reportJobService;
+    }
+
+    /**
+     * Endpoint to queue a report for a company
+     * @param companyId the company ID to generate the report for
+     * @return 202 with the job and its status URL, or 503 if too many jobs are queued
+     */
+    @PostMapping("/jobs/{companyId}")
+    public ResponseEntity<ReportJob> submitJob(@PathVariable String companyId) {
+        try {
+            ReportJob job = reportJobService.submit(companyId);
+            return ResponseEntity.accepted()
+                    .location(URI.create("/jobs/" + job.getJobId()))
+                    .body(job);
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, RETRY_AFTER_SECONDS)
+                    .build();
+        }
+    }
+
+    /**
+     * Endpoint to get a job's status and progress
+     * @param jobId the job ID returned when the job was queued
+     * @return the job, or 404 if it doesn't exist or has expired
+     */
+    @GetMapping("/jobs/{jobId}")
+    public ResponseEntity<ReportJob> getJob(@PathVariable String jobId) {
+        ReportJob job = reportJobService.getJob(jobId);
+        if (job == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(job);
+    }
+
+    /**
+     * Endpoint to download a completed job's report
+     * @param jobId the job ID returned when the job was queued
+     * @return Excel file as a download, 409 if the job hasn't completed, or 404 if it doesn't exist or has expired
+     */
+    @GetMapping("/jobs/{jobId}/download")
+    public ResponseEntity<FileSystemResource> downloadJob(@PathVariable String jobId) {
+        ReportJob job = reportJobService.getJob(jobId);
+        if (job == null) {
+            return ResponseEntity.notFound().build();
+        }
+        Path output = reportJobService.getOutput(jobId);
+        if (output == null) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        }
+
+        // Set up response headers for file download
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.parseMediaType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet"));
+        headers.setContentDispositionFormData("attachment", "SummaryReport_" + job.getCompanyId() + ".xlsx");
+
+        return ResponseEntity.ok()
+                .headers(headers)
+                .body(new FileSystemResource(output));
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.controller;
+
+import com.example.service.ReportRecordingService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * Endpoint to record JDK Flight Recorder data while the next few reports are generated. It isn't authenticated,
+ * so it only exists when diagnostics.recording.enabled is set.
+ */
+@RestController
+@ConditionalOnProperty(name = "diagnostics.recording.enabled", havingValue = "true")
+public class ReportRecordingController {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReportRecordingController.class);
+
+    private final ReportRecordingService reportRecordingService;
+
+    @Autowired
+    public ReportRecordingController(ReportRecordingService reportRecordingService) {
+        this.reportRecordingService = reportRecordingService;
+    }
+
+    /**
+     * Endpoint to record the next reports generated by any client. The response is sent once the reports
+     * are finished or the time is up, whichever comes first.
+     * @param reports the number of reports to record
+     * @param seconds the longest to record for
+     * @return the recording as a .jfr file, 400 if reports or seconds isn't positive, or 409 if a recording
+     *         is already running
+     */
+    @PostMapping("/diagnostics/recording")
+    public ResponseEntity<StreamingResponseBody> record(
+            @RequestParam(defaultValue = "1") int reports,
+            @RequestParam(defaultValue = "60") long seconds) throws IOException {
+        if (reports < 1 || seconds < 1) {
+            return ResponseEntity.badRequest().build();
+        }
+        ReportRecordingService.ActiveRecording recording;
+        try {
+            recording = reportRecordingService.start(reports, Duration.ofSeconds(seconds));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        }
+
+        // Wait for the reports off the request thread, then send the recording
+        StreamingResponseBody body = responseStream -> {
+            Path file = reportRecordingService.finish(recording);
+            try {
+                Files.copy(file, responseStream);
+            } catch (IOException e) {
+                logger.error("Error sending recording", e);
+                throw e;
+            } finally {
+                Files.deleteIfExists(file);
+            }
+        };
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_OCTET_STREAM);
+        headers.setContentDispositionFormData("attachment", "reports.jfr");
+
+        return ResponseEntity.ok()
+                .headers(headers)
+                .body(body);
+    }
+}
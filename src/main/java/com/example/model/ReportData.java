@@ -0,0 +1,40 @@
+package com.example.model;
+
+import java.util.List;
+
+/**
+ * The data sets needed to generate a company's report
+ */
+public class ReportData {
+    private final List<AgeingByMonth> ageingData;
+    private final List<Customer> customerData;
+    private final List<Item> itemData;
+    private final CompanySummary companySummary;
+
+    public ReportData(List<AgeingByMonth> ageingData, List<Customer> customerData,
+                      List<Item> itemData, CompanySummary companySummary) {
+        this.ageingData = ageingData;
+        this.customerData = customerData;
+        this.itemData = itemData;
+        this.companySummary = companySummary;
+    }
+
+    public List<AgeingByMonth> getAgeingData() {
+        return ageingData;
+    }
+
+    public List<Customer> getCustomerData() {
+        return customerData;
+    }
+
+    /**
+     * @return the open items, or null if they are streamed instead of fetched as a list
+     */
+    public List<Item> getItemData() {
+        return itemData;
+    }
+
+    public CompanySummary getCompanySummary() {
+        return companySummary;
+    }
+}
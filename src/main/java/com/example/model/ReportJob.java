@@ -0,0 +1,75 @@
+package com.example.model;
+
+import java.time.LocalDateTime;
+
+/**
+ * A report generated in the background, and its progress
+ */
+public class ReportJob {
+
+    public enum Status {
+        QUEUED, RUNNING, COMPLETED, FAILED
+    }
+
+    private final String jobId;
+    private final String companyId;
+    private final LocalDateTime createdAt;
+    // Updated by the worker thread and read by status requests
+    private volatile Status status = Status.QUEUED;
+    private volatile int progress;
+    private volatile LocalDateTime completedAt;
+    private volatile String error;
+
+    public ReportJob(String jobId, String companyId, LocalDateTime createdAt) {
+        this.jobId = jobId;
+        this.companyId = companyId;
+        this.createdAt = createdAt;
+    }
+
+    public String getJobId() {
+        return jobId;
+    }
+
+    public String getCompanyId() {
+        return companyId;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public void setStatus(Status status) {
+        this.status = status;
+    }
+
+    /**
+     * @return percentage of the job completed, from 0 to 100
+     */
+    public int getProgress() {
+        return progress;
+    }
+
+    public void setProgress(int progress) {
+        this.progress = progress;
+    }
+
+    public LocalDateTime getCompletedAt() {
+        return completedAt;
+    }
+
+    public void setCompletedAt(LocalDateTime completedAt) {
+        this.completedAt = completedAt;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+}
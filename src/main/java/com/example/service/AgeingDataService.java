@@ -1,56 +1,56 @@
 package com.example.service;
 
+import com.example.client.UpstreamClient;
 import com.example.model.AgeingByMonth;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Service;
 
-import java.math.BigDecimal;
-import java.time.YearMonth;
-import java.util.ArrayList;
+import java.time.LocalDateTime;
 import java.util.List;
-import java.util.Random;
 
 @Service
 public class AgeingDataService {
 
-    private final Random random = new Random();
+    private final MockDataGenerator mockDataGenerator;
+    private final UpstreamClient upstreamClient;
+    private final CompanyDataCache companyDataCache;
+
+    @Autowired
+    public AgeingDataService(MockDataGenerator mockDataGenerator, @Nullable UpstreamClient upstreamClient,
+                             CompanyDataCache companyDataCache) {
+        this.mockDataGenerator = mockDataGenerator;
+        this.upstreamClient = upstreamClient;
+        this.companyDataCache = companyDataCache;
+    }
 
     /**
-     * Mock service that would normally call an external API
+     * Gets the ageing data from the lending API, or generates it when no upstream is configured
      * @param companyId the company ID to retrieve data for
      * @return List of ageing data by month
      */
     public List<AgeingByMonth> getAgeingByMonth(String companyId) {
-        // In a real application, this would call the external endpoint
-        // someurl/lending/companies/{companyId}/ageingByMonth
-        
-        List<AgeingByMonth> result = new ArrayList<>();
-        YearMonth currentMonth = YearMonth.now();
-        
-        // Generate 12 months of data
-        for (int i = 0; i < 12; i++) {
-            YearMonth month = currentMonth.minusMonths(i);
-            
-            // Generate random values (in a real app, these would come from the API)
-            BigDecimal salesLedgerBalance = new BigDecimal(random.nextInt(1000000) / 100.0);
-            BigDecimal amountNotDue = new BigDecimal(random.nextInt(500000) / 100.0);
-            BigDecimal amountOver30Days = new BigDecimal(random.nextInt(300000) / 100.0);
-            BigDecimal amountOver60Days = new BigDecimal(random.nextInt(200000) / 100.0);
-            BigDecimal amountOver90Days = new BigDecimal(random.nextInt(100000) / 100.0);
-            BigDecimal amountOverThreshold = new BigDecimal(random.nextInt(50000) / 100.0);
-            BigDecimal totalCredits = new BigDecimal(random.nextInt(200000) / 100.0);
-            
-            result.add(new AgeingByMonth(
-                month,
-                salesLedgerBalance,
-                amountNotDue,
-                amountOver30Days,
-                amountOver60Days,
-                amountOver90Days,
-                amountOverThreshold,
-                totalCredits
-            ));
+        if (upstreamClient != null) {
+            // someurl/lending/companies/{companyId}/ageingByMonth
+            return upstreamClient.getAgeingByMonth(companyId);
         }
-        
-        return result;
+        return mockDataGenerator.generateAgeingByMonth(companyId);
+    }
+
+    /**
+     * Gets the ageing data, reusing the data fetched earlier for the same data load
+     * @param companyId the company ID to retrieve data for
+     * @param dataVersion the company's last data load date
+     * @return List of ageing data by month
+     */
+    public List<AgeingByMonth> getAgeingByMonth(String companyId, LocalDateTime dataVersion) {
+        CompanyDataCache.Key key = new CompanyDataCache.Key(companyId, "ageingByMonth");
+        return companyDataCache.get(key, dataVersion, SnapshotCodec.AGEING_BY_MONTH, previous -> {
+            if (upstreamClient != null) {
+                return CompanyDataCache.revalidate(previous,
+                        validators -> upstreamClient.getAgeingByMonth(companyId, validators));
+            }
+            return new CompanyDataCache.Dataset<>(List.copyOf(mockDataGenerator.generateAgeingByMonth(companyId)), List.of());
+        });
     }
 }
@@ -0,0 +1,180 @@
+package com.example.service;
+
+import com.example.model.ReportData;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Generates reports for many companies as a single zip. Reports are generated in parallel and each one
+ * is written to the zip as soon as it is finished, so the first reports reach the client while later ones
+ * are still being generated. A company whose report fails is listed in a failures entry at the end of the
+ * zip instead of failing the whole batch.
+ */
+@Service
+public class BatchReportService {
+
+    private static final Logger logger = LoggerFactory.getLogger(BatchReportService.class);
+
+    private static final String FAILURES_ENTRY = "failures.txt";
+
+    private final ReportDataService reportDataService;
+    private final ExcelService excelService;
+    private final ReportAdmissionService reportAdmissionService;
+
+    // Reports generated at once; defaults to one per core as generation is CPU bound
+    @Value("${report.batch.parallelism:0}")
+    private int parallelism;
+
+    /**
+     * A report generated for one company in the batch
+     */
+    private record BatchResult(String companyId, byte[] report, Exception failure) {
+    }
+
+    @Autowired
+    public BatchReportService(ReportDataService reportDataService, ExcelService excelService,
+                              ReportAdmissionService reportAdmissionService) {
+        this.reportDataService = reportDataService;
+        this.excelService = excelService;
+        this.reportAdmissionService = reportAdmissionService;
+    }
+
+    /**
+     * Generates a report per company and writes them to a zip in the order they finish
+     * @param companyIds the company IDs to generate reports for; duplicates are generated once
+     * @param out stream to write the zip to
+     * @throws IOException if the zip can't be written, e.g. because the client disconnected
+     */
+    public void generateReports(List<String> companyIds, OutputStream out) throws IOException {
+        int threads = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        // Finished reports are held in memory until written, so only a few more than the thread count are in flight
+        int maxInFlight = threads * 2;
+
+        Set<String> distinctCompanyIds = new LinkedHashSet<>(companyIds);
+        Iterator<String> pending = distinctCompanyIds.iterator();
+        Map<String, String> failures = new LinkedHashMap<>();
+        Set<String> entryNames = new HashSet<>();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try (ZipOutputStream zip = new ZipOutputStream(out)) {
+            CompletionService<BatchResult> reports = new ExecutorCompletionService<>(executor);
+            int inFlight = 0;
+            while (inFlight < maxInFlight && pending.hasNext()) {
+                String companyId = pending.next();
+                reports.submit(() -> generateReport(companyId));
+                inFlight++;
+            }
+
+            while (inFlight > 0) {
+                BatchResult result = reports.take().get();
+                inFlight--;
+                if (pending.hasNext()) {
+                    String companyId = pending.next();
+                    reports.submit(() -> generateReport(companyId));
+                    inFlight++;
+                }
+
+                if (result.failure() != null) {
+                    failures.put(result.companyId(), String.valueOf(result.failure().getMessage()));
+                } else {
+                    writeEntry(zip, entryName(result.companyId(), entryNames), result.report());
+                }
+            }
+
+            if (!failures.isEmpty()) {
+                writeEntry(zip, FAILURES_ENTRY, formatFailures(failures));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted generating batch of reports");
+        } catch (ExecutionException e) {
+            // generateReport catches its own failures, so this is unexpected
+            throw new IOException("Failed to generate batch of reports", e.getCause());
+        } finally {
+            // Stop outstanding reports if the client went away
+            executor.shutdownNow();
+        }
+
+        logger.info("Generated batch of {} reports, {} failed", distinctCompanyIds.size(), failures.size());
+    }
+
+    private BatchResult generateReport(String companyId) {
+        try {
+            ReportData reportData = reportDataService.getReportData(companyId);
+            ByteArrayOutputStream report = new ByteArrayOutputStream();
+            ReportAdmissionService.Admission admission = reportAdmissionService.admitWhenAvailable(
+                    reportData.getCustomerData().size(), reportData.getItemData().size());
+            try {
+                excelService.generateAgeingReport(reportData.getAgeingData(), reportData.getCustomerData(),
+                        reportData.getItemData(), reportData.getCompanySummary(), report);
+            } finally {
+                admission.close();
+            }
+            return new BatchResult(companyId, report.toByteArray(), null);
+        } catch (Exception e) {
+            logger.error("Failed to generate report for company ID: {}", companyId, e);
+            return new BatchResult(companyId, null, e);
+        }
+    }
+
+    /**
+     * Names a company's entry, numbering it if another company's ID maps to the same name
+     * @param usedNames the names given so far, lower case; the new name is added
+     */
+    private static String entryName(String companyId, Set<String> usedNames) {
+        // Keep entry names flat so a company ID can't create directories or paths outside the zip when extracted
+        String baseName = "SummaryReport_" + companyId.replaceAll("[^A-Za-z0-9._-]", "_");
+        String name = baseName + ".xlsx";
+        // Compared ignoring case, as names differing only in case collide when extracted on some file systems
+        for (int suffix = 2; !usedNames.add(name.toLowerCase(Locale.ROOT)); suffix++) {
+            name = baseName + "_" + suffix + ".xlsx";
+        }
+        return name;
+    }
+
+    private static void writeEntry(ZipOutputStream zip, String name, byte[] content) throws IOException {
+        // Workbooks are already compressed, so entries are stored rather than deflated a second time
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        ZipEntry entry = new ZipEntry(name);
+        entry.setMethod(ZipEntry.STORED);
+        entry.setSize(content.length);
+        entry.setCompressedSize(content.length);
+        entry.setCrc(crc.getValue());
+        zip.putNextEntry(entry);
+        zip.write(content);
+        zip.closeEntry();
+        zip.flush();
+    }
+
+    private static byte[] formatFailures(Map<String, String> failures) {
+        List<String> lines = new ArrayList<>();
+        failures.forEach((companyId, message) -> lines.add(companyId + "\t" + message));
+        return (String.join("\n", lines) + "\n").getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.service;
+
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.DataFormat;
+import org.apache.poi.ss.usermodel.FillPatternType;
+import org.apache.poi.ss.usermodel.Font;
+import org.apache.poi.ss.usermodel.Workbook;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-workbook cache of cell styles and fonts keyed by their {@link CellStyleSpec}.
+ * Each distinct style is created once and shared by every sheet, which keeps styles.xml small
+ * and avoids rebuilding identical styles for each sheet. Creating styles isn't thread-safe, like the
+ * workbook itself, but once every style has been created they can be looked up from any thread, e.g. by
+ * sheets written directly as XML alongside the workbook.
+ */
+public class CellStyleRegistry {
+
+    private final Workbook workbook;
+    private final DataFormat dataFormat;
+    private final Map<CellStyleSpec, CellStyle> styles = new ConcurrentHashMap<>();
+    private final Map<FontSpec, Font> fonts = new HashMap<>();
+
+    public CellStyleRegistry(Workbook workbook) {
+        this.workbook = workbook;
+        this.dataFormat = workbook.createDataFormat();
+    }
+
+    /**
+     * Returns the workbook style for the spec, creating it on first use
+     */
+    public CellStyle get(CellStyleSpec spec) {
+        return styles.computeIfAbsent(spec, this::createStyle);
+    }
+
+    /**
+     * @return number of distinct cell styles created in the workbook through this registry
+     */
+    public int getUniqueStyleCount() {
+        return styles.size();
+    }
+
+    /**
+     * @return number of distinct fonts created in the workbook through this registry
+     */
+    public int getUniqueFontCount() {
+        return fonts.size();
+    }
+
+    private CellStyle createStyle(CellStyleSpec spec) {
+        CellStyle style = workbook.createCellStyle();
+        if (spec.font() != null) {
+            style.setFont(fonts.computeIfAbsent(spec.font(), this::createFont));
+        }
+        if (spec.fillColor() != null) {
+            style.setFillForegroundColor(spec.fillColor());
+            style.setFillPattern(FillPatternType.SOLID_FOREGROUND);
+        }
+        if (spec.dataFormat() != null) {
+            style.setDataFormat(dataFormat.getFormat(spec.dataFormat()));
+        }
+        style.setBorderTop(spec.borderTop());
+        style.setBorderBottom(spec.borderBottom());
+        style.setBorderLeft(spec.borderLeft());
+        style.setBorderRight(spec.borderRight());
+        style.setAlignment(spec.alignment());
+        style.setVerticalAlignment(spec.verticalAlignment());
+        return style;
+    }
+
+    private Font createFont(FontSpec spec) {
+        Font font = workbook.createFont();
+        font.setBold(spec.bold());
+        font.setItalic(spec.italic());
+        font.setUnderline(spec.underline());
+        if (spec.color() != null) {
+            font.setColor(spec.color());
+        }
+        if (spec.heightInPoints() != null) {
+            font.setFontHeightInPoints(spec.heightInPoints());
+        }
+        return font;
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.service;
+
+import org.apache.poi.ss.usermodel.BorderStyle;
+import org.apache.poi.ss.usermodel.HorizontalAlignment;
+import org.apache.poi.ss.usermodel.IndexedColors;
+import org.apache.poi.ss.usermodel.VerticalAlignment;
+
+/**
+ * Immutable description of a cell style (font, fill, number format, borders and alignment).
+ * Two specs with the same values are equal, which lets {@link CellStyleRegistry} create each
+ * distinct style only once per workbook.
+ */
+public record CellStyleSpec(FontSpec font, Short fillColor, String dataFormat,
+                            BorderStyle borderTop, BorderStyle borderBottom,
+                            BorderStyle borderLeft, BorderStyle borderRight,
+                            HorizontalAlignment alignment, VerticalAlignment verticalAlignment) {
+
+    public static final CellStyleSpec DEFAULT = new CellStyleSpec(null, null, null,
+            BorderStyle.NONE, BorderStyle.NONE, BorderStyle.NONE, BorderStyle.NONE,
+            HorizontalAlignment.GENERAL, VerticalAlignment.BOTTOM);
+
+    public CellStyleSpec withFont(FontSpec font) {
+        return new CellStyleSpec(font, fillColor, dataFormat, borderTop, borderBottom, borderLeft, borderRight,
+                alignment, verticalAlignment);
+    }
+
+    /**
+     * Sets a solid foreground fill in the given color
+     */
+    public CellStyleSpec withFill(IndexedColors color) {
+        return new CellStyleSpec(font, color.getIndex(), dataFormat, borderTop, borderBottom, borderLeft, borderRight,
+                alignment, verticalAlignment);
+    }
+
+    public CellStyleSpec withDataFormat(String dataFormat) {
+        return new CellStyleSpec(font, fillColor, dataFormat, borderTop, borderBottom, borderLeft, borderRight,
+                alignment, verticalAlignment);
+    }
+
+    /**
+     * Sets the same border on all four sides
+     */
+    public CellStyleSpec withBorders(BorderStyle border) {
+        return new CellStyleSpec(font, fillColor, dataFormat, border, border, border, border,
+                alignment, verticalAlignment);
+    }
+
+    public CellStyleSpec withBorderTop(BorderStyle border) {
+        return new CellStyleSpec(font, fillColor, dataFormat, border, borderBottom, borderLeft, borderRight,
+                alignment, verticalAlignment);
+    }
+
+    public CellStyleSpec withAlignment(HorizontalAlignment alignment) {
+        return new CellStyleSpec(font, fillColor, dataFormat, borderTop, borderBottom, borderLeft, borderRight,
+                alignment, verticalAlignment);
+    }
+
+    public CellStyleSpec withVerticalAlignment(VerticalAlignment verticalAlignment) {
+        return new CellStyleSpec(font, fillColor, dataFormat, borderTop, borderBottom, borderLeft, borderRight,
+                alignment, verticalAlignment);
+    }
+}
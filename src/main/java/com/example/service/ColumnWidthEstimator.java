@@ -0,0 +1,133 @@
+package com.example.service;
+
+import org.apache.poi.ss.usermodel.Sheet;
+
+/**
+ * Estimates column widths from the values written to a sheet, as a cheap replacement for
+ * {@link Sheet#autoSizeColumn(int)}. Instead of measuring every cell with AWT font metrics at the end,
+ * the widest formatted value per column is tracked as rows are written and the widths are set in
+ * O(columns) once the sheet is complete. This also works for streamed sheets whose rows have already
+ * been flushed to disk.
+ */
+public class ColumnWidthEstimator {
+
+    // Excel's maximum column width is 255 characters, in units of 1/256th of a character
+    private static final int MAX_COLUMN_WIDTH = 255 * 256;
+
+    // Width of a column that hasn't been sized: Excel's default of 8 characters
+    private static final int DEFAULT_COLUMN_WIDTH = 8 * 256;
+
+    // Approximate widths of ASCII characters relative to the default font's digit width, built once
+    private static final float[] REGULAR_CHAR_WIDTHS = buildCharWidthTable(1.0f);
+    private static final float[] BOLD_CHAR_WIDTHS = buildCharWidthTable(1.1f);
+
+    private final float[] maxWidths;
+
+    /**
+     * @param columnCount number of columns to track
+     */
+    public ColumnWidthEstimator(int columnCount) {
+        this.maxWidths = new float[columnCount];
+    }
+
+    /**
+     * Tracks a text value written in the regular font
+     */
+    public void track(int column, String text) {
+        track(column, text, false);
+    }
+
+    /**
+     * Tracks a text value, e.g. a header written in a bold font
+     */
+    public void track(int column, String text, boolean bold) {
+        if (text == null || text.isEmpty()) {
+            return;
+        }
+        float[] charWidths = bold ? BOLD_CHAR_WIDTHS : REGULAR_CHAR_WIDTHS;
+        float width = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            width += c < charWidths.length ? charWidths[c] : 1.2f;
+        }
+        updateWidth(column, width);
+    }
+
+    /**
+     * Tracks a number shown with the $#,##0.00 format, without formatting it
+     */
+    public void trackCurrency(int column, double value) {
+        // "$" + integer digits + grouping commas + ".00", plus a "-" for negative values
+        int digits = integerDigits(value);
+        float width = 1 + digits + (digits - 1) / 3 * REGULAR_CHAR_WIDTHS[','] + REGULAR_CHAR_WIDTHS['.'] + 2;
+        if (value < 0) {
+            width += REGULAR_CHAR_WIDTHS['-'];
+        }
+        updateWidth(column, width);
+    }
+
+    /**
+     * Tracks a fraction shown with the 0.00% format
+     */
+    public void trackPercentage(int column, double value) {
+        float width = integerDigits(value * 100) + REGULAR_CHAR_WIDTHS['.'] + 2 + REGULAR_CHAR_WIDTHS['%'];
+        if (value < 0) {
+            width += REGULAR_CHAR_WIDTHS['-'];
+        }
+        updateWidth(column, width);
+    }
+
+    /**
+     * Sets the width of every tracked column on the sheet
+     * @param sheet the sheet to size
+     * @param padding extra width to add to each column, in units of 1/256th of a character
+     */
+    public void applyTo(Sheet sheet, int padding) {
+        for (int column = 0; column < maxWidths.length; column++) {
+            // Columns without values keep their current width, as autoSizeColumn would
+            int width = maxWidths[column] > 0 ? Math.round(maxWidths[column] * 256) : sheet.getColumnWidth(column);
+            sheet.setColumnWidth(column, Math.min(MAX_COLUMN_WIDTH, width + padding));
+        }
+    }
+
+    /**
+     * Sets the width of every tracked column on a sheet part written directly
+     * @param part the part to size
+     * @param padding extra width to add to each column, in units of 1/256th of a character
+     */
+    void applyTo(SheetXmlWriter part, int padding) {
+        for (int column = 0; column < maxWidths.length; column++) {
+            int width = maxWidths[column] > 0 ? Math.round(maxWidths[column] * 256) : DEFAULT_COLUMN_WIDTH;
+            part.columnWidth(column, Math.min(MAX_COLUMN_WIDTH, width + padding));
+        }
+    }
+
+    private void updateWidth(int column, float width) {
+        if (width > maxWidths[column]) {
+            maxWidths[column] = width;
+        }
+    }
+
+    private static int integerDigits(double value) {
+        double magnitude = Math.abs(value);
+        return magnitude < 10 ? 1 : (int) Math.log10(magnitude) + 1;
+    }
+
+    private static float[] buildCharWidthTable(float scale) {
+        float[] widths = new float[128];
+        for (char c = 0; c < widths.length; c++) {
+            float width;
+            if ("iljtfI.,:;'|!()[] ".indexOf(c) >= 0) {
+                width = 0.5f;
+            } else if ("mwMW@%".indexOf(c) >= 0) {
+                width = 1.5f;
+            } else if (Character.isUpperCase(c)) {
+                width = 1.2f;
+            } else {
+                width = 1.0f;
+            }
+            widths[c] = width * scale;
+        }
+        return widths;
+    }
+}
@@ -0,0 +1,164 @@
+package com.example.service;
+
+import com.example.client.UpstreamResponse;
+import com.example.client.Validators;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+/**
+ * Cache of the datasets fetched from upstream for each company, keyed by the company's last data load date.
+ * Upstream data only changes when a load happens, so while the load date stays the same a cached dataset
+ * is reused without calling upstream at all. Once the load date moves, the previous dataset is handed to the
+ * loader so it can be revalidated with a conditional request rather than fetched again in full.
+ * The cache holds up to a total number of records, evicting the least recently used datasets first; datasets
+ * are also kept in the {@link SnapshotStore}, if enabled, so they survive a restart.
+ */
+@Component
+public class CompanyDataCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(CompanyDataCache.class);
+
+    private final SnapshotStore snapshotStore;
+
+    @Value("${upstream.cache.max-records:1000000}")
+    private long maxRecords;
+
+    // Access-ordered, so iteration starts at the least recently used dataset
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long recordCount;
+
+    /**
+     * Identifies a dataset
+     * @param companyId the company the data is for
+     * @param dataset the kind of data, e.g. customers
+     */
+    public record Key(String companyId, String dataset) {
+    }
+
+    /**
+     * A fetched dataset and the validators to revalidate it with
+     * @param records the fetched records, which must not be modified
+     * @param validators validators for each upstream response the records came from; empty if they can't
+     *                   be revalidated
+     */
+    public record Dataset<E>(List<E> records, List<Validators> validators) {
+    }
+
+    private record Entry(LocalDateTime dataVersion, Dataset<?> dataset) {
+    }
+
+    @Autowired
+    public CompanyDataCache(SnapshotStore snapshotStore) {
+        this.snapshotStore = snapshotStore;
+    }
+
+    /**
+     * Gets a dataset, loading it unless one loaded for the same data version is cached
+     * @param key the company and kind of data
+     * @param dataVersion the company's last data load date; null always loads
+     * @param codec encodes the dataset's records for its snapshot
+     * @param loader loads the dataset, given the cached dataset of an earlier version (or null) to revalidate;
+     *               reuses the earlier dataset's records if they are still current
+     * @return the dataset's records
+     */
+    @SuppressWarnings("unchecked")
+    public <E> List<E> get(Key key, LocalDateTime dataVersion, SnapshotCodec<E> codec,
+                           UnaryOperator<Dataset<E>> loader) {
+        Dataset<E> previous = null;
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                if (entry.dataVersion().equals(dataVersion)) {
+                    logger.debug("Reusing {} for company ID: {}", key.dataset(), key.companyId());
+                    return (List<E>) entry.dataset().records();
+                }
+                previous = (Dataset<E>) entry.dataset();
+            }
+        }
+
+        // Not in memory, e.g. after a restart: a snapshot from disk is current or can be revalidated
+        if (previous == null && dataVersion != null) {
+            SnapshotStore.Snapshot<E> snapshot = snapshotStore.read(key, codec);
+            if (snapshot != null) {
+                if (snapshot.dataVersion().equals(dataVersion)) {
+                    put(key, new Entry(dataVersion, snapshot.dataset()));
+                    return snapshot.dataset().records();
+                }
+                previous = snapshot.dataset();
+            }
+        }
+
+        Dataset<E> loaded = loader.apply(previous);
+        if (previous != null && loaded.records() == previous.records()) {
+            logger.debug("Revalidated {} for company ID: {}", key.dataset(), key.companyId());
+        }
+        if (dataVersion != null) {
+            put(key, new Entry(dataVersion, loaded));
+            snapshotStore.write(key, dataVersion, loaded, codec);
+        }
+        return loaded.records();
+    }
+
+    /**
+     * Gets a dataset only if one loaded for the same data version is in memory, without loading it or reading
+     * its snapshot, e.g. to stream a dataset too large to load
+     * @param key the company and kind of data
+     * @param dataVersion the company's last data load date; null is never cached
+     * @return the dataset's records, or null if they aren't cached for the version
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized <E> List<E> getIfCurrent(Key key, LocalDateTime dataVersion) {
+        Entry entry = entries.get(key);
+        return entry != null && entry.dataVersion().equals(dataVersion) ? (List<E>) entry.dataset().records() : null;
+    }
+
+    /**
+     * Fetches a dataset that comes from a single upstream response, revalidating the previous one if possible
+     * @param previous the dataset of an earlier data version, or null
+     * @param fetch calls upstream, conditionally if given validators
+     * @return the previous records with the response's validators if upstream reports them unchanged,
+     *         otherwise the fetched dataset
+     */
+    public static <E> Dataset<E> revalidate(Dataset<E> previous, Function<Validators, UpstreamResponse<List<E>>> fetch) {
+        Validators validators = previous != null && previous.validators().size() == 1
+                && previous.validators().get(0).isPresent() ? previous.validators().get(0) : null;
+        UpstreamResponse<List<E>> response = fetch.apply(validators);
+        if (response.isNotModified()) {
+            // A 304 can carry new validators, e.g. a later Last-Modified, which the next revalidation needs
+            return new Dataset<>(previous.records(), List.of(response.validators()));
+        }
+        return new Dataset<>(List.copyOf(response.body()), List.of(response.validators()));
+    }
+
+    private synchronized void put(Key key, Entry entry) {
+        // A dataset too large to cache still replaces the out of date one
+        Entry previous = entries.remove(key);
+        if (previous != null) {
+            recordCount -= previous.dataset().records().size();
+        }
+        int size = entry.dataset().records().size();
+        if (size > maxRecords) {
+            return;
+        }
+        entries.put(key, entry);
+        recordCount += size;
+
+        Iterator<Map.Entry<Key, Entry>> eldest = entries.entrySet().iterator();
+        while (recordCount > maxRecords && eldest.hasNext()) {
+            Map.Entry<Key, Entry> evicted = eldest.next();
+            eldest.remove();
+            recordCount -= evicted.getValue().dataset().records().size();
+        }
+    }
+}
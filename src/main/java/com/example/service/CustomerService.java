@@ -1,91 +1,76 @@
 package com.example.service;
 
+import com.example.client.UpstreamClient;
 import com.example.model.Customer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Service;
 
-import java.math.BigDecimal;
-import java.time.LocalDate;
-import java.util.ArrayList;
+import java.time.LocalDateTime;
 import java.util.List;
-import java.util.Random;
 
 @Service
 public class CustomerService {
 
-    private final Random random = new Random();
-    private final String[] companyNames = {
-            "Acme Corp", "Globex Corporation", "Soylent Corp", "Initech", "Umbrella Corporation",
-            "Stark Industries", "Wayne Enterprises", "Cyberdyne Systems", "Weyland-Yutani Corp",
-            "Massive Dynamic", "Oceanic Airlines", "Oscorp Industries", "Rekall", "Wonka Industries",
-            "Tyrell Corporation", "Gekko & Co", "Nakatomi Trading Corp", "Dunder Mifflin", "Bluth Company",
-            "Slate Rock and Gravel Company", "Sterling Cooper", "Wernham Hogg", "Sirius Cybernetics Corp"
-    };
-    
-    private final String[] cities = {
-            "New York", "London", "Tokyo", "Paris", "Sydney", "Berlin", "Toronto", "Singapore",
-            "Hong Kong", "Dubai", "Los Angeles", "Chicago", "Boston", "San Francisco", "Seattle"
-    };
-    
-    private final String[] states = {
-            "NY", "CA", "TX", "FL", "IL", "PA", "OH", "GA", "NC", "MI", "NJ", "VA", "WA", "MA", "AZ"
-    };
-    
-    private final String[] countries = {
-            "United States", "United Kingdom", "Canada", "Australia", "Germany", "Japan", "France",
-            "Italy", "Spain", "China", "India", "Brazil", "Mexico", "Singapore", "South Korea"
-    };
+    private final MockDataGenerator mockDataGenerator;
+    private final CompanySummaryService companySummaryService;
+    private final UpstreamClient upstreamClient;
+    private final CompanyDataCache companyDataCache;
+
+    // Shares one fetch per company and data load between the controller and ItemService while a report is built
+    private final SingleFlight<FlightKey, List<Customer>> customerFlights;
+
+    // Customers loaded for one data load date must not be shared with callers asking for another
+    private record FlightKey(String companyId, LocalDateTime dataVersion) {
+    }
+
+    @Autowired
+    public CustomerService(MockDataGenerator mockDataGenerator, CompanySummaryService companySummaryService,
+                           @Nullable UpstreamClient upstreamClient, CompanyDataCache companyDataCache,
+                           @Value("${customer.cache.ttl-ms:5000}") long cacheTtlMs) {
+        this.mockDataGenerator = mockDataGenerator;
+        this.companySummaryService = companySummaryService;
+        this.upstreamClient = upstreamClient;
+        this.companyDataCache = companyDataCache;
+        this.customerFlights = new SingleFlight<>(cacheTtlMs);
+    }
 
     /**
-     * Mock service that would normally call an external API to get customer data
+     * Gets the customers with outstanding balances. Concurrent callers for the same company share one
+     * fetch, and its result is reused for a few seconds, so every part of a report sees the same customers.
+     * The customers are those for the data version in the company's current summary.
      * @param companyId the company ID to retrieve customers for
-     * @return List of customers with outstanding balances
+     * @return Unmodifiable list of customers with outstanding balances
      */
     public List<Customer> getCustomersWithOutstandingBalance(String companyId) {
-        // In a real application, this would call the external endpoint
-        // someurl/accounting/companies/{companyId}/customers
-        
-        List<Customer> customers = new ArrayList<>();
-        
-        // Generate a random number of customers (between 10 and 30)
-        int numCustomers = 10 + random.nextInt(21);
-        
-        // Generate the requested number of customers with random data
-        for (int i = 0; i < numCustomers; i++) {
-            String customerId = "CUST" + String.format("%06d", random.nextInt(1000000));
-            String customerName = companyNames[random.nextInt(companyNames.length)];
-            
-            // Generate balance (positive values only, as these are outstanding balances)
-            BigDecimal balance = new BigDecimal(100 + random.nextInt(1000000) / 100.0);
-            
-            String reference = "REF" + String.format("%08d", random.nextInt(100000000));
-            
-            // Generate address information
-            String addressLine1 = (random.nextInt(999) + 1) + " " + 
-                    new String[]{"Main", "First", "Oak", "Pine", "Maple", "Cedar", "Broadway"}[random.nextInt(7)] + " " +
-                    new String[]{"Street", "Avenue", "Boulevard", "Road", "Lane", "Drive", "Way"}[random.nextInt(7)];
-            
-            String addressLine2 = random.nextBoolean() ? 
-                    "Suite " + (random.nextInt(100) + 100) : 
-                    "";
-            
-            String city = cities[random.nextInt(cities.length)];
-            String state = states[random.nextInt(states.length)];
-            String postalCode = String.format("%05d", random.nextInt(100000));
-            String country = countries[random.nextInt(countries.length)];
-            
-            // Generate notification status (most customers have been notified)
-            boolean notified = random.nextInt(100) < 80; // 80% are notified
-            
-            // Generate last updated date (within the last 90 days)
-            LocalDate lastUpdated = LocalDate.now().minusDays(random.nextInt(90));
-            
-            customers.add(new Customer(
-                    customerId, customerName, balance, reference,
-                    addressLine1, addressLine2, city, state,
-                    postalCode, country, notified, lastUpdated
-            ));
+        return getCustomersWithOutstandingBalance(companyId,
+                companySummaryService.getCompanySummary(companyId).getLastDataLoadDate());
+    }
+
+    /**
+     * Gets the customers with outstanding balances, reusing the customers fetched earlier for the same data load
+     * @param companyId the company ID to retrieve customers for
+     * @param dataVersion the company's last data load date; null bypasses the data cache
+     * @return Unmodifiable list of customers with outstanding balances
+     */
+    public List<Customer> getCustomersWithOutstandingBalance(String companyId, LocalDateTime dataVersion) {
+        return customerFlights.get(new FlightKey(companyId, dataVersion), key -> companyDataCache.get(
+                new CompanyDataCache.Key(companyId, "customers"), dataVersion, SnapshotCodec.CUSTOMER,
+                previous -> fetchCustomers(companyId, previous)));
+    }
+
+    /**
+     * Gets the customers from the accounting API, or generates them when no upstream is configured
+     * @param companyId the company ID to retrieve customers for
+     * @param previous customers fetched for an earlier data load, to revalidate; or null
+     * @return customers with outstanding balances
+     */
+    private CompanyDataCache.Dataset<Customer> fetchCustomers(String companyId, CompanyDataCache.Dataset<Customer> previous) {
+        if (upstreamClient != null) {
+            // someurl/accounting/companies/{companyId}/customers
+            return CompanyDataCache.revalidate(previous, validators -> upstreamClient.getCustomers(companyId, validators));
         }
-        
-        return customers;
+        return new CompanyDataCache.Dataset<>(List.copyOf(mockDataGenerator.generateCustomers(companyId)), List.of());
     }
 }
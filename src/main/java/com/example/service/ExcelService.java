@@ -4,25 +4,61 @@ import com.example.model.AgeingByMonth;
 import com.example.model.CompanySummary;
 import com.example.model.Customer;
 import com.example.model.Item;
+import jakarta.annotation.PostConstruct;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.commons.compress.utils.SeekableInMemoryByteChannel;
+import org.apache.commons.io.output.CountingOutputStream;
 import org.apache.poi.common.usermodel.HyperlinkType;
 import org.apache.poi.ss.usermodel.*;
 import org.apache.poi.ss.util.CellRangeAddress;
 import org.apache.poi.xddf.usermodel.chart.LegendPosition;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.apache.poi.xssf.usermodel.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
 import java.math.BigDecimal;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.time.LocalDate;
 import java.time.YearMonth;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.stream.Stream;
 
 @Service
 public class ExcelService {
 
+    private static final Logger logger = LoggerFactory.getLogger(ExcelService.class);
+
     private static final String[] HEADERS = {
             "Month", "Sales Ledger Balance", "Amount Not Due", "Over 30 Days", 
             "Over 60 Days", "Over 90 Days", "Over Threshold", "Total Credits", 
@@ -54,6 +90,104 @@ public class ExcelService {
             "Document Date", "Due Date", "Entry Date", "Entry User",
             "Amount", "Balance"
     };
+
+    // Number of open items above which the workbook is streamed with SXSSF instead of held in memory. Only read
+    // when the list sheets are built in the workbook; directly written or reused sheets are always streamed
+    @Value("${excel.streaming.item-threshold:50000}")
+    private int streamingItemThreshold;
+
+    // Number of rows per sheet kept in memory when streaming; older rows are flushed to a temp file
+    @Value("${excel.streaming.row-window:500}")
+    private int streamingRowWindow;
+
+    // Whether the SXSSF temp files are gzipped (less disk, a little more CPU)
+    @Value("${excel.streaming.compress-temp-files:true}")
+    private boolean compressStreamingTempFiles;
+
+    // Whether unchanged Customer List and Open Items sheets are reused from earlier reports
+    @Value("${excel.incremental.enabled:false}")
+    private boolean incrementalEnabled;
+
+    // Whether the Customer List and Open Items sheets are written as XML directly rather than through POI
+    @Value("${excel.direct-sheets.enabled:true}")
+    private boolean directSheetsEnabled;
+
+    // Whether directly written list sheets are rendered on their own threads while the other sheets are built
+    @Value("${excel.parallel-sheets.enabled:true}")
+    private boolean parallelSheetsEnabled;
+
+    // Whether reports copy a template holding everything but their data, built once a day for each number of
+    // months, instead of building the Summary and Ageing Report sheets with POI; requires direct sheets
+    @Value("${excel.template.enabled:true}")
+    private boolean templateEnabled;
+
+    // Deflate level of the sheet parts spliced into reports: 1 (fastest) to 9 (smallest), or -1 for the default
+    @Value("${excel.compression.level:-1}")
+    private int compressionLevel;
+
+    // Threads compressing a spliced sheet part in blocks; 0 uses one per core, 1 compresses on the writing thread
+    @Value("${excel.compression.threads:0}")
+    private int compressionThreads;
+
+    // Uncompressed bytes per compressed block
+    @Value("${excel.compression.block-bytes:131072}")
+    private int compressionBlockBytes;
+
+    // Row of the table header on the Customer List and Open Items sheets
+    private static final int LIST_TABLE_START_ROW = 3;
+
+    // Every ISO date has the same estimated width, so directly written date columns are sized from one sample
+    private static final String ISO_DATE_SAMPLE = "2000-01-01";
+
+    // Threads the two list sheets are written on, one pool of two per report
+    private static final ThreadFactory LIST_SHEET_THREADS = Thread.ofPlatform().name("list-sheet-", 0).daemon().factory();
+
+    // Website the templates' Summary sheet links to, replaced with each company's
+    private static final String TEMPLATE_WEBSITE = "template.invalid";
+
+    // Company line of the Ageing Report's title section
+    private static final String AGEING_COMPANY_LINE = "Company: Financial Services Ltd.";
+
+    // Approximate heap held per cell of an in-memory XSSF sheet (the CTCell bean, its value and row overhead)
+    private static final long XSSF_BYTES_PER_CELL = 1024;
+
+    // Approximate fixed heap of a report: styles, the summary and ageing sheets, charts and write buffers
+    private static final long REPORT_BASE_BYTES = 16L * 1024 * 1024;
+
+    // Approximate heap held per customer while the list sheets are written directly: the hyperlink on the
+    // Customer List sheet, and the customer's name and text looked up for the Open Items sheet
+    private static final long DIRECT_BYTES_PER_CUSTOMER = 512;
+
+    // Approximate XML of a list sheet row, for the parts copied in memory to be cached
+    private static final long XML_BYTES_PER_ROW = 1024;
+
+    private final ReportMetrics reportMetrics;
+    private final ReportFileWriter reportFileWriter;
+    private final SheetPartCache sheetPartCache;
+    private final ReportRecordingService reportRecordingService;
+
+    private ParallelDeflater partDeflater;
+
+    // Report templates by number of months
+    private final Map<Integer, WorkbookTemplate> templates = new ConcurrentHashMap<>();
+
+    @Autowired
+    public ExcelService(ReportMetrics reportMetrics, ReportFileWriter reportFileWriter, SheetPartCache sheetPartCache,
+                        ReportRecordingService reportRecordingService) {
+        this.reportMetrics = reportMetrics;
+        this.reportFileWriter = reportFileWriter;
+        this.sheetPartCache = sheetPartCache;
+        this.reportRecordingService = reportRecordingService;
+    }
+
+    /**
+     * Creates the deflater for spliced sheet parts, so an invalid compression level fails at startup
+     */
+    @PostConstruct
+    void init() {
+        int threads = compressionThreads > 0 ? compressionThreads : Runtime.getRuntime().availableProcessors();
+        partDeflater = new ParallelDeflater(compressionLevel, compressionBlockBytes, threads);
+    }
     
     /**
      * Generates an Excel report with three sheets: Ageing Report, Customer List, and Open Items
@@ -66,22 +200,26 @@ public class ExcelService {
      */
     public byte[] generateAgeingReport(List<AgeingByMonth> ageingData, List<Customer> customerData, 
                                       List<Item> itemData) throws IOException {
-        try (XSSFWorkbook workbook = new XSSFWorkbook()) {
+        try (Workbook workbook = createWorkbook(itemData.size())) {
+            CellStyleRegistry styles = new CellStyleRegistry(workbook);
+
             // Create the Ageing Report sheet
             Sheet ageingSheet = workbook.createSheet("Ageing Report");
-            createAgeingReportSheet(workbook, ageingSheet, ageingData);
+            createAgeingReportSheet(workbook, styles, ageingSheet, ageingData);
 
             // Create the Customer List sheet
             Sheet customerSheet = workbook.createSheet("Customer List");
-            createCustomerListSheet(workbook, customerSheet, customerData);
+            createCustomerListSheet(workbook, styles, customerSheet, customerData);
 
             // Create the Open Items sheet
             Sheet itemsSheet = workbook.createSheet("Open Items");
-            createOpenItemsSheet(workbook, itemsSheet, itemData, customerData);
+            createOpenItemsSheet(styles, itemsSheet, itemData.iterator(), customerData);
+            reportMetrics.recordUniqueStyles(styles.getUniqueStyleCount());
 
             // Write to byte array
             ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-            workbook.write(outputStream);
+            writeWorkbook(workbook, outputStream);
+            reportMetrics.recordReportSize(outputStream.size());
             return outputStream.toByteArray();
         }
     }
@@ -97,27 +235,731 @@ public class ExcelService {
      */
     public byte[] generateAgeingReport(List<AgeingByMonth> ageingData, List<Customer> customerData, 
                                       List<Item> itemData, CompanySummary companySummary) throws IOException {
-        try (XSSFWorkbook workbook = new XSSFWorkbook()) {
-            // Create the Summary sheet (first sheet)
-            Sheet summarySheet = workbook.createSheet("Summary");
-            createSummarySheet(workbook, summarySheet, companySummary, customerData, itemData);
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        generateAgeingReport(ageingData, customerData, itemData, companySummary, outputStream);
+        return outputStream.toByteArray();
+    }
 
-            // Create the Ageing Report sheet
+    /**
+     * Generates an Excel report with four sheets: Summary, Ageing Report, Customer List, and Open Items,
+     * writing the xlsx package directly to the given stream instead of buffering it in memory
+     * @param ageingData List of ageing data by month
+     * @param customerData List of customers with outstanding balances
+     * @param itemData List of open items for customers
+     * @param companySummary Company summary information
+     * @param outputStream stream to write the Excel file to; it is not closed
+     * @throws IOException if there's an error generating or writing the Excel file
+     */
+    public void generateAgeingReport(List<AgeingByMonth> ageingData, List<Customer> customerData,
+                                     List<Item> itemData, CompanySummary companySummary,
+                                     OutputStream outputStream) throws IOException {
+        ReportGenerationEvent event = new ReportGenerationEvent();
+        event.start(companySummary.getCompanyId());
+        CountingOutputStream countingStream = new CountingOutputStream(outputStream);
+        try {
+            if (directSheetsEnabled || incrementalEnabled) {
+                generateSpliced(ageingData, customerData, itemData.iterator(), itemData, companySummary, countingStream);
+            } else {
+                try (Workbook workbook = createWorkbook(itemData.size())) {
+                    createReportSheets(workbook, ageingData, customerData, itemData.iterator(), companySummary,
+                            ListSheets.IN_WORKBOOK);
+
+                    // Write to the output stream
+                    writeWorkbook(workbook, countingStream);
+                }
+            }
+        } catch (IOException | RuntimeException | Error e) {
+            failReport(event);
+            throw e;
+        }
+        finishReport(event, itemData.size(), countingStream.getByteCount());
+    }
+
+    /**
+     * Generates an Excel report with four sheets: Summary, Ageing Report, Customer List, and Open Items,
+     * writing each open item as it is read from the stream. With a paged source such as
+     * {@link ItemService#streamOpenItems(String, java.time.LocalDateTime, List)}, memory is bounded by the page
+     * size and the streaming row window rather than by the number of items, so this suits ledgers too large to
+     * hold as a list.
+     * The items are read once, so sheets are never reused from earlier reports, and the Open Items sheet is
+     * written directly when excel.direct-sheets.enabled is set.
+     * @param ageingData List of ageing data by month
+     * @param customerData List of customers with outstanding balances
+     * @param items open items for customers, read once; the stream is closed when the report is done
+     * @param companySummary Company summary information
+     * @param outputStream stream to write the Excel file to; it is not closed
+     * @throws IOException if there's an error generating or writing the Excel file
+     */
+    public void generateAgeingReport(List<AgeingByMonth> ageingData, List<Customer> customerData,
+                                     Stream<Item> items, CompanySummary companySummary,
+                                     OutputStream outputStream) throws IOException {
+        ReportGenerationEvent event = new ReportGenerationEvent();
+        event.start(companySummary.getCompanyId());
+        CountingOutputStream countingStream = new CountingOutputStream(outputStream);
+        int itemCount;
+        try {
+            if (directSheetsEnabled) {
+                try (Stream<Item> itemStream = items) {
+                    itemCount = generateSpliced(ageingData, customerData, itemStream.iterator(), null, companySummary,
+                            countingStream);
+                }
+            } else {
+                try (SXSSFWorkbook workbook = createStreamingWorkbook();
+                     Stream<Item> itemStream = items) {
+                    itemCount = createReportSheets(workbook, ageingData, customerData, itemStream.iterator(),
+                            companySummary, ListSheets.IN_WORKBOOK);
+
+                    // Write to the output stream
+                    writeWorkbook(workbook, countingStream);
+                }
+            }
+        } catch (IOException | RuntimeException | Error e) {
+            failReport(event);
+            throw e;
+        }
+        finishReport(event, itemCount, countingStream.getByteCount());
+    }
+
+    /**
+     * Records a finished report in the metrics, its Flight Recorder event and any recording waiting for it
+     */
+    private void finishReport(ReportGenerationEvent event, int itemCount, long outputBytes) {
+        event.outputBytes = outputBytes;
+        event.finish(itemCount);
+        reportMetrics.recordReportSize(outputBytes);
+        reportRecordingService.reportFinished();
+    }
+
+    /**
+     * Records a failed report in its Flight Recorder event, and counts it towards any recording waiting for
+     * it so the recording doesn't wait for its deadline
+     */
+    private void failReport(ReportGenerationEvent event) {
+        event.failed = true;
+        event.finish(0);
+        reportRecordingService.reportFinished();
+    }
+
+    /**
+     * Generates the report as a workbook with placeholder Customer List and Open Items sheets, then splices
+     * their parts into the package. A sheet whose data hasn't changed since an earlier report reuses that
+     * report's cached XML; otherwise it is written directly as XML if excel.direct-sheets.enabled is set,
+     * or built with POI in the workbook as usual. Each sheet's data is fingerprinted so newly rendered
+     * sheets can be cached. With excel.template.enabled, the package is copied from a template instead of
+     * being built with POI, with the data cells of the Summary and Ageing Report sheets written over the
+     * template's.
+     * @param items the open items, read once
+     * @param itemData the same items as a list, to fingerprint; null if they are streamed, in which case
+     *                 sheets are neither reused nor cached
+     * @return the number of open items
+     */
+    private int generateSpliced(List<AgeingByMonth> ageingData, List<Customer> customerData, Iterator<Item> items,
+                                List<Item> itemData, CompanySummary companySummary,
+                                OutputStream outputStream) throws IOException {
+        boolean reuseSheets = incrementalEnabled && itemData != null;
+        String customerSheetFingerprint = null;
+        String itemsSheetFingerprint = null;
+        byte[] customerSheetPart = null;
+        byte[] itemsSheetPart = null;
+        if (reuseSheets) {
+            // The sheets show the generation date, so a cached sheet is only valid on the day it was rendered
+            LocalDate today = LocalDate.now();
+            customerSheetFingerprint = customerSheetFingerprint(customerData, today);
+            itemsSheetFingerprint = itemsSheetFingerprint(itemData, customerData, today);
+            customerSheetPart = sheetPartCache.get(customerSheetFingerprint);
+            itemsSheetPart = sheetPartCache.get(itemsSheetFingerprint);
+            logger.debug("Reusing {} cached sheets for report",
+                    (customerSheetPart != null ? 1 : 0) + (itemsSheetPart != null ? 1 : 0));
+        }
+
+        // Every list sheet is cached or written directly when a template is used
+        WorkbookTemplate template = templateEnabled && directSheetsEnabled ? workbookTemplate(ageingData.size()) : null;
+
+        // Sheets that aren't cached are written directly, if enabled, and the template's sheets are overlaid
+        // with the report's data; a null resource is skipped when closing
+        try (SheetXmlWriter customerPart = directSheetsEnabled && customerSheetPart == null
+                     ? new SheetXmlWriter(CUSTOMER_HEADERS.length, compressStreamingTempFiles) : null;
+             SheetXmlWriter itemsPart = directSheetsEnabled && itemsSheetPart == null
+                     ? new SheetXmlWriter(ITEM_HEADERS.length, compressStreamingTempFiles) : null;
+             SheetXmlWriter summaryPart = template != null
+                     ? new SheetXmlWriter(template.summarySheet(), 2, compressStreamingTempFiles) : null;
+             SheetXmlWriter ageingPart = template != null
+                     ? new SheetXmlWriter(template.ageingSheet(), HEADERS.length, compressStreamingTempFiles) : null) {
+            ListSheets listSheets = new ListSheets(customerSheetPart != null, itemsSheetPart != null, customerPart, itemsPart);
+            Map<String, WorkbookPartSplicer.Part> replacements = new HashMap<>();
+            Path workbookFile = null;
+            try {
+                int itemCount;
+                String customerPartName;
+                String itemsPartName;
+                if (template != null) {
+                    itemCount = writeTemplateSheets(template, ageingData, customerData, items, companySummary,
+                            listSheets, summaryPart, ageingPart);
+                    customerPartName = template.customerPartName();
+                    itemsPartName = template.itemsPartName();
+                    replacements.put(template.summaryPartName(), summaryPart);
+                    replacements.put(template.summaryRelsPartName(), template.summaryRels(companySummary.getWebsite()));
+                    replacements.put(template.ageingPartName(), ageingPart);
+                } else {
+                    // Streaming workbooks write strings inline rather than to the shared strings table,
+                    // so a sheet's XML doesn't depend on the strings in the other sheets
+                    workbookFile = Files.createTempFile("report", ".xlsx");
+                    try (SXSSFWorkbook workbook = createStreamingWorkbook();
+                         OutputStream fileStream = Files.newOutputStream(workbookFile)) {
+                        itemCount = createReportSheets(workbook, ageingData, customerData, items, companySummary,
+                                listSheets);
+                        customerPartName = sheetPartName(workbook, "Customer List");
+                        itemsPartName = sheetPartName(workbook, "Open Items");
+                        writeWorkbook(workbook, fileStream);
+                    }
+                }
+
+                Set<String> partsToCache = new HashSet<>();
+                addListSheetPart(replacements, partsToCache, customerPartName, customerSheetPart, customerPart,
+                        reuseSheets);
+                addListSheetPart(replacements, partsToCache, itemsPartName, itemsSheetPart, itemsPart, reuseSheets);
+
+                long spliceStart = System.nanoTime();
+                Map<String, byte[]> renderedParts = template != null
+                        ? WorkbookPartSplicer.splice(template.content(), outputStream, replacements, partsToCache,
+                                sheetPartCache.getMaxPartBytes(), partDeflater)
+                        : WorkbookPartSplicer.splice(workbookFile, outputStream, replacements, partsToCache,
+                                sheetPartCache.getMaxPartBytes(), partDeflater);
+                reportMetrics.recordPhase("splice", System.nanoTime() - spliceStart);
+                if (renderedParts.containsKey(customerPartName)) {
+                    sheetPartCache.put(customerSheetFingerprint, renderedParts.get(customerPartName));
+                }
+                if (renderedParts.containsKey(itemsPartName)) {
+                    sheetPartCache.put(itemsSheetFingerprint, renderedParts.get(itemsPartName));
+                }
+                return itemCount;
+            } finally {
+                if (workbookFile != null) {
+                    Files.deleteIfExists(workbookFile);
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the name of a sheet's part in the package, as the zip entry it is written to
+     */
+    private static String sheetPartName(SXSSFWorkbook workbook, String sheetName) {
+        // Part names are absolute, zip entry names have no leading slash
+        return workbook.getXSSFWorkbook().getSheet(sheetName).getPackagePart().getPartName().getName().substring(1);
+    }
+
+    /**
+     * Chooses the content of a list sheet's part: its cached XML, else the directly written part, else the
+     * part POI writes. Sheets rendered for this report are cached if sheets are being reused.
+     */
+    private static void addListSheetPart(Map<String, WorkbookPartSplicer.Part> replacements, Set<String> partsToCache,
+                                         String partName, byte[] cachedPart, SheetXmlWriter directPart,
+                                         boolean reuseSheets) {
+        if (cachedPart != null) {
+            replacements.put(partName, WorkbookPartSplicer.Part.of(cachedPart));
+            return;
+        }
+        if (directPart != null) {
+            replacements.put(partName, directPart);
+        }
+        if (reuseSheets) {
+            partsToCache.add(partName);
+        }
+    }
+
+    /**
+     * How {@link #createReportSheets} fills the Customer List and Open Items sheets. Each is built with POI
+     * unless its XML is cached or written by a direct part, in which case the workbook only gets a placeholder
+     * whose part is spliced in after the workbook is written.
+     * @param customerSheetCached the Customer List sheet's cached XML will be used
+     * @param itemsSheetCached the Open Items sheet's cached XML will be used
+     * @param customerPart part to write the Customer List sheet to, or null
+     * @param itemsPart part to write the Open Items sheet to, or null
+     */
+    record ListSheets(boolean customerSheetCached, boolean itemsSheetCached,
+                      SheetXmlWriter customerPart, SheetXmlWriter itemsPart) {
+
+        // Both sheets built with POI in the workbook
+        static final ListSheets IN_WORKBOOK = new ListSheets(false, false, null, null);
+    }
+
+    /**
+     * Creates the Summary, Ageing Report, Customer List and Open Items sheets in the workbook. Package-private,
+     * like the sheet builders, so the JMH benchmarks can time each step on its own
+     * @param items the open items, read once
+     * @param listSheets how to fill the Customer List and Open Items sheets
+     * @return the number of open items
+     * @throws IOException if a directly written sheet can't be written
+     */
+    int createReportSheets(Workbook workbook, List<AgeingByMonth> ageingData, List<Customer> customerData,
+                            Iterator<Item> items, CompanySummary companySummary,
+                            ListSheets listSheets) throws IOException {
+        // One style registry per workbook so every sheet shares the same styles
+        CellStyleRegistry styles = new CellStyleRegistry(workbook);
+        ReportStyles.LIST_SHEET_STYLES.forEach(styles::get);
+
+        // Create the sheets in display order, Summary first
+        Sheet summarySheet = workbook.createSheet("Summary");
+        Sheet ageingSheet = workbook.createSheet("Ageing Report");
+        Sheet customerSheet = workbook.createSheet("Customer List");
+        Sheet itemsSheet = workbook.createSheet("Open Items");
+
+        // Directly written list sheets don't touch the workbook, so they can be written on their own threads
+        // while POI builds the other sheets. Only lookups of existing styles are thread-safe, so every style
+        // is created first.
+        String companyId = companySummary.getCompanyId();
+        boolean parallel = parallelSheetsEnabled && (listSheets.itemsPart() != null || listSheets.customerPart() != null);
+        if (parallel) {
+            ReportStyles.REPORT_STYLES.forEach(styles::get);
+        }
+        int itemCount = 0;
+        // Platform threads rather than virtual ones, so their SheetBuild events can still measure allocation
+        try (ExecutorService executor = parallel ? Executors.newFixedThreadPool(2, LIST_SHEET_THREADS) : null) {
+            Future<Integer> itemsPartWritten = null;
+            Future<Integer> customerPartWritten = null;
+            try {
+                if (listSheets.itemsPart() != null) {
+                    createListSheetPlaceholder(itemsSheet, ITEM_HEADERS.length);
+                    itemsPartWritten = writeListSheet(executor, itemsSheet.getSheetName(), companyId,
+                            () -> writeOpenItemsPart(styles, listSheets.itemsPart(), items, customerData));
+                }
+                if (listSheets.customerPart() != null) {
+                    createListSheetPlaceholder(customerSheet, CUSTOMER_HEADERS.length);
+                    customerPartWritten = writeListSheet(executor, customerSheet.getSheetName(), companyId, () -> {
+                        writeCustomerListPart(styles, listSheets.customerPart(), customerData);
+                        return customerData.size();
+                    });
+                }
+
+                // Fill the Open Items sheet before the Summary, which shows how many items were written
+                if (listSheets.itemsSheetCached()) {
+                    createListSheetPlaceholder(itemsSheet, ITEM_HEADERS.length);
+                    // The cached sheet already shows the items, so they only need counting
+                    while (items.hasNext()) {
+                        items.next();
+                        itemCount++;
+                    }
+                } else if (itemsPartWritten == null) {
+                    SheetTimer timer = new SheetTimer(itemsSheet, companyId);
+                    itemCount = createOpenItemsSheet(styles, itemsSheet, items, customerData);
+                    timer.finish(itemCount);
+                }
+
+                SheetTimer timer = new SheetTimer(ageingSheet, companyId);
+                createAgeingReportSheet(workbook, styles, ageingSheet, ageingData);
+                timer.finish(ageingData.size());
+
+                if (itemsPartWritten != null) {
+                    itemCount = awaitSheet(itemsPartWritten);
+                }
+                timer = new SheetTimer(summarySheet, companyId);
+                createSummarySheet(workbook, styles, summarySheet, companySummary, customerData, itemCount);
+                timer.finish(0);
+
+                if (listSheets.customerSheetCached()) {
+                    createListSheetPlaceholder(customerSheet, CUSTOMER_HEADERS.length);
+                } else if (customerPartWritten != null) {
+                    awaitSheet(customerPartWritten);
+                } else {
+                    timer = new SheetTimer(customerSheet, companyId);
+                    createCustomerListSheet(workbook, styles, customerSheet, customerData);
+                    timer.finish(customerData.size());
+                }
+            } finally {
+                // Stop a sheet still being written if another failed; a no-op once they are done
+                if (itemsPartWritten != null) {
+                    itemsPartWritten.cancel(true);
+                }
+                if (customerPartWritten != null) {
+                    customerPartWritten.cancel(true);
+                }
+            }
+        }
+        logger.debug("Created {} unique cell styles and {} fonts", styles.getUniqueStyleCount(), styles.getUniqueFontCount());
+        reportMetrics.recordUniqueStyles(styles.getUniqueStyleCount());
+        return itemCount;
+    }
+
+    /**
+     * Writes a report's sheets over the template: the list sheets that aren't cached, and the data cells of the
+     * Summary and Ageing Report sheets, which is all of the report the template doesn't already hold
+     * @param items the open items, read once
+     * @param listSheets how to fill the Customer List and Open Items sheets; each is cached or written directly
+     * @return the number of open items
+     * @throws IOException if a sheet can't be written
+     */
+    private int writeTemplateSheets(WorkbookTemplate template, List<AgeingByMonth> ageingData,
+                                    List<Customer> customerData, Iterator<Item> items, CompanySummary companySummary,
+                                    ListSheets listSheets, SheetXmlWriter summaryPart,
+                                    SheetXmlWriter ageingPart) throws IOException {
+        // Every style was created with the template, so lookups are all the list sheet threads do
+        CellStyleRegistry styles = template.styles();
+        String companyId = companySummary.getCompanyId();
+        int itemCount = 0;
+        try (ExecutorService executor = parallelSheetsEnabled ? Executors.newFixedThreadPool(2, LIST_SHEET_THREADS) : null) {
+            Future<Integer> itemsPartWritten = null;
+            Future<Integer> customerPartWritten = null;
+            try {
+                if (listSheets.itemsPart() != null) {
+                    itemsPartWritten = writeListSheet(executor, "Open Items", companyId,
+                            () -> writeOpenItemsPart(styles, listSheets.itemsPart(), items, customerData));
+                }
+                if (listSheets.customerPart() != null) {
+                    customerPartWritten = writeListSheet(executor, "Customer List", companyId, () -> {
+                        writeCustomerListPart(styles, listSheets.customerPart(), customerData);
+                        return customerData.size();
+                    });
+                }
+                if (listSheets.itemsSheetCached()) {
+                    while (items.hasNext()) {
+                        items.next();
+                        itemCount++;
+                    }
+                }
+
+                SheetTimer timer = new SheetTimer("Ageing Report", companyId);
+                writeAgeingReportPart(styles, ageingPart, ageingData);
+                timer.finish(ageingData.size());
+
+                if (itemsPartWritten != null) {
+                    itemCount = awaitSheet(itemsPartWritten);
+                }
+                timer = new SheetTimer("Summary", companyId);
+                writeSummaryPart(styles, summaryPart, companySummary, customerData, itemCount);
+                timer.finish(0);
+
+                if (customerPartWritten != null) {
+                    awaitSheet(customerPartWritten);
+                }
+            } finally {
+                if (itemsPartWritten != null) {
+                    itemsPartWritten.cancel(true);
+                }
+                if (customerPartWritten != null) {
+                    customerPartWritten.cancel(true);
+                }
+            }
+        }
+        reportMetrics.recordUniqueStyles(styles.getUniqueStyleCount());
+        return itemCount;
+    }
+
+    /**
+     * A workbook built once with everything in a report that doesn't depend on its data: every style and font,
+     * the title and header rows, labels, merged regions, navigation links, frozen panes and charts, and the
+     * workbook's filter names. A report copies its package, overlaying its data cells on the Summary and
+     * Ageing Report sheets and splicing in its list sheets. The Ageing Report's layout and charts depend on
+     * the number of months, so there is a template for each.
+     * @param date the day the template was built, which its footers show
+     * @param content the xlsx package
+     * @param styles the package's styles; every style is already created, so they are only looked up
+     */
+    private record WorkbookTemplate(LocalDate date, byte[] content, CellStyleRegistry styles,
+                                    String summaryPartName, SheetTemplate summarySheet,
+                                    String summaryRelsPartName, String summaryRelsXml,
+                                    String ageingPartName, SheetTemplate ageingSheet,
+                                    String customerPartName, String itemsPartName) {
+
+        /**
+         * The Summary sheet's relationships, with its link to the company's website
+         * @throws IllegalArgumentException if the website doesn't make a valid URI, as when POI links it
+         */
+        WorkbookPartSplicer.Part summaryRels(String website) {
+            String address;
+            try {
+                address = new URI("https://" + website).toString();
+            } catch (URISyntaxException e) {
+                throw new IllegalArgumentException("Address of hyperlink must be a valid URI", e);
+            }
+            StringBuilder target = new StringBuilder("Target=\"");
+            SheetXmlWriter.escape(target, address);
+            String xml = summaryRelsXml.replace("Target=\"https://" + TEMPLATE_WEBSITE + "\"", target.append('"'));
+            return WorkbookPartSplicer.Part.of(xml.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Gets today's template for reports with the given number of months, building it if there is none
+     */
+    private WorkbookTemplate workbookTemplate(int monthCount) throws IOException {
+        LocalDate today = LocalDate.now();
+        WorkbookTemplate template = templates.get(monthCount);
+        if (template != null && template.date().equals(today)) {
+            return template;
+        }
+        synchronized (templates) {
+            template = templates.get(monthCount);
+            if (template == null || !template.date().equals(today)) {
+                // Templates from earlier days are never used again
+                templates.values().removeIf(earlier -> !earlier.date().equals(today));
+                template = buildTemplate(monthCount, today);
+                templates.put(monthCount, template);
+            }
+            return template;
+        }
+    }
+
+    /**
+     * Builds a template with the sheet builders, from placeholder data that every data cell is written over
+     */
+    private WorkbookTemplate buildTemplate(int monthCount, LocalDate date) throws IOException {
+        long start = System.nanoTime();
+        List<AgeingByMonth> ageingData = new ArrayList<>();
+        for (int i = 0; i < monthCount; i++) {
+            ageingData.add(new AgeingByMonth(YearMonth.from(date).minusMonths(i), BigDecimal.ONE, BigDecimal.ONE,
+                    BigDecimal.ONE, BigDecimal.ONE, BigDecimal.ONE, BigDecimal.ONE, BigDecimal.ONE));
+        }
+        CompanySummary summary = new CompanySummary();
+        summary.setWebsite(TEMPLATE_WEBSITE);
+        summary.setTotalOverdueBalance(BigDecimal.ZERO);
+        summary.setTotalOver90DaysBalance(BigDecimal.ZERO);
+
+        try (SXSSFWorkbook workbook = createStreamingWorkbook()) {
+            // Styles in the order createReportSheets creates them, so cached list sheets fit either package
+            CellStyleRegistry styles = new CellStyleRegistry(workbook);
+            ReportStyles.LIST_SHEET_STYLES.forEach(styles::get);
+            ReportStyles.REPORT_STYLES.forEach(styles::get);
+            Sheet summarySheet = workbook.createSheet("Summary");
             Sheet ageingSheet = workbook.createSheet("Ageing Report");
-            createAgeingReportSheet(workbook, ageingSheet, ageingData);
-            
-            // Create the Customer List sheet
             Sheet customerSheet = workbook.createSheet("Customer List");
-            createCustomerListSheet(workbook, customerSheet, customerData);
-            
-            // Create the Open Items sheet
-            Sheet itemsSheet = workbook.createSheet("Open Items");
-            createOpenItemsSheet(workbook, itemsSheet, itemData, customerData);
-            
-            // Write to byte array
-            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            // Filters in the order createReportSheets adds them, as the workbook's names list them that way
+            createListSheetPlaceholder(workbook.createSheet("Open Items"), ITEM_HEADERS.length);
+            createListSheetPlaceholder(customerSheet, CUSTOMER_HEADERS.length);
+            createAgeingReportSheet(workbook, styles, ageingSheet, ageingData);
+            createSummarySheet(workbook, styles, summarySheet, summary, List.of(), 0);
+
+            String summaryPartName = sheetPartName(workbook, "Summary");
+            String ageingPartName = sheetPartName(workbook, "Ageing Report");
+            String summaryRelsPartName = summaryPartName.substring(0, summaryPartName.lastIndexOf('/') + 1) + "_rels/"
+                    + summaryPartName.substring(summaryPartName.lastIndexOf('/') + 1) + ".rels";
+            ByteArrayOutputStream content = new ByteArrayOutputStream();
+            writeWorkbook(workbook, content);
+            Map<String, String> parts = readParts(content.toByteArray(),
+                    Set.of(summaryPartName, summaryRelsPartName, ageingPartName));
+
+            WorkbookTemplate template = new WorkbookTemplate(date, content.toByteArray(), styles,
+                    summaryPartName, SheetTemplate.parse(parts.get(summaryPartName)),
+                    summaryRelsPartName, parts.get(summaryRelsPartName),
+                    ageingPartName, SheetTemplate.parse(parts.get(ageingPartName)),
+                    sheetPartName(workbook, "Customer List"), sheetPartName(workbook, "Open Items"));
+            logger.info("Built {} byte report template for {} months in {} ms", content.size(), monthCount,
+                    (System.nanoTime() - start) / 1_000_000);
+            return template;
+        }
+    }
+
+    /**
+     * Reads the named parts of a package as text
+     */
+    private static Map<String, String> readParts(byte[] workbook, Set<String> partNames) throws IOException {
+        Map<String, String> parts = new HashMap<>();
+        try (ZipFile zipFile = new ZipFile(new SeekableInMemoryByteChannel(workbook))) {
+            for (String partName : partNames) {
+                ZipArchiveEntry entry = zipFile.getEntry(partName);
+                if (entry != null) {
+                    try (InputStream part = zipFile.getInputStream(entry)) {
+                        parts.put(partName, new String(part.readAllBytes(), StandardCharsets.UTF_8));
+                    }
+                }
+            }
+        }
+        if (!parts.keySet().containsAll(partNames)) {
+            throw new IOException("Report template is missing parts: " + partNames);
+        }
+        return parts;
+    }
+
+    /**
+     * Writes a list sheet's part on the executor, or on this thread if there is none
+     * @param writer writes the part and returns its number of data rows
+     * @return the number of data rows, once the part is written
+     */
+    private Future<Integer> writeListSheet(ExecutorService executor, String sheetName, String companyId,
+                                           Callable<Integer> writer) {
+        FutureTask<Integer> task = new FutureTask<>(() -> {
+            SheetTimer timer = new SheetTimer(sheetName, companyId);
+            int rows = writer.call();
+            timer.finish(rows);
+            return rows;
+        });
+        if (executor != null) {
+            executor.execute(task);
+        } else {
+            task.run();
+        }
+        return task;
+    }
+
+    /**
+     * Waits for a list sheet's part to be written, rethrowing the writer's failure
+     */
+    private static int awaitSheet(Future<Integer> sheet) throws IOException {
+        try {
+            return sheet.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException ioException) {
+                throw ioException;
+            }
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw new IOException("Failed to write sheet", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for a sheet to be written");
+        }
+    }
+
+    /**
+     * Times building one sheet, for the sheet metrics and a Flight Recorder event
+     */
+    private final class SheetTimer {
+
+        private final String sheetName;
+        private final SheetBuildEvent event;
+        private final long start = System.nanoTime();
+
+        SheetTimer(Sheet sheet, String companyId) {
+            this(sheet.getSheetName(), companyId);
+        }
+
+        SheetTimer(String sheetName, String companyId) {
+            this.sheetName = sheetName;
+            this.event = new SheetBuildEvent(sheetName);
+            event.start(companyId);
+        }
+
+        /**
+         * @param rows data rows written to the sheet, or 0 if it has no list of rows
+         */
+        void finish(int rows) {
+            event.finish(rows);
+            reportMetrics.recordSheet(sheetName, System.nanoTime() - start, rows);
+        }
+    }
+
+    /**
+     * Creates the placeholder for a list sheet whose cached or directly written XML will be spliced in.
+     * Everything in the sheet's own part comes from there; only the header filter is recreated, as it is
+     * also defined in the workbook.
+     */
+    private void createListSheetPlaceholder(Sheet sheet, int columnCount) {
+        sheet.setAutoFilter(new CellRangeAddress(LIST_TABLE_START_ROW, LIST_TABLE_START_ROW, 0, columnCount - 1));
+    }
+
+    private static String customerSheetFingerprint(List<Customer> customerData, LocalDate date) {
+        SheetFingerprint fingerprint = new SheetFingerprint("Customer List").add(date);
+        for (Customer customer : customerData) {
+            fingerprint.add(customer.getCustomerId()).add(customer.getCustomerName()).add(customer.getBalance())
+                    .add(customer.getReference()).add(customer.getAddressLine1()).add(customer.getAddressLine2())
+                    .add(customer.getCity()).add(customer.getState()).add(customer.getPostalCode())
+                    .add(customer.getCountry()).add(customer.isNotified()).add(customer.getLastUpdated());
+        }
+        return fingerprint.finish();
+    }
+
+    private static String itemsSheetFingerprint(List<Item> itemData, List<Customer> customerData, LocalDate date) {
+        SheetFingerprint fingerprint = new SheetFingerprint("Open Items").add(date);
+        // Items show their customer's name
+        for (Customer customer : customerData) {
+            fingerprint.add(customer.getCustomerId()).add(customer.getCustomerName());
+        }
+        for (Item item : itemData) {
+            fingerprint.add(item.getCustomerId()).add(item.getItemType()).add(item.getDocumentNumber())
+                    .add(item.getDocumentReference()).add(item.getDocumentDate()).add(item.getDueDate())
+                    .add(item.getEntryDate()).add(item.getEntryUser()).add(item.getAmount()).add(item.getBalance());
+        }
+        return fingerprint.finish();
+    }
+
+    /**
+     * Creates the workbook for a report, switching to a streaming SXSSF workbook for large ledgers
+     * so that only a bounded window of rows per sheet is kept in memory
+     * @param itemCount number of open items that will be written
+     * @return an XSSF workbook, or an SXSSF workbook when itemCount exceeds the streaming threshold
+     */
+    Workbook createWorkbook(int itemCount) {
+        if (itemCount > streamingItemThreshold) {
+            logger.info("Using streaming workbook for {} open items (threshold {}, row window {})",
+                    itemCount, streamingItemThreshold, streamingRowWindow);
+            return createStreamingWorkbook();
+        }
+        return new XSSFWorkbook();
+    }
+
+    /**
+     * Creates a streaming SXSSF workbook, which keeps only a window of rows per sheet in memory
+     * and writes strings inline rather than to a shared strings table
+     */
+    private SXSSFWorkbook createStreamingWorkbook() {
+        SXSSFWorkbook workbook = new SXSSFWorkbook(streamingRowWindow);
+        workbook.setCompressTempFiles(compressStreamingTempFiles);
+        return workbook;
+    }
+
+    /**
+     * Estimates the peak heap used while generating a report, so callers can limit how many large
+     * reports are built at once. Cells of an in-memory workbook dominate; a streaming workbook
+     * only holds its row window. Directly written list sheets go to temporary files through fixed
+     * buffers, so their open items add nothing and only what is kept per customer is counted.
+     * Reports spliced together also hold the blocks being compressed, and the parts copied to be cached.
+     * @param customerCount number of customers in the report
+     * @param itemCount number of open items in the report
+     * @return estimated heap in bytes
+     */
+    public long estimateReportHeapBytes(int customerCount, int itemCount) {
+        long splicingBytes = 0;
+        if (directSheetsEnabled || incrementalEnabled) {
+            splicingBytes = partDeflater.bufferedBytes();
+        }
+        if (incrementalEnabled) {
+            // Each rendered part is copied as it is written, then copied again into the cache
+            splicingBytes += 2 * (Math.min(customerCount * XML_BYTES_PER_ROW, sheetPartCache.getMaxPartBytes())
+                    + Math.min(itemCount * XML_BYTES_PER_ROW, sheetPartCache.getMaxPartBytes()));
+        }
+        if (directSheetsEnabled) {
+            return REPORT_BASE_BYTES + customerCount * DIRECT_BYTES_PER_CUSTOMER + splicingBytes;
+        }
+        // Incremental reports are always written with a streaming workbook
+        boolean streaming = incrementalEnabled || itemCount > streamingItemThreshold;
+        long customerRows = streaming ? Math.min(customerCount, streamingRowWindow) : customerCount;
+        long itemRows = streaming ? Math.min(itemCount, streamingRowWindow) : itemCount;
+        long cells = customerRows * CUSTOMER_HEADERS.length + itemRows * ITEM_HEADERS.length;
+        return REPORT_BASE_BYTES + cells * XSSF_BYTES_PER_CELL + splicingBytes;
+    }
+
+    /**
+     * Estimates the peak heap used while generating a report from a stream of open items,
+     * whose number isn't known up front; the streaming workbook only holds its row window,
+     * and directly written sheets hold nothing per item. Streamed sheets are never cached.
+     * @param customerCount number of customers in the report
+     * @return estimated heap in bytes
+     */
+    public long estimateStreamedReportHeapBytes(int customerCount) {
+        if (directSheetsEnabled) {
+            return REPORT_BASE_BYTES + customerCount * DIRECT_BYTES_PER_CUSTOMER + partDeflater.bufferedBytes();
+        }
+        long cells = (long) Math.min(customerCount, streamingRowWindow) * CUSTOMER_HEADERS.length
+                + (long) streamingRowWindow * ITEM_HEADERS.length;
+        return REPORT_BASE_BYTES + cells * XSSF_BYTES_PER_CELL;
+    }
+
+    /**
+     * Writes the workbook to the output stream, removing the temp files of a streaming workbook afterwards
+     */
+    void writeWorkbook(Workbook workbook, OutputStream outputStream) throws IOException {
+        long start = System.nanoTime();
+        try {
             workbook.write(outputStream);
-            return outputStream.toByteArray();
+            reportMetrics.recordPhase("write", System.nanoTime() - start);
+        } finally {
+            if (workbook instanceof SXSSFWorkbook streamingWorkbook) {
+                streamingWorkbook.dispose();
+            }
         }
     }
     
@@ -129,7 +971,7 @@ public class ExcelService {
      * @param firstDataRow The first row containing data (after headers)
      * @param lastDataRow The last row containing data
      */
-    private void createCustomerItemsNamedRange(XSSFWorkbook workbook, Sheet sheet, String customerId, int firstDataRow, int lastDataRow) {
+    private void createCustomerItemsNamedRange(Workbook workbook, Sheet sheet, String customerId, int firstDataRow, int lastDataRow) {
         // Create a named range that references all rows for this customer
         // This allows for easier filtering and navigation
         String safeCustomerId = customerId.replaceAll("[^a-zA-Z0-9]", ""); // Remove any characters that might cause issues in a name
@@ -152,73 +994,60 @@ public class ExcelService {
     }
 
     /**
-     * Creates the Open Items sheet
+     * Creates the Open Items sheet, writing each item as it is read
+     * @return the number of items written
      */
-    private void createOpenItemsSheet(XSSFWorkbook workbook, Sheet sheet, List<Item> itemData, List<Customer> customerData) {
+    int createOpenItemsSheet(CellStyleRegistry styles, Sheet sheet, Iterator<Item> items, List<Customer> customerData) {
         // Create title section
         Row titleRow = sheet.createRow(0);
         Cell titleCell = titleRow.createCell(0);
         titleCell.setCellValue("Open Items");
-        
-        CellStyle titleStyle = workbook.createCellStyle();
-        titleStyle.setAlignment(HorizontalAlignment.CENTER);
-        Font titleFont = workbook.createFont();
-        titleFont.setFontHeightInPoints((short) 14);
-        titleFont.setBold(true);
-        titleFont.setColor(IndexedColors.DARK_BLUE.getIndex());
-        titleStyle.setFont(titleFont);
-        
-        titleCell.setCellStyle(titleStyle);
+        titleCell.setCellStyle(styles.get(ReportStyles.SHEET_TITLE));
         sheet.addMergedRegion(new CellRangeAddress(0, 0, 0, ITEM_HEADERS.length - 1));
         
         // Add generation date
         Row dateRow = sheet.createRow(1);
         Cell dateCell = dateRow.createCell(0);
         dateCell.setCellValue("Generated on: " + LocalDate.now().format(DateTimeFormatter.ofPattern("MMMM d, yyyy")));
-        
-        CellStyle dateStyle = workbook.createCellStyle();
-        Font dateFont = workbook.createFont();
-        dateFont.setItalic(true);
-        dateFont.setColor(IndexedColors.GREY_50_PERCENT.getIndex());
-        dateStyle.setFont(dateFont);
-        
-        dateCell.setCellStyle(dateStyle);
+        dateCell.setCellStyle(styles.get(ReportStyles.NOTE));
         
         // Create a blank row
         sheet.createRow(2);
         
         // Create header row
-        int tableStartRow = 3;
+        int tableStartRow = LIST_TABLE_START_ROW;
         Row headerRow = sheet.createRow(tableStartRow);
-        CellStyle headerStyle = createHeaderStyle(workbook);
+        CellStyle headerStyle = styles.get(ReportStyles.HEADER);
+        ColumnWidthEstimator widths = new ColumnWidthEstimator(ITEM_HEADERS.length);
         
         for (int i = 0; i < ITEM_HEADERS.length; i++) {
             Cell cell = headerRow.createCell(i);
             cell.setCellValue(ITEM_HEADERS[i]);
             cell.setCellStyle(headerStyle);
+            widths.track(i, ITEM_HEADERS[i], true);
         }
         
-        // Create styles for data rows
-        CellStyle textCellStyle = createTextCellStyle(workbook);
-        CellStyle dateCellStyle = createDateCellStyle(workbook);
+        // Look up styles for data rows
+        CellStyle textCellStyle = styles.get(ReportStyles.TEXT);
+        CellStyle dateCellStyle = styles.get(ReportStyles.DATE);
         
         // Currency styles for different item types
-        CellStyle invoiceCurrencyStyle = createCurrencyStyle(workbook);
-        CellStyle negativeCurrencyStyle = createNegativeCurrencyStyle(workbook);
+        CellStyle invoiceCurrencyStyle = styles.get(ReportStyles.CURRENCY);
+        CellStyle negativeCurrencyStyle = styles.get(ReportStyles.NEGATIVE_CURRENCY);
         
         // Type-specific text styles
-        CellStyle invoiceTextStyle = createItemTypeStyle(workbook, IndexedColors.BLACK);
-        CellStyle paymentTextStyle = createItemTypeStyle(workbook, IndexedColors.BLUE);
-        CellStyle creditNoteTextStyle = createItemTypeStyle(workbook, IndexedColors.RED);
-        
-        // Create alternating row styles
-        CellStyle alternateRowTextCellStyle = createAlternateRowStyle(workbook, textCellStyle);
-        CellStyle alternateRowDateCellStyle = createAlternateRowStyle(workbook, dateCellStyle);
-        CellStyle alternateRowInvoiceCurrencyStyle = createAlternateRowStyle(workbook, invoiceCurrencyStyle);
-        CellStyle alternateRowNegativeCurrencyStyle = createAlternateRowStyle(workbook, negativeCurrencyStyle);
-        CellStyle alternateRowInvoiceTextStyle = createAlternateRowStyle(workbook, invoiceTextStyle);
-        CellStyle alternateRowPaymentTextStyle = createAlternateRowStyle(workbook, paymentTextStyle);
-        CellStyle alternateRowCreditNoteTextStyle = createAlternateRowStyle(workbook, creditNoteTextStyle);
+        CellStyle invoiceTextStyle = styles.get(ReportStyles.INVOICE_TYPE);
+        CellStyle paymentTextStyle = styles.get(ReportStyles.PAYMENT_TYPE);
+        CellStyle creditNoteTextStyle = styles.get(ReportStyles.CREDIT_NOTE_TYPE);
+        
+        // Alternating row styles
+        CellStyle alternateRowTextCellStyle = styles.get(ReportStyles.alternateRow(ReportStyles.TEXT));
+        CellStyle alternateRowDateCellStyle = styles.get(ReportStyles.alternateRow(ReportStyles.DATE));
+        CellStyle alternateRowInvoiceCurrencyStyle = styles.get(ReportStyles.alternateRow(ReportStyles.CURRENCY));
+        CellStyle alternateRowNegativeCurrencyStyle = styles.get(ReportStyles.alternateRow(ReportStyles.NEGATIVE_CURRENCY));
+        CellStyle alternateRowInvoiceTextStyle = styles.get(ReportStyles.alternateRow(ReportStyles.INVOICE_TYPE));
+        CellStyle alternateRowPaymentTextStyle = styles.get(ReportStyles.alternateRow(ReportStyles.PAYMENT_TYPE));
+        CellStyle alternateRowCreditNoteTextStyle = styles.get(ReportStyles.alternateRow(ReportStyles.CREDIT_NOTE_TYPE));
         
         // Create map of customer IDs to names for lookups
         java.util.Map<String, String> customerNames = new java.util.HashMap<>();
@@ -228,7 +1057,10 @@ public class ExcelService {
         
         // Add data rows
         int rowNum = tableStartRow + 1;
-        for (Item item : itemData) {
+        double totalAmount = 0;
+        double totalBalance = 0;
+        while (items.hasNext()) {
+            Item item = items.next();
             Row row = sheet.createRow(rowNum);
             boolean isAlternateRow = (rowNum - tableStartRow) % 2 == 0;
             
@@ -261,97 +1093,92 @@ public class ExcelService {
                 // Log warning about missing customer
                 System.out.println("Warning: Customer ID " + item.getCustomerId() + " not found in customer data");
             }
-            customerIdCell.setCellValue(item.getCustomerId() + " - " + 
-                    (customerName != null ? customerName : "Unknown"));
+            String customerText = item.getCustomerId() + " - " + (customerName != null ? customerName : "Unknown");
+            customerIdCell.setCellValue(customerText);
             customerIdCell.setCellStyle(rowTextStyle);
+            widths.track(0, customerText);
             
             // Document Type
             Cell typeCell = row.createCell(1);
-            String docType;
-            switch (item.getItemType()) {
-                case "INV":
-                    docType = "Invoice";
-                    break;
-                case "PAY":
-                    docType = "Payment";
-                    break;
-                case "CRN":
-                    docType = "Credit Note";
-                    break;
-                default:
-                    docType = item.getItemType();
-            }
+            String docType = documentTypeLabel(item.getItemType());
             typeCell.setCellValue(docType);
             typeCell.setCellStyle(rowTypeStyle);
+            widths.track(1, docType, true);
             
             // Document Number
             Cell docNumCell = row.createCell(2);
             docNumCell.setCellValue(item.getDocumentNumber());
             docNumCell.setCellStyle(rowTextStyle);
+            widths.track(2, item.getDocumentNumber());
             
             // Document Reference
             Cell docRefCell = row.createCell(3);
             docRefCell.setCellValue(item.getDocumentReference());
             docRefCell.setCellStyle(rowTextStyle);
+            widths.track(3, item.getDocumentReference());
             
             // Document Date
             Cell docDateCell = row.createCell(4);
-            docDateCell.setCellValue(item.getDocumentDate().format(DateTimeFormatter.ISO_LOCAL_DATE));
+            String documentDate = item.getDocumentDate().format(DateTimeFormatter.ISO_LOCAL_DATE);
+            docDateCell.setCellValue(documentDate);
             docDateCell.setCellStyle(rowDateStyle);
+            widths.track(4, documentDate);
             
             // Due Date
             Cell dueDateCell = row.createCell(5);
-            dueDateCell.setCellValue(item.getDueDate().format(DateTimeFormatter.ISO_LOCAL_DATE));
+            String dueDate = item.getDueDate().format(DateTimeFormatter.ISO_LOCAL_DATE);
+            dueDateCell.setCellValue(dueDate);
             dueDateCell.setCellStyle(rowDateStyle);
+            widths.track(5, dueDate);
             
             // Entry Date
             Cell entryDateCell = row.createCell(6);
-            entryDateCell.setCellValue(item.getEntryDate().format(DateTimeFormatter.ISO_LOCAL_DATE));
+            String entryDate = item.getEntryDate().format(DateTimeFormatter.ISO_LOCAL_DATE);
+            entryDateCell.setCellValue(entryDate);
             entryDateCell.setCellStyle(rowDateStyle);
+            widths.track(6, entryDate);
             
             // Entry User
             Cell entryUserCell = row.createCell(7);
             entryUserCell.setCellValue(item.getEntryUser());
             entryUserCell.setCellStyle(rowTextStyle);
+            widths.track(7, item.getEntryUser());
             
             // Amount
             Cell amountCell = row.createCell(8);
-            amountCell.setCellValue(item.getAmount().doubleValue());
+            double amount = item.getAmount().doubleValue();
+            amountCell.setCellValue(amount);
             amountCell.setCellStyle(rowCurrencyStyle);
+            widths.trackCurrency(8, amount);
+            totalAmount += amount;
             
             // Balance
             Cell balanceCell = row.createCell(9);
-            balanceCell.setCellValue(item.getBalance().doubleValue());
+            double balance = item.getBalance().doubleValue();
+            balanceCell.setCellValue(balance);
             balanceCell.setCellStyle(rowCurrencyStyle);
+            widths.trackCurrency(9, balance);
+            totalBalance += balance;
             
             rowNum++;
         }
         
+        // The totals are formulas, so size their columns from the sums computed above
+        widths.trackCurrency(8, totalAmount);
+        widths.trackCurrency(9, totalBalance);
+        
         // Add a total row at the bottom
         Row totalRow = sheet.createRow(rowNum);
         totalRow.setHeightInPoints(20);
         
-        CellStyle totalLabelStyle = workbook.createCellStyle();
-        totalLabelStyle.setFillForegroundColor(IndexedColors.GREY_25_PERCENT.getIndex());
-        totalLabelStyle.setFillPattern(FillPatternType.SOLID_FOREGROUND);
-        totalLabelStyle.setBorderBottom(BorderStyle.THIN);
-        totalLabelStyle.setBorderTop(BorderStyle.MEDIUM);
-        totalLabelStyle.setBorderLeft(BorderStyle.THIN);
-        totalLabelStyle.setBorderRight(BorderStyle.THIN);
-        Font totalFont = workbook.createFont();
-        totalFont.setBold(true);
-        totalLabelStyle.setFont(totalFont);
-        
         // Total label (spans several columns)
         Cell totalLabelCell = totalRow.createCell(0);
         totalLabelCell.setCellValue("TOTAL");
-        totalLabelCell.setCellStyle(totalLabelStyle);
+        totalLabelCell.setCellStyle(styles.get(ReportStyles.TOTAL_LABEL));
         sheet.addMergedRegion(new CellRangeAddress(rowNum, rowNum, 0, 7));
         
         // Total amount
-        CellStyle totalAmountStyle = workbook.createCellStyle();
-        totalAmountStyle.cloneStyleFrom(totalLabelStyle);
-        totalAmountStyle.setDataFormat(workbook.createDataFormat().getFormat("$#,##0.00"));
+        CellStyle totalAmountStyle = styles.get(ReportStyles.TOTAL_CURRENCY);
         
         Cell totalAmountCell = totalRow.createCell(8);
         totalAmountCell.setCellFormula(String.format("SUM(%s%d:%s%d)", 
@@ -369,11 +1196,7 @@ public class ExcelService {
         Cell footerCell = footerRow.createCell(0);
         footerCell.setCellValue("Color coding: Black = Invoices, Blue = Payments, Red = Credit Notes");
 
-        CellStyle footerStyle = workbook.createCellStyle();
-        Font footerFont = workbook.createFont();
-        footerFont.setItalic(true);
-        footerFont.setColor(IndexedColors.GREY_50_PERCENT.getIndex());
-        footerStyle.setFont(footerFont);
+        CellStyle footerStyle = styles.get(ReportStyles.NOTE);
         footerCell.setCellStyle(footerStyle);
 
         // Merge cells for the footer
@@ -388,11 +1211,8 @@ public class ExcelService {
         // Merge cells for the instruction footer
         sheet.addMergedRegion(new CellRangeAddress(rowNum + 3, rowNum + 3, 0, ITEM_HEADERS.length - 1));
         
-        // Auto-size columns and add padding
-        for (int i = 0; i < ITEM_HEADERS.length; i++) {
-            sheet.autoSizeColumn(i);
-            sheet.setColumnWidth(i, sheet.getColumnWidth(i) + 500);
-        }
+        // Size columns from the tracked values and add padding
+        widths.applyTo(sheet, 500);
         
         // Freeze panes
         sheet.createFreezePane(0, tableStartRow + 1);
@@ -400,64 +1220,207 @@ public class ExcelService {
         // Add filter to headers
         sheet.setAutoFilter(new CellRangeAddress(
                 tableStartRow, tableStartRow, 0, ITEM_HEADERS.length - 1));
+
+        return rowNum - tableStartRow - 1;
     }
-    
+
     /**
-     * Creates a colored text style for item types
+     * Writes the Open Items sheet as XML, with the same content and styles as
+     * {@link #createOpenItemsSheet(CellStyleRegistry, Sheet, Iterator, List)}
+     * @return the number of items written
      */
-    private CellStyle createItemTypeStyle(Workbook workbook, IndexedColors color) {
-        CellStyle style = workbook.createCellStyle();
-        style.setBorderBottom(BorderStyle.THIN);
-        style.setBorderTop(BorderStyle.THIN);
-        style.setBorderLeft(BorderStyle.THIN);
-        style.setBorderRight(BorderStyle.THIN);
-        style.setAlignment(HorizontalAlignment.CENTER);
-        
-        Font font = workbook.createFont();
-        font.setBold(true);
-        font.setColor(color.getIndex());
-        style.setFont(font);
-        
-        return style;
+    int writeOpenItemsPart(CellStyleRegistry styles, SheetXmlWriter part, Iterator<Item> items,
+                           List<Customer> customerData) throws IOException {
+        // Title, generation date and a blank row
+        part.startRow(0);
+        part.text(0, "Open Items", styles.get(ReportStyles.SHEET_TITLE).getIndex());
+        part.endRow();
+        part.mergeCells(0, 0, 0, ITEM_HEADERS.length - 1);
+        int noteStyle = styles.get(ReportStyles.NOTE).getIndex();
+        part.startRow(1);
+        part.text(0, "Generated on: " + LocalDate.now().format(DateTimeFormatter.ofPattern("MMMM d, yyyy")), noteStyle);
+        part.endRow();
+
+        // Header row
+        int tableStartRow = LIST_TABLE_START_ROW;
+        int headerStyle = styles.get(ReportStyles.HEADER).getIndex();
+        ColumnWidthEstimator widths = new ColumnWidthEstimator(ITEM_HEADERS.length);
+        part.startRow(tableStartRow);
+        for (int i = 0; i < ITEM_HEADERS.length; i++) {
+            part.text(i, ITEM_HEADERS[i], headerStyle);
+            widths.track(i, ITEM_HEADERS[i], true);
+        }
+        part.endRow();
+
+        // Style indexes of the data cells, by row parity
+        int[] textStyles = rowStyles(styles, ReportStyles.TEXT);
+        int[] dateStyles = rowStyles(styles, ReportStyles.DATE);
+        int[] invoiceCurrencyStyles = rowStyles(styles, ReportStyles.CURRENCY);
+        int[] negativeCurrencyStyles = rowStyles(styles, ReportStyles.NEGATIVE_CURRENCY);
+        int[] invoiceTypeStyles = rowStyles(styles, ReportStyles.INVOICE_TYPE);
+        int[] paymentTypeStyles = rowStyles(styles, ReportStyles.PAYMENT_TYPE);
+        int[] creditNoteTypeStyles = rowStyles(styles, ReportStyles.CREDIT_NOTE_TYPE);
+
+        // Customer column text, built and measured once per customer as it is first seen
+        Map<String, String> customerNames = new HashMap<>();
+        for (Customer customer : customerData) {
+            customerNames.put(customer.getCustomerId(), customer.getCustomerName());
+        }
+        Map<String, String> customerTexts = new HashMap<>();
+
+        // Data rows
+        int rowNum = tableStartRow + 1;
+        double totalAmount = 0;
+        double totalBalance = 0;
+        while (items.hasNext()) {
+            Item item = items.next();
+            int parity = (rowNum - tableStartRow) % 2 == 0 ? 1 : 0;
+            int currencyStyle = item.isInvoice() ? invoiceCurrencyStyles[parity] : negativeCurrencyStyles[parity];
+            int typeStyle = item.isInvoice() ? invoiceTypeStyles[parity]
+                    : item.isPayment() ? paymentTypeStyles[parity] : creditNoteTypeStyles[parity];
+
+            String customerText = customerTexts.get(item.getCustomerId());
+            if (customerText == null) {
+                String customerName = customerNames.get(item.getCustomerId());
+                if (customerName == null) {
+                    logger.warn("Customer ID {} not found in customer data", item.getCustomerId());
+                }
+                customerText = item.getCustomerId() + " - " + (customerName != null ? customerName : "Unknown");
+                customerTexts.put(item.getCustomerId(), customerText);
+                widths.track(0, customerText);
+            }
+            String docType = documentTypeLabel(item.getItemType());
+            double amount = item.getAmount().doubleValue();
+            double balance = item.getBalance().doubleValue();
+
+            part.startRow(rowNum);
+            part.text(0, customerText, textStyles[parity]);
+            part.text(1, docType, typeStyle);
+            part.text(2, item.getDocumentNumber(), textStyles[parity]);
+            part.text(3, item.getDocumentReference(), textStyles[parity]);
+            part.isoDate(4, item.getDocumentDate(), dateStyles[parity]);
+            part.isoDate(5, item.getDueDate(), dateStyles[parity]);
+            part.isoDate(6, item.getEntryDate(), dateStyles[parity]);
+            part.text(7, item.getEntryUser(), textStyles[parity]);
+            part.number(8, amount, currencyStyle);
+            part.number(9, balance, currencyStyle);
+            part.endRow();
+
+            widths.track(1, docType, true);
+            widths.track(2, item.getDocumentNumber());
+            widths.track(3, item.getDocumentReference());
+            widths.track(7, item.getEntryUser());
+            widths.trackCurrency(8, amount);
+            widths.trackCurrency(9, balance);
+            totalAmount += amount;
+            totalBalance += balance;
+            rowNum++;
+        }
+        if (rowNum > tableStartRow + 1) {
+            for (int column = 4; column <= 6; column++) {
+                widths.track(column, ISO_DATE_SAMPLE);
+            }
+        }
+
+        // The totals are formulas, so size their columns from the sums computed above
+        widths.trackCurrency(8, totalAmount);
+        widths.trackCurrency(9, totalBalance);
+
+        // Total row
+        int totalCurrencyStyle = styles.get(ReportStyles.TOTAL_CURRENCY).getIndex();
+        part.startRow(rowNum, 20);
+        part.text(0, "TOTAL", styles.get(ReportStyles.TOTAL_LABEL).getIndex());
+        part.formula(8, String.format("SUM(%s%d:%s%d)",
+                getColumnName(8), tableStartRow + 1, getColumnName(8), rowNum), totalCurrencyStyle);
+        part.formula(9, String.format("SUM(%s%d:%s%d)",
+                getColumnName(9), tableStartRow + 1, getColumnName(9), rowNum), totalCurrencyStyle);
+        part.endRow();
+        part.mergeCells(rowNum, rowNum, 0, 7);
+
+        // Footers on color coding and filtering
+        part.startRow(rowNum + 2);
+        part.text(0, "Color coding: Black = Invoices, Blue = Payments, Red = Credit Notes", noteStyle);
+        part.endRow();
+        part.mergeCells(rowNum + 2, rowNum + 2, 0, ITEM_HEADERS.length - 1);
+        part.startRow(rowNum + 3);
+        part.text(0, "Tip: Click the filter button (▼) in the Customer ID column header to filter items by specific customer.", noteStyle);
+        part.endRow();
+        part.mergeCells(rowNum + 3, rowNum + 3, 0, ITEM_HEADERS.length - 1);
+
+        widths.applyTo(part, 500);
+        part.freezeRows(tableStartRow + 1);
+        part.autoFilter(tableStartRow, 0, ITEM_HEADERS.length - 1);
+
+        return rowNum - tableStartRow - 1;
+    }
+
+    /**
+     * Returns the indexes of a data cell style on normal and alternate rows, so a directly written row
+     * can pick its style by parity
+     */
+    private static int[] rowStyles(CellStyleRegistry styles, CellStyleSpec spec) {
+        return new int[]{styles.get(spec).getIndex(), styles.get(ReportStyles.alternateRow(spec)).getIndex()};
+    }
+
+    /**
+     * Returns the name shown for an item type, e.g. "Invoice" for INV
+     */
+    private static String documentTypeLabel(String itemType) {
+        switch (itemType) {
+            case "INV":
+                return "Invoice";
+            case "PAY":
+                return "Payment";
+            case "CRN":
+                return "Credit Note";
+            default:
+                return itemType;
+        }
     }
     
     /**
      * Creates the Ageing Report sheet
      */
-    private void createAgeingReportSheet(XSSFWorkbook workbook, Sheet sheet, List<AgeingByMonth> ageingData) {
-        // Sort the data in chronological order for better chart visualization
+    void createAgeingReportSheet(Workbook workbook, CellStyleRegistry styles, Sheet sheet, List<AgeingByMonth> cachedAgeingData) {
+        // Sort the data in chronological order for better chart visualization. The given list is cached and
+        // shared by concurrent reports, so a copy is sorted.
+        List<AgeingByMonth> ageingData = new ArrayList<>(cachedAgeingData);
         ageingData.sort((a, b) -> a.getMonth().compareTo(b.getMonth()));
+        ColumnWidthEstimator widths = new ColumnWidthEstimator(HEADERS.length);
+        
         // Create title and branding section
-        createTitleSection(workbook, sheet, ageingData.size() > 0 ? ageingData.get(0).getMonth() : null);
+        createTitleSection(styles, widths, sheet, ageingData.size() > 0 ? ageingData.get(0).getMonth() : null);
         
         // Start the actual table at row 5
         int tableStartRow = 5;
         
         // Create header row
         Row headerRow = sheet.createRow(tableStartRow);
-        CellStyle headerStyle = createHeaderStyle(workbook);
+        CellStyle headerStyle = styles.get(ReportStyles.HEADER);
         
         for (int i = 0; i < HEADERS.length; i++) {
             Cell cell = headerRow.createCell(i);
             cell.setCellValue(HEADERS[i]);
             cell.setCellStyle(headerStyle);
+            widths.track(i, HEADERS[i], true);
         }
         
-        // Create styles for data rows
-        CellStyle dateCellStyle = createDateCellStyle(workbook);
-        CellStyle currencyCellStyle = createCurrencyStyle(workbook);
-        CellStyle negativeCurrencyStyle = createNegativeCurrencyStyle(workbook);
-        CellStyle percentageCellStyle = createPercentageStyle(workbook);
+        // Look up styles for data rows
+        CellStyle dateCellStyle = styles.get(ReportStyles.DATE);
+        CellStyle currencyCellStyle = styles.get(ReportStyles.CURRENCY);
+        CellStyle negativeCurrencyStyle = styles.get(ReportStyles.NEGATIVE_CURRENCY);
+        CellStyle percentageCellStyle = styles.get(ReportStyles.PERCENTAGE);
         
-        // Create alternating row styles
-        CellStyle alternateRowDateCellStyle = createAlternateRowStyle(workbook, dateCellStyle);
-        CellStyle alternateRowCurrencyCellStyle = createAlternateRowStyle(workbook, currencyCellStyle);
-        CellStyle alternateRowNegativeCurrencyStyle = createAlternateRowStyle(workbook, negativeCurrencyStyle);
-        CellStyle alternateRowPercentageCellStyle = createAlternateRowStyle(workbook, percentageCellStyle);
+        // Alternating row styles
+        CellStyle alternateRowDateCellStyle = styles.get(ReportStyles.alternateRow(ReportStyles.DATE));
+        CellStyle alternateRowCurrencyCellStyle = styles.get(ReportStyles.alternateRow(ReportStyles.CURRENCY));
+        CellStyle alternateRowNegativeCurrencyStyle = styles.get(ReportStyles.alternateRow(ReportStyles.NEGATIVE_CURRENCY));
+        CellStyle alternateRowPercentageCellStyle = styles.get(ReportStyles.alternateRow(ReportStyles.PERCENTAGE));
         
         DateTimeFormatter monthFormatter = DateTimeFormatter.ofPattern("MMM yyyy");
         
         int rowNum = tableStartRow + 1;
+        double[] columnTotals = new double[HEADERS.length];
         
         // Create data rows with alternating colors
         for (AgeingByMonth data : ageingData) {
@@ -472,120 +1435,190 @@ public class ExcelService {
             
             // Month
             Cell monthCell = row.createCell(0);
-            monthCell.setCellValue(data.getMonth().format(monthFormatter));
+            String month = data.getMonth().format(monthFormatter);
+            monthCell.setCellValue(month);
             monthCell.setCellStyle(rowDateStyle);
+            widths.track(0, month);
             
             // Sales Ledger Balance
-            createConditionalCurrencyCell(row, 1, data.getSalesLedgerBalance(), rowCurrencyStyle, rowNegativeCurrencyStyle);
+            columnTotals[1] += createConditionalCurrencyCell(row, 1, data.getSalesLedgerBalance(), rowCurrencyStyle, rowNegativeCurrencyStyle, widths);
             
             // Amount Not Due
-            createConditionalCurrencyCell(row, 2, data.getAmountNotDue(), rowCurrencyStyle, rowNegativeCurrencyStyle);
+            columnTotals[2] += createConditionalCurrencyCell(row, 2, data.getAmountNotDue(), rowCurrencyStyle, rowNegativeCurrencyStyle, widths);
             
             // Over 30 Days
-            createConditionalCurrencyCell(row, 3, data.getAmountOver30Days(), rowCurrencyStyle, rowNegativeCurrencyStyle);
+            columnTotals[3] += createConditionalCurrencyCell(row, 3, data.getAmountOver30Days(), rowCurrencyStyle, rowNegativeCurrencyStyle, widths);
             
             // Over 60 Days
-            createConditionalCurrencyCell(row, 4, data.getAmountOver60Days(), rowCurrencyStyle, rowNegativeCurrencyStyle);
+            columnTotals[4] += createConditionalCurrencyCell(row, 4, data.getAmountOver60Days(), rowCurrencyStyle, rowNegativeCurrencyStyle, widths);
             
             // Over 90 Days
-            createConditionalCurrencyCell(row, 5, data.getAmountOver90Days(), rowCurrencyStyle, rowNegativeCurrencyStyle);
+            columnTotals[5] += createConditionalCurrencyCell(row, 5, data.getAmountOver90Days(), rowCurrencyStyle, rowNegativeCurrencyStyle, widths);
             
             // Over Threshold
-            createConditionalCurrencyCell(row, 6, data.getAmountOverThreshold(), rowCurrencyStyle, rowNegativeCurrencyStyle);
+            columnTotals[6] += createConditionalCurrencyCell(row, 6, data.getAmountOverThreshold(), rowCurrencyStyle, rowNegativeCurrencyStyle, widths);
             
             // Total Credits
-            createConditionalCurrencyCell(row, 7, data.getTotalCredits(), rowCurrencyStyle, rowNegativeCurrencyStyle);
+            columnTotals[7] += createConditionalCurrencyCell(row, 7, data.getTotalCredits(), rowCurrencyStyle, rowNegativeCurrencyStyle, widths);
             
             // % Over 90 Days
             Cell percentCell = row.createCell(8);
-            percentCell.setCellValue(data.getPercentOver90Days().doubleValue() / 100);
+            double percentOver90Days = data.getPercentOver90Days().doubleValue() / 100;
+            percentCell.setCellValue(percentOver90Days);
             percentCell.setCellStyle(rowPercentageStyle);
+            widths.trackPercentage(8, percentOver90Days);
             
             rowNum++;
         }
         
+        // The summary row holds formulas, so size its columns from the sums computed above
+        widths.track(0, "TOTAL", true);
+        for (int i = 1; i <= 7; i++) {
+            widths.trackCurrency(i, columnTotals[i]);
+        }
+        
         // Add summary row
-        addSummaryRow(workbook, sheet, rowNum, tableStartRow + 1, rowNum - 1);
+        addSummaryRow(styles, sheet, rowNum, tableStartRow + 1, rowNum - 1);
         
         // Add footer
-        addFooter(workbook, sheet, rowNum + 2);
+        addFooter(styles, sheet, rowNum + 2);
         
         // Apply table formatting
-        for (int i = 0; i < HEADERS.length; i++) {
-            sheet.autoSizeColumn(i);
-            sheet.setColumnWidth(i, sheet.getColumnWidth(i) + 1000); // Add a bit of padding
-        }
+        widths.applyTo(sheet, 1000); // Add a bit of padding
         
         // Freeze the header row
         sheet.createFreezePane(0, tableStartRow + 1);
 
-        // Add a chart showing aging trends
+        // Add a chart showing aging trends; its time is also included in the sheet's
+        long chartStart = System.nanoTime();
         addAgeingTrendChart(workbook, sheet, tableStartRow + 1, rowNum - 1, ageingData.size());
+        reportMetrics.recordPhase("charts", System.nanoTime() - chartStart);
     }
     
+    /**
+     * Writes the Ageing Report sheet's data cells over its template, which holds the rest of the sheet as
+     * {@link #createAgeingReportSheet} builds it for the same number of months: the subtitle and the month
+     * rows, and the column widths, sized as that method sizes them
+     */
+    void writeAgeingReportPart(CellStyleRegistry styles, SheetXmlWriter part, List<AgeingByMonth> cachedAgeingData)
+            throws IOException {
+        List<AgeingByMonth> ageingData = new ArrayList<>(cachedAgeingData);
+        ageingData.sort((a, b) -> a.getMonth().compareTo(b.getMonth()));
+        ColumnWidthEstimator widths = new ColumnWidthEstimator(HEADERS.length);
+
+        String monthInfo = ageingSubtitle(ageingData.size() > 0 ? ageingData.get(0).getMonth() : null);
+        part.startRow(1);
+        part.text(0, monthInfo, styles.get(ReportStyles.NOTE).getIndex());
+        part.endRow();
+        widths.track(0, monthInfo);
+        widths.track(0, AGEING_COMPANY_LINE);
+
+        int tableStartRow = 5;
+        for (int i = 0; i < HEADERS.length; i++) {
+            widths.track(i, HEADERS[i], true);
+        }
+
+        int dateStyle = styles.get(ReportStyles.DATE).getIndex();
+        int currencyStyle = styles.get(ReportStyles.CURRENCY).getIndex();
+        int negativeCurrencyStyle = styles.get(ReportStyles.NEGATIVE_CURRENCY).getIndex();
+        int percentageStyle = styles.get(ReportStyles.PERCENTAGE).getIndex();
+        int alternateRowDateStyle = styles.get(ReportStyles.alternateRow(ReportStyles.DATE)).getIndex();
+        int alternateRowCurrencyStyle = styles.get(ReportStyles.alternateRow(ReportStyles.CURRENCY)).getIndex();
+        int alternateRowNegativeCurrencyStyle =
+                styles.get(ReportStyles.alternateRow(ReportStyles.NEGATIVE_CURRENCY)).getIndex();
+        int alternateRowPercentageStyle = styles.get(ReportStyles.alternateRow(ReportStyles.PERCENTAGE)).getIndex();
+
+        DateTimeFormatter monthFormatter = DateTimeFormatter.ofPattern("MMM yyyy");
+        int rowNum = tableStartRow + 1;
+        double[] columnTotals = new double[HEADERS.length];
+        for (AgeingByMonth data : ageingData) {
+            boolean isAlternateRow = (rowNum - tableStartRow) % 2 == 0;
+            int rowCurrencyStyle = isAlternateRow ? alternateRowCurrencyStyle : currencyStyle;
+            int rowNegativeCurrencyStyle = isAlternateRow ? alternateRowNegativeCurrencyStyle : negativeCurrencyStyle;
+            part.startRow(rowNum);
+
+            String month = data.getMonth().format(monthFormatter);
+            part.text(0, month, isAlternateRow ? alternateRowDateStyle : dateStyle);
+            widths.track(0, month);
+
+            BigDecimal[] amounts = {data.getSalesLedgerBalance(), data.getAmountNotDue(), data.getAmountOver30Days(),
+                    data.getAmountOver60Days(), data.getAmountOver90Days(), data.getAmountOverThreshold(),
+                    data.getTotalCredits()};
+            for (int i = 1; i <= 7; i++) {
+                double value = amounts[i - 1].doubleValue();
+                part.number(i, value, amounts[i - 1].compareTo(BigDecimal.ZERO) < 0 ? rowNegativeCurrencyStyle : rowCurrencyStyle);
+                widths.trackCurrency(i, value);
+                columnTotals[i] += value;
+            }
+
+            double percentOver90Days = data.getPercentOver90Days().doubleValue() / 100;
+            part.number(8, percentOver90Days, isAlternateRow ? alternateRowPercentageStyle : percentageStyle);
+            widths.trackPercentage(8, percentOver90Days);
+
+            part.endRow();
+            rowNum++;
+        }
+
+        // The template's summary row holds the formulas
+        widths.track(0, "TOTAL", true);
+        for (int i = 1; i <= 7; i++) {
+            widths.trackCurrency(i, columnTotals[i]);
+        }
+        widths.applyTo(part, 1000);
+    }
+
     /**
      * Creates the Customer List sheet
      */
-    private void createCustomerListSheet(XSSFWorkbook workbook, Sheet sheet, List<Customer> customerData) {
+    void createCustomerListSheet(Workbook workbook, CellStyleRegistry styles, Sheet sheet, List<Customer> customerData) {
         // Create title section
         Row titleRow = sheet.createRow(0);
         Cell titleCell = titleRow.createCell(0);
         titleCell.setCellValue("Customer List - Outstanding Balances");
-        
-        CellStyle titleStyle = workbook.createCellStyle();
-        titleStyle.setAlignment(HorizontalAlignment.CENTER);
-        Font titleFont = workbook.createFont();
-        titleFont.setFontHeightInPoints((short) 14);
-        titleFont.setBold(true);
-        titleFont.setColor(IndexedColors.DARK_BLUE.getIndex());
-        titleStyle.setFont(titleFont);
-        
-        titleCell.setCellStyle(titleStyle);
+        titleCell.setCellStyle(styles.get(ReportStyles.SHEET_TITLE));
         sheet.addMergedRegion(new CellRangeAddress(0, 0, 0, CUSTOMER_HEADERS.length - 1));
         
         // Add generation date
         Row dateRow = sheet.createRow(1);
         Cell dateCell = dateRow.createCell(0);
         dateCell.setCellValue("Generated on: " + LocalDate.now().format(DateTimeFormatter.ofPattern("MMMM d, yyyy")));
-        
-        CellStyle dateStyle = workbook.createCellStyle();
-        Font dateFont = workbook.createFont();
-        dateFont.setItalic(true);
-        dateFont.setColor(IndexedColors.GREY_50_PERCENT.getIndex());
-        dateStyle.setFont(dateFont);
-        
-        dateCell.setCellStyle(dateStyle);
+        dateCell.setCellStyle(styles.get(ReportStyles.NOTE));
         
         // Create a blank row
         sheet.createRow(2);
         
         // Create header row
-        int tableStartRow = 3;
+        int tableStartRow = LIST_TABLE_START_ROW;
         Row headerRow = sheet.createRow(tableStartRow);
-        CellStyle headerStyle = createHeaderStyle(workbook);
+        CellStyle headerStyle = styles.get(ReportStyles.HEADER);
+        ColumnWidthEstimator widths = new ColumnWidthEstimator(CUSTOMER_HEADERS.length);
         
         for (int i = 0; i < CUSTOMER_HEADERS.length; i++) {
             Cell cell = headerRow.createCell(i);
             cell.setCellValue(CUSTOMER_HEADERS[i]);
             cell.setCellStyle(headerStyle);
+            widths.track(i, CUSTOMER_HEADERS[i], true);
         }
         
-        // Create styles for data rows
-        CellStyle textCellStyle = createTextCellStyle(workbook);
-        CellStyle hyperlinkStyle = createHyperlinkStyle(workbook);
-        CellStyle currencyCellStyle = createCurrencyStyle(workbook);
-        CellStyle dateCellStyle = createDateCellStyle(workbook);
-        CellStyle booleanCellStyle = createBooleanCellStyle(workbook);
+        // Look up styles for data rows
+        CellStyle textCellStyle = styles.get(ReportStyles.TEXT);
+        CellStyle hyperlinkStyle = styles.get(ReportStyles.HYPERLINK);
+        CellStyle currencyCellStyle = styles.get(ReportStyles.CURRENCY);
+        CellStyle dateCellStyle = styles.get(ReportStyles.DATE);
+        CellStyle booleanCellStyle = styles.get(ReportStyles.BOOLEAN);
+        
+        // Alternating row styles
+        CellStyle alternateRowTextCellStyle = styles.get(ReportStyles.alternateRow(ReportStyles.TEXT));
+        CellStyle alternateRowHyperlinkStyle = styles.get(ReportStyles.alternateRow(ReportStyles.HYPERLINK));
+        CellStyle alternateRowCurrencyCellStyle = styles.get(ReportStyles.alternateRow(ReportStyles.CURRENCY));
+        CellStyle alternateRowDateCellStyle = styles.get(ReportStyles.alternateRow(ReportStyles.DATE));
+        CellStyle alternateRowBooleanCellStyle = styles.get(ReportStyles.alternateRow(ReportStyles.BOOLEAN));
         
-        // Create alternating row styles
-        CellStyle alternateRowTextCellStyle = createAlternateRowStyle(workbook, textCellStyle);
-        CellStyle alternateRowHyperlinkStyle = createAlternateRowStyle(workbook, hyperlinkStyle);
-        CellStyle alternateRowCurrencyCellStyle = createAlternateRowStyle(workbook, currencyCellStyle);
-        CellStyle alternateRowDateCellStyle = createAlternateRowStyle(workbook, dateCellStyle);
-        CellStyle alternateRowBooleanCellStyle = createAlternateRowStyle(workbook, booleanCellStyle);
+        CreationHelper createHelper = workbook.getCreationHelper();
         
         // Add data rows
         int rowNum = tableStartRow + 1;
+        double totalBalance = 0;
         for (Customer customer : customerData) {
             Row row = sheet.createRow(rowNum);
             boolean isAlternateRow = (rowNum - tableStartRow) % 2 == 0;
@@ -601,7 +1634,6 @@ public class ExcelService {
             idCell.setCellValue(customer.getCustomerId());
 
             // Create hyperlink to Open Items sheet filtering for this customer
-            CreationHelper createHelper = workbook.getCreationHelper();
             XSSFHyperlink link = (XSSFHyperlink) createHelper.createHyperlink(HyperlinkType.DOCUMENT);
 
             // Since Excel doesn't support programmatically applying filters through hyperlinks,
@@ -615,79 +1647,89 @@ public class ExcelService {
 
             idCell.setHyperlink(link);
             idCell.setCellStyle(isAlternateRow ? alternateRowHyperlinkStyle : hyperlinkStyle); // Apply appropriate hyperlink style
+            widths.track(0, customerId);
             
             // Customer Name
             Cell nameCell = row.createCell(1);
             nameCell.setCellValue(customer.getCustomerName());
             nameCell.setCellStyle(rowTextStyle);
+            widths.track(1, customer.getCustomerName());
             
             // Balance
             Cell balanceCell = row.createCell(2);
-            balanceCell.setCellValue(customer.getBalance().doubleValue());
+            double balance = customer.getBalance().doubleValue();
+            balanceCell.setCellValue(balance);
             balanceCell.setCellStyle(rowCurrencyStyle);
+            widths.trackCurrency(2, balance);
+            totalBalance += balance;
             
             // Reference
             Cell refCell = row.createCell(3);
             refCell.setCellValue(customer.getReference());
             refCell.setCellStyle(rowTextStyle);
+            widths.track(3, customer.getReference());
             
             // Address Line 1
             Cell addr1Cell = row.createCell(4);
             addr1Cell.setCellValue(customer.getAddressLine1());
             addr1Cell.setCellStyle(rowTextStyle);
+            widths.track(4, customer.getAddressLine1());
             
             // Address Line 2
             Cell addr2Cell = row.createCell(5);
             addr2Cell.setCellValue(customer.getAddressLine2());
             addr2Cell.setCellStyle(rowTextStyle);
+            widths.track(5, customer.getAddressLine2());
             
             // City
             Cell cityCell = row.createCell(6);
             cityCell.setCellValue(customer.getCity());
             cityCell.setCellStyle(rowTextStyle);
+            widths.track(6, customer.getCity());
             
             // State
             Cell stateCell = row.createCell(7);
             stateCell.setCellValue(customer.getState());
             stateCell.setCellStyle(rowTextStyle);
+            widths.track(7, customer.getState());
             
             // Postal Code
             Cell postalCell = row.createCell(8);
             postalCell.setCellValue(customer.getPostalCode());
             postalCell.setCellStyle(rowTextStyle);
+            widths.track(8, customer.getPostalCode());
             
             // Country
             Cell countryCell = row.createCell(9);
             countryCell.setCellValue(customer.getCountry());
             countryCell.setCellStyle(rowTextStyle);
+            widths.track(9, customer.getCountry());
             
             // Notified
             Cell notifiedCell = row.createCell(10);
-            notifiedCell.setCellValue(customer.isNotified() ? "Yes" : "No");
+            String notified = customer.isNotified() ? "Yes" : "No";
+            notifiedCell.setCellValue(notified);
             notifiedCell.setCellStyle(rowBooleanStyle);
+            widths.track(10, notified);
             
             // Last Updated
             Cell updatedCell = row.createCell(11);
-            updatedCell.setCellValue(customer.getLastUpdated().format(DateTimeFormatter.ISO_LOCAL_DATE));
+            String lastUpdated = customer.getLastUpdated().format(DateTimeFormatter.ISO_LOCAL_DATE);
+            updatedCell.setCellValue(lastUpdated);
             updatedCell.setCellStyle(rowDateStyle);
+            widths.track(11, lastUpdated);
             
             rowNum++;
         }
         
+        // The total is a formula, so size its column from the sum computed above
+        widths.trackCurrency(2, totalBalance);
+        
         // Add a total row at the bottom
         Row totalRow = sheet.createRow(rowNum);
         totalRow.setHeightInPoints(20);
         
-        CellStyle totalLabelStyle = workbook.createCellStyle();
-        totalLabelStyle.setFillForegroundColor(IndexedColors.GREY_25_PERCENT.getIndex());
-        totalLabelStyle.setFillPattern(FillPatternType.SOLID_FOREGROUND);
-        totalLabelStyle.setBorderBottom(BorderStyle.THIN);
-        totalLabelStyle.setBorderTop(BorderStyle.MEDIUM);
-        totalLabelStyle.setBorderLeft(BorderStyle.THIN);
-        totalLabelStyle.setBorderRight(BorderStyle.THIN);
-        Font totalFont = workbook.createFont();
-        totalFont.setBold(true);
-        totalLabelStyle.setFont(totalFont);
+        CellStyle totalLabelStyle = styles.get(ReportStyles.TOTAL_LABEL);
         
         // Total label (spans first two columns)
         Cell totalLabelCell = totalRow.createCell(0);
@@ -696,9 +1738,7 @@ public class ExcelService {
         sheet.addMergedRegion(new CellRangeAddress(rowNum, rowNum, 0, 1));
         
         // Total balance
-        CellStyle totalBalanceStyle = workbook.createCellStyle();
-        totalBalanceStyle.cloneStyleFrom(totalLabelStyle);
-        totalBalanceStyle.setDataFormat(workbook.createDataFormat().getFormat("$#,##0.00"));
+        CellStyle totalBalanceStyle = styles.get(ReportStyles.TOTAL_CURRENCY);
         
         Cell totalBalanceCell = totalRow.createCell(2);
         totalBalanceCell.setCellFormula(String.format("SUM(%s%d:%s%d)", 
@@ -711,11 +1751,8 @@ public class ExcelService {
             cell.setCellStyle(totalLabelStyle);
         }
         
-        // Auto-size columns and add padding
-        for (int i = 0; i < CUSTOMER_HEADERS.length; i++) {
-            sheet.autoSizeColumn(i);
-            sheet.setColumnWidth(i, sheet.getColumnWidth(i) + 500);
-        }
+        // Size columns from the tracked values and add padding
+        widths.applyTo(sheet, 500);
         
         // Freeze panes
         sheet.createFreezePane(0, tableStartRow + 1);
@@ -728,61 +1765,121 @@ public class ExcelService {
         Row hyperlinkInfoRow = sheet.createRow(rowNum + 2);
         Cell hyperlinkInfoCell = hyperlinkInfoRow.createCell(0);
         hyperlinkInfoCell.setCellValue("Click on Customer IDs to view their open items in the 'Open Items' sheet");
-
-        CellStyle hyperlinkInfoStyle = workbook.createCellStyle();
-        Font hyperlinkInfoFont = workbook.createFont();
-        hyperlinkInfoFont.setItalic(true);
-        hyperlinkInfoFont.setColor(IndexedColors.GREY_50_PERCENT.getIndex());
-        hyperlinkInfoStyle.setFont(hyperlinkInfoFont);
-        hyperlinkInfoCell.setCellStyle(hyperlinkInfoStyle);
+        hyperlinkInfoCell.setCellStyle(styles.get(ReportStyles.NOTE));
 
         // Merge cells for the hyperlink info
         sheet.addMergedRegion(new CellRangeAddress(rowNum + 2, rowNum + 2, 0, CUSTOMER_HEADERS.length - 1));
     }
-    
-    /**
-     * Creates a text cell style for the customer list
-     */
-    private CellStyle createTextCellStyle(Workbook workbook) {
-        CellStyle style = workbook.createCellStyle();
-        style.setBorderBottom(BorderStyle.THIN);
-        style.setBorderTop(BorderStyle.THIN);
-        style.setBorderLeft(BorderStyle.THIN);
-        style.setBorderRight(BorderStyle.THIN);
-        style.setVerticalAlignment(VerticalAlignment.CENTER);
-        return style;
-    }
 
     /**
-     * Creates a hyperlink text cell style
-     */
-    private CellStyle createHyperlinkStyle(Workbook workbook) {
-        CellStyle style = createTextCellStyle(workbook);
-        Font hyperlinkFont = workbook.createFont();
-        hyperlinkFont.setUnderline(Font.U_SINGLE);
-        hyperlinkFont.setColor(IndexedColors.BLUE.getIndex());
-        style.setFont(hyperlinkFont);
-        return style;
-    }
-    
-    /**
-     * Creates a boolean cell style for yes/no values
+     * Writes the Customer List sheet as XML, with the same content and styles as
+     * {@link #createCustomerListSheet(Workbook, CellStyleRegistry, Sheet, List)}
      */
-    private CellStyle createBooleanCellStyle(Workbook workbook) {
-        CellStyle style = workbook.createCellStyle();
-        style.setBorderBottom(BorderStyle.THIN);
-        style.setBorderTop(BorderStyle.THIN);
-        style.setBorderLeft(BorderStyle.THIN);
-        style.setBorderRight(BorderStyle.THIN);
-        style.setAlignment(HorizontalAlignment.CENTER);
-        style.setVerticalAlignment(VerticalAlignment.CENTER);
-        return style;
+    void writeCustomerListPart(CellStyleRegistry styles, SheetXmlWriter part, List<Customer> customerData)
+            throws IOException {
+        // Title, generation date and a blank row
+        part.startRow(0);
+        part.text(0, "Customer List - Outstanding Balances", styles.get(ReportStyles.SHEET_TITLE).getIndex());
+        part.endRow();
+        part.mergeCells(0, 0, 0, CUSTOMER_HEADERS.length - 1);
+        int noteStyle = styles.get(ReportStyles.NOTE).getIndex();
+        part.startRow(1);
+        part.text(0, "Generated on: " + LocalDate.now().format(DateTimeFormatter.ofPattern("MMMM d, yyyy")), noteStyle);
+        part.endRow();
+
+        // Header row
+        int tableStartRow = LIST_TABLE_START_ROW;
+        int headerStyle = styles.get(ReportStyles.HEADER).getIndex();
+        ColumnWidthEstimator widths = new ColumnWidthEstimator(CUSTOMER_HEADERS.length);
+        part.startRow(tableStartRow);
+        for (int i = 0; i < CUSTOMER_HEADERS.length; i++) {
+            part.text(i, CUSTOMER_HEADERS[i], headerStyle);
+            widths.track(i, CUSTOMER_HEADERS[i], true);
+        }
+        part.endRow();
+
+        // Style indexes of the data cells, by row parity
+        int[] textStyles = rowStyles(styles, ReportStyles.TEXT);
+        int[] hyperlinkStyles = rowStyles(styles, ReportStyles.HYPERLINK);
+        int[] currencyStyles = rowStyles(styles, ReportStyles.CURRENCY);
+        int[] dateStyles = rowStyles(styles, ReportStyles.DATE);
+        int[] booleanStyles = rowStyles(styles, ReportStyles.BOOLEAN);
+
+        // Data rows; each customer ID links to the header row of the Open Items sheet, where its filter is
+        int rowNum = tableStartRow + 1;
+        double totalBalance = 0;
+        for (Customer customer : customerData) {
+            int parity = (rowNum - tableStartRow) % 2 == 0 ? 1 : 0;
+            String customerId = customer.getCustomerId();
+            double balance = customer.getBalance().doubleValue();
+            String notified = customer.isNotified() ? "Yes" : "No";
+
+            part.startRow(rowNum);
+            part.text(0, customerId, hyperlinkStyles[parity]);
+            part.text(1, customer.getCustomerName(), textStyles[parity]);
+            part.number(2, balance, currencyStyles[parity]);
+            part.text(3, customer.getReference(), textStyles[parity]);
+            part.text(4, customer.getAddressLine1(), textStyles[parity]);
+            part.text(5, customer.getAddressLine2(), textStyles[parity]);
+            part.text(6, customer.getCity(), textStyles[parity]);
+            part.text(7, customer.getState(), textStyles[parity]);
+            part.text(8, customer.getPostalCode(), textStyles[parity]);
+            part.text(9, customer.getCountry(), textStyles[parity]);
+            part.text(10, notified, booleanStyles[parity]);
+            part.isoDate(11, customer.getLastUpdated(), dateStyles[parity]);
+            part.endRow();
+            part.hyperlink(rowNum, 0, "'Open Items'!A4",
+                    "Click to view Open Items, then filter by Customer ID: " + customerId);
+
+            widths.track(0, customerId);
+            widths.track(1, customer.getCustomerName());
+            widths.trackCurrency(2, balance);
+            widths.track(3, customer.getReference());
+            widths.track(4, customer.getAddressLine1());
+            widths.track(5, customer.getAddressLine2());
+            widths.track(6, customer.getCity());
+            widths.track(7, customer.getState());
+            widths.track(8, customer.getPostalCode());
+            widths.track(9, customer.getCountry());
+            widths.track(10, notified);
+            totalBalance += balance;
+            rowNum++;
+        }
+        if (!customerData.isEmpty()) {
+            widths.track(11, ISO_DATE_SAMPLE);
+        }
+
+        // The total is a formula, so size its column from the sum computed above
+        widths.trackCurrency(2, totalBalance);
+
+        // Total row, styled across the whole table
+        int totalLabelStyle = styles.get(ReportStyles.TOTAL_LABEL).getIndex();
+        part.startRow(rowNum, 20);
+        part.text(0, "TOTAL OUTSTANDING", totalLabelStyle);
+        part.formula(2, String.format("SUM(%s%d:%s%d)",
+                getColumnName(2), tableStartRow + 1, getColumnName(2), rowNum),
+                styles.get(ReportStyles.TOTAL_CURRENCY).getIndex());
+        for (int i = 3; i < CUSTOMER_HEADERS.length; i++) {
+            part.blank(i, totalLabelStyle);
+        }
+        part.endRow();
+        part.mergeCells(rowNum, rowNum, 0, 1);
+
+        // Footer about the hyperlinks
+        part.startRow(rowNum + 2);
+        part.text(0, "Click on Customer IDs to view their open items in the 'Open Items' sheet", noteStyle);
+        part.endRow();
+        part.mergeCells(rowNum + 2, rowNum + 2, 0, CUSTOMER_HEADERS.length - 1);
+
+        widths.applyTo(part, 500);
+        part.freezeRows(tableStartRow + 1);
+        part.autoFilter(tableStartRow, 0, CUSTOMER_HEADERS.length - 1);
     }
     
     /**
      * Creates the title section with company branding
      */
-    private void createTitleSection(XSSFWorkbook workbook, Sheet sheet, YearMonth reportMonth) {
+    private void createTitleSection(CellStyleRegistry styles, ColumnWidthEstimator widths, Sheet sheet, YearMonth reportMonth) {
         // Create a merged cell for the title
         sheet.addMergedRegion(new CellRangeAddress(0, 0, 0, HEADERS.length - 1));
         
@@ -792,77 +1889,47 @@ public class ExcelService {
         
         Cell titleCell = titleRow.createCell(0);
         titleCell.setCellValue("Ageing Report");
-        
-        CellStyle titleStyle = workbook.createCellStyle();
-        titleStyle.setAlignment(HorizontalAlignment.CENTER);
-        titleStyle.setVerticalAlignment(VerticalAlignment.CENTER);
-        
-        // Set background color
-        titleStyle.setFillForegroundColor(IndexedColors.WHITE.getIndex());
-        titleStyle.setFillPattern(FillPatternType.SOLID_FOREGROUND);
-        
-        // Set border
-        titleStyle.setBorderBottom(BorderStyle.NONE);
-        titleStyle.setBorderTop(BorderStyle.NONE);
-        titleStyle.setBorderLeft(BorderStyle.NONE);
-        titleStyle.setBorderRight(BorderStyle.NONE);
-        
-        // Create title font
-        Font titleFont = workbook.createFont();
-        titleFont.setFontHeightInPoints((short) 18);
-        titleFont.setBold(true);
-        titleFont.setColor(IndexedColors.DARK_BLUE.getIndex());
-        titleStyle.setFont(titleFont);
-        
-        titleCell.setCellStyle(titleStyle);
+        titleCell.setCellStyle(styles.get(ReportStyles.REPORT_TITLE));
         
         // Subtitle with date
         Row subtitleRow = sheet.createRow(1);
         Cell subtitleCell = subtitleRow.createCell(0);
         
-        String reportDate = LocalDate.now().format(DateTimeFormatter.ofPattern("MMMM d, yyyy"));
-        String monthInfo = reportMonth != null ? 
-            "Data as of " + reportMonth.format(DateTimeFormatter.ofPattern("MMMM yyyy")) : 
-            "Report generated on " + reportDate;
-            
+        String monthInfo = ageingSubtitle(reportMonth);
         subtitleCell.setCellValue(monthInfo);
-        
-        CellStyle subtitleStyle = workbook.createCellStyle();
-        Font subtitleFont = workbook.createFont();
-        subtitleFont.setItalic(true);
-        subtitleFont.setColor(IndexedColors.GREY_50_PERCENT.getIndex());
-        subtitleStyle.setFont(subtitleFont);
-        subtitleCell.setCellStyle(subtitleStyle);
+        subtitleCell.setCellStyle(styles.get(ReportStyles.NOTE));
+        widths.track(0, monthInfo);
         
         // Company info (normally would come from a parameter)
         Row companyRow = sheet.createRow(2);
         Cell companyCell = companyRow.createCell(0);
-        companyCell.setCellValue("Company: Financial Services Ltd.");
+        companyCell.setCellValue(AGEING_COMPANY_LINE);
+        widths.track(0, companyCell.getStringCellValue());
         
         // Leave a blank row
         sheet.createRow(3);
     }
     
+    /**
+     * @param reportMonth the first month of ageing data, or null if there is none
+     * @return the Ageing Report sheet's subtitle
+     */
+    private static String ageingSubtitle(YearMonth reportMonth) {
+        String reportDate = LocalDate.now().format(DateTimeFormatter.ofPattern("MMMM d, yyyy"));
+        return reportMonth != null ?
+            "Data as of " + reportMonth.format(DateTimeFormatter.ofPattern("MMMM yyyy")) :
+            "Report generated on " + reportDate;
+    }
+
     /**
      * Adds a summary row at the bottom of the data
      */
-    private void addSummaryRow(Workbook workbook, Sheet sheet, int rowNum, int firstDataRow, int lastDataRow) {
+    private void addSummaryRow(CellStyleRegistry styles, Sheet sheet, int rowNum, int firstDataRow, int lastDataRow) {
         Row summaryRow = sheet.createRow(rowNum);
         summaryRow.setHeightInPoints(20); // Slightly taller row
         
-        // Create summary row style
-        CellStyle summaryStyle = workbook.createCellStyle();
-        summaryStyle.setFillForegroundColor(IndexedColors.GREY_25_PERCENT.getIndex());
-        summaryStyle.setFillPattern(FillPatternType.SOLID_FOREGROUND);
-        summaryStyle.setBorderBottom(BorderStyle.THIN);
-        summaryStyle.setBorderTop(BorderStyle.MEDIUM);
-        summaryStyle.setBorderLeft(BorderStyle.THIN);
-        summaryStyle.setBorderRight(BorderStyle.THIN);
-        summaryStyle.setDataFormat(workbook.createDataFormat().getFormat("$#,##0.00"));
-        
-        Font summaryFont = workbook.createFont();
-        summaryFont.setBold(true);
-        summaryStyle.setFont(summaryFont);
+        // Summary row style
+        CellStyle summaryStyle = styles.get(ReportStyles.TOTAL_CURRENCY);
         
         // Create summary label
         Cell labelCell = summaryRow.createCell(0);
@@ -879,9 +1946,7 @@ public class ExcelService {
         }
         
         // Average for the percentage column
-        CellStyle avgPercentStyle = workbook.createCellStyle();
-        avgPercentStyle.cloneStyleFrom(summaryStyle);
-        avgPercentStyle.setDataFormat(workbook.createDataFormat().getFormat("0.00%"));
+        CellStyle avgPercentStyle = styles.get(ReportStyles.TOTAL_PERCENTAGE);
         
         Cell avgCell = summaryRow.createCell(8);
         avgCell.setCellFormula(String.format("AVERAGE(%s%d:%s%d)", 
@@ -892,17 +1957,11 @@ public class ExcelService {
     /**
      * Adds a footer with notes
      */
-    private void addFooter(Workbook workbook, Sheet sheet, int rowNum) {
+    private void addFooter(CellStyleRegistry styles, Sheet sheet, int rowNum) {
         Row footerRow = sheet.createRow(rowNum);
         Cell footerCell = footerRow.createCell(0);
         footerCell.setCellValue("Note: This report was automatically generated. For questions, contact finance@example.com");
-        
-        CellStyle footerStyle = workbook.createCellStyle();
-        Font footerFont = workbook.createFont();
-        footerFont.setItalic(true);
-        footerFont.setColor(IndexedColors.GREY_50_PERCENT.getIndex());
-        footerStyle.setFont(footerFont);
-        footerCell.setCellStyle(footerStyle);
+        footerCell.setCellStyle(styles.get(ReportStyles.NOTE));
         
         // Merge cells for the footer
         sheet.addMergedRegion(new CellRangeAddress(rowNum, rowNum, 0, HEADERS.length - 1));
@@ -921,30 +1980,40 @@ public class ExcelService {
     }
     
     /**
-     * Writes the Excel report to a file at the specified path
-     * @param excelContent byte array containing the Excel file
+     * Writes the Excel report to a file at the specified path. The file is written in the background
+     * and only appears, complete, once it has been fully written.
+     * @param excelContent byte array containing the Excel file; it must not be modified afterwards
      * @param filePath path where the file should be saved
      * @param fileName name of the file to save
-     * @throws IOException if there's an error writing the file
+     * @throws IOException if the file can't be queued for writing
      */
     public void saveExcelToFile(byte[] excelContent, String filePath, String fileName) throws IOException {
-        java.nio.file.Path directoryPath = java.nio.file.Paths.get(filePath);
-        java.nio.file.Path fullPath = directoryPath.resolve(fileName);
-        
-        // Create directories if they don't exist
-        java.nio.file.Files.createDirectories(directoryPath);
-        
-        // Write the file
-        java.nio.file.Files.write(fullPath, excelContent);
+        reportFileWriter.save(excelContent, Paths.get(filePath).resolve(fileName));
+    }
+    
+    /**
+     * Opens a stream for writing an Excel report to a file at the specified path. The file is written
+     * in the background and only appears, complete, once the stream is committed.
+     * @param filePath path where the file should be saved
+     * @param fileName name of the file to save
+     * @return stream writing to the file; commit it once the report is complete, or close it to discard the file
+     */
+    public ReportFileWriter.PendingFile openExcelFile(String filePath, String fileName) {
+        return reportFileWriter.open(Paths.get(filePath).resolve(fileName));
     }
     
     /**
      * Creates a cell with currency value, using different styles for positive and negative values
+     * @return the value written to the cell
      */
-    private void createConditionalCurrencyCell(Row row, int cellIndex, BigDecimal value, CellStyle positiveStyle, CellStyle negativeStyle) {
+    private double createConditionalCurrencyCell(Row row, int cellIndex, BigDecimal value, CellStyle positiveStyle,
+                                                 CellStyle negativeStyle, ColumnWidthEstimator widths) {
         Cell cell = row.createCell(cellIndex);
-        cell.setCellValue(value.doubleValue());
+        double cellValue = value.doubleValue();
+        cell.setCellValue(cellValue);
         cell.setCellStyle(value.compareTo(BigDecimal.ZERO) < 0 ? negativeStyle : positiveStyle);
+        widths.trackCurrency(cellIndex, cellValue);
+        return cellValue;
     }
     
     /**
@@ -956,158 +2025,28 @@ public class ExcelService {
         cell.setCellStyle(style);
     }
     
-    /**
-     * Creates the header style with custom blue background
-     */
-    private CellStyle createHeaderStyle(Workbook workbook) {
-        CellStyle style = workbook.createCellStyle();
-        
-        // Set custom blue color for headers
-        XSSFColor headerColor = new XSSFColor(HEADER_BLUE_RGB, null);
-        style.setFillForegroundColor(IndexedColors.ROYAL_BLUE.getIndex());
-        style.setFillPattern(FillPatternType.SOLID_FOREGROUND);
-        
-        // Add borders
-        style.setBorderBottom(BorderStyle.THIN);
-        style.setBorderTop(BorderStyle.THIN);
-        style.setBorderLeft(BorderStyle.THIN);
-        style.setBorderRight(BorderStyle.THIN);
-        
-        // Text alignment
-        style.setAlignment(HorizontalAlignment.CENTER);
-        style.setVerticalAlignment(VerticalAlignment.CENTER);
-        
-        // Create white bold font for header text
-        Font font = workbook.createFont();
-        font.setBold(true);
-        font.setColor(IndexedColors.WHITE.getIndex());
-        style.setFont(font);
-        
-        return style;
-    }
-    
-    /**
-     * Creates date cell style
-     */
-    private CellStyle createDateCellStyle(Workbook workbook) {
-        CellStyle style = workbook.createCellStyle();
-        style.setBorderBottom(BorderStyle.THIN);
-        style.setBorderTop(BorderStyle.THIN);
-        style.setBorderLeft(BorderStyle.THIN);
-        style.setBorderRight(BorderStyle.THIN);
-        style.setAlignment(HorizontalAlignment.LEFT);
-        return style;
-    }
-    
-    /**
-     * Creates currency style
-     */
-    private CellStyle createCurrencyStyle(Workbook workbook) {
-        CellStyle style = workbook.createCellStyle();
-        style.setBorderBottom(BorderStyle.THIN);
-        style.setBorderTop(BorderStyle.THIN);
-        style.setBorderLeft(BorderStyle.THIN);
-        style.setBorderRight(BorderStyle.THIN);
-        style.setDataFormat(workbook.createDataFormat().getFormat("$#,##0.00"));
-        style.setAlignment(HorizontalAlignment.RIGHT);
-        return style;
-    }
-    
-    /**
-     * Creates a currency style specifically for negative values
-     */
-    private CellStyle createNegativeCurrencyStyle(Workbook workbook) {
-        CellStyle style = workbook.createCellStyle();
-        style.setBorderBottom(BorderStyle.THIN);
-        style.setBorderTop(BorderStyle.THIN);
-        style.setBorderLeft(BorderStyle.THIN);
-        style.setBorderRight(BorderStyle.THIN);
-        style.setDataFormat(workbook.createDataFormat().getFormat("$#,##0.00"));
-        style.setAlignment(HorizontalAlignment.RIGHT);
-        
-        // Red font for negative values
-        Font font = workbook.createFont();
-        font.setColor(IndexedColors.RED.getIndex());
-        style.setFont(font);
-        
-        return style;
-    }
-    
-    /**
-     * Creates percentage style
-     */
-    private CellStyle createPercentageStyle(Workbook workbook) {
-        CellStyle style = workbook.createCellStyle();
-        style.setBorderBottom(BorderStyle.THIN);
-        style.setBorderTop(BorderStyle.THIN);
-        style.setBorderLeft(BorderStyle.THIN);
-        style.setBorderRight(BorderStyle.THIN);
-        style.setDataFormat(workbook.createDataFormat().getFormat("0.00%"));
-        style.setAlignment(HorizontalAlignment.RIGHT);
-        return style;
-    }
-    
     /**
      * Creates the Summary sheet with company information and report statistics
      */
-    private void createSummarySheet(XSSFWorkbook workbook, Sheet sheet, CompanySummary summary,
-                                   List<Customer> customerData, List<Item> itemData) {
+    void createSummarySheet(Workbook workbook, CellStyleRegistry styles, Sheet sheet, CompanySummary summary,
+                           List<Customer> customerData, int itemCount) {
         // Set column widths for better readability
         sheet.setColumnWidth(0, 6000);
         sheet.setColumnWidth(1, 8000);
 
-        // Create styles
-        CellStyle headerStyle = workbook.createCellStyle();
-        headerStyle.setAlignment(HorizontalAlignment.LEFT);
-        Font headerFont = workbook.createFont();
-        headerFont.setBold(true);
-        headerFont.setFontHeightInPoints((short) 12);
-        headerFont.setColor(IndexedColors.DARK_BLUE.getIndex());
-        headerStyle.setFont(headerFont);
-
-        CellStyle labelStyle = workbook.createCellStyle();
-        labelStyle.setAlignment(HorizontalAlignment.LEFT);
-        Font labelFont = workbook.createFont();
-        labelFont.setBold(true);
-        labelStyle.setFont(labelFont);
-
-        CellStyle valueStyle = workbook.createCellStyle();
-        valueStyle.setAlignment(HorizontalAlignment.LEFT);
-
-        CellStyle currencyStyle = createCurrencyStyle(workbook);
-        currencyStyle.setBorderBottom(BorderStyle.NONE);
-        currencyStyle.setBorderTop(BorderStyle.NONE);
-        currencyStyle.setBorderLeft(BorderStyle.NONE);
-        currencyStyle.setBorderRight(BorderStyle.NONE);
-
-        CellStyle dateTimeStyle = workbook.createCellStyle();
-        dateTimeStyle.setAlignment(HorizontalAlignment.LEFT);
-        CreationHelper createHelper = workbook.getCreationHelper();
-        dateTimeStyle.setDataFormat(createHelper.createDataFormat().getFormat("yyyy-MM-dd HH:mm:ss"));
-
-        CellStyle sectionHeaderStyle = workbook.createCellStyle();
-        sectionHeaderStyle.setAlignment(HorizontalAlignment.LEFT);
-        sectionHeaderStyle.setFillForegroundColor(IndexedColors.GREY_25_PERCENT.getIndex());
-        sectionHeaderStyle.setFillPattern(FillPatternType.SOLID_FOREGROUND);
-        Font sectionFont = workbook.createFont();
-        sectionFont.setBold(true);
-        sectionFont.setFontHeightInPoints((short) 11);
-        sectionHeaderStyle.setFont(sectionFont);
+        // Look up styles
+        CellStyle labelStyle = styles.get(ReportStyles.LABEL);
+        CellStyle valueStyle = styles.get(ReportStyles.VALUE);
+        CellStyle currencyStyle = styles.get(ReportStyles.SUMMARY_CURRENCY);
+        CellStyle dateTimeStyle = styles.get(ReportStyles.DATE_TIME);
+        CellStyle sectionHeaderStyle = styles.get(ReportStyles.SECTION_HEADER);
 
         // Title
         Row titleRow = sheet.createRow(0);
         titleRow.setHeightInPoints(30);
         Cell titleCell = titleRow.createCell(0);
         titleCell.setCellValue("COMPANY SUMMARY REPORT");
-
-        CellStyle titleStyle = workbook.createCellStyle();
-        titleStyle.setAlignment(HorizontalAlignment.CENTER);
-        Font titleFont = workbook.createFont();
-        titleFont.setBold(true);
-        titleFont.setFontHeightInPoints((short) 16);
-        titleFont.setColor(IndexedColors.DARK_BLUE.getIndex());
-        titleStyle.setFont(titleFont);
-        titleCell.setCellStyle(titleStyle);
+        titleCell.setCellStyle(styles.get(ReportStyles.SUMMARY_TITLE));
 
         sheet.addMergedRegion(new CellRangeAddress(0, 0, 0, 1));
 
@@ -1205,11 +2144,7 @@ public class ExcelService {
         websiteValue.setHyperlink(link);
 
         // Apply hyperlink style
-        CellStyle hyperlinkStyle = createHyperlinkStyle(workbook);
-        hyperlinkStyle.setBorderBottom(BorderStyle.NONE);
-        hyperlinkStyle.setBorderTop(BorderStyle.NONE);
-        hyperlinkStyle.setBorderLeft(BorderStyle.NONE);
-        hyperlinkStyle.setBorderRight(BorderStyle.NONE);
+        CellStyle hyperlinkStyle = styles.get(ReportStyles.SUMMARY_HYPERLINK);
         websiteValue.setCellStyle(hyperlinkStyle);
 
         // Add a space row
@@ -1231,7 +2166,8 @@ public class ExcelService {
 
         // Format the date properly
         DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
-        loadDateValue.setCellValue(summary.getLastDataLoadDate().format(formatter));
+        loadDateValue.setCellValue(summary.getLastDataLoadDate() != null
+                ? summary.getLastDataLoadDate().format(formatter) : "Not loaded");
         loadDateValue.setCellStyle(dateTimeStyle);
 
         // Report Generated By
@@ -1258,7 +2194,7 @@ public class ExcelService {
         int actualActiveDebtors = (int) customerData.stream()
                 .filter(c -> c.getBalance().compareTo(BigDecimal.ZERO) > 0)
                 .count();
-        int actualTotalItems = itemData.size();
+        int actualTotalItems = itemCount;
 
         BigDecimal actualTotalOutstanding = customerData.stream()
                 .map(Customer::getBalance)
@@ -1355,17 +2291,66 @@ public class ExcelService {
         Row footerRow = sheet.createRow(rowNum + 2);
         Cell footerCell = footerRow.createCell(0);
         footerCell.setCellValue("Report generated on: " + LocalDate.now().format(DateTimeFormatter.ofPattern("MMMM d, yyyy")));
-
-        CellStyle footerStyle = workbook.createCellStyle();
-        Font footerFont = workbook.createFont();
-        footerFont.setItalic(true);
-        footerFont.setColor(IndexedColors.GREY_50_PERCENT.getIndex());
-        footerStyle.setFont(footerFont);
-        footerCell.setCellStyle(footerStyle);
+        footerCell.setCellStyle(styles.get(ReportStyles.NOTE));
 
         sheet.addMergedRegion(new CellRangeAddress(rowNum + 2, rowNum + 2, 0, 1));
     }
 
+    /**
+     * Writes the Summary sheet's data cells over its template, which holds its labels, sections, navigation
+     * links and footer; each value goes in the row {@link #createSummarySheet} gives it
+     */
+    void writeSummaryPart(CellStyleRegistry styles, SheetXmlWriter part, CompanySummary summary,
+                          List<Customer> customerData, int itemCount) throws IOException {
+        int valueStyle = styles.get(ReportStyles.VALUE).getIndex();
+        int currencyStyle = styles.get(ReportStyles.SUMMARY_CURRENCY).getIndex();
+
+        // Company and contact information
+        writeSummaryText(part, 3, summary.getCompanyName(), valueStyle);
+        writeSummaryText(part, 4, summary.getBusinessNumber(), valueStyle);
+        writeSummaryText(part, 5, summary.getAddress(), valueStyle);
+        writeSummaryText(part, 6, summary.getCity() + ", " + summary.getState() + " " + summary.getPostalCode(),
+                valueStyle);
+        writeSummaryText(part, 7, summary.getCountry(), valueStyle);
+        writeSummaryText(part, 9, summary.getPhone(), valueStyle);
+        writeSummaryText(part, 10, summary.getEmail(), valueStyle);
+        // The template's relationships link the website
+        writeSummaryText(part, 11, summary.getWebsite(), styles.get(ReportStyles.SUMMARY_HYPERLINK).getIndex());
+
+        // Report data
+        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+        writeSummaryText(part, 14, summary.getLastDataLoadDate() != null
+                ? summary.getLastDataLoadDate().format(formatter) : "Not loaded",
+                styles.get(ReportStyles.DATE_TIME).getIndex());
+        writeSummaryText(part, 15, summary.getReportGeneratedBy(), valueStyle);
+
+        // Summary and financial statistics
+        long activeDebtors = customerData.stream()
+                .filter(c -> c.getBalance().compareTo(BigDecimal.ZERO) > 0)
+                .count();
+        BigDecimal totalOutstanding = customerData.stream()
+                .map(Customer::getBalance)
+                .reduce(BigDecimal.ZERO, BigDecimal::add);
+        writeSummaryNumber(part, 18, customerData.size(), valueStyle);
+        writeSummaryNumber(part, 19, activeDebtors, valueStyle);
+        writeSummaryNumber(part, 20, itemCount, valueStyle);
+        writeSummaryNumber(part, 22, totalOutstanding.doubleValue(), currencyStyle);
+        writeSummaryNumber(part, 23, summary.getTotalOverdueBalance().doubleValue(), currencyStyle);
+        writeSummaryNumber(part, 24, summary.getTotalOver90DaysBalance().doubleValue(), currencyStyle);
+    }
+
+    private static void writeSummaryText(SheetXmlWriter part, int row, String value, int style) throws IOException {
+        part.startRow(row);
+        part.text(1, value, style);
+        part.endRow();
+    }
+
+    private static void writeSummaryNumber(SheetXmlWriter part, int row, double value, int style) throws IOException {
+        part.startRow(row);
+        part.number(1, value, style);
+        part.endRow();
+    }
+
     /**
      * Adds a line chart showing aging trends over time
      * @param workbook The workbook to add the chart to
@@ -1374,7 +2359,7 @@ public class ExcelService {
      * @param lastDataRow The last row containing data
      * @param numMonths The number of months of data
      */
-    private void addAgeingTrendChart(XSSFWorkbook workbook, Sheet sheet, int firstDataRow, int lastDataRow, int numMonths) {
+    private void addAgeingTrendChart(Workbook workbook, Sheet sheet, int firstDataRow, int lastDataRow, int numMonths) {
         // Position the chart below the data table with some padding
         int chartStartRow = lastDataRow + 4; // Leave a few rows after the summary row
 
@@ -1456,7 +2441,7 @@ public class ExcelService {
      * @param numMonths The number of months of data
      * @param startRow The row to start the chart at
      */
-    private void addPercentageChart(XSSFWorkbook workbook, Sheet sheet, int firstDataRow, int lastDataRow, int numMonths, int startRow) {
+    private void addPercentageChart(Workbook workbook, Sheet sheet, int firstDataRow, int lastDataRow, int numMonths, int startRow) {
         // Create drawing canvas
         Drawing<?> drawing = sheet.createDrawingPatriarch();
 
@@ -1499,20 +2484,4 @@ public class ExcelService {
         leftAxis.setCrosses(AxisCrosses.AUTO_ZERO);
         leftAxis.setNumberFormat("0.00%");
     }
-
-    /**
-     * Creates alternating row style based on another style
-     */
-    private CellStyle createAlternateRowStyle(Workbook workbook, CellStyle baseStyle) {
-        CellStyle style = workbook.createCellStyle();
-        
-        // Clone the base style first
-        style.cloneStyleFrom(baseStyle);
-        
-        // Set alternate row color
-        style.setFillForegroundColor(IndexedColors.PALE_BLUE.getIndex());
-        style.setFillPattern(FillPatternType.SOLID_FOREGROUND);
-        
-        return style;
-    }
 }
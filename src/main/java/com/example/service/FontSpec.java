@@ -0,0 +1,33 @@
+package com.example.service;
+
+import org.apache.poi.ss.usermodel.Font;
+import org.apache.poi.ss.usermodel.IndexedColors;
+
+/**
+ * Immutable description of a font, used as part of a {@link CellStyleSpec} key.
+ * A null color or height leaves the workbook default in place.
+ */
+public record FontSpec(boolean bold, boolean italic, byte underline, Short color, Short heightInPoints) {
+
+    public static final FontSpec DEFAULT = new FontSpec(false, false, Font.U_NONE, null, null);
+
+    public FontSpec withBold() {
+        return new FontSpec(true, italic, underline, color, heightInPoints);
+    }
+
+    public FontSpec withItalic() {
+        return new FontSpec(bold, true, underline, color, heightInPoints);
+    }
+
+    public FontSpec withUnderline(byte underline) {
+        return new FontSpec(bold, italic, underline, color, heightInPoints);
+    }
+
+    public FontSpec withColor(IndexedColors color) {
+        return new FontSpec(bold, italic, underline, color.getIndex(), heightInPoints);
+    }
+
+    public FontSpec withHeight(int heightInPoints) {
+        return new FontSpec(bold, italic, underline, color, (short) heightInPoints);
+    }
+}
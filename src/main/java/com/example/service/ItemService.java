@@ -1,17 +1,27 @@
 package com.example.service;
 
+import com.example.client.UpstreamClient;
+import com.example.client.UpstreamResponse;
+import com.example.client.Validators;
 import com.example.model.Customer;
 import com.example.model.Item;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Service;
 
-import java.math.BigDecimal;
-import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Random;
-import java.util.Set;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.IntFunction;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -19,128 +29,210 @@ import org.slf4j.LoggerFactory;
 public class ItemService {
 
     private static final Logger logger = LoggerFactory.getLogger(ItemService.class);
-    private final Random random = new Random();
     private final CustomerService customerService;
+    private final CompanySummaryService companySummaryService;
+    private final MockDataGenerator mockDataGenerator;
+    private final UpstreamClient upstreamClient;
+    private final CompanyDataCache companyDataCache;
 
-    private final String[] users = {
-            "john.doe", "jane.smith", "robert.johnson", "sarah.williams", "michael.brown",
-            "lisa.jones", "david.miller", "emily.davis", "james.wilson", "amanda.taylor"
-    };
+    // Items requested per page from the items endpoint
+    @Value("${items.page-size:1000}")
+    private int pageSize;
 
     @Autowired
-    public ItemService(CustomerService customerService) {
+    public ItemService(CustomerService customerService, CompanySummaryService companySummaryService,
+                       MockDataGenerator mockDataGenerator, @Nullable UpstreamClient upstreamClient,
+                       CompanyDataCache companyDataCache) {
         this.customerService = customerService;
+        this.companySummaryService = companySummaryService;
+        this.mockDataGenerator = mockDataGenerator;
+        this.upstreamClient = upstreamClient;
+        this.companyDataCache = companyDataCache;
     }
 
     /**
-     * Mock service that would normally call an external API to get open items data
+     * Gets all the open items for a company as a list, for the data version in its current summary
      * @param companyId the company ID to retrieve items for
-     * @return List of open items for customers with IDs matching those from CustomerService
+     * @return Unmodifiable list of open items for customers with IDs matching those from CustomerService
      */
     public List<Item> getOpenItems(String companyId) {
-        // In a real application, this would call the external endpoint
-        // someurl/accounting/companies/{companyId}/items
+        return getOpenItems(companyId, companySummaryService.getCompanySummary(companyId).getLastDataLoadDate());
+    }
+
+    /**
+     * Gets all the open items for a company as a list, reusing the items fetched earlier for the same data load
+     * @param companyId the company ID to retrieve items for
+     * @param dataVersion the company's last data load date
+     * @return Unmodifiable list of open items
+     */
+    public List<Item> getOpenItems(String companyId, LocalDateTime dataVersion) {
+        CompanyDataCache.Key key = new CompanyDataCache.Key(companyId, "items");
+        return companyDataCache.get(key, dataVersion, SnapshotCodec.ITEM, previous -> {
+            if (upstreamClient != null) {
+                return fetchOpenItemPages(companyId, previous);
+            }
+            return new CompanyDataCache.Dataset<>(generateOpenItems(companyId, dataVersion), List.of());
+        });
+    }
+
+    /**
+     * Streams the open items for a company, fetching them a page at a time as the stream is consumed, so only
+     * one page is held in memory however large the ledger is, unless the items for the data version are already
+     * cached. Fetched pages aren't cached, as that would hold them all.
+     * @param companyId the company ID to retrieve items for
+     * @param dataVersion the company's last data load date, from the summary the report shows; or null
+     * @param customers the customers the report shows; mock items are generated for them, so each item's
+     *                  customer is among them
+     * @return lazily fetched, sequential stream of open items
+     */
+    public Stream<Item> streamOpenItems(String companyId, LocalDateTime dataVersion, List<Customer> customers) {
+        List<Item> cachedItems = companyDataCache.getIfCurrent(new CompanyDataCache.Key(companyId, "items"), dataVersion);
+        if (cachedItems != null) {
+            return cachedItems.stream();
+        }
+
+        IntFunction<List<Item>> pages;
+        if (upstreamClient != null) {
+            // someurl/accounting/companies/{companyId}/items?page={pageNumber}&size={pageSize}
+            pages = pageNumber -> upstreamClient.getOpenItemsPage(companyId, pageNumber, pageSize);
+        } else {
+            MockLedger ledger = mockLedger(companyId, customers);
+            if (ledger == null) {
+                return Stream.empty();
+            }
+            pages = pageNumber -> generateOpenItemsPage(ledger.seed(), ledger.customerIds(), ledger.itemCount(),
+                    pageNumber, pageSize);
+        }
 
+        Iterator<Item> items = new Iterator<>() {
+            private Iterator<Item> page = Collections.emptyIterator();
+            private int pageNumber;
+            private boolean lastPage;
+
+            @Override
+            public boolean hasNext() {
+                // Fetch the next page once the current one is used up; a short page is the last one
+                while (!page.hasNext() && !lastPage) {
+                    List<Item> nextPage = pages.apply(pageNumber++);
+                    lastPage = nextPage.size() < pageSize;
+                    page = nextPage.iterator();
+                }
+                return page.hasNext();
+            }
+
+            @Override
+            public Item next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return page.next();
+            }
+        };
+        return StreamSupport.stream(
+                Spliterators.spliteratorUnknownSize(items, Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    /**
+     * Fetches every page of open items, revalidating each against the same page of the previous fetch so
+     * unchanged pages aren't downloaded again
+     * @param companyId the company ID to retrieve items for
+     * @param previous items fetched for an earlier data load, or null
+     * @return the previous items with the pages' new validators if no page has changed, otherwise the fetched items
+     */
+    private CompanyDataCache.Dataset<Item> fetchOpenItemPages(String companyId, CompanyDataCache.Dataset<Item> previous) {
         List<Item> items = new ArrayList<>();
+        List<Validators> validators = new ArrayList<>();
+        boolean changed = previous == null;
+        for (int pageNumber = 0; ; pageNumber++) {
+            Validators pageValidators = previous != null && pageNumber < previous.validators().size()
+                    && previous.validators().get(pageNumber).isPresent() ? previous.validators().get(pageNumber) : null;
+            // someurl/accounting/companies/{companyId}/items?page={pageNumber}&size={pageSize}
+            UpstreamResponse<List<Item>> response =
+                    upstreamClient.getOpenItemsPage(companyId, pageNumber, pageSize, pageValidators);
+
+            List<Item> page;
+            if (response.isNotModified()) {
+                int from = Math.min(pageNumber * pageSize, previous.records().size());
+                page = previous.records().subList(from, Math.min(from + pageSize, previous.records().size()));
+            } else {
+                page = response.body();
+                changed = true;
+            }
+            items.addAll(page);
+            validators.add(response.validators());
+            if (page.size() < pageSize) {
+                break;
+            }
+        }
+
+        if (!changed && items.size() == previous.records().size()) {
+            return new CompanyDataCache.Dataset<>(previous.records(), List.copyOf(validators));
+        }
+        return new CompanyDataCache.Dataset<>(List.copyOf(items), List.copyOf(validators));
+    }
 
-        // Get customer IDs from CustomerService
-        List<Customer> customers = customerService.getCustomersWithOutstandingBalance(companyId);
+    /**
+     * A company's mock ledger of open items
+     * @param seed the seed the ledger is generated from
+     * @param customerIds the IDs of the company's customers
+     * @param itemCount number of items the ledger holds
+     */
+    private record MockLedger(long seed, List<String> customerIds, int itemCount) {
+    }
+
+    /**
+     * Sizes the mock ledger of a company's open items
+     * @param companyId the company ID to generate items for
+     * @param customers the company's customers, which the items are spread across
+     * @return the ledger, or null if the company has no customers and so no items
+     */
+    private MockLedger mockLedger(String companyId, List<Customer> customers) {
         List<String> customerIds = customers.stream()
                 .map(Customer::getCustomerId)
                 .collect(Collectors.toList());
 
-        // If no customers found, return empty list
+        // If no customers found, there are no items
         if (customerIds.isEmpty()) {
             logger.warn("No customers found for company ID: {}", companyId);
-            return items;
+            return null;
         }
 
         // Log retrieved customer IDs for debugging
         logger.info("Retrieved {} customers for company ID: {}", customerIds.size(), companyId);
 
-        // Generate a random number of items (between 50 and 150)
-        // but make sure we don't generate more items than we have customers * 5
-        // to ensure a reasonable distribution
-        int maxItems = Math.min(150, customerIds.size() * 5);
-        int minItems = Math.min(50, customerIds.size() * 2);
-        int numItems = minItems + (maxItems > minItems ? random.nextInt(maxItems - minItems) : 0);
-
+        int numItems = mockDataGenerator.generateItemCount(companyId, customerIds.size());
         logger.info("Generating {} items for {} customers", numItems, customerIds.size());
-        
-        // Generate the requested number of items with random data
-        for (int i = 0; i < numItems; i++) {
-            // Randomly select a customer ID from the list obtained from CustomerService
-            String customerId = customerIds.get(random.nextInt(customerIds.size()));
-            
-            // Determine item type (60% invoices, 20% payments, 20% credit notes)
-            String itemType;
-            int typeRandom = random.nextInt(100);
-            if (typeRandom < 60) {
-                itemType = "INV";
-            } else if (typeRandom < 80) {
-                itemType = "PAY";
-            } else {
-                itemType = "CRN";
-            }
-            
-            // Generate amount based on item type (payments and credit notes are negative)
-            BigDecimal amount;
-            if ("INV".equals(itemType)) {
-                // Invoices: positive amounts between $10 and $10,000
-                amount = new BigDecimal(10 + random.nextInt(9990) + random.nextDouble()).setScale(2, java.math.RoundingMode.HALF_UP);
-            } else {
-                // Payments and credit notes: negative amounts
-                amount = new BigDecimal(-10 - random.nextInt(9990) - random.nextDouble()).setScale(2, java.math.RoundingMode.HALF_UP);
-            }
-            
-            // Generate balance (for partially paid invoices, the balance might be less than the amount)
-            BigDecimal balance;
-            if ("INV".equals(itemType)) {
-                // For invoices, balance is between 0 and the full amount
-                if (random.nextInt(100) < 30) {
-                    // 30% chance of partially paid invoice
-                    double ratio = random.nextDouble();
-                    balance = amount.multiply(new BigDecimal(ratio)).setScale(2, java.math.RoundingMode.HALF_UP);
-                } else {
-                    // 70% chance of unpaid invoice (balance = amount)
-                    balance = amount;
-                }
-            } else {
-                // For payments and credit notes, balance is the same as amount
-                balance = amount;
-            }
-            
-            // Generate document date (between 1 and 180 days ago)
-            LocalDate documentDate = LocalDate.now().minusDays(1 + random.nextInt(180));
-            
-            // Generate due date (for invoices, usually 30 days after document date)
-            LocalDate dueDate;
-            if ("INV".equals(itemType)) {
-                dueDate = documentDate.plusDays(30);
-            } else {
-                // For payments and credit notes, due date is same as document date
-                dueDate = documentDate;
-            }
-            
-            // Generate entry date (typically same day or a few days after document date)
-            LocalDate entryDate = documentDate.plusDays(random.nextInt(3));
-            
-            // Generate entry user
-            String entryUser = users[random.nextInt(users.length)];
-            
-            // Generate document number
-            String documentPrefix = "INV".equals(itemType) ? "INV" : ("PAY".equals(itemType) ? "PMT" : "CRN");
-            String documentNumber = documentPrefix + "-" + String.format("%08d", random.nextInt(100000000));
-            
-            // Generate document reference
-            String documentReference = "REF-" + String.format("%06d", random.nextInt(1000000));
-            
-            items.add(new Item(
-                    customerId, amount, balance, documentDate, dueDate, entryDate,
-                    entryUser, documentNumber, documentReference, itemType
-            ));
+        return new MockLedger(mockDataGenerator.seed(companyId, "items"), customerIds, numItems);
+    }
+
+    /**
+     * Generates a company's whole mock ledger of open items at once rather than a page at a time, so a ledger
+     * larger than mock.parallel-threshold is generated in parallel
+     * @param companyId the company ID to generate items for
+     * @param dataVersion the company's last data load date, to get the customers for
+     * @return Unmodifiable list of open items
+     */
+    private List<Item> generateOpenItems(String companyId, LocalDateTime dataVersion) {
+        MockLedger ledger = mockLedger(companyId,
+                customerService.getCustomersWithOutstandingBalance(companyId, dataVersion));
+        if (ledger == null) {
+            return List.of();
         }
-        
-        return items;
+        return mockDataGenerator.generateItems(ledger.seed(), ledger.customerIds(), 0, ledger.itemCount());
+    }
+
+    /**
+     * Generates one page of a mock ledger of open items
+     * @param ledgerSeed the seed the ledger is generated from
+     * @param customerIds the IDs of the company's customers
+     * @param totalItems number of items the mock ledger holds
+     * @param pageNumber the page to get, starting at 0
+     * @param pageSize the number of items per page
+     * @return the items on the page; fewer than pageSize on the last page
+     */
+    private List<Item> generateOpenItemsPage(long ledgerSeed, List<String> customerIds, int totalItems,
+                                             int pageNumber, int pageSize) {
+        int itemCount = Math.max(0, Math.min(pageSize, totalItems - pageNumber * pageSize));
+        return mockDataGenerator.generateItems(ledgerSeed, customerIds, (long) pageNumber * pageSize, itemCount);
     }
 }
@@ -0,0 +1,482 @@
+package com.example.service;
+
+import com.example.model.AgeingByMonth;
+import com.example.model.CompanySummary;
+import com.example.model.Customer;
+import com.example.model.Item;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.IntStream;
+
+/**
+ * Generates random data in the shape returned by the upstream accounting and lending APIs.
+ * Used by the services when no upstream is configured, and by the local stub server.
+ * <p>
+ * Every record is generated from its own {@link SplittableRandom}, seeded from the dataset's seed and the
+ * record's position, so large datasets are generated in parallel and any page can be generated on its own.
+ * With {@code mock.seed} set, a company's data is the same on every run (dates are relative to today);
+ * without it every call generates new data. Sizes and distributions are configurable.
+ */
+@Component
+public class MockDataGenerator {
+
+    private static final Logger logger = LoggerFactory.getLogger(MockDataGenerator.class);
+
+    private static final String[] ITEM_TYPES = {"INV", "PAY", "CRN"};
+
+    // Customer IDs are a permutation of the 6 digit numbers, so they never repeat within a company
+    private static final int CUSTOMER_ID_RANGE = 1_000_000;
+    private static final int CUSTOMER_ID_STRIDE = 7919;
+
+    @Value("${mock.seed:#{null}}")
+    private Long seed;
+
+    // Datasets of at least this many records are generated in parallel
+    @Value("${mock.parallel-threshold:10000}")
+    private int parallelThreshold;
+
+    @Value("${mock.customers.min:10}")
+    private int minCustomers;
+
+    @Value("${mock.customers.max:30}")
+    private int maxCustomers;
+
+    @Value("${mock.customers.notified-percent:80}")
+    private int notifiedPercent;
+
+    @Value("${mock.customers.balance-max:10000}")
+    private int maxCustomerBalance;
+
+    @Value("${mock.items.min:50}")
+    private int minItems;
+
+    @Value("${mock.items.max:150}")
+    private int maxItems;
+
+    @Value("${mock.items.min-per-customer:2}")
+    private int minItemsPerCustomer;
+
+    @Value("${mock.items.max-per-customer:5}")
+    private int maxItemsPerCustomer;
+
+    // Relative weights of invoices, payments and credit notes
+    @Value("${mock.items.type-weights:60,20,20}")
+    private int[] itemTypeWeights;
+
+    @Value("${mock.items.amount-min:10}")
+    private int minItemAmount;
+
+    @Value("${mock.items.amount-max:10000}")
+    private int maxItemAmount;
+
+    @Value("${mock.items.partially-paid-percent:30}")
+    private int partiallyPaidPercent;
+
+    @Value("${mock.items.max-age-days:180}")
+    private int maxItemAgeDays;
+
+    @Value("${mock.items.payment-terms-days:30}")
+    private int paymentTermsDays;
+
+    private int itemTypeWeightTotal;
+
+    private final String[] summaryCompanyNames = {
+            "Acme Financial Services", "Global Credit Solutions", "Pinnacle Banking Corp",
+            "Summit Lending Group", "Atlas Credit Management", "Vanguard Financial",
+            "Everest Capital Management", "Horizon Credit Services", "Precision Financial Group",
+            "Liberty Finance Solutions"
+    };
+
+    private final String[] summaryCities = {
+            "New York", "London", "Sydney", "Toronto", "Singapore",
+            "Hong Kong", "Dubai", "Los Angeles", "Chicago", "Boston"
+    };
+
+    private final String[] summaryStates = {
+            "NY", "CA", "TX", "FL", "IL", "PA", "ON", "QC", "NSW", "VIC"
+    };
+
+    private final String[] summaryCountries = {
+            "United States", "United Kingdom", "Australia", "Canada", "Singapore"
+    };
+
+    private final String[] customerNames = {
+            "Acme Corp", "Globex Corporation", "Soylent Corp", "Initech", "Umbrella Corporation",
+            "Stark Industries", "Wayne Enterprises", "Cyberdyne Systems", "Weyland-Yutani Corp",
+            "Massive Dynamic", "Oceanic Airlines", "Oscorp Industries", "Rekall", "Wonka Industries",
+            "Tyrell Corporation", "Gekko & Co", "Nakatomi Trading Corp", "Dunder Mifflin", "Bluth Company",
+            "Slate Rock and Gravel Company", "Sterling Cooper", "Wernham Hogg", "Sirius Cybernetics Corp"
+    };
+
+    private final String[] customerCities = {
+            "New York", "London", "Tokyo", "Paris", "Sydney", "Berlin", "Toronto", "Singapore",
+            "Hong Kong", "Dubai", "Los Angeles", "Chicago", "Boston", "San Francisco", "Seattle"
+    };
+
+    private final String[] customerStates = {
+            "NY", "CA", "TX", "FL", "IL", "PA", "OH", "GA", "NC", "MI", "NJ", "VA", "WA", "MA", "AZ"
+    };
+
+    private final String[] customerCountries = {
+            "United States", "United Kingdom", "Canada", "Australia", "Germany", "Japan", "France",
+            "Italy", "Spain", "China", "India", "Brazil", "Mexico", "Singapore", "South Korea"
+    };
+
+    private final String[] users = {
+            "john.doe", "jane.smith", "robert.johnson", "sarah.williams", "michael.brown",
+            "lisa.jones", "david.miller", "emily.davis", "james.wilson", "amanda.taylor"
+    };
+
+    /**
+     * Checks the configured distributions
+     */
+    @PostConstruct
+    void validate() {
+        if (itemTypeWeights.length != ITEM_TYPES.length) {
+            throw new IllegalStateException("mock.items.type-weights needs a weight for each of INV, PAY and CRN");
+        }
+        itemTypeWeightTotal = IntStream.of(itemTypeWeights).sum();
+        if (itemTypeWeightTotal <= 0 || IntStream.of(itemTypeWeights).anyMatch(weight -> weight < 0)
+                || minCustomers < 0 || minCustomers > maxCustomers || maxCustomers > CUSTOMER_ID_RANGE
+                || minItems < 0 || minItems > maxItems || minItemAmount < 0 || minItemAmount >= maxItemAmount) {
+            throw new IllegalStateException("Invalid mock data settings");
+        }
+        // Bounds of random values must be positive, or generating the first record fails
+        if (maxCustomerBalance < 1) {
+            throw new IllegalStateException("mock.customers.balance-max must be at least 1");
+        }
+        if (maxItemAgeDays < 1) {
+            throw new IllegalStateException("mock.items.max-age-days must be at least 1");
+        }
+        if (minItemsPerCustomer < 0 || minItemsPerCustomer > maxItemsPerCustomer) {
+            throw new IllegalStateException(
+                    "mock.items.min-per-customer must be between 0 and mock.items.max-per-customer");
+        }
+        if (notifiedPercent < 0 || notifiedPercent > 100 || partiallyPaidPercent < 0 || partiallyPaidPercent > 100) {
+            throw new IllegalStateException("mock.customers.notified-percent and "
+                    + "mock.items.partially-paid-percent must be between 0 and 100");
+        }
+        if (paymentTermsDays < 0) {
+            throw new IllegalStateException("mock.items.payment-terms-days must not be negative");
+        }
+        if (seed != null) {
+            logger.info("Generating mock data with seed {}", seed);
+        }
+    }
+
+    /**
+     * Chooses the seed a dataset is generated from
+     * @param companyId the company the dataset is for
+     * @param dataset the kind of data, e.g. items
+     * @return a seed fixed by mock.seed, or a new random seed if none is configured
+     */
+    public long seed(String companyId, String dataset) {
+        if (seed == null) {
+            return ThreadLocalRandom.current().nextLong();
+        }
+        return mix64(mix64(seed ^ hash(companyId)) ^ hash(dataset));
+    }
+
+    /**
+     * @param companyId the company the data is for
+     * @return 12 months of ageing data, ending with the current month
+     */
+    public List<AgeingByMonth> generateAgeingByMonth(String companyId) {
+        long datasetSeed = seed(companyId, "ageingByMonth");
+        List<AgeingByMonth> result = new ArrayList<>();
+        YearMonth currentMonth = YearMonth.now();
+
+        // Generate 12 months of data
+        for (int i = 0; i < 12; i++) {
+            SplittableRandom random = random(datasetSeed, i);
+            YearMonth month = currentMonth.minusMonths(i);
+
+            // Generate random values (in a real app, these would come from the API)
+            BigDecimal salesLedgerBalance = BigDecimal.valueOf(random.nextInt(1000000), 2);
+            BigDecimal amountNotDue = BigDecimal.valueOf(random.nextInt(500000), 2);
+            BigDecimal amountOver30Days = BigDecimal.valueOf(random.nextInt(300000), 2);
+            BigDecimal amountOver60Days = BigDecimal.valueOf(random.nextInt(200000), 2);
+            BigDecimal amountOver90Days = BigDecimal.valueOf(random.nextInt(100000), 2);
+            BigDecimal amountOverThreshold = BigDecimal.valueOf(random.nextInt(50000), 2);
+            BigDecimal totalCredits = BigDecimal.valueOf(random.nextInt(200000), 2);
+
+            result.add(new AgeingByMonth(
+                month,
+                salesLedgerBalance,
+                amountNotDue,
+                amountOver30Days,
+                amountOver60Days,
+                amountOver90Days,
+                amountOverThreshold,
+                totalCredits
+            ));
+        }
+
+        return result;
+    }
+
+    /**
+     * @param companyId the company the customers belong to
+     * @return between mock.customers.min and mock.customers.max customers with outstanding balances
+     */
+    public List<Customer> generateCustomers(String companyId) {
+        long datasetSeed = seed(companyId, "customers");
+        int numCustomers = minCustomers + random(datasetSeed, -1).nextInt(maxCustomers - minCustomers + 1);
+        return generateCustomers(datasetSeed, numCustomers);
+    }
+
+    /**
+     * @param companyId the company the customers belong to
+     * @param numCustomers the number of customers to generate, at most 1,000,000
+     * @return customers with outstanding balances
+     */
+    public List<Customer> generateCustomers(String companyId, int numCustomers) {
+        return generateCustomers(seed(companyId, "customers"), numCustomers);
+    }
+
+    private List<Customer> generateCustomers(long datasetSeed, int numCustomers) {
+        // Customer IDs are spread from a random starting point
+        int firstId = random(datasetSeed, -2).nextInt(CUSTOMER_ID_RANGE);
+        IntStream indexes = IntStream.range(0, Math.min(numCustomers, CUSTOMER_ID_RANGE));
+        if (numCustomers >= parallelThreshold) {
+            indexes = indexes.parallel();
+        }
+        LocalDate today = LocalDate.now();
+        return indexes.mapToObj(i -> generateCustomer(datasetSeed, firstId, i, today)).toList();
+    }
+
+    private Customer generateCustomer(long datasetSeed, int firstId, int index, LocalDate today) {
+        SplittableRandom random = random(datasetSeed, index);
+        int idNumber = (int) ((firstId + (long) index * CUSTOMER_ID_STRIDE) % CUSTOMER_ID_RANGE);
+        String customerId = "CUST" + zeroPad(idNumber, 6);
+        String customerName = customerNames[random.nextInt(customerNames.length)];
+
+        // Generate balance (positive values only, as these are outstanding balances)
+        BigDecimal balance = BigDecimal.valueOf(10000 + random.nextLong(maxCustomerBalance * 100L), 2);
+
+        String reference = "REF" + zeroPad(random.nextInt(100000000), 8);
+
+        // Generate address information
+        String addressLine1 = (random.nextInt(999) + 1) + " " +
+                new String[]{"Main", "First", "Oak", "Pine", "Maple", "Cedar", "Broadway"}[random.nextInt(7)] + " " +
+                new String[]{"Street", "Avenue", "Boulevard", "Road", "Lane", "Drive", "Way"}[random.nextInt(7)];
+
+        String addressLine2 = random.nextBoolean() ?
+                "Suite " + (random.nextInt(100) + 100) :
+                "";
+
+        String city = customerCities[random.nextInt(customerCities.length)];
+        String state = customerStates[random.nextInt(customerStates.length)];
+        String postalCode = zeroPad(random.nextInt(100000), 5);
+        String country = customerCountries[random.nextInt(customerCountries.length)];
+
+        // Generate notification status (most customers have been notified)
+        boolean notified = random.nextInt(100) < notifiedPercent;
+
+        // Generate last updated date (within the last 90 days)
+        LocalDate lastUpdated = today.minusDays(random.nextInt(90));
+
+        return new Customer(
+                customerId, customerName, balance, reference,
+                addressLine1, addressLine2, city, state,
+                postalCode, country, notified, lastUpdated
+        );
+    }
+
+    /**
+     * Picks how many open items a ledger holds: between mock.items.min and mock.items.max, and between
+     * mock.items.min-per-customer and mock.items.max-per-customer per customer
+     * @param companyId the company the ledger belongs to
+     * @param customerCount the number of customers in the ledger
+     * @return the number of open items
+     */
+    public int generateItemCount(String companyId, int customerCount) {
+        int max = (int) Math.min(maxItems, (long) customerCount * maxItemsPerCustomer);
+        int min = (int) Math.min(Math.min(minItems, (long) customerCount * minItemsPerCustomer), max);
+        SplittableRandom random = random(seed(companyId, "itemCount"), 0);
+        return min + (max > min ? random.nextInt(max - min) : 0);
+    }
+
+    /**
+     * Generates part of a ledger of open items. The same ledger seed and index always give the same item,
+     * so a ledger can be generated a page at a time.
+     * @param ledgerSeed the ledger's seed, from {@link #seed(String, String)}
+     * @param customerIds the IDs of the customers the items belong to
+     * @param fromIndex position of the first item in the ledger
+     * @param count the number of items to generate
+     * @return open items spread across the customers
+     */
+    public List<Item> generateItems(long ledgerSeed, List<String> customerIds, long fromIndex, int count) {
+        IntStream indexes = IntStream.range(0, count);
+        if (count >= parallelThreshold) {
+            indexes = indexes.parallel();
+        }
+        LocalDate today = LocalDate.now();
+        return indexes.mapToObj(i -> generateItem(ledgerSeed, customerIds, fromIndex + i, today)).toList();
+    }
+
+    /**
+     * @param ledgerSeed the ledger's seed, from {@link #seed(String, String)}
+     * @param customerIds the IDs of the customers the item may belong to
+     * @param index the item's position in the ledger
+     * @return an open item for a randomly chosen customer
+     */
+    public Item generateItem(long ledgerSeed, List<String> customerIds, long index) {
+        return generateItem(ledgerSeed, customerIds, index, LocalDate.now());
+    }
+
+    private Item generateItem(long ledgerSeed, List<String> customerIds, long index, LocalDate today) {
+        SplittableRandom random = random(ledgerSeed, index);
+
+        // Randomly select a customer ID from the list obtained from CustomerService
+        String customerId = customerIds.get(random.nextInt(customerIds.size()));
+
+        // Determine item type from the configured weights (by default 60% invoices, 20% payments, 20% credit notes)
+        String itemType = ITEM_TYPES[ITEM_TYPES.length - 1];
+        int typeRandom = random.nextInt(itemTypeWeightTotal);
+        for (int i = 0; i < ITEM_TYPES.length; i++) {
+            if (typeRandom < itemTypeWeights[i]) {
+                itemType = ITEM_TYPES[i];
+                break;
+            }
+            typeRandom -= itemTypeWeights[i];
+        }
+
+        // Generate amount based on item type (payments and credit notes are negative)
+        long amountCents = minItemAmount * 100L + random.nextLong((maxItemAmount - minItemAmount) * 100L);
+        BigDecimal amount = BigDecimal.valueOf("INV".equals(itemType) ? amountCents : -amountCents, 2);
+
+        // Generate balance (for partially paid invoices, the balance might be less than the amount)
+        BigDecimal balance;
+        if ("INV".equals(itemType) && random.nextInt(100) < partiallyPaidPercent) {
+            double ratio = random.nextDouble();
+            balance = amount.multiply(BigDecimal.valueOf(ratio)).setScale(2, RoundingMode.HALF_UP);
+        } else {
+            // Unpaid invoices, payments and credit notes: balance is the same as amount
+            balance = amount;
+        }
+
+        // Generate document date (between 1 and mock.items.max-age-days days ago)
+        LocalDate documentDate = today.minusDays(1 + random.nextInt(maxItemAgeDays));
+
+        // Invoices are due after the payment terms; payments and credit notes on the document date
+        LocalDate dueDate = "INV".equals(itemType) ? documentDate.plusDays(paymentTermsDays) : documentDate;
+
+        // Generate entry date (typically same day or a few days after document date)
+        LocalDate entryDate = documentDate.plusDays(random.nextInt(3));
+
+        // Generate entry user
+        String entryUser = users[random.nextInt(users.length)];
+
+        // Generate document number
+        String documentPrefix = "INV".equals(itemType) ? "INV" : ("PAY".equals(itemType) ? "PMT" : "CRN");
+        String documentNumber = documentPrefix + "-" + zeroPad(random.nextInt(100000000), 8);
+
+        // Generate document reference
+        String documentReference = "REF-" + zeroPad(random.nextInt(1000000), 6);
+
+        return new Item(
+                customerId, amount, balance, documentDate, dueDate, entryDate,
+                entryUser, documentNumber, documentReference, itemType
+        );
+    }
+
+    /**
+     * @param companyId the company ID the summary is for
+     * @return company information and summary statistics
+     */
+    public CompanySummary generateCompanySummary(String companyId) {
+        SplittableRandom random = random(seed(companyId, "summary"), 0);
+
+        // Generate random company data
+        String companyName = summaryCompanyNames[random.nextInt(summaryCompanyNames.length)];
+        String businessNumber = "BN" + zeroPad(random.nextInt(1000000000), 9);
+
+        // Generate address information
+        String address = (random.nextInt(999) + 1) + " " +
+                new String[]{"Main", "First", "Financial", "Commerce", "Market"}[random.nextInt(5)] + " " +
+                new String[]{"Street", "Avenue", "Boulevard", "Plaza", "Tower"}[random.nextInt(5)];
+
+        String city = summaryCities[random.nextInt(summaryCities.length)];
+        String state = summaryStates[random.nextInt(summaryStates.length)];
+        String postalCode = zeroPad(random.nextInt(100000), 5);
+        String country = summaryCountries[random.nextInt(summaryCountries.length)];
+
+        // Generate contact information
+        String phone = "+" + (random.nextInt(20) + 1) + " " +
+                (random.nextInt(900) + 100) + "-" +
+                (random.nextInt(900) + 100) + "-" +
+                (random.nextInt(9000) + 1000);
+
+        String email = "finance@" + companyName.toLowerCase().replaceAll("[^a-z]", "") + ".com";
+        String website = "www." + companyName.toLowerCase().replaceAll("[^a-z]", "") + ".com";
+
+        // Generate last data load date (within the last 10 days)
+        LocalDateTime lastDataLoadDate = LocalDate.now().minusDays(random.nextInt(10))
+                .atTime(random.nextInt(24), random.nextInt(60), random.nextInt(60));
+
+        // Generate summary statistics
+        int totalDebtors = 50 + random.nextInt(950);
+        int activeDebtors = (int)(totalDebtors * (0.4 + (random.nextDouble() * 0.5))); // 40% to 90% active
+        int totalOpenItems = activeDebtors * (2 + random.nextInt(6)); // 2-7 items per active debtor
+
+        // Generate financial summaries
+        BigDecimal totalOutstandingBalance = new BigDecimal(activeDebtors * (1000 + random.nextInt(9000)))
+                .setScale(2, RoundingMode.HALF_UP);
+        BigDecimal totalOverdueBalance = totalOutstandingBalance.multiply(BigDecimal.valueOf(0.2 + (random.nextDouble() * 0.5)))
+                .setScale(2, RoundingMode.HALF_UP); // 20% to 70% overdue
+        BigDecimal totalOver90DaysBalance = totalOverdueBalance.multiply(BigDecimal.valueOf(0.1 + (random.nextDouble() * 0.4)))
+                .setScale(2, RoundingMode.HALF_UP); // 10% to 50% of overdue is >90 days
+
+        String reportGeneratedBy = "System";
+
+        return new CompanySummary(
+                companyId, companyName, businessNumber, address,
+                city, state, postalCode, country, phone,
+                email, website, lastDataLoadDate, totalDebtors,
+                activeDebtors, totalOpenItems, totalOutstandingBalance,
+                totalOverdueBalance, totalOver90DaysBalance, reportGeneratedBy
+        );
+    }
+
+    /**
+     * @return the generator for one record of a dataset; independent of every other record's generator
+     */
+    private static SplittableRandom random(long datasetSeed, long index) {
+        // Consecutive SplittableRandom seeds give overlapping sequences, so the seed is scrambled first
+        return new SplittableRandom(mix64(datasetSeed + index * 0x9E3779B97F4A7C15L));
+    }
+
+    private static long hash(String value) {
+        long hash = 1125899906842597L;
+        for (int i = 0; i < value.length(); i++) {
+            hash = 31 * hash + value.charAt(i);
+        }
+        return mix64(hash);
+    }
+
+    private static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    private static String zeroPad(int value, int width) {
+        // Cheaper than String.format, which matters when generating millions of records
+        String digits = Integer.toString(value);
+        return digits.length() >= width ? digits : "0".repeat(width - digits.length()) + digits;
+    }
+}
@@ -0,0 +1,233 @@
+package com.example.service;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Compresses a zip entry's content in blocks on several threads, the way pigz does. Each block is deflated
+ * by its own Deflater, primed with the last 32 KB of the block before it so matches still reach back across
+ * the boundary, and ended with a sync flush so the blocks' output can be concatenated. The result is a single
+ * ordinary deflate stream, so the package stays a standard zip. Only a few blocks are in flight at once, and
+ * compressed blocks are written to a temporary file in order, as the entry's sizes must be known before it
+ * is added to the zip.
+ */
+final class ParallelDeflater {
+
+    // Deflate looks back at most 32 KB for matches
+    private static final int DICTIONARY_BYTES = 32 * 1024;
+
+    private final int level;
+    private final int blockBytes;
+    private final int threads;
+
+    /**
+     * @param level 1 (fastest) to 9 (smallest), or -1 for the zip default
+     * @param blockBytes uncompressed bytes per block; at least 64 KB, so each block has a full dictionary
+     * @param threads blocks compressed at once; 1 compresses on the calling thread
+     */
+    ParallelDeflater(int level, int blockBytes, int threads) {
+        if (level != Deflater.DEFAULT_COMPRESSION && (level < Deflater.BEST_SPEED || level > Deflater.BEST_COMPRESSION)) {
+            throw new IllegalArgumentException("Invalid compression level: " + level);
+        }
+        this.level = level;
+        this.blockBytes = Math.max(blockBytes, 2 * DICTIONARY_BYTES);
+        this.threads = Math.max(threads, 1);
+    }
+
+    /**
+     * @return the most heap held while a part is compressed: the block being filled and the previous block's
+     *         dictionary, plus each block in flight and its output
+     */
+    long bufferedBytes() {
+        return (2L * threads + 1) * blockBytes + DICTIONARY_BYTES;
+    }
+
+    /**
+     * A part compressed as raw deflate data, ready to be added to a zip as is
+     * @param file the compressed data, deleted on close
+     * @param size uncompressed size
+     * @param compressedSize size of the compressed data
+     * @param crc CRC-32 of the uncompressed data
+     */
+    record DeflatedPart(Path file, long size, long compressedSize, long crc) implements Closeable {
+
+        InputStream open() throws IOException {
+            return Files.newInputStream(file);
+        }
+
+        @Override
+        public void close() throws IOException {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /**
+     * Compresses a part's content
+     * @return the compressed part, which the caller must close
+     * @throws IOException if the part can't be written or the temporary file can't be
+     */
+    DeflatedPart deflate(WorkbookPartSplicer.Part part) throws IOException {
+        Path file = Files.createTempFile("part", ".deflate");
+        try (BlockStream blocks = new BlockStream(new BufferedOutputStream(Files.newOutputStream(file), 64 * 1024))) {
+            part.writeTo(blocks);
+            blocks.finish();
+            return new DeflatedPart(file, blocks.size, blocks.compressedSize, blocks.crc.getValue());
+        } catch (IOException | RuntimeException | Error e) {
+            Files.deleteIfExists(file);
+            throw e;
+        }
+    }
+
+    /**
+     * Splits what is written to it into blocks, compresses them and writes their output in order
+     */
+    private final class BlockStream extends OutputStream {
+
+        private final OutputStream compressed;
+        private final ExecutorService executor = threads > 1 ? Executors.newVirtualThreadPerTaskExecutor() : null;
+        private final Deque<Future<byte[]>> pending = new ArrayDeque<>();
+        private final CRC32 crc = new CRC32();
+        private byte[] block = new byte[blockBytes];
+        private int blockLength;
+        private byte[] dictionary;
+        private long size;
+        private long compressedSize;
+
+        BlockStream(OutputStream compressed) {
+            this.compressed = compressed;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (blockLength == block.length) {
+                submitBlock(false);
+            }
+            block[blockLength++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (blockLength == block.length) {
+                    submitBlock(false);
+                }
+                int chunk = Math.min(len, block.length - blockLength);
+                System.arraycopy(b, off, block, blockLength, chunk);
+                blockLength += chunk;
+                off += chunk;
+                len -= chunk;
+            }
+        }
+
+        /**
+         * Compresses the last block and writes everything still pending
+         */
+        void finish() throws IOException {
+            submitBlock(true);
+            while (!pending.isEmpty()) {
+                writeNextBlock();
+            }
+            compressed.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                if (executor != null) {
+                    // Stops blocks still being compressed if the part failed; a no-op once they are written
+                    pending.forEach(future -> future.cancel(true));
+                    executor.close();
+                }
+            } finally {
+                compressed.close();
+            }
+        }
+
+        private void submitBlock(boolean last) throws IOException {
+            byte[] data = block;
+            int length = blockLength;
+            byte[] blockDictionary = dictionary;
+            crc.update(data, 0, length);
+            size += length;
+            if (!last) {
+                dictionary = Arrays.copyOfRange(data, length - DICTIONARY_BYTES, length);
+                block = new byte[blockBytes];
+                blockLength = 0;
+            }
+
+            if (executor == null) {
+                writeBlock(deflateBlock(data, length, blockDictionary, last));
+                return;
+            }
+            // Keep one block per thread in flight, writing the oldest once they are all busy
+            if (pending.size() >= threads) {
+                writeNextBlock();
+            }
+            pending.add(executor.submit(() -> deflateBlock(data, length, blockDictionary, last)));
+        }
+
+        private void writeNextBlock() throws IOException {
+            try {
+                writeBlock(pending.removeFirst().get());
+            } catch (ExecutionException e) {
+                throw new IOException("Failed to compress part", e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted compressing part");
+            }
+        }
+
+        private void writeBlock(byte[] output) throws IOException {
+            compressed.write(output);
+            compressedSize += output.length;
+        }
+    }
+
+    /**
+     * Deflates one block as raw deflate data. Every block but the last ends with a sync flush, which leaves
+     * the output byte-aligned and the stream open, so the next block's output can follow it.
+     */
+    private byte[] deflateBlock(byte[] data, int length, byte[] dictionary, boolean last) {
+        Deflater deflater = new Deflater(level, true);
+        try {
+            if (dictionary != null) {
+                deflater.setDictionary(dictionary);
+            }
+            deflater.setInput(data, 0, length);
+            ByteArrayOutputStream output = new ByteArrayOutputStream(length / 4 + 64);
+            byte[] buffer = new byte[16 * 1024];
+            if (last) {
+                deflater.finish();
+                while (!deflater.finished()) {
+                    output.write(buffer, 0, deflater.deflate(buffer));
+                }
+            } else {
+                // A full buffer means the flush may not be complete yet
+                int written;
+                do {
+                    written = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+                    output.write(buffer, 0, written);
+                } while (written == buffer.length);
+            }
+            return output.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.example.service;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Limits the heap used by reports generated at the same time. Each report takes its estimated
+ * heap cost from a shared budget before it is generated and returns it when done, so a burst of
+ * large reports waits (or is rejected) instead of running the JVM out of memory.
+ */
+@Service
+public class ReportAdmissionService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReportAdmissionService.class);
+
+    // Permits are kilobytes so a budget of many gigabytes still fits in an int
+    private static final int BYTES_PER_PERMIT = 1024;
+
+    private final ExcelService excelService;
+    private final ReportMetrics reportMetrics;
+    private Semaphore budget;
+    private int budgetPermits;
+
+    // Heap available to reports being generated; 0 uses half of the maximum heap
+    @Value("${report.admission.memory-budget-mb:0}")
+    private long memoryBudgetMb;
+
+    // How long a request waits for budget before it is rejected
+    @Value("${report.admission.wait-ms:10000}")
+    private long waitMs;
+
+    @Autowired
+    public ReportAdmissionService(ExcelService excelService, ReportMetrics reportMetrics) {
+        this.excelService = excelService;
+        this.reportMetrics = reportMetrics;
+    }
+
+    /**
+     * Creates the budget and its usage metric
+     */
+    @PostConstruct
+    void start() {
+        long budgetBytes = memoryBudgetMb > 0 ? memoryBudgetMb * 1024 * 1024 : Runtime.getRuntime().maxMemory() / 2;
+        budgetPermits = (int) Math.min(Integer.MAX_VALUE, budgetBytes / BYTES_PER_PERMIT);
+        budget = new Semaphore(budgetPermits, true);
+        reportMetrics.registerMemoryBudget(this, (long) budgetPermits * BYTES_PER_PERMIT);
+        logger.info("Report memory budget is {} MB", budgetBytes / (1024 * 1024));
+    }
+
+    /**
+     * Takes the budget for a report, waiting up to the configured time for other reports to finish
+     * @param customerCount number of customers in the report
+     * @param itemCount number of open items in the report
+     * @return the admitted budget, to be closed once the report has been written
+     * @throws ReportCapacityException if the budget isn't available in time
+     */
+    public Admission admit(int customerCount, int itemCount) {
+        int permits = permitsFor(excelService.estimateReportHeapBytes(customerCount, itemCount));
+        try {
+            if (budget.tryAcquire(permits, waitMs, TimeUnit.MILLISECONDS)) {
+                return new Admission(permits);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        reportMetrics.recordAdmissionRejected();
+        logger.warn("Rejected report of {} open items: {} KB of report memory budget in use", itemCount,
+                budgetPermits - budget.availablePermits());
+        throw new ReportCapacityException("Too many reports are being generated, try again later");
+    }
+
+    /**
+     * Takes the budget for a report, waiting as long as needed; for background work that has no client waiting
+     * @param customerCount number of customers in the report
+     * @param itemCount number of open items in the report
+     * @return the admitted budget, to be closed once the report has been written
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public Admission admitWhenAvailable(int customerCount, int itemCount) throws InterruptedException {
+        return acquire(permitsFor(excelService.estimateReportHeapBytes(customerCount, itemCount)));
+    }
+
+    /**
+     * Takes the budget for a report whose open items are streamed, waiting as long as needed
+     * @param customerCount number of customers in the report
+     * @return the admitted budget, to be closed once the report has been written
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public Admission admitStreamedWhenAvailable(int customerCount) throws InterruptedException {
+        return acquire(permitsFor(excelService.estimateStreamedReportHeapBytes(customerCount)));
+    }
+
+    private Admission acquire(int permits) throws InterruptedException {
+        budget.acquire(permits);
+        return new Admission(permits);
+    }
+
+    /**
+     * @return bytes of the budget taken by reports being generated
+     */
+    public long getUsedBytes() {
+        return (long) (budgetPermits - budget.availablePermits()) * BYTES_PER_PERMIT;
+    }
+
+    private int permitsFor(long bytes) {
+        // A report larger than the whole budget still runs, on its own
+        return (int) Math.min(budgetPermits, Math.max(1, bytes / BYTES_PER_PERMIT));
+    }
+
+    /**
+     * Budget held by one report; closing it returns the budget. Closing more than once has no effect.
+     */
+    public class Admission implements AutoCloseable {
+
+        private final int permits;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Admission(int permits) {
+            this.permits = permits;
+        }
+
+        @Override
+        public void close() {
+            if (released.compareAndSet(false, true)) {
+                budget.release(permits);
+            }
+        }
+    }
+}
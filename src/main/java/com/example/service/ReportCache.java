@@ -0,0 +1,251 @@
+package com.example.service;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cache of generated report workbooks, keyed by company and the version of the data they were built from.
+ * Reports are held in memory up to a total size, evicting the least recently used first. If a spill
+ * directory is configured, evicted reports are moved to disk (also bounded) rather than discarded.
+ */
+@Component
+public class ReportCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReportCache.class);
+
+    // Only files with this suffix are ever read or deleted in the spill directory
+    private static final String SPILL_FILE_SUFFIX = ".xlsx.cache";
+
+    @Value("${excel.cache.max-bytes:268435456}")
+    private long maxBytes;
+
+    @Value("${excel.cache.max-entry-bytes:33554432}")
+    private int maxEntryBytes;
+
+    @Value("${excel.cache.spill-dir:}")
+    private String spillDir;
+
+    @Value("${excel.cache.spill-max-bytes:2147483648}")
+    private long spillMaxBytes;
+
+    // Access-ordered, so iteration starts at the least recently used report
+    private final LinkedHashMap<Key, byte[]> memory = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<Key, Long> spilled = new LinkedHashMap<>(16, 0.75f, true);
+    private long memoryBytes;
+    private long spilledBytes;
+
+    /**
+     * Identifies a report by company and data version
+     * @param companyId the company the report is for
+     * @param dataVersion when the company's data was last loaded
+     */
+    public record Key(String companyId, Instant dataVersion) {
+    }
+
+    /**
+     * Removes reports spilled by a previous run, as they are not indexed
+     */
+    @PostConstruct
+    void clearSpillDirectory() {
+        if (!isSpillEnabled() || !Files.isDirectory(Paths.get(spillDir))) {
+            return;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(Paths.get(spillDir), "*" + SPILL_FILE_SUFFIX)) {
+            for (Path file : files) {
+                Files.deleteIfExists(file);
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to clear report cache spill directory: {}", spillDir, e);
+        }
+    }
+
+    /**
+     * Gets a cached report. A report found on disk is moved back into memory.
+     * @param key the company and data version
+     * @return the report workbook, or null if it isn't cached
+     */
+    public Resource get(Key key) {
+        synchronized (this) {
+            byte[] report = memory.get(key);
+            if (report != null) {
+                return new ByteArrayResource(report);
+            }
+            if (spilled.remove(key) == null) {
+                return null;
+            }
+        }
+
+        // Read outside the lock; the file is no longer indexed so nothing else will delete it
+        Path file = spillPath(key);
+        try {
+            byte[] report = Files.readAllBytes(file);
+            Files.deleteIfExists(file);
+            synchronized (this) {
+                spilledBytes -= report.length;
+            }
+            put(key, report);
+            return new ByteArrayResource(report);
+        } catch (IOException e) {
+            logger.warn("Failed to read spilled report: {}", file, e);
+            return null;
+        }
+    }
+
+    /**
+     * Adds a report, evicting the least recently used reports if the cache is full
+     * @param key the company and data version
+     * @param report the report workbook
+     */
+    public void put(Key key, byte[] report) {
+        if (report.length > maxEntryBytes) {
+            return;
+        }
+
+        List<Map.Entry<Key, byte[]>> evicted = new ArrayList<>();
+        synchronized (this) {
+            byte[] previous = memory.put(key, report);
+            memoryBytes += report.length - (previous != null ? previous.length : 0);
+
+            Iterator<Map.Entry<Key, byte[]>> eldest = memory.entrySet().iterator();
+            while (memoryBytes > maxBytes && eldest.hasNext()) {
+                Map.Entry<Key, byte[]> entry = eldest.next();
+                eldest.remove();
+                memoryBytes -= entry.getValue().length;
+                evicted.add(entry);
+            }
+        }
+
+        if (isSpillEnabled()) {
+            for (Map.Entry<Key, byte[]> entry : evicted) {
+                spill(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Starts capturing a report as it is written, to add it to the cache once it is complete
+     * @param key the company and data version
+     * @return stream to copy the report into; call {@link Capture#commit()} once the report is complete
+     */
+    public Capture capture(Key key) {
+        return new Capture(key);
+    }
+
+    private void spill(Key key, byte[] report) {
+        Path file = spillPath(key);
+        try {
+            // Write to a temporary file first so a partly written report is never indexed
+            Files.createDirectories(file.getParent());
+            Path temp = Files.createTempFile(file.getParent(), "report", ".tmp");
+            Files.write(temp, report);
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.warn("Failed to spill cached report to disk: {}", file, e);
+            return;
+        }
+
+        List<Key> evicted = new ArrayList<>();
+        synchronized (this) {
+            Long previous = spilled.put(key, (long) report.length);
+            spilledBytes += report.length - (previous != null ? previous : 0);
+
+            Iterator<Map.Entry<Key, Long>> eldest = spilled.entrySet().iterator();
+            while (spilledBytes > spillMaxBytes && eldest.hasNext()) {
+                Map.Entry<Key, Long> entry = eldest.next();
+                eldest.remove();
+                spilledBytes -= entry.getValue();
+                evicted.add(entry.getKey());
+            }
+        }
+
+        for (Key evictedKey : evicted) {
+            try {
+                Files.deleteIfExists(spillPath(evictedKey));
+            } catch (NoSuchFileException e) {
+                // Already gone
+            } catch (IOException e) {
+                logger.warn("Failed to delete spilled report: {}", spillPath(evictedKey), e);
+            }
+        }
+    }
+
+    private boolean isSpillEnabled() {
+        return spillDir != null && !spillDir.isEmpty();
+    }
+
+    private Path spillPath(Key key) {
+        // The company ID is encoded so it can't escape the spill directory or collide with another company
+        String company = Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(key.companyId().getBytes(StandardCharsets.UTF_8));
+        return Paths.get(spillDir, company + "-" + key.dataVersion().toEpochMilli() + SPILL_FILE_SUFFIX);
+    }
+
+    /**
+     * Buffers a report as it is streamed. Reports larger than the cache entry limit stop being buffered,
+     * so capturing never fails the write it is attached to.
+     */
+    public class Capture extends OutputStream {
+
+        private final Key key;
+        private ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+        private Capture(Key key) {
+            this.key = key;
+        }
+
+        @Override
+        public void write(int b) {
+            if (buffer != null && fits(1)) {
+                buffer.write(b);
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            if (buffer != null && fits(len)) {
+                buffer.write(b, off, len);
+            }
+        }
+
+        /**
+         * Adds the captured report to the cache, unless it was too large to capture
+         */
+        public void commit() {
+            if (buffer != null) {
+                put(key, buffer.toByteArray());
+                buffer = null;
+            }
+        }
+
+        private boolean fits(int len) {
+            if (buffer.size() + (long) len <= maxEntryBytes) {
+                return true;
+            }
+            buffer = null;
+            return false;
+        }
+    }
+}
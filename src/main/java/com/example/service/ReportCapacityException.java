@@ -0,0 +1,13 @@
+package com.example.service;
+
+/**
+ * Thrown when a report can't be generated yet because the memory budget for reports is in use
+ */
+public class ReportCapacityException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public ReportCapacityException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,181 @@
+package com.example.service;
+
+import com.example.model.AgeingByMonth;
+import com.example.model.CompanySummary;
+import com.example.model.Customer;
+import com.example.model.Item;
+import com.example.model.ReportData;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fetches all the data for a report. The company summary is fetched first, as its data load date decides
+ * which cached datasets can be reused; the remaining upstream calls are independent, so they run
+ * concurrently on virtual threads and their total latency is close to that of the slowest call.
+ */
+@Service
+public class ReportDataService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReportDataService.class);
+
+    private final AgeingDataService ageingDataService;
+    private final CustomerService customerService;
+    private final ItemService itemService;
+    private final CompanySummaryService companySummaryService;
+
+    // Time allowed for each fetch from when it starts; the summary is fetched first and the rest concurrently,
+    // so a report waits at most twice this
+    @Value("${report.fetch.timeout-ms:30000}")
+    private long fetchTimeoutMs;
+
+    @Autowired
+    public ReportDataService(
+            AgeingDataService ageingDataService,
+            CustomerService customerService,
+            ItemService itemService,
+            CompanySummaryService companySummaryService) {
+        this.ageingDataService = ageingDataService;
+        this.customerService = customerService;
+        this.itemService = itemService;
+        this.companySummaryService = companySummaryService;
+    }
+
+    /**
+     * Fetches the company summary, then ageing data, customers and open items concurrently.
+     * If one fetch fails or times out, the others are cancelled.
+     * @param companyId the company ID to fetch data for
+     * @return the data for the company's report
+     * @throws IOException if a fetch fails or does not complete within the timeout
+     */
+    public ReportData getReportData(String companyId) throws IOException {
+        return fetchReportData(companyId,
+                recorded(companyId, "summary", () -> companySummaryService.getCompanySummary(companyId)), true);
+    }
+
+    /**
+     * Fetches the company summary, then ageing data and customers concurrently, leaving out the open items
+     * for a report that streams them with {@link ItemService#streamOpenItems(String, LocalDateTime, List)}
+     * @param companyId the company ID to fetch data for
+     * @return the data for the company's report, without item data
+     * @throws IOException if a fetch fails or does not complete within the timeout
+     */
+    public ReportData getReportDataWithoutItems(String companyId) throws IOException {
+        return fetchReportData(companyId,
+                recorded(companyId, "summary", () -> companySummaryService.getCompanySummary(companyId)), false);
+    }
+
+    /**
+     * Fetches ageing data, customers and open items concurrently for a company whose summary has
+     * already been fetched, e.g. to check whether a cached report is still current.
+     * @param companyId the company ID to fetch data for
+     * @param companySummary the company's summary
+     * @return the data for the company's report
+     * @throws IOException if a fetch fails or does not complete within the timeout
+     */
+    public ReportData getReportData(String companyId, CompanySummary companySummary) throws IOException {
+        return fetchReportData(companyId, () -> companySummary, true);
+    }
+
+    private ReportData fetchReportData(String companyId, Callable<CompanySummary> summaryFetch,
+                                       boolean includeItems) throws IOException {
+        long summaryDeadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(fetchTimeoutMs);
+
+        ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        try {
+            CompletionService<Object> fetches = new ExecutorCompletionService<>(executor);
+            Future<Object> companySummary = fetches.submit(summaryFetch::call);
+            List<Future<Object>> allFetches = new ArrayList<>(List.of(companySummary));
+            Future<Object> ageingData;
+            Future<Object> customerData;
+            Future<Object> itemData = null;
+
+            try {
+                // The summary comes first: while its data load date hasn't moved, the other datasets are
+                // reused from the cache instead of being fetched again
+                awaitNext(fetches, summaryDeadline, companyId);
+                CompanySummary summary = result(companySummary);
+                LocalDateTime dataVersion = summary.getLastDataLoadDate();
+
+                // The other fetches start together, so each one's timeout ends at the same deadline
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(fetchTimeoutMs);
+                ageingData = fetches.submit(recorded(companyId, "ageingByMonth",
+                        () -> ageingDataService.getAgeingByMonth(companyId, dataVersion)));
+                customerData = fetches.submit(recorded(companyId, "customers",
+                        () -> customerService.getCustomersWithOutstandingBalance(companyId, dataVersion)));
+                allFetches.add(ageingData);
+                allFetches.add(customerData);
+                if (includeItems) {
+                    itemData = fetches.submit(recorded(companyId, "items",
+                            () -> itemService.getOpenItems(companyId, dataVersion)));
+                    allFetches.add(itemData);
+                }
+
+                // Wait for the fetches in completion order so the first failure is seen immediately
+                for (int i = 1; i < allFetches.size(); i++) {
+                    awaitNext(fetches, deadline, companyId);
+                }
+            } catch (ExecutionException e) {
+                throw new IOException("Failed to fetch report data for company ID: " + companyId, e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted fetching report data for company ID: " + companyId);
+            } finally {
+                // Cancel (and interrupt) anything still running; a no-op for completed fetches
+                allFetches.forEach(fetch -> fetch.cancel(true));
+            }
+
+            logger.debug("Fetched report data for company ID: {}", companyId);
+            return new ReportData(result(ageingData), result(customerData),
+                    itemData != null ? result(itemData) : null, result(companySummary));
+        } finally {
+            // Closing the executor would wait for cancelled fetches, so one that ignores interrupts could hold the
+            // request past the timeout; its virtual thread is left to finish on its own instead
+            executor.shutdownNow();
+        }
+    }
+
+    private void awaitNext(CompletionService<Object> fetches, long deadline, String companyId)
+            throws IOException, ExecutionException, InterruptedException {
+        Future<Object> completed = fetches.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+        if (completed == null) {
+            throw new IOException("Timed out after " + fetchTimeoutMs + " ms fetching report data for company ID: " + companyId);
+        }
+        completed.get();
+    }
+
+    /**
+     * Wraps a fetch so it is recorded as a Flight Recorder event
+     * @param dataset the kind of data fetched, e.g. customers
+     */
+    private static <T> Callable<T> recorded(String companyId, String dataset, Callable<T> fetch) {
+        return () -> {
+            UpstreamFetchEvent event = new UpstreamFetchEvent(dataset);
+            event.start(companyId);
+            T result = fetch.call();
+            event.finish(result instanceof List<?> records ? records.size() : 1);
+            return result;
+        };
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T result(Future<Object> fetch) {
+        return (T) fetch.resultNow();
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.service;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * JDK Flight Recorder event for one step of generating a report, carrying the company, the number of rows
+ * and the heap allocated by the thread during the step, so allocation and GC pressure can be attributed to
+ * reports in a recording. The allocation is unknown (-1) on a virtual thread, which the JVM doesn't count
+ * allocations for; the recording's allocation samples for the same event thread still show it.
+ * Nothing is measured unless the event is enabled in a running recording.
+ */
+@Category("Excel Reports")
+abstract class ReportEvent extends Event {
+
+    private static final com.sun.management.ThreadMXBean THREADS = threadMXBean();
+
+    @Label("Company ID")
+    String companyId;
+
+    @Label("Rows")
+    @Description("Records fetched or rows written")
+    long rows;
+
+    @Label("Allocated")
+    @Description("Heap allocated by the thread during the step, or -1 if unknown")
+    @DataAmount
+    long allocatedBytes;
+
+    // Not recorded; transient fields are left out of the event
+    private transient long allocatedAtStart;
+
+    /**
+     * Starts timing the step and counting what the current thread allocates
+     */
+    void start(String companyId) {
+        if (!isEnabled()) {
+            return;
+        }
+        this.companyId = companyId;
+        allocatedAtStart = currentThreadAllocatedBytes();
+        begin();
+    }
+
+    /**
+     * Ends the step and commits the event if the recording wants it
+     * @param rows records fetched or rows written in the step
+     */
+    void finish(long rows) {
+        end();
+        if (!shouldCommit()) {
+            return;
+        }
+        this.rows = rows;
+        long allocated = currentThreadAllocatedBytes();
+        allocatedBytes = allocatedAtStart >= 0 && allocated >= 0 ? allocated - allocatedAtStart : -1;
+        commit();
+    }
+
+    private static long currentThreadAllocatedBytes() {
+        return THREADS != null ? THREADS.getCurrentThreadAllocatedBytes() : -1;
+    }
+
+    private static com.sun.management.ThreadMXBean threadMXBean() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        return threads instanceof com.sun.management.ThreadMXBean allocationCounting ? allocationCounting : null;
+    }
+}
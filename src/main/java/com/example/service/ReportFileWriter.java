@@ -0,0 +1,331 @@
+package com.example.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Saves reports to disk in the background. Bytes written to a {@link PendingFile} are queued in chunks
+ * and written by a single writer thread through a {@link FileChannel} to a temporary file next to the
+ * target. Once the file is committed it is forced to disk and atomically renamed into place, so the
+ * target is never left half written. The queue is bounded: if the disk can't keep up, the file is
+ * abandoned rather than slowing down, or buffering all of, the report being sent to the client.
+ */
+@Component
+public class ReportFileWriter {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReportFileWriter.class);
+
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    // Seconds to let queued writes finish on shutdown
+    private static final long SHUTDOWN_WAIT_SECONDS = 10;
+
+    // How often an idle writer looks for abandoned files whose discard didn't fit in the queue
+    private static final long ABANDONED_CHECK_MILLIS = 1000;
+
+    @Value("${excel.file-writer.queue-chunks:256}")
+    private int queueChunks;
+
+    private BlockingQueue<Task> queue;
+    private Thread writerThread;
+
+    // Files with a temporary file on disk; only used by the writer thread
+    private final Set<PendingFile> openFiles = new HashSet<>();
+
+    /**
+     * Work for the writer thread
+     * @param file the file the work is for; null stops the writer
+     * @param data bytes to append, or null to commit or abort the file
+     * @param commit whether to commit (true) or abort (false) the file when data is null
+     */
+    private record Task(PendingFile file, ByteBuffer data, boolean commit) {
+    }
+
+    /**
+     * Starts the writer thread
+     */
+    @PostConstruct
+    void start() {
+        queue = new ArrayBlockingQueue<>(queueChunks);
+        writerThread = new Thread(this::writeQueuedChunks, "report-file-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * Finishes queued writes, then stops the writer thread
+     */
+    @PreDestroy
+    void stop() throws InterruptedException {
+        queue.put(new Task(null, null, false));
+        writerThread.join(TimeUnit.SECONDS.toMillis(SHUTDOWN_WAIT_SECONDS));
+    }
+
+    /**
+     * Starts writing a file; nothing appears at the target path until the file is committed
+     * @param target path of the file to write
+     * @return stream to write the file's content to
+     */
+    public PendingFile open(Path target) {
+        return new PendingFile(target);
+    }
+
+    /**
+     * Saves a complete file in the background without copying it. It is queued in chunks like any other file,
+     * so the queue stays bounded by bytes.
+     * @param content the file's content, which must not be modified afterwards
+     * @param target path of the file to write
+     * @throws IOException if the write queue is full
+     */
+    public void save(byte[] content, Path target) throws IOException {
+        PendingFile file = new PendingFile(target);
+        for (int offset = 0; offset < content.length; offset += CHUNK_SIZE) {
+            file.enqueue(ByteBuffer.wrap(content, offset, Math.min(CHUNK_SIZE, content.length - offset)));
+        }
+        file.commit();
+    }
+
+    private void writeQueuedChunks() {
+        while (true) {
+            Task task;
+            try {
+                task = queue.poll(ABANDONED_CHECK_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (task != null && task.file() == null) {
+                return;
+            }
+
+            if (task != null) {
+                PendingFile file = task.file();
+                if (file.abandoned) {
+                    file.discard();
+                } else if (task.data() != null) {
+                    file.append(task.data());
+                } else if (task.commit()) {
+                    file.finish();
+                } else {
+                    file.discard();
+                }
+            }
+            discardAbandonedFiles();
+        }
+    }
+
+    /**
+     * Discards files that were abandoned while the queue was full, which may have nothing more queued to
+     * notice them by
+     */
+    private void discardAbandonedFiles() {
+        if (!openFiles.isEmpty()) {
+            List.copyOf(openFiles).stream()
+                    .filter(file -> file.abandoned)
+                    .forEach(PendingFile::discard);
+        }
+    }
+
+    /**
+     * A file being written in the background. Call {@link #commit()} once all content has been written;
+     * closing the file without committing it discards it.
+     */
+    public class PendingFile extends OutputStream {
+
+        private final Path target;
+        private ByteBuffer buffer;
+        private boolean closed;
+        private volatile Instant lastModified;
+
+        // Set when the file is closed without being committed, so the writer drops it without waiting for its turn
+        private volatile boolean abandoned;
+
+        // Only used by the writer thread
+        private Path temp;
+        private FileChannel channel;
+        private boolean failed;
+
+        private PendingFile(Path target) {
+            this.target = target;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            ensureOpen();
+            if (buffer == null) {
+                buffer = ByteBuffer.allocate(CHUNK_SIZE);
+            }
+            buffer.put((byte) b);
+            if (!buffer.hasRemaining()) {
+                enqueueBuffer();
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            ensureOpen();
+            while (len > 0) {
+                if (buffer == null) {
+                    buffer = ByteBuffer.allocate(CHUNK_SIZE);
+                }
+                int count = Math.min(len, buffer.remaining());
+                buffer.put(b, off, count);
+                off += count;
+                len -= count;
+                if (!buffer.hasRemaining()) {
+                    enqueueBuffer();
+                }
+            }
+        }
+
+        /**
+         * Queues the remaining content and moves the file into place once it has all been written
+         * @throws IOException if the file has been discarded or the write queue is full
+         */
+        public void commit() throws IOException {
+            commit(null);
+        }
+
+        /**
+         * Queues the remaining content and moves the file into place once it has all been written
+         * @param lastModified the file's modification time, e.g. the version of the data it was generated from;
+         *                     null leaves it as the time it was written
+         * @throws IOException if the file has been discarded or the write queue is full
+         */
+        public void commit(Instant lastModified) throws IOException {
+            ensureOpen();
+            this.lastModified = lastModified;
+            if (buffer != null) {
+                enqueueBuffer();
+            }
+            closed = true;
+            if (!queue.offer(new Task(this, null, true))) {
+                abandoned = true;
+                throw new IOException("Report file write queue is full, not saving: " + target);
+            }
+        }
+
+        /**
+         * Discards the file unless it has been committed. Never waits for the writer: the file is marked as
+         * abandoned, and the writer removes it as soon as it sees the mark.
+         */
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                buffer = null;
+                abandoned = true;
+                // Only wakes the writer sooner; if the queue is full it finds the file on its own
+                queue.offer(new Task(this, null, false));
+            }
+        }
+
+        private void ensureOpen() throws IOException {
+            if (closed) {
+                throw new IOException("Report file has already been closed: " + target);
+            }
+        }
+
+        private void enqueueBuffer() throws IOException {
+            buffer.flip();
+            ByteBuffer chunk = buffer;
+            buffer = null;
+            enqueue(chunk);
+        }
+
+        private void enqueue(ByteBuffer chunk) throws IOException {
+            if (!queue.offer(new Task(this, chunk, false))) {
+                close();
+                throw new IOException("Report file write queue is full, not saving: " + target);
+            }
+        }
+
+        private void append(ByteBuffer data) {
+            if (failed) {
+                return;
+            }
+            try {
+                if (channel == null) {
+                    Files.createDirectories(target.getParent());
+                    temp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+                    openFiles.add(this);
+                    channel = FileChannel.open(temp, StandardOpenOption.WRITE);
+                }
+                while (data.hasRemaining()) {
+                    channel.write(data);
+                }
+            } catch (IOException e) {
+                logger.error("Failed to write report file: {}", target, e);
+                failed = true;
+                discard();
+            }
+        }
+
+        private void finish() {
+            if (failed) {
+                return;
+            }
+            try {
+                if (channel == null) {
+                    // Nothing was written; still replace the target so it matches what was sent
+                    append(ByteBuffer.allocate(0));
+                    if (failed) {
+                        return;
+                    }
+                }
+                channel.force(true);
+                channel.close();
+                channel = null;
+                if (lastModified != null) {
+                    // Set before the move, so the target never appears with another time
+                    Files.setLastModifiedTime(temp, FileTime.from(lastModified));
+                }
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                temp = null;
+                openFiles.remove(this);
+                logger.info("Excel file saved to: {}", target);
+            } catch (IOException e) {
+                logger.error("Failed to save report file: {}", target, e);
+                failed = true;
+                discard();
+            }
+        }
+
+        private void discard() {
+            failed = true;
+            try {
+                if (channel != null) {
+                    channel.close();
+                    channel = null;
+                }
+                if (temp != null) {
+                    Files.deleteIfExists(temp);
+                    temp = null;
+                }
+            } catch (IOException e) {
+                logger.warn("Failed to remove temporary report file: {}", temp, e);
+            }
+            openFiles.remove(this);
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.example.service;
+
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event for generating a whole report, from building its sheets to writing the workbook
+ */
+@Name("com.example.report.ReportGeneration")
+@Label("Report Generation")
+@Description("Generating a whole report; rows are its open items")
+@StackTrace(false)
+class ReportGenerationEvent extends ReportEvent {
+
+    @Label("Output Size")
+    @DataAmount
+    long outputBytes;
+
+    @Label("Failed")
+    @Description("Whether the report failed before it was written in full")
+    boolean failed;
+}
@@ -0,0 +1,205 @@
+package com.example.service;
+
+import com.example.model.ReportData;
+import com.example.model.ReportJob;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Generates reports in the background so large reports don't hold a request thread.
+ * Jobs run on a fixed number of workers with a bounded queue; once the queue is full new jobs are
+ * rejected rather than queued indefinitely. Completed reports are kept on disk for a retention period.
+ */
+@Service
+public class ReportJobService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReportJobService.class);
+
+    private final ReportDataService reportDataService;
+    private final ExcelService excelService;
+    private final ReportAdmissionService reportAdmissionService;
+    private final ItemService itemService;
+
+    private final Map<String, ReportJob> jobs = new ConcurrentHashMap<>();
+    private ThreadPoolExecutor executor;
+
+    @Value("${report.jobs.workers:2}")
+    private int workers;
+
+    @Value("${report.jobs.queue-capacity:20}")
+    private int queueCapacity;
+
+    @Value("${report.jobs.output-dir:${java.io.tmpdir}/report-jobs}")
+    private String outputDir;
+
+    @Value("${report.jobs.retention-minutes:60}")
+    private long retentionMinutes;
+
+    @Autowired
+    public ReportJobService(ReportDataService reportDataService, ExcelService excelService,
+                            ReportAdmissionService reportAdmissionService, ItemService itemService) {
+        this.reportDataService = reportDataService;
+        this.excelService = excelService;
+        this.reportAdmissionService = reportAdmissionService;
+        this.itemService = itemService;
+    }
+
+    /**
+     * Creates the worker pool
+     */
+    @PostConstruct
+    void start() {
+        AtomicInteger threadNumber = new AtomicInteger();
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, "report-job-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        executor = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), threadFactory, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Stops accepting jobs and interrupts running ones on shutdown
+     */
+    @PreDestroy
+    void stop() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Queues a report for generation
+     * @param companyId the company ID to generate the report for
+     * @return the queued job
+     * @throws RejectedExecutionException if the queue is full
+     */
+    public ReportJob submit(String companyId) {
+        ReportJob job = new ReportJob(UUID.randomUUID().toString(), companyId, LocalDateTime.now());
+        jobs.put(job.getJobId(), job);
+        try {
+            executor.execute(() -> run(job));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.getJobId());
+            logger.warn("Rejected report job for company ID: {}, {} jobs queued", companyId, executor.getQueue().size());
+            throw e;
+        }
+        logger.info("Queued report job {} for company ID: {}", job.getJobId(), companyId);
+        return job;
+    }
+
+    /**
+     * @return the job, or null if it doesn't exist or has expired
+     */
+    public ReportJob getJob(String jobId) {
+        return jobs.get(jobId);
+    }
+
+    /**
+     * @return the generated report for a completed job, or null if the job isn't complete or has expired
+     */
+    public Path getOutput(String jobId) {
+        ReportJob job = jobs.get(jobId);
+        if (job == null || job.getStatus() != ReportJob.Status.COMPLETED) {
+            return null;
+        }
+        return outputPath(job);
+    }
+
+    /**
+     * Removes finished jobs, and their reports, once they are older than the retention period
+     */
+    @Scheduled(fixedDelayString = "${report.jobs.cleanup-interval-ms:60000}")
+    public void removeExpiredJobs() {
+        LocalDateTime cutoff = LocalDateTime.now().minus(Duration.ofMinutes(retentionMinutes));
+        for (ReportJob job : jobs.values()) {
+            if (job.getCompletedAt() != null && job.getCompletedAt().isBefore(cutoff)) {
+                jobs.remove(job.getJobId());
+                try {
+                    Files.deleteIfExists(outputPath(job));
+                } catch (IOException e) {
+                    logger.warn("Failed to delete report for expired job {}", job.getJobId(), e);
+                }
+                logger.debug("Removed expired report job {}", job.getJobId());
+            }
+        }
+    }
+
+    private void run(ReportJob job) {
+        job.setStatus(ReportJob.Status.RUNNING);
+        job.setProgress(10);
+        Path output = outputPath(job);
+        Path temp = null;
+        try {
+            // Open items are streamed page by page, so even very large ledgers aren't held in memory. They are
+            // streamed for the summary's data version and the customers fetched with it, so every item's customer
+            // is on the Customer List
+            ReportData reportData = reportDataService.getReportDataWithoutItems(job.getCompanyId());
+            job.setProgress(40);
+
+            // Write to a temporary file so a download never sees a partly written report
+            Files.createDirectories(output.getParent());
+            temp = Files.createTempFile(output.getParent(), job.getJobId(), ".tmp");
+            ReportAdmissionService.Admission admission = reportAdmissionService.admitStreamedWhenAvailable(
+                    reportData.getCustomerData().size());
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                excelService.generateAgeingReport(reportData.getAgeingData(), reportData.getCustomerData(),
+                        itemService.streamOpenItems(job.getCompanyId(),
+                                reportData.getCompanySummary().getLastDataLoadDate(), reportData.getCustomerData()),
+                        reportData.getCompanySummary(), out);
+            } finally {
+                admission.close();
+            }
+            Files.move(temp, output, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            job.setProgress(100);
+            job.setStatus(ReportJob.Status.COMPLETED);
+            logger.info("Completed report job {} for company ID: {}", job.getJobId(), job.getCompanyId());
+        } catch (Exception e) {
+            logger.error("Report job {} failed", job.getJobId(), e);
+            job.setError(e.getMessage());
+            job.setStatus(ReportJob.Status.FAILED);
+            deleteQuietly(temp);
+        } finally {
+            job.setCompletedAt(LocalDateTime.now());
+        }
+    }
+
+    private Path outputPath(ReportJob job) {
+        return Paths.get(outputDir, job.getJobId() + ".xlsx");
+    }
+
+    private void deleteQuietly(Path file) {
+        if (file == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            logger.warn("Failed to delete temporary report file: {}", file, e);
+        }
+    }
+}
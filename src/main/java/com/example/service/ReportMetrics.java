@@ -0,0 +1,131 @@
+package com.example.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Micrometer meters for report generation, exposed through the actuator metrics endpoint. Durations and
+ * sizes publish percentile histograms, so percentiles can be aggregated across instances, as well as
+ * the median, 95th and 99th percentiles of this instance.
+ */
+@Component
+public class ReportMetrics {
+
+    private static final double[] PERCENTILES = {0.5, 0.95, 0.99};
+
+    // Upper bound of the histogram buckets for durations; slower reports fall in the last bucket
+    private static final Duration MAX_EXPECTED_DURATION = Duration.ofMinutes(5);
+
+    private final MeterRegistry meterRegistry;
+    private final DistributionSummary uniqueStyles;
+    private final Counter admissionRejected;
+    private final DistributionSummary reportSize;
+
+    @Autowired
+    public ReportMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        this.admissionRejected = Counter.builder("excel.report.admission.rejected")
+                .description("Reports rejected because the report memory budget was in use")
+                .register(meterRegistry);
+        this.uniqueStyles = DistributionSummary.builder("excel.report.styles")
+                .description("Distinct cell styles created per generated workbook")
+                .baseUnit("styles")
+                .publishPercentileHistogram()
+                .publishPercentiles(PERCENTILES)
+                .register(meterRegistry);
+        this.reportSize = DistributionSummary.builder("excel.report.size")
+                .description("Size of each generated workbook")
+                .baseUnit("bytes")
+                .publishPercentileHistogram()
+                .publishPercentiles(PERCENTILES)
+                .minimumExpectedValue(1024.0)
+                .maximumExpectedValue(1024.0 * 1024 * 1024)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Records building one sheet of a report
+     * @param sheet the sheet's name
+     * @param durationNanos time taken to build the sheet
+     * @param rows data rows written to the sheet, or 0 if it has no list of rows
+     */
+    public void recordSheet(String sheet, long durationNanos, int rows) {
+        Timer.builder("excel.report.sheet.duration")
+                .description("Time taken to build each sheet of a report")
+                .tag("sheet", sheet)
+                .publishPercentileHistogram()
+                .publishPercentiles(PERCENTILES)
+                .maximumExpectedValue(MAX_EXPECTED_DURATION)
+                .register(meterRegistry)
+                .record(durationNanos, TimeUnit.NANOSECONDS);
+        if (rows > 0 && durationNanos > 0) {
+            DistributionSummary.builder("excel.report.sheet.throughput")
+                    .description("Data rows written per second when building each sheet of a report")
+                    .baseUnit("rows/s")
+                    .tag("sheet", sheet)
+                    .publishPercentileHistogram()
+                    .publishPercentiles(PERCENTILES)
+                    .register(meterRegistry)
+                    .record(rows * 1e9 / durationNanos);
+        }
+    }
+
+    /**
+     * Records one phase of generating a report
+     * @param phase the phase: fetch, charts, write, splice or generate
+     * @param durationNanos time taken by the phase
+     */
+    public void recordPhase(String phase, long durationNanos) {
+        Timer.builder("excel.report.phase.duration")
+                .description("Time taken by each phase of generating a report")
+                .tag("phase", phase)
+                .publishPercentileHistogram()
+                .publishPercentiles(PERCENTILES)
+                .maximumExpectedValue(MAX_EXPECTED_DURATION)
+                .register(meterRegistry)
+                .record(durationNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Records the size of a generated workbook
+     */
+    public void recordReportSize(long bytes) {
+        reportSize.record(bytes);
+    }
+
+    /**
+     * Records the number of distinct cell styles in a generated workbook
+     */
+    public void recordUniqueStyles(int styleCount) {
+        uniqueStyles.record(styleCount);
+    }
+
+    /**
+     * Records a report rejected by admission control
+     */
+    public void recordAdmissionRejected() {
+        admissionRejected.increment();
+    }
+
+    /**
+     * Registers gauges for the report memory budget and how much of it is in use
+     */
+    public void registerMemoryBudget(ReportAdmissionService admissionService, long budgetBytes) {
+        Gauge.builder("excel.report.memory.used", admissionService, ReportAdmissionService::getUsedBytes)
+                .description("Estimated heap taken from the report memory budget by reports being generated")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("excel.report.memory.budget", () -> budgetBytes)
+                .description("Heap available to reports being generated")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,127 @@
+package com.example.service;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Records JDK Flight Recorder data on demand while the next few reports are generated, so the cost of
+ * specific reports can be examined in production without attaching a profiler. The recording uses the
+ * configured JFR settings with the report events enabled and events that can expose secrets disabled, and
+ * stops once the reports are finished or its time is up. Only one recording runs at a time.
+ */
+@Service
+public class ReportRecordingService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReportRecordingService.class);
+
+    // Events of the JFR settings that can carry secrets, such as credentials passed in the environment,
+    // system properties, JVM arguments or other processes' command lines; recordings are sent to clients
+    private static final List<String> SENSITIVE_EVENTS = List.of("jdk.InitialEnvironmentVariable",
+            "jdk.InitialSystemProperty", "jdk.JVMInformation", "jdk.SystemProcess");
+
+    // JFR settings to record with: "default" or "profile", which adds allocation and method sampling
+    @Value("${diagnostics.recording.settings:profile}")
+    private String settings;
+
+    // Longest a recording may run, however few reports are generated in that time
+    @Value("${diagnostics.recording.max-seconds:300}")
+    private long maxSeconds;
+
+    private final AtomicReference<ActiveRecording> active = new AtomicReference<>();
+
+    /**
+     * A recording in progress
+     * @param recording the Flight Recorder recording
+     * @param reports counts down as reports are finished
+     * @param deadline System.nanoTime() at which the recording stops regardless
+     */
+    public record ActiveRecording(Recording recording, CountDownLatch reports, long deadline) {
+    }
+
+    /**
+     * Starts recording
+     * @param reports the number of reports to record
+     * @param duration the longest to record for; limited to diagnostics.recording.max-seconds
+     * @return the recording, to pass to {@link #finish(ActiveRecording)}
+     * @throws IllegalStateException if a recording is already running
+     * @throws IOException if the recording can't be started
+     */
+    public ActiveRecording start(int reports, Duration duration) throws IOException {
+        Recording recording;
+        try {
+            recording = new Recording(Configuration.getConfiguration(settings));
+        } catch (ParseException e) {
+            throw new IOException("Invalid Flight Recorder settings: " + settings, e);
+        }
+        recording.setName("reports");
+        SENSITIVE_EVENTS.forEach(recording::disable);
+        recording.enable(SheetBuildEvent.class);
+        recording.enable(UpstreamFetchEvent.class);
+        recording.enable(ReportGenerationEvent.class);
+
+        long nanos = Math.min(duration.toNanos(), TimeUnit.SECONDS.toNanos(maxSeconds));
+        ActiveRecording started = new ActiveRecording(recording, new CountDownLatch(reports), System.nanoTime() + nanos);
+        if (!active.compareAndSet(null, started)) {
+            recording.close();
+            throw new IllegalStateException("A recording is already running");
+        }
+        recording.start();
+        logger.info("Started Flight Recorder recording of the next {} reports, for at most {} seconds",
+                reports, TimeUnit.NANOSECONDS.toSeconds(nanos));
+        return started;
+    }
+
+    /**
+     * Waits for the recorded reports to finish, or the recording's time to run out, then stops the recording
+     * @param recording the recording from {@link #start(int, Duration)}
+     * @return the recording as a temporary .jfr file, which the caller must delete
+     * @throws IOException if the recording can't be written
+     */
+    public Path finish(ActiveRecording recording) throws IOException {
+        try {
+            recording.reports().await(recording.deadline() - System.nanoTime(), TimeUnit.NANOSECONDS);
+            recording.recording().stop();
+            Path file = Files.createTempFile("reports", ".jfr");
+            try {
+                recording.recording().dump(file);
+            } catch (IOException e) {
+                Files.deleteIfExists(file);
+                throw e;
+            }
+            logger.info("Finished Flight Recorder recording with {} reports still to go",
+                    recording.reports().getCount());
+            return file;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for reports to record");
+        } finally {
+            recording.recording().close();
+            active.compareAndSet(recording, null);
+        }
+    }
+
+    /**
+     * Counts a finished report towards the running recording, if any
+     */
+    public void reportFinished() {
+        ActiveRecording recording = active.get();
+        if (recording != null) {
+            recording.reports().countDown();
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.example.service;
+
+import org.apache.poi.ss.usermodel.BorderStyle;
+import org.apache.poi.ss.usermodel.Font;
+import org.apache.poi.ss.usermodel.HorizontalAlignment;
+import org.apache.poi.ss.usermodel.IndexedColors;
+import org.apache.poi.ss.usermodel.VerticalAlignment;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * The cell styles used by the generated reports, resolved per workbook through {@link CellStyleRegistry}
+ */
+final class ReportStyles {
+
+    private static final String CURRENCY_FORMAT = "$#,##0.00";
+    private static final String PERCENTAGE_FORMAT = "0.00%";
+
+    private static final FontSpec BOLD_FONT = FontSpec.DEFAULT.withBold();
+    private static final FontSpec NOTE_FONT = FontSpec.DEFAULT.withItalic().withColor(IndexedColors.GREY_50_PERCENT);
+    private static final FontSpec HYPERLINK_FONT = FontSpec.DEFAULT.withUnderline(Font.U_SINGLE).withColor(IndexedColors.BLUE);
+    private static final CellStyleSpec BORDERED = CellStyleSpec.DEFAULT.withBorders(BorderStyle.THIN);
+
+    // Titles and notes
+    static final CellStyleSpec REPORT_TITLE = CellStyleSpec.DEFAULT
+            .withAlignment(HorizontalAlignment.CENTER)
+            .withVerticalAlignment(VerticalAlignment.CENTER)
+            .withFill(IndexedColors.WHITE)
+            .withFont(BOLD_FONT.withHeight(18).withColor(IndexedColors.DARK_BLUE));
+    static final CellStyleSpec SHEET_TITLE = CellStyleSpec.DEFAULT
+            .withAlignment(HorizontalAlignment.CENTER)
+            .withFont(BOLD_FONT.withHeight(14).withColor(IndexedColors.DARK_BLUE));
+    static final CellStyleSpec SUMMARY_TITLE = CellStyleSpec.DEFAULT
+            .withAlignment(HorizontalAlignment.CENTER)
+            .withFont(BOLD_FONT.withHeight(16).withColor(IndexedColors.DARK_BLUE));
+    static final CellStyleSpec NOTE = CellStyleSpec.DEFAULT.withFont(NOTE_FONT);
+
+    // Table header and data cells
+    static final CellStyleSpec HEADER = BORDERED
+            .withFill(IndexedColors.ROYAL_BLUE)
+            .withAlignment(HorizontalAlignment.CENTER)
+            .withVerticalAlignment(VerticalAlignment.CENTER)
+            .withFont(BOLD_FONT.withColor(IndexedColors.WHITE));
+    static final CellStyleSpec TEXT = BORDERED.withVerticalAlignment(VerticalAlignment.CENTER);
+    static final CellStyleSpec HYPERLINK = TEXT.withFont(HYPERLINK_FONT);
+    static final CellStyleSpec BOOLEAN = BORDERED
+            .withAlignment(HorizontalAlignment.CENTER)
+            .withVerticalAlignment(VerticalAlignment.CENTER);
+    static final CellStyleSpec DATE = BORDERED.withAlignment(HorizontalAlignment.LEFT);
+    static final CellStyleSpec CURRENCY = BORDERED
+            .withDataFormat(CURRENCY_FORMAT)
+            .withAlignment(HorizontalAlignment.RIGHT);
+    static final CellStyleSpec NEGATIVE_CURRENCY = CURRENCY.withFont(FontSpec.DEFAULT.withColor(IndexedColors.RED));
+    static final CellStyleSpec PERCENTAGE = BORDERED
+            .withDataFormat(PERCENTAGE_FORMAT)
+            .withAlignment(HorizontalAlignment.RIGHT);
+    static final CellStyleSpec INVOICE_TYPE = itemType(IndexedColors.BLACK);
+    static final CellStyleSpec PAYMENT_TYPE = itemType(IndexedColors.BLUE);
+    static final CellStyleSpec CREDIT_NOTE_TYPE = itemType(IndexedColors.RED);
+
+    // Total rows
+    static final CellStyleSpec TOTAL_LABEL = CellStyleSpec.DEFAULT
+            .withFill(IndexedColors.GREY_25_PERCENT)
+            .withBorders(BorderStyle.THIN)
+            .withBorderTop(BorderStyle.MEDIUM)
+            .withFont(BOLD_FONT);
+    static final CellStyleSpec TOTAL_CURRENCY = TOTAL_LABEL.withDataFormat(CURRENCY_FORMAT);
+    static final CellStyleSpec TOTAL_PERCENTAGE = TOTAL_LABEL.withDataFormat(PERCENTAGE_FORMAT);
+
+    // Summary sheet
+    static final CellStyleSpec SECTION_HEADER = CellStyleSpec.DEFAULT
+            .withAlignment(HorizontalAlignment.LEFT)
+            .withFill(IndexedColors.GREY_25_PERCENT)
+            .withFont(BOLD_FONT.withHeight(11));
+    static final CellStyleSpec LABEL = CellStyleSpec.DEFAULT.withAlignment(HorizontalAlignment.LEFT).withFont(BOLD_FONT);
+    static final CellStyleSpec VALUE = CellStyleSpec.DEFAULT.withAlignment(HorizontalAlignment.LEFT);
+    static final CellStyleSpec DATE_TIME = VALUE.withDataFormat("yyyy-MM-dd HH:mm:ss");
+    static final CellStyleSpec SUMMARY_CURRENCY = CURRENCY.withBorders(BorderStyle.NONE);
+    static final CellStyleSpec SUMMARY_HYPERLINK = HYPERLINK.withBorders(BorderStyle.NONE);
+
+    // Every style used by the Customer List and Open Items sheets. Registering these first, in this order,
+    // gives them the same style index in every workbook, so a cached sheet part can be reused in a new one.
+    // Append new styles to the end.
+    static final List<CellStyleSpec> LIST_SHEET_STYLES = List.of(
+            SHEET_TITLE, NOTE, HEADER, TEXT, HYPERLINK, BOOLEAN, DATE, CURRENCY, NEGATIVE_CURRENCY,
+            INVOICE_TYPE, PAYMENT_TYPE, CREDIT_NOTE_TYPE,
+            alternateRow(TEXT), alternateRow(HYPERLINK), alternateRow(BOOLEAN), alternateRow(DATE),
+            alternateRow(CURRENCY), alternateRow(NEGATIVE_CURRENCY), alternateRow(INVOICE_TYPE),
+            alternateRow(PAYMENT_TYPE), alternateRow(CREDIT_NOTE_TYPE),
+            TOTAL_LABEL, TOTAL_CURRENCY);
+
+    // Every style used by a report, created up front when the list sheets are written on their own threads:
+    // the list sheet styles first, so they keep their indexes, then those of the Summary and Ageing Report sheets
+    static final List<CellStyleSpec> REPORT_STYLES = Stream.concat(LIST_SHEET_STYLES.stream(), Stream.of(
+            REPORT_TITLE, SUMMARY_TITLE, SECTION_HEADER, LABEL, VALUE, DATE_TIME, SUMMARY_CURRENCY,
+            SUMMARY_HYPERLINK, PERCENTAGE, alternateRow(PERCENTAGE), TOTAL_PERCENTAGE)).distinct().toList();
+
+    private ReportStyles() {
+    }
+
+    /**
+     * Returns the variant of a data cell style used on alternate (shaded) rows
+     */
+    static CellStyleSpec alternateRow(CellStyleSpec spec) {
+        return spec.withFill(IndexedColors.PALE_BLUE);
+    }
+
+    private static CellStyleSpec itemType(IndexedColors color) {
+        return BORDERED
+                .withAlignment(HorizontalAlignment.CENTER)
+                .withFont(BOLD_FONT.withColor(color));
+    }
+}
@@ -0,0 +1,23 @@
+package com.example.service;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event for building one sheet of a report
+ */
+@Name("com.example.report.SheetBuild")
+@Label("Report Sheet Build")
+@Description("Building one sheet of a report")
+@StackTrace(false)
+class SheetBuildEvent extends ReportEvent {
+
+    @Label("Sheet")
+    String sheet;
+
+    SheetBuildEvent(String sheet) {
+        this.sheet = sheet;
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Builds a SHA-256 fingerprint of the values a sheet is rendered from. Two sheets with the same
+ * fingerprint render to the same XML, so a cached rendering can be reused.
+ */
+final class SheetFingerprint {
+
+    // Separates values so that e.g. ("ab", "c") and ("a", "bc") don't hash the same
+    private static final byte SEPARATOR = 0x1F;
+
+    private final MessageDigest digest;
+
+    /**
+     * @param sheetName name of the sheet, so different sheets over the same data don't share a fingerprint
+     */
+    SheetFingerprint(String sheetName) {
+        try {
+            this.digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every JVM is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+        add(sheetName);
+    }
+
+    /**
+     * Adds a value, using its string form
+     */
+    SheetFingerprint add(Object value) {
+        digest.update(String.valueOf(value).getBytes(StandardCharsets.UTF_8));
+        digest.update(SEPARATOR);
+        return this;
+    }
+
+    /**
+     * @return the fingerprint as a hex string
+     */
+    String finish() {
+        return HexFormat.of().formatHex(digest.digest());
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cache of rendered worksheet XML parts, keyed by the fingerprint of the data each sheet was rendered from.
+ * Bounded by total size, evicting the least recently used parts first.
+ */
+@Component
+public class SheetPartCache {
+
+    @Value("${excel.incremental.cache-max-bytes:134217728}")
+    private long maxBytes;
+
+    @Value("${excel.incremental.max-part-bytes:33554432}")
+    private int maxPartBytes;
+
+    // Access-ordered, so iteration starts at the least recently used part
+    private final LinkedHashMap<String, byte[]> parts = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+
+    /**
+     * @return the rendered part for the fingerprint, or null if it isn't cached
+     */
+    public synchronized byte[] get(String fingerprint) {
+        return parts.get(fingerprint);
+    }
+
+    /**
+     * Adds a rendered part, evicting the least recently used parts if the cache is full
+     */
+    public synchronized void put(String fingerprint, byte[] part) {
+        if (part.length > maxPartBytes) {
+            return;
+        }
+        byte[] previous = parts.put(fingerprint, part);
+        totalBytes += part.length - (previous != null ? previous.length : 0);
+
+        Iterator<Map.Entry<String, byte[]>> eldest = parts.entrySet().iterator();
+        while (totalBytes > maxBytes && eldest.hasNext()) {
+            totalBytes -= eldest.next().getValue().length;
+            eldest.remove();
+        }
+    }
+
+    /**
+     * @return size in bytes of the largest part that will be cached
+     */
+    public int getMaxPartBytes() {
+        return maxPartBytes;
+    }
+}
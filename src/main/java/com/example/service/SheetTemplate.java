@@ -0,0 +1,138 @@
+package com.example.service;
+
+import java.util.Collections;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A worksheet part read back from a template workbook, split so a {@link SheetXmlWriter} can write cells over
+ * it: the XML before the rows, with any column widths apart, each row's start tag and cells by column, and
+ * the XML after the rows, which holds the merged regions, hyperlinks and drawings. Immutable, so one template
+ * is shared by concurrent reports.
+ */
+final class SheetTemplate {
+
+    private static final Pattern COLUMNS = Pattern.compile("<cols>.*?</cols>", Pattern.DOTALL);
+
+    private static final Pattern ROW = Pattern.compile("(<row r=\"(\\d+)\"[^>]*?)(?:/>|>(.*?)</row>)", Pattern.DOTALL);
+
+    private static final Pattern CELL = Pattern.compile("<c r=\"([A-Z]+)\\d+\"[^>]*?(?:/>|>.*?</c>)", Pattern.DOTALL);
+
+    /**
+     * A template row
+     * @param startTag the row's start tag, with its height
+     * @param cells the row's cell XML by zero-based column
+     */
+    record Row(String startTag, NavigableMap<Integer, String> cells) {
+    }
+
+    private final String beforeColumns;
+    private final String columns;
+    private final String afterColumns;
+    private final NavigableMap<Integer, Row> rows;
+    private final String tail;
+
+    private SheetTemplate(String beforeColumns, String columns, String afterColumns, NavigableMap<Integer, Row> rows,
+                          String tail) {
+        this.beforeColumns = beforeColumns;
+        this.columns = columns;
+        this.afterColumns = afterColumns;
+        this.rows = rows;
+        this.tail = tail;
+    }
+
+    /**
+     * Splits a worksheet part as written by POI
+     * @param xml the part's content
+     * @throws IllegalArgumentException if the part has no sheet data
+     */
+    static SheetTemplate parse(String xml) {
+        int dataStart = xml.indexOf("<sheetData");
+        if (dataStart < 0) {
+            throw new IllegalArgumentException("Worksheet has no sheet data");
+        }
+        int dataEnd;
+        String data;
+        if (xml.startsWith("<sheetData/>", dataStart)) {
+            dataEnd = dataStart + "<sheetData/>".length();
+            data = "";
+        } else {
+            int rowsStart = xml.indexOf('>', dataStart) + 1;
+            int rowsEnd = xml.indexOf("</sheetData>", rowsStart);
+            dataEnd = rowsEnd + "</sheetData>".length();
+            data = xml.substring(rowsStart, rowsEnd);
+        }
+
+        String head = xml.substring(0, dataStart);
+        String beforeColumns = head;
+        String columns = "";
+        String afterColumns = "";
+        Matcher columnsMatcher = COLUMNS.matcher(head);
+        if (columnsMatcher.find()) {
+            beforeColumns = head.substring(0, columnsMatcher.start());
+            columns = columnsMatcher.group();
+            afterColumns = head.substring(columnsMatcher.end());
+        }
+
+        NavigableMap<Integer, Row> rows = new TreeMap<>();
+        Matcher rowMatcher = ROW.matcher(data);
+        while (rowMatcher.find()) {
+            NavigableMap<Integer, String> cells = new TreeMap<>();
+            if (rowMatcher.group(3) != null) {
+                Matcher cellMatcher = CELL.matcher(rowMatcher.group(3));
+                while (cellMatcher.find()) {
+                    cells.put(columnIndex(cellMatcher.group(1)), cellMatcher.group());
+                }
+            }
+            rows.put(Integer.parseInt(rowMatcher.group(2)) - 1,
+                    new Row(rowMatcher.group(1) + ">", Collections.unmodifiableNavigableMap(cells)));
+        }
+        return new SheetTemplate(beforeColumns, columns, afterColumns, Collections.unmodifiableNavigableMap(rows),
+                "</sheetData>" + xml.substring(dataEnd));
+    }
+
+    /**
+     * @return the XML before the column widths, from the start of the part
+     */
+    String beforeColumns() {
+        return beforeColumns;
+    }
+
+    /**
+     * @return the template's column widths, or an empty string if it has none
+     */
+    String columns() {
+        return columns;
+    }
+
+    /**
+     * @return the XML between the column widths and the rows, ending with the start of the sheet data
+     */
+    String afterColumns() {
+        return afterColumns + "<sheetData>";
+    }
+
+    /**
+     * @return the template's rows by zero-based row index
+     */
+    NavigableMap<Integer, Row> rows() {
+        return rows;
+    }
+
+    /**
+     * @return the XML after the rows, from the end of the sheet data to the end of the part
+     */
+    String tail() {
+        return tail;
+    }
+
+    private static int columnIndex(String columnName) {
+        int column = 0;
+        for (int i = 0; i < columnName.length(); i++) {
+            column = column * 26 + columnName.charAt(i) - 'A' + 1;
+        }
+        return column - 1;
+    }
+}
@@ -0,0 +1,605 @@
+package com.example.service;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes a worksheet part of an xlsx package as SpreadsheetML, without POI's object model, for sheets with
+ * many rows. Cells are appended to a reusable char buffer and encoded straight to a temporary file, so
+ * writing a row creates no objects beyond the values themselves. The rows are kept apart from the rest of
+ * the part because the dimension and column widths that come before them in the XML are only known once
+ * every row has been written; {@link #writeTo(OutputStream)} puts the part together.
+ * Strings are written inline, so the part doesn't depend on the workbook's shared strings table and can be
+ * spliced into any workbook whose styles have the same indexes.
+ * Given a {@link SheetTemplate}, the written cells are overlaid on the template's: its rows and cells are
+ * written around them, a written cell replacing the template's in the same place, and the part otherwise
+ * keeps the template's XML.
+ */
+final class SheetXmlWriter implements WorkbookPartSplicer.Part, Closeable {
+
+    private static final int BUFFER_CHARS = 16 * 1024;
+
+    // Most written for a cell, besides its text, without first checking for room in the buffer
+    private static final int MAX_TOKEN_CHARS = 128;
+
+    // A value this large can't be an exact number of cents in a double
+    private static final double MAX_CENTS_VALUE = 1e13;
+
+    private static final String WORKSHEET_START = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n"
+            + "<worksheet xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\""
+            + " xmlns:r=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships\">";
+
+    private final boolean compress;
+    private final SheetTemplate template;
+    private final int[] columnWidths;
+    private final char[] buffer = new char[BUFFER_CHARS];
+    private int length;
+
+    private Path rowsFile;
+    private Writer rows;
+    private boolean rowsFinished;
+
+    // Zero-based position of the row being written, and of the last row and column written
+    private int currentRow = -1;
+    private int lastRow = -1;
+    private int lastColumn = -1;
+
+    // The template's cells in the row being written, and the column of the last cell written in the row
+    private NavigableMap<Integer, String> templateCells = Collections.emptyNavigableMap();
+    private int rowColumn = -1;
+
+    private int frozenRows;
+    private String autoFilter;
+    private final List<String> mergedRegions = new ArrayList<>();
+    private final StringBuilder hyperlinks = new StringBuilder();
+
+    /**
+     * @param columnCount the number of columns that may be given a width
+     * @param compress whether to gzip the temporary file of rows
+     */
+    SheetXmlWriter(int columnCount, boolean compress) {
+        this(null, columnCount, compress);
+    }
+
+    /**
+     * @param template the part to write cells over, or null; its column widths are kept unless any are set
+     * @param columnCount the number of columns that may be given a width
+     * @param compress whether to gzip the temporary file of rows
+     */
+    SheetXmlWriter(SheetTemplate template, int columnCount, boolean compress) {
+        this.template = template;
+        this.columnWidths = new int[columnCount];
+        this.compress = compress;
+    }
+
+    /**
+     * Starts a row; rows must be written in order
+     * @param rowIndex zero-based row index
+     */
+    void startRow(int rowIndex) throws IOException {
+        startRow(rowIndex, 0);
+    }
+
+    /**
+     * Starts a row with a custom height
+     * @param rowIndex zero-based row index
+     * @param heightInPoints the row's height, or 0 for the default
+     */
+    void startRow(int rowIndex, float heightInPoints) throws IOException {
+        if (rowsFinished) {
+            throw new IllegalStateException("Rows written after the part");
+        }
+        if (rowIndex <= currentRow) {
+            throw new IllegalArgumentException("Row " + rowIndex + " written after row " + currentRow);
+        }
+        SheetTemplate.Row templateRow = null;
+        if (template != null) {
+            writeTemplateRows(template.rows().subMap(currentRow, false, rowIndex, false));
+            templateRow = template.rows().get(rowIndex);
+        }
+        currentRow = rowIndex;
+        lastRow = rowIndex;
+        rowColumn = -1;
+        templateCells = templateRow != null ? templateRow.cells() : Collections.emptyNavigableMap();
+        if (templateRow != null && heightInPoints == 0) {
+            appendRaw(templateRow.startTag());
+            return;
+        }
+        reserve(MAX_TOKEN_CHARS);
+        append("<row r=\"");
+        appendLong(rowIndex + 1L);
+        if (heightInPoints > 0) {
+            append("\" ht=\"");
+            appendNumber(heightInPoints);
+            append("\" customHeight=\"1");
+        }
+        append("\">");
+    }
+
+    /**
+     * Ends the current row
+     */
+    void endRow() throws IOException {
+        writeTemplateCells(templateCells.tailMap(rowColumn, false));
+        templateCells = Collections.emptyNavigableMap();
+        reserve(MAX_TOKEN_CHARS);
+        append("</row>");
+    }
+
+    /**
+     * Writes a text cell; a null value writes an empty cell with the style
+     */
+    void text(int column, String value, int style) throws IOException {
+        if (value == null) {
+            blank(column, style);
+            return;
+        }
+        startText(column, style, !value.isEmpty()
+                && (isSpace(value.charAt(0)) || isSpace(value.charAt(value.length() - 1))));
+        appendEscaped(value);
+        endText();
+    }
+
+    /**
+     * Starts a text cell whose value is appended in parts, so it needn't be concatenated first
+     * @param preserveSpace whether the value starts or ends with white space that must be kept
+     */
+    void startText(int column, int style, boolean preserveSpace) throws IOException {
+        startCell(column, style);
+        append(preserveSpace ? " t=\"inlineStr\"><is><t xml:space=\"preserve\">" : " t=\"inlineStr\"><is><t>");
+    }
+
+    /**
+     * Appends part of the value of the text cell started with {@link #startText(int, int, boolean)}
+     */
+    void appendText(String value) throws IOException {
+        if (value != null) {
+            appendEscaped(value);
+        }
+    }
+
+    /**
+     * Ends the text cell started with {@link #startText(int, int, boolean)}
+     */
+    void endText() throws IOException {
+        reserve(MAX_TOKEN_CHARS);
+        append("</t></is></c>");
+    }
+
+    /**
+     * Writes a date as ISO text (yyyy-MM-dd), as the other sheets do; a null date writes an empty cell
+     */
+    void isoDate(int column, LocalDate value, int style) throws IOException {
+        if (value == null) {
+            blank(column, style);
+            return;
+        }
+        startCell(column, style);
+        append(" t=\"inlineStr\"><is><t>");
+        int year = value.getYear();
+        if (year >= 0 && year <= 9999) {
+            appendTwoDigits(year / 100);
+            appendTwoDigits(year % 100);
+        } else {
+            appendLong(year);
+        }
+        append('-');
+        appendTwoDigits(value.getMonthValue());
+        append('-');
+        appendTwoDigits(value.getDayOfMonth());
+        append("</t></is></c>");
+    }
+
+    /**
+     * Writes a numeric cell
+     */
+    void number(int column, double value, int style) throws IOException {
+        startCell(column, style);
+        if (!Double.isFinite(value)) {
+            // Excel has no infinite or NaN numbers
+            append(" t=\"e\"><v>#NUM!</v></c>");
+            return;
+        }
+        append("><v>");
+        appendNumber(value);
+        append("</v></c>");
+    }
+
+    /**
+     * Writes a formula cell without a cached value, which Excel calculates when the workbook is opened
+     */
+    void formula(int column, String formula, int style) throws IOException {
+        startCell(column, style);
+        append("><f>");
+        appendEscaped(formula);
+        reserve(MAX_TOKEN_CHARS);
+        append("</f></c>");
+    }
+
+    /**
+     * Writes an empty cell with a style
+     */
+    void blank(int column, int style) throws IOException {
+        startCell(column, style);
+        append("/>");
+    }
+
+    /**
+     * Merges a range of cells; indexes are zero-based and inclusive
+     */
+    void mergeCells(int firstRow, int lastRow, int firstColumn, int lastColumn) {
+        mergedRegions.add(cellReference(firstRow, firstColumn) + ":" + cellReference(lastRow, lastColumn));
+    }
+
+    /**
+     * Links a cell to a location in the workbook
+     * @param location e.g. 'Open Items'!A4
+     * @param tooltip text shown when hovering over the link, or null
+     */
+    void hyperlink(int row, int column, String location, String tooltip) {
+        hyperlinks.append("<hyperlink ref=\"").append(cellReference(row, column)).append("\" location=\"");
+        escape(hyperlinks, location);
+        if (tooltip != null) {
+            hyperlinks.append("\" tooltip=\"");
+            escape(hyperlinks, tooltip);
+        }
+        hyperlinks.append("\"/>");
+    }
+
+    /**
+     * Sets a column's width
+     * @param width in units of 1/256th of a character, as for {@link org.apache.poi.ss.usermodel.Sheet#setColumnWidth}
+     */
+    void columnWidth(int column, int width) {
+        columnWidths[column] = width;
+    }
+
+    /**
+     * Freezes the rows above the given row
+     */
+    void freezeRows(int rows) {
+        frozenRows = rows;
+    }
+
+    /**
+     * Adds filter buttons to a header row; the workbook must define the matching filter database name
+     */
+    void autoFilter(int row, int firstColumn, int lastColumn) {
+        autoFilter = cellReference(row, firstColumn) + ":" + cellReference(row, lastColumn);
+    }
+
+    /**
+     * Writes the complete part. May be called more than once; no rows can be written afterwards.
+     * @param out stream to write the part to; it is not closed
+     */
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        finishRows();
+        if (template != null) {
+            StringBuilder head = new StringBuilder(template.beforeColumns());
+            if (!appendColumns(head)) {
+                head.append(template.columns());
+            }
+            head.append(template.afterColumns());
+            out.write(head.toString().getBytes(StandardCharsets.UTF_8));
+            writeRows(out);
+            out.write(template.tail().getBytes(StandardCharsets.UTF_8));
+            return;
+        }
+
+        StringBuilder head = new StringBuilder(WORKSHEET_START);
+        head.append("<dimension ref=\"A1");
+        if (lastRow >= 0 && lastColumn >= 0) {
+            head.append(':').append(cellReference(lastRow, lastColumn));
+        }
+        head.append("\"/>");
+        if (frozenRows > 0) {
+            String topLeftCell = cellReference(frozenRows, 0);
+            head.append("<sheetViews><sheetView workbookViewId=\"0\"><pane ySplit=\"").append(frozenRows)
+                    .append("\" topLeftCell=\"").append(topLeftCell)
+                    .append("\" activePane=\"bottomLeft\" state=\"frozen\"/><selection pane=\"bottomLeft\" activeCell=\"")
+                    .append(topLeftCell).append("\" sqref=\"").append(topLeftCell).append("\"/></sheetView></sheetViews>");
+        }
+        head.append("<sheetFormatPr defaultRowHeight=\"15.0\"/>");
+        appendColumns(head);
+        head.append("<sheetData>");
+        out.write(head.toString().getBytes(StandardCharsets.UTF_8));
+        writeRows(out);
+
+        StringBuilder tail = new StringBuilder("</sheetData>");
+        if (autoFilter != null) {
+            tail.append("<autoFilter ref=\"").append(autoFilter).append("\"/>");
+        }
+        if (!mergedRegions.isEmpty()) {
+            tail.append("<mergeCells count=\"").append(mergedRegions.size()).append("\">");
+            for (String region : mergedRegions) {
+                tail.append("<mergeCell ref=\"").append(region).append("\"/>");
+            }
+            tail.append("</mergeCells>");
+        }
+        if (!hyperlinks.isEmpty()) {
+            tail.append("<hyperlinks>").append(hyperlinks).append("</hyperlinks>");
+        }
+        tail.append("<pageMargins left=\"0.7\" right=\"0.7\" top=\"0.75\" bottom=\"0.75\" header=\"0.3\" footer=\"0.3\"/>")
+                .append("</worksheet>");
+        out.write(tail.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Removes the temporary file of rows
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (rows != null && !rowsFinished) {
+                rows.close();
+            }
+        } finally {
+            if (rowsFile != null) {
+                Files.deleteIfExists(rowsFile);
+            }
+        }
+    }
+
+    private void startCell(int column, int style) throws IOException {
+        writeTemplateCells(templateCells.subMap(rowColumn, false, column, false));
+        rowColumn = column;
+        if (column > lastColumn) {
+            lastColumn = column;
+        }
+        reserve(MAX_TOKEN_CHARS);
+        append("<c r=\"");
+        appendColumnName(column);
+        appendLong(currentRow + 1L);
+        append("\" s=\"");
+        appendLong(style);
+        append('"');
+    }
+
+    private void finishRows() throws IOException {
+        if (rowsFinished) {
+            return;
+        }
+        if (template != null) {
+            writeTemplateRows(template.rows().tailMap(currentRow, false));
+        }
+        rowsFinished = true;
+        if (length > 0) {
+            flushBuffer();
+        }
+        if (rows != null) {
+            rows.close();
+        }
+    }
+
+    /**
+     * Appends the column widths that have been set
+     * @return whether any have
+     */
+    private boolean appendColumns(StringBuilder head) {
+        boolean hasWidths = false;
+        for (int column = 0; column < columnWidths.length; column++) {
+            if (columnWidths[column] > 0) {
+                head.append(hasWidths ? "" : "<cols>").append("<col min=\"").append(column + 1)
+                        .append("\" max=\"").append(column + 1).append("\" width=\"").append(columnWidths[column] / 256.0)
+                        .append("\" customWidth=\"1\"/>");
+                hasWidths = true;
+            }
+        }
+        head.append(hasWidths ? "</cols>" : "");
+        return hasWidths;
+    }
+
+    private void writeRows(OutputStream out) throws IOException {
+        if (rowsFile != null) {
+            try (InputStream fileStream = Files.newInputStream(rowsFile);
+                 InputStream rowStream = compress ? new GZIPInputStream(fileStream, 64 * 1024) : fileStream) {
+                rowStream.transferTo(out);
+            }
+        }
+    }
+
+    /**
+     * Writes template rows no cells are written in, as they are
+     */
+    private void writeTemplateRows(Map<Integer, SheetTemplate.Row> rows) throws IOException {
+        for (Map.Entry<Integer, SheetTemplate.Row> row : rows.entrySet()) {
+            lastRow = row.getKey();
+            appendRaw(row.getValue().startTag());
+            writeTemplateCells(row.getValue().cells());
+            appendRaw("</row>");
+        }
+    }
+
+    private void writeTemplateCells(Map<Integer, String> cells) throws IOException {
+        for (Map.Entry<Integer, String> cell : cells.entrySet()) {
+            if (cell.getKey() > lastColumn) {
+                lastColumn = cell.getKey();
+            }
+            appendRaw(cell.getValue());
+        }
+    }
+
+    private void appendEscaped(String value) throws IOException {
+        for (int i = 0; i < value.length(); i++) {
+            if (length + 8 > buffer.length) {
+                flushBuffer();
+            }
+            char c = value.charAt(i);
+            switch (c) {
+                case '<' -> append("&lt;");
+                case '>' -> append("&gt;");
+                case '&' -> append("&amp;");
+                case '"' -> append("&quot;");
+                default -> {
+                    if (c < 0x20 && c != '\t' && c != '\n' && c != '\r' || c == 0xFFFE || c == 0xFFFF
+                            || c == '_' && isEscapeSequence(value, i)) {
+                        // Not allowed in XML, or text that would read back as an escaped character;
+                        // escaped the way SpreadsheetML escapes characters
+                        appendEscapedCharacter(c);
+                    } else {
+                        buffer[length++] = c;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return whether the text at the index is of the form _xHHHH_, which Excel reads as an escaped character
+     */
+    private static boolean isEscapeSequence(String value, int index) {
+        if (index + 6 >= value.length() || value.charAt(index + 1) != 'x' || value.charAt(index + 6) != '_') {
+            return false;
+        }
+        for (int i = index + 2; i < index + 6; i++) {
+            if (Character.digit(value.charAt(i), 16) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void appendEscapedCharacter(char c) {
+        append("_x");
+        for (int shift = 12; shift >= 0; shift -= 4) {
+            buffer[length++] = Character.toUpperCase(Character.forDigit((c >> shift) & 0xF, 16));
+        }
+        append('_');
+    }
+
+    private void appendNumber(double value) {
+        long cents = Math.round(value * 100);
+        if (Math.abs(value) < MAX_CENTS_VALUE && cents / 100.0 == value) {
+            // Amounts are whole cents, written without formatting a string
+            if (cents < 0) {
+                append('-');
+                cents = -cents;
+            }
+            appendLong(cents / 100);
+            int fraction = (int) (cents % 100);
+            if (fraction != 0) {
+                append('.');
+                append((char) ('0' + fraction / 10));
+                if (fraction % 10 != 0) {
+                    append((char) ('0' + fraction % 10));
+                }
+            }
+        } else {
+            append(Double.toString(value));
+        }
+    }
+
+    private void appendLong(long value) {
+        if (value < 0) {
+            append('-');
+            value = -value;
+        }
+        int digits = 1;
+        for (long remaining = value / 10; remaining > 0; remaining /= 10) {
+            digits++;
+        }
+        for (int i = length + digits - 1; i >= length; i--) {
+            buffer[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        length += digits;
+    }
+
+    private void appendTwoDigits(int value) {
+        buffer[length++] = (char) ('0' + value / 10);
+        buffer[length++] = (char) ('0' + value % 10);
+    }
+
+    private void appendColumnName(int column) {
+        if (column >= 26) {
+            appendColumnName(column / 26 - 1);
+        }
+        buffer[length++] = (char) ('A' + column % 26);
+    }
+
+    private void append(String value) {
+        value.getChars(0, value.length(), buffer, length);
+        length += value.length();
+    }
+
+    /**
+     * Appends XML as it is, however long
+     */
+    private void appendRaw(String xml) throws IOException {
+        for (int start = 0; start < xml.length(); ) {
+            if (length == buffer.length) {
+                flushBuffer();
+            }
+            int count = Math.min(xml.length() - start, buffer.length - length);
+            xml.getChars(start, start + count, buffer, length);
+            length += count;
+            start += count;
+        }
+    }
+
+    private void append(char c) {
+        buffer[length++] = c;
+    }
+
+    private void reserve(int chars) throws IOException {
+        if (length + chars > buffer.length) {
+            flushBuffer();
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        if (rows == null) {
+            rowsFile = Files.createTempFile("sheet", compress ? ".xml.gz" : ".xml");
+            OutputStream fileStream = new BufferedOutputStream(Files.newOutputStream(rowsFile), 64 * 1024);
+            rows = new OutputStreamWriter(compress ? new GZIPOutputStream(fileStream, 64 * 1024) : fileStream,
+                    StandardCharsets.UTF_8);
+        }
+        rows.write(buffer, 0, length);
+        length = 0;
+    }
+
+    private static boolean isSpace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r';
+    }
+
+    private static String cellReference(int row, int column) {
+        StringBuilder reference = new StringBuilder();
+        for (int remaining = column; remaining >= 0; remaining = remaining / 26 - 1) {
+            reference.insert(0, (char) ('A' + remaining % 26));
+        }
+        return reference.append(row + 1).toString();
+    }
+
+    /**
+     * Appends text escaped for an XML attribute
+     */
+    static void escape(StringBuilder out, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '<' -> out.append("&lt;");
+                case '>' -> out.append("&gt;");
+                case '&' -> out.append("&amp;");
+                case '"' -> out.append("&quot;");
+                default -> out.append(c);
+            }
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.example.service;
+
+import java.io.InterruptedIOException;
+import java.nio.channels.ClosedByInterruptException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Collapses concurrent loads of the same key into one. The first caller for a key runs the loader and
+ * any caller arriving while it runs waits for, and shares, its result. A successful result is then
+ * reused for a short time-to-live so that calls made one after another while building a single report
+ * also see the same data. Failures are never cached. A failure caused by the leader being interrupted, e.g.
+ * because the request it loads for was cancelled, isn't shared either: the waiting callers load again instead.
+ * @param <K> key type, e.g. a company ID
+ * @param <V> loaded value type; values are shared between callers so should not be modified
+ */
+public class SingleFlight<K, V> {
+
+    private final ConcurrentMap<K, Flight<V>> flights = new ConcurrentHashMap<>();
+    private final long ttlNanos;
+
+    /**
+     * @param ttlMillis how long a loaded value is reused for, in milliseconds; 0 only shares in-flight loads
+     */
+    public SingleFlight(long ttlMillis) {
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+    }
+
+    /**
+     * Returns the value for the key, loading it unless a load is already in flight or a fresh value exists
+     * @param key the key to load
+     * @param loader loads the value; runs on the calling thread of the first caller
+     * @return the loaded or shared value
+     */
+    public V get(K key, Function<? super K, ? extends V> loader) {
+        while (true) {
+            Flight<V> candidate = new Flight<>();
+            Flight<V> flight = flights.compute(key, (k, existing) ->
+                    existing != null && existing.isFresh(System.nanoTime(), ttlNanos) ? existing : candidate);
+
+            if (flight == candidate) {
+                // This caller leads the flight; drop any other expired entries while here
+                long now = System.nanoTime();
+                flights.values().removeIf(other -> other != candidate && !other.isFresh(now, ttlNanos));
+                try {
+                    candidate.complete(loader.apply(key));
+                } catch (RuntimeException | Error e) {
+                    flights.remove(key, candidate);
+                    // Only the leader was interrupted, so the others load again rather than fail with it
+                    candidate.fail(Thread.currentThread().isInterrupted() || isInterruption(e)
+                            ? LeaderInterrupted.INSTANCE : e);
+                    throw e;
+                }
+            }
+            try {
+                return flight.await();
+            } catch (LeaderInterrupted e) {
+                // Load again, leading the next flight unless another caller already does
+            }
+        }
+    }
+
+    /**
+     * Forgets any value held for the key, so the next call loads it again
+     */
+    public void invalidate(K key) {
+        flights.remove(key);
+    }
+
+    private static boolean isInterruption(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof InterruptedException || cause instanceof InterruptedIOException
+                    || cause instanceof ClosedByInterruptException || cause instanceof CancellationException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Completes a flight whose leader was interrupted, telling the callers waiting for it to load again
+     */
+    private static final class LeaderInterrupted extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        static final LeaderInterrupted INSTANCE = new LeaderInterrupted();
+
+        private LeaderInterrupted() {
+            super(null, null, false, false);
+        }
+    }
+
+    private static class Flight<V> {
+        private final CompletableFuture<V> result = new CompletableFuture<>();
+        private volatile long completedAt;
+
+        void complete(V value) {
+            completedAt = System.nanoTime();
+            result.complete(value);
+        }
+
+        void fail(Throwable e) {
+            result.completeExceptionally(e);
+        }
+
+        boolean isFresh(long now, long ttlNanos) {
+            if (!result.isDone()) {
+                return true;
+            }
+            return !result.isCompletedExceptionally() && now - completedAt < ttlNanos;
+        }
+
+        V await() {
+            try {
+                return result.join();
+            } catch (CompletionException e) {
+                // Rethrow the leader's failure to every waiting caller
+                if (e.getCause() instanceof RuntimeException runtimeException) {
+                    throw runtimeException;
+                }
+                if (e.getCause() instanceof Error error) {
+                    throw error;
+                }
+                throw e;
+            }
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.example.service;
+
+import com.example.model.AgeingByMonth;
+import com.example.model.Customer;
+import com.example.model.Item;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.YearMonth;
+
+/**
+ * Binary encoding of the records in a dataset snapshot. Fields are written in a fixed order without names:
+ * strings as length-prefixed UTF-8, amounts as scale and unscaled bytes, dates as epoch days. Any change to
+ * a record's encoding must bump {@link SnapshotStore}'s format version so old snapshots are ignored.
+ * @param <E> the record type
+ */
+public interface SnapshotCodec<E> {
+
+    void write(DataOutputStream out, E value) throws IOException;
+
+    E read(ByteBuffer in);
+
+    SnapshotCodec<Customer> CUSTOMER = new SnapshotCodec<>() {
+        @Override
+        public void write(DataOutputStream out, Customer customer) throws IOException {
+            writeString(out, customer.getCustomerId());
+            writeString(out, customer.getCustomerName());
+            writeDecimal(out, customer.getBalance());
+            writeString(out, customer.getReference());
+            writeString(out, customer.getAddressLine1());
+            writeString(out, customer.getAddressLine2());
+            writeString(out, customer.getCity());
+            writeString(out, customer.getState());
+            writeString(out, customer.getPostalCode());
+            writeString(out, customer.getCountry());
+            out.writeBoolean(customer.isNotified());
+            writeDate(out, customer.getLastUpdated());
+        }
+
+        @Override
+        public Customer read(ByteBuffer in) {
+            return new Customer(readString(in), readString(in), readDecimal(in), readString(in),
+                    readString(in), readString(in), readString(in), readString(in),
+                    readString(in), readString(in), in.get() != 0, readDate(in));
+        }
+    };
+
+    SnapshotCodec<Item> ITEM = new SnapshotCodec<>() {
+        @Override
+        public void write(DataOutputStream out, Item item) throws IOException {
+            writeString(out, item.getCustomerId());
+            writeDecimal(out, item.getAmount());
+            writeDecimal(out, item.getBalance());
+            writeDate(out, item.getDocumentDate());
+            writeDate(out, item.getDueDate());
+            writeDate(out, item.getEntryDate());
+            writeString(out, item.getEntryUser());
+            writeString(out, item.getDocumentNumber());
+            writeString(out, item.getDocumentReference());
+            writeString(out, item.getItemType());
+        }
+
+        @Override
+        public Item read(ByteBuffer in) {
+            return new Item(readString(in), readDecimal(in), readDecimal(in), readDate(in), readDate(in),
+                    readDate(in), readString(in), readString(in), readString(in), readString(in));
+        }
+    };
+
+    SnapshotCodec<AgeingByMonth> AGEING_BY_MONTH = new SnapshotCodec<>() {
+        @Override
+        public void write(DataOutputStream out, AgeingByMonth ageing) throws IOException {
+            YearMonth month = ageing.getMonth();
+            out.writeInt(month != null ? month.getYear() : Integer.MIN_VALUE);
+            out.writeByte(month != null ? month.getMonthValue() : 0);
+            writeDecimal(out, ageing.getSalesLedgerBalance());
+            writeDecimal(out, ageing.getAmountNotDue());
+            writeDecimal(out, ageing.getAmountOver30Days());
+            writeDecimal(out, ageing.getAmountOver60Days());
+            writeDecimal(out, ageing.getAmountOver90Days());
+            writeDecimal(out, ageing.getAmountOverThreshold());
+            writeDecimal(out, ageing.getTotalCredits());
+            writeDecimal(out, ageing.getPercentOver90Days());
+        }
+
+        @Override
+        public AgeingByMonth read(ByteBuffer in) {
+            int year = in.getInt();
+            int monthValue = in.get();
+            AgeingByMonth ageing = new AgeingByMonth();
+            ageing.setMonth(year != Integer.MIN_VALUE ? YearMonth.of(year, monthValue) : null);
+            ageing.setSalesLedgerBalance(readDecimal(in));
+            ageing.setAmountNotDue(readDecimal(in));
+            ageing.setAmountOver30Days(readDecimal(in));
+            ageing.setAmountOver60Days(readDecimal(in));
+            ageing.setAmountOver90Days(readDecimal(in));
+            ageing.setAmountOverThreshold(readDecimal(in));
+            ageing.setTotalCredits(readDecimal(in));
+            // Stored rather than recalculated, so the record reads back exactly as it was fetched
+            ageing.setPercentOver90Days(readDecimal(in));
+            return ageing;
+        }
+    };
+
+    static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        if (length > in.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static void writeDecimal(DataOutputStream out, BigDecimal value) throws IOException {
+        if (value == null) {
+            out.writeByte(-1);
+            return;
+        }
+        byte[] unscaled = value.unscaledValue().toByteArray();
+        if (unscaled.length >= 0xFF) {
+            throw new IOException("Amount too large for a snapshot: " + value);
+        }
+        out.writeByte(unscaled.length);
+        out.write(unscaled);
+        out.writeInt(value.scale());
+    }
+
+    static BigDecimal readDecimal(ByteBuffer in) {
+        // Lengths are unsigned; 255 marks a missing amount
+        int length = in.get() & 0xFF;
+        if (length == 0xFF) {
+            return null;
+        }
+        byte[] unscaled = new byte[length];
+        in.get(unscaled);
+        return new BigDecimal(new BigInteger(unscaled), in.getInt());
+    }
+
+    static void writeDate(DataOutputStream out, LocalDate value) throws IOException {
+        out.writeLong(value != null ? value.toEpochDay() : Long.MIN_VALUE);
+    }
+
+    static LocalDate readDate(ByteBuffer in) {
+        long epochDay = in.getLong();
+        return epochDay != Long.MIN_VALUE ? LocalDate.ofEpochDay(epochDay) : null;
+    }
+}
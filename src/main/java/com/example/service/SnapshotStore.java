@@ -0,0 +1,256 @@
+package com.example.service;
+
+import com.example.client.Validators;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps a binary snapshot of each company dataset on disk, so data fetched before a restart can be used
+ * again without calling upstream. Each snapshot records the data load date it was fetched for and the
+ * validators of its upstream responses; one for the current load date is used as is, and an older one can
+ * still be revalidated. Snapshots are read through a memory-mapped buffer and written in the background,
+ * to a temporary file that is atomically renamed into place.
+ */
+@Component
+public class SnapshotStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(SnapshotStore.class);
+
+    // Only files with this suffix are ever read in the snapshot directory
+    private static final String SNAPSHOT_FILE_SUFFIX = ".snapshot";
+
+    private static final int MAGIC = 0x534E4150;
+
+    // Bump when the layout or a record encoding changes, so snapshots from older versions are ignored
+    private static final int FORMAT_VERSION = 1;
+
+    // Snapshots allowed to wait for the writer before new ones are dropped
+    private static final int WRITE_QUEUE_CAPACITY = 64;
+
+    @Value("${upstream.snapshot.dir:}")
+    private String snapshotDir;
+
+    // Snapshots not written for this long, e.g. those of companies no longer reported on, are deleted
+    @Value("${upstream.snapshot.max-age-days:30}")
+    private long maxAgeDays;
+
+    private ThreadPoolExecutor writer;
+
+    /**
+     * A dataset read from a snapshot
+     * @param dataVersion the data load date the dataset was fetched for
+     * @param dataset the records and their validators
+     */
+    public record Snapshot<E>(LocalDateTime dataVersion, CompanyDataCache.Dataset<E> dataset) {
+    }
+
+    /**
+     * Starts the writer and removes temporary files left by an interrupted write
+     */
+    @PostConstruct
+    void start() {
+        writer = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(WRITE_QUEUE_CAPACITY), runnable -> {
+                    Thread thread = new Thread(runnable, "snapshot-writer");
+                    thread.setDaemon(true);
+                    return thread;
+                }, (runnable, executor) -> logger.warn("Snapshot write queue is full, not saving snapshot"));
+
+        if (!isEnabled() || !Files.isDirectory(Paths.get(snapshotDir))) {
+            return;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(Paths.get(snapshotDir), "*.tmp")) {
+            for (Path file : files) {
+                Files.deleteIfExists(file);
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to clear temporary files from snapshot directory: {}", snapshotDir, e);
+        }
+    }
+
+    /**
+     * Finishes queued writes on shutdown
+     */
+    @PreDestroy
+    void stop() throws InterruptedException {
+        writer.shutdown();
+        writer.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    /**
+     * @return whether a snapshot directory is configured
+     */
+    public boolean isEnabled() {
+        return snapshotDir != null && !snapshotDir.isEmpty();
+    }
+
+    /**
+     * Deletes snapshots that haven't been written for the maximum age, so the directory doesn't keep a
+     * snapshot of every company ever fetched
+     */
+    @Scheduled(fixedDelayString = "${upstream.snapshot.prune-interval-ms:3600000}")
+    public void pruneSnapshots() {
+        if (!isEnabled() || !Files.isDirectory(Paths.get(snapshotDir))) {
+            return;
+        }
+        FileTime cutoff = FileTime.from(Instant.now().minus(Duration.ofDays(maxAgeDays)));
+        int deleted = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(Paths.get(snapshotDir), "*" + SNAPSHOT_FILE_SUFFIX)) {
+            for (Path file : files) {
+                try {
+                    if (Files.getLastModifiedTime(file).compareTo(cutoff) < 0 && Files.deleteIfExists(file)) {
+                        deleted++;
+                    }
+                } catch (IOException e) {
+                    logger.warn("Failed to prune snapshot: {}", file, e);
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to prune snapshot directory: {}", snapshotDir, e);
+        }
+        if (deleted > 0) {
+            logger.info("Deleted {} snapshots not written for {} days", deleted, maxAgeDays);
+        }
+    }
+
+    /**
+     * Reads the snapshot of a dataset
+     * @param key the company and kind of data
+     * @param codec decodes the dataset's records
+     * @return the snapshot, or null if there is none or it can't be read
+     */
+    public <E> Snapshot<E> read(CompanyDataCache.Key key, SnapshotCodec<E> codec) {
+        if (!isEnabled()) {
+            return null;
+        }
+        Path file = snapshotPath(key);
+        long start = System.nanoTime();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (in.getInt() != MAGIC || in.getInt() != FORMAT_VERSION) {
+                logger.info("Ignoring snapshot in an old format: {}", file);
+                return null;
+            }
+            LocalDateTime dataVersion = LocalDateTime.of(
+                    LocalDate.ofEpochDay(in.getLong()), LocalTime.ofNanoOfDay(in.getLong()));
+
+            int validatorCount = in.getInt();
+            List<Validators> validators = new ArrayList<>(Math.min(validatorCount, in.remaining()));
+            for (int i = 0; i < validatorCount; i++) {
+                validators.add(new Validators(SnapshotCodec.readString(in), SnapshotCodec.readString(in)));
+            }
+
+            int recordCount = in.getInt();
+            // A corrupt count fails on reading rather than sizing the list
+            List<E> records = new ArrayList<>(Math.min(recordCount, in.remaining()));
+            for (int i = 0; i < recordCount; i++) {
+                records.add(codec.read(in));
+            }
+
+            logger.debug("Read {} {} for company ID: {} from snapshot in {} ms", recordCount, key.dataset(),
+                    key.companyId(), (System.nanoTime() - start) / 1_000_000);
+            return new Snapshot<>(dataVersion,
+                    new CompanyDataCache.Dataset<>(List.copyOf(records), List.copyOf(validators)));
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException | RuntimeException e) {
+            // A corrupt snapshot, e.g. with an invalid date or length, is ignored rather than failing the report
+            logger.warn("Failed to read snapshot: {}", file, e);
+            return null;
+        }
+    }
+
+    /**
+     * Saves a snapshot of a dataset in the background, replacing any earlier one
+     * @param key the company and kind of data
+     * @param dataVersion the data load date the dataset was fetched for
+     * @param dataset the records and their validators
+     * @param codec encodes the dataset's records
+     */
+    public <E> void write(CompanyDataCache.Key key, LocalDateTime dataVersion, CompanyDataCache.Dataset<E> dataset,
+                          SnapshotCodec<E> codec) {
+        if (!isEnabled()) {
+            return;
+        }
+        writer.execute(() -> writeSnapshot(key, dataVersion, dataset, codec));
+    }
+
+    private <E> void writeSnapshot(CompanyDataCache.Key key, LocalDateTime dataVersion,
+                                   CompanyDataCache.Dataset<E> dataset, SnapshotCodec<E> codec) {
+        Path file = snapshotPath(key);
+        Path temp = null;
+        try {
+            // Write to a temporary file first so a partly written snapshot is never read
+            Files.createDirectories(file.getParent());
+            temp = Files.createTempFile(file.getParent(), "snapshot", ".tmp");
+            try (OutputStream stream = Files.newOutputStream(temp);
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream, 64 * 1024))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeLong(dataVersion.toLocalDate().toEpochDay());
+                out.writeLong(dataVersion.toLocalTime().toNanoOfDay());
+
+                out.writeInt(dataset.validators().size());
+                for (Validators validators : dataset.validators()) {
+                    SnapshotCodec.writeString(out, validators.etag());
+                    SnapshotCodec.writeString(out, validators.lastModified());
+                }
+
+                out.writeInt(dataset.records().size());
+                for (E record : dataset.records()) {
+                    codec.write(out, record);
+                }
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            logger.debug("Saved snapshot of {} for company ID: {}", key.dataset(), key.companyId());
+        } catch (IOException e) {
+            logger.warn("Failed to save snapshot: {}", file, e);
+            if (temp != null) {
+                try {
+                    Files.deleteIfExists(temp);
+                } catch (IOException deleteFailure) {
+                    logger.warn("Failed to remove temporary snapshot file: {}", temp, deleteFailure);
+                }
+            }
+        }
+    }
+
+    private Path snapshotPath(CompanyDataCache.Key key) {
+        // The company ID is encoded so it can't escape the snapshot directory or collide with another company
+        String company = Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(key.companyId().getBytes(StandardCharsets.UTF_8));
+        return Paths.get(snapshotDir, company + "-" + key.dataset() + SNAPSHOT_FILE_SUFFIX);
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Output stream that copies everything written to a primary stream into a best-effort branch.
+ * The primary stream (e.g. the HTTP response) decides success; if the branch (e.g. a file on disk)
+ * fails it is dropped and logged, and writing to the primary stream carries on.
+ */
+public class TeeOutputStream extends OutputStream {
+
+    private static final Logger logger = LoggerFactory.getLogger(TeeOutputStream.class);
+
+    private final OutputStream primary;
+    private OutputStream branch;
+    private boolean branchFailed;
+
+    /**
+     * @param primary stream that must receive every byte; it is flushed but never closed by this stream
+     * @param branch optional copy of the output; may be null, and is closed when this stream is closed
+     */
+    public TeeOutputStream(OutputStream primary, OutputStream branch) {
+        this.primary = primary;
+        this.branch = branch;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        primary.write(b);
+        if (branch != null) {
+            try {
+                branch.write(b);
+            } catch (IOException e) {
+                dropBranch(e);
+            }
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        primary.write(b, off, len);
+        if (branch != null) {
+            try {
+                branch.write(b, off, len);
+            } catch (IOException e) {
+                dropBranch(e);
+            }
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        primary.flush();
+        if (branch != null) {
+            try {
+                branch.flush();
+            } catch (IOException e) {
+                dropBranch(e);
+            }
+        }
+    }
+
+    /**
+     * Flushes the primary stream and closes the branch
+     */
+    @Override
+    public void close() throws IOException {
+        primary.flush();
+        if (branch != null) {
+            try {
+                branch.close();
+            } catch (IOException e) {
+                dropBranch(e);
+            }
+            branch = null;
+        }
+    }
+
+    /**
+     * @return true if the branch failed and stopped receiving output
+     */
+    public boolean hasBranchFailed() {
+        return branchFailed;
+    }
+
+    private void dropBranch(IOException e) {
+        logger.warn("Stopped copying report output after a write failure", e);
+        try {
+            branch.close();
+        } catch (IOException closeException) {
+            // The branch is being abandoned anyway
+        }
+        branch = null;
+        branchFailed = true;
+    }
+}
@@ -0,0 +1,23 @@
+package com.example.service;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event for fetching one dataset of a report, from upstream, the cache or mock data
+ */
+@Name("com.example.report.UpstreamFetch")
+@Label("Report Data Fetch")
+@Description("Fetching one dataset of a report")
+@StackTrace(false)
+class UpstreamFetchEvent extends ReportEvent {
+
+    @Label("Dataset")
+    String dataset;
+
+    UpstreamFetchEvent(String dataset) {
+        this.dataset = dataset;
+    }
+}
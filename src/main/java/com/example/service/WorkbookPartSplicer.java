@@ -0,0 +1,155 @@
+package com.example.service;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.commons.compress.utils.SeekableInMemoryByteChannel;
+import org.apache.commons.io.output.CloseShieldOutputStream;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Copies an xlsx package to a stream, replacing some of its parts. Parts that are kept are copied
+ * in their compressed form, so only the replaced parts are compressed again.
+ */
+final class WorkbookPartSplicer {
+
+    /**
+     * Content to put in the package in place of a part
+     */
+    interface Part {
+
+        /**
+         * @param out stream to write the part's uncompressed content to; it must not be closed
+         */
+        void writeTo(OutputStream out) throws IOException;
+
+        static Part of(byte[] content) {
+            return out -> out.write(content);
+        }
+    }
+
+    private WorkbookPartSplicer() {
+    }
+
+    /**
+     * @param workbookFile the xlsx package to copy
+     * @param out stream to write the new package to; it is not closed
+     * @param replacements content to use instead of the named parts, e.g. "xl/worksheets/sheet3.xml"
+     * @param captures names of parts, copied or replaced, to also return uncompressed, e.g. to cache them
+     * @param maxCaptureBytes parts larger than this are not returned
+     * @param deflater compresses the replacement parts
+     * @return the uncompressed content of the captured parts
+     * @throws IOException if the package can't be read or the stream written
+     */
+    static Map<String, byte[]> splice(Path workbookFile, OutputStream out, Map<String, Part> replacements,
+                                      Set<String> captures, int maxCaptureBytes,
+                                      ParallelDeflater deflater) throws IOException {
+        try (ZipFile zipFile = new ZipFile(workbookFile.toFile())) {
+            return splice(zipFile, out, replacements, captures, maxCaptureBytes, deflater);
+        }
+    }
+
+    /**
+     * Copies a package held in memory, such as a workbook template, which is only read
+     * @param workbook the xlsx package to copy
+     * @see #splice(Path, OutputStream, Map, Set, int, ParallelDeflater)
+     */
+    static Map<String, byte[]> splice(byte[] workbook, OutputStream out, Map<String, Part> replacements,
+                                      Set<String> captures, int maxCaptureBytes,
+                                      ParallelDeflater deflater) throws IOException {
+        try (ZipFile zipFile = new ZipFile(new SeekableInMemoryByteChannel(workbook))) {
+            return splice(zipFile, out, replacements, captures, maxCaptureBytes, deflater);
+        }
+    }
+
+    private static Map<String, byte[]> splice(ZipFile zipFile, OutputStream out, Map<String, Part> replacements,
+                                              Set<String> captures, int maxCaptureBytes,
+                                              ParallelDeflater deflater) throws IOException {
+        Map<String, byte[]> captured = new HashMap<>();
+        try (ZipArchiveOutputStream zip = new ZipArchiveOutputStream(CloseShieldOutputStream.wrap(out))) {
+            Enumeration<ZipArchiveEntry> entries = zipFile.getEntriesInPhysicalOrder();
+            while (entries.hasMoreElements()) {
+                ZipArchiveEntry entry = entries.nextElement();
+                Part replacement = replacements.get(entry.getName());
+                if (replacement != null) {
+                    Part content = replacement;
+                    PartCapture capture = null;
+                    if (captures.contains(entry.getName())) {
+                        PartCapture copy = new PartCapture(maxCaptureBytes);
+                        content = partOut -> replacement.writeTo(new TeeOutputStream(partOut, copy));
+                        capture = copy;
+                    }
+                    try (ParallelDeflater.DeflatedPart deflated = deflater.deflate(content);
+                         InputStream rawPart = deflated.open()) {
+                        ZipArchiveEntry replacedEntry = new ZipArchiveEntry(entry.getName());
+                        replacedEntry.setMethod(ZipArchiveOutputStream.DEFLATED);
+                        replacedEntry.setSize(deflated.size());
+                        replacedEntry.setCompressedSize(deflated.compressedSize());
+                        replacedEntry.setCrc(deflated.crc());
+                        zip.addRawArchiveEntry(replacedEntry, rawPart);
+                    }
+                    if (capture != null && capture.fits) {
+                        captured.put(entry.getName(), capture.toByteArray());
+                    }
+                    continue;
+                }
+
+                if (captures.contains(entry.getName()) && entry.getSize() <= maxCaptureBytes) {
+                    try (InputStream part = zipFile.getInputStream(entry)) {
+                        captured.put(entry.getName(), part.readAllBytes());
+                    }
+                }
+                try (InputStream rawPart = zipFile.getRawInputStream(entry)) {
+                    zip.addRawArchiveEntry(entry, rawPart);
+                }
+            }
+        }
+        return captured;
+    }
+
+    /**
+     * Keeps a copy of a part as it is written, unless it turns out to be too large
+     */
+    private static final class PartCapture extends ByteArrayOutputStream {
+
+        private final int maxBytes;
+        private boolean fits = true;
+
+        PartCapture(int maxBytes) {
+            this.maxBytes = maxBytes;
+        }
+
+        @Override
+        public void write(int b) {
+            if (fits(1)) {
+                super.write(b);
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            if (fits(len)) {
+                super.write(b, off, len);
+            }
+        }
+
+        private boolean fits(int len) {
+            if (fits && count + (long) len > maxBytes) {
+                // Too large to keep; stop copying and free what was copied so far
+                fits = false;
+                buf = new byte[0];
+                count = 0;
+            }
+            return fits;
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.example.service;
+
+import com.example.client.UpstreamResponse;
+import com.example.client.Validators;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CompanyDataCacheTest {
+
+    private static final LocalDateTime VERSION = LocalDateTime.of(2024, 3, 1, 6, 0);
+    private static final CompanyDataCache.Key CUSTOMERS = new CompanyDataCache.Key("A", "customers");
+
+    private CompanyDataCache cache;
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() {
+        // Without a snapshot directory, snapshots are neither read nor written
+        cache = new CompanyDataCache(new SnapshotStore());
+        ReflectionTestUtils.setField(cache, "maxRecords", 4L);
+    }
+
+    @Test
+    void reusesADatasetUntilTheDataIsLoadedAgain() {
+        List<String> first = get(CUSTOMERS, VERSION, previous -> load("a", "b"));
+        assertThat(get(CUSTOMERS, VERSION, previous -> load("c"))).isSameAs(first);
+        assertThat(loads).hasValue(1);
+
+        AtomicReference<CompanyDataCache.Dataset<String>> passed = new AtomicReference<>();
+        List<String> second = get(CUSTOMERS, VERSION.plusDays(1), previous -> {
+            passed.set(previous);
+            return load("c");
+        });
+        // The earlier dataset is handed over to be revalidated
+        assertThat(passed.get().records()).isSameAs(first);
+        assertThat(second).containsExactly("c");
+        assertThat(get(CUSTOMERS, VERSION.plusDays(1), previous -> load("d"))).isSameAs(second);
+    }
+
+    @Test
+    void alwaysLoadsWithoutADataVersion() {
+        get(CUSTOMERS, null, previous -> load("a"));
+        List<String> records = get(CUSTOMERS, null, previous -> {
+            assertThat(previous).isNull();
+            return load("b");
+        });
+        assertThat(records).containsExactly("b");
+        assertThat(loads).hasValue(2);
+    }
+
+    @Test
+    void evictsTheLeastRecentlyUsedDatasets() {
+        CompanyDataCache.Key items = new CompanyDataCache.Key("A", "items");
+        CompanyDataCache.Key otherCustomers = new CompanyDataCache.Key("B", "customers");
+        get(CUSTOMERS, VERSION, previous -> load("a", "b"));
+        get(items, VERSION, previous -> load("c", "d"));
+        get(CUSTOMERS, VERSION, previous -> load("unused"));
+        // Over the limit of four records, so the items are evicted rather than the customers just used
+        get(otherCustomers, VERSION, previous -> load("e"));
+        assertThat(loads).hasValue(3);
+
+        assertThat(get(CUSTOMERS, VERSION, previous -> load("reloaded"))).containsExactly("a", "b");
+        assertThat(get(items, VERSION, previous -> load("reloaded"))).containsExactly("reloaded");
+    }
+
+    @Test
+    void neverCachesADatasetLargerThanTheLimit() {
+        get(CUSTOMERS, VERSION, previous -> load("a"));
+        get(CUSTOMERS, VERSION.plusDays(1), previous -> load("a", "b", "c", "d", "e"));
+        // The out of date dataset was dropped too
+        assertThat(get(CUSTOMERS, VERSION.plusDays(1), previous -> {
+            assertThat(previous).isNull();
+            return load("f");
+        })).containsExactly("f");
+    }
+
+    @Test
+    void keepsRecordsUpstreamReportsUnchanged() {
+        CompanyDataCache.Dataset<String> previous = new CompanyDataCache.Dataset<>(List.of("a"),
+                List.of(new Validators("\"v1\"", null)));
+        List<Validators> sent = new ArrayList<>();
+
+        // A 304 may come with new validators, which the next revalidation must send
+        CompanyDataCache.Dataset<String> revalidated = CompanyDataCache.revalidate(previous, validators -> {
+            sent.add(validators);
+            return new UpstreamResponse<>(null, new Validators("\"v2\"", "Fri, 01 Mar 2024 06:00:00 GMT"));
+        });
+        assertThat(revalidated.records()).isSameAs(previous.records());
+        assertThat(revalidated.validators()).containsExactly(new Validators("\"v2\"", "Fri, 01 Mar 2024 06:00:00 GMT"));
+
+        CompanyDataCache.Dataset<String> fetched = CompanyDataCache.revalidate(revalidated, validators -> {
+            sent.add(validators);
+            return new UpstreamResponse<>(new ArrayList<>(List.of("b")), new Validators("\"v3\"", null));
+        });
+        assertThat(fetched.records()).containsExactly("b");
+        assertThat(fetched.validators()).containsExactly(new Validators("\"v3\"", null));
+        assertThat(sent).containsExactly(new Validators("\"v1\"", null),
+                new Validators("\"v2\"", "Fri, 01 Mar 2024 06:00:00 GMT"));
+    }
+
+    @Test
+    void fetchesUnconditionallyWithoutValidators() {
+        List<Validators> sent = new ArrayList<>();
+        CompanyDataCache.Dataset<String> unvalidated = new CompanyDataCache.Dataset<>(List.of("a"),
+                List.of(new Validators(null, null)));
+        for (CompanyDataCache.Dataset<String> previous : Arrays.asList(null, unvalidated)) {
+            CompanyDataCache.revalidate(previous, validators -> {
+                sent.add(validators);
+                return new UpstreamResponse<>(List.of("b"), new Validators(null, null));
+            });
+        }
+        assertThat(sent).containsExactly(null, null);
+    }
+
+    private List<String> get(CompanyDataCache.Key key, LocalDateTime dataVersion,
+                             UnaryOperator<CompanyDataCache.Dataset<String>> loader) {
+        // Snapshots are disabled, so no codec is needed
+        return cache.get(key, dataVersion, null, loader);
+    }
+
+    private CompanyDataCache.Dataset<String> load(String... records) {
+        loads.incrementAndGet();
+        return new CompanyDataCache.Dataset<>(List.of(records), List.of());
+    }
+}
@@ -0,0 +1,184 @@
+package com.example.service;
+
+import com.example.model.AgeingByMonth;
+import com.example.model.CompanySummary;
+import com.example.model.Customer;
+import com.example.model.Item;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.Hyperlink;
+import org.apache.poi.ss.usermodel.Name;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.xssf.usermodel.XSSFDrawing;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ExcelServiceTest {
+
+    @Test
+    void estimatesDirectSheetsByCustomersAndCompressionBuffers() {
+        ExcelService excelService = excelService(true, false, 4);
+        long empty = excelService.estimateReportHeapBytes(0, 0);
+
+        // Open items are written straight to disk, so only customers add to the estimate
+        assertThat(excelService.estimateReportHeapBytes(0, 1_000_000)).isEqualTo(empty);
+        assertThat(excelService.estimateReportHeapBytes(10_000, 0)).isGreaterThan(empty);
+        assertThat(excelService.estimateStreamedReportHeapBytes(10_000))
+                .isEqualTo(excelService.estimateReportHeapBytes(10_000, 0));
+
+        // Each compression thread holds a block and its output
+        long singleThreaded = excelService(true, false, 1).estimateReportHeapBytes(0, 0);
+        assertThat(empty - singleThreaded).isEqualTo(6L * 128 * 1024);
+    }
+
+    @Test
+    void estimatesCachedPartsUpToTheirLimit() {
+        ExcelService excelService = excelService(true, true, 1);
+        long direct = excelService(true, false, 1).estimateReportHeapBytes(1_000, 1_000);
+        assertThat(excelService.estimateReportHeapBytes(1_000, 1_000)).isGreaterThan(direct);
+
+        // Parts larger than the sheet cache takes aren't copied
+        assertThat(excelService.estimateReportHeapBytes(1_000, 10_000_000))
+                .isEqualTo(excelService.estimateReportHeapBytes(1_000, 20_000_000));
+    }
+
+    @Test
+    void estimatesWorkbookCellsWithoutDirectSheets() {
+        ExcelService excelService = excelService(false, false, 1);
+        long small = excelService.estimateReportHeapBytes(100, 1_000);
+        assertThat(excelService.estimateReportHeapBytes(100, 2_000)).isGreaterThan(small);
+
+        // Above the threshold the streaming workbook only holds its row window
+        assertThat(excelService.estimateReportHeapBytes(100, 200_000))
+                .isEqualTo(excelService.estimateReportHeapBytes(100, 300_000));
+    }
+
+    @Test
+    void copiesTheTemplateIntoTheSameWorkbookAsPoiBuilds() throws IOException {
+        List<AgeingByMonth> ageingData = new ArrayList<>();
+        for (int i = 0; i < 13; i++) {
+            BigDecimal amount = new BigDecimal(1000 + 37 * i).movePointLeft(1);
+            ageingData.add(new AgeingByMonth(YearMonth.of(2024, 6).minusMonths(i), amount.multiply(BigDecimal.TEN),
+                    amount, amount.negate(), amount, amount.add(BigDecimal.ONE), BigDecimal.ZERO, amount.negate()));
+        }
+        // Wider than its header, so the column is sized from the data
+        ageingData.get(4).setAmountOverThreshold(new BigDecimal("-98765432109.87"));
+        List<Customer> customers = List.of(
+                new Customer("C1", "Müller & Söhne <GmbH>", new BigDecimal("1234.50"), "REF-1", "1 High St", null,
+                        "Zürich", "ZH", "8001", "CH", true, LocalDate.of(2024, 2, 29)),
+                new Customer("C2", "Second", new BigDecimal("-20.00"), null, null, null, null, null, null, null,
+                        false, null));
+        List<Item> items = List.of(
+                new Item("C1", new BigDecimal("100.00"), new BigDecimal("50.25"), LocalDate.of(2024, 1, 1),
+                        LocalDate.of(2024, 1, 31), LocalDate.of(2024, 1, 2), "user", "INV-1", "PO 7", "INV"),
+                new Item("C2", new BigDecimal("-20.00"), new BigDecimal("-20.00"), LocalDate.of(2024, 2, 1),
+                        null, null, null, "CRN-1", null, "CRN"));
+        CompanySummary summary = new CompanySummary("C", "Company & Co", "BN 1", "1 Road", "City", null, "1000",
+                "Country", "555", "a@example.com", "exämple.com/?a=1&b=2", LocalDateTime.of(2024, 6, 1, 6, 0),
+                2, 1, 2, new BigDecimal("1214.50"), new BigDecimal("99.99"), new BigDecimal("-0.01"), "Tests");
+
+        ExcelService excelService = excelService(true, false, 2);
+        ReflectionTestUtils.setField(excelService, "templateEnabled", false);
+        byte[] built = excelService.generateAgeingReport(ageingData, customers, items, summary);
+        ReflectionTestUtils.setField(excelService, "templateEnabled", true);
+        // The second report reuses the template built for the first
+        for (int i = 0; i < 2; i++) {
+            byte[] copied = excelService.generateAgeingReport(ageingData, customers, items, summary);
+            assertSameWorkbook(copied, built);
+        }
+
+        // Every number of months has a template of its own
+        List<AgeingByMonth> fewerMonths = ageingData.subList(0, 3);
+        byte[] copied = excelService.generateAgeingReport(fewerMonths, customers, items, summary);
+        ReflectionTestUtils.setField(excelService, "templateEnabled", false);
+        assertSameWorkbook(copied, excelService.generateAgeingReport(fewerMonths, customers, items, summary));
+    }
+
+    private static void assertSameWorkbook(byte[] actual, byte[] expected) throws IOException {
+        try (XSSFWorkbook actualWorkbook = new XSSFWorkbook(new ByteArrayInputStream(actual));
+             XSSFWorkbook expectedWorkbook = new XSSFWorkbook(new ByteArrayInputStream(expected))) {
+            assertThat(actualWorkbook.getNumCellStyles()).isEqualTo(expectedWorkbook.getNumCellStyles());
+            assertThat(describeNames(actualWorkbook)).isEqualTo(describeNames(expectedWorkbook));
+            assertThat(actualWorkbook.getNumberOfSheets()).isEqualTo(expectedWorkbook.getNumberOfSheets());
+            for (int i = 0; i < expectedWorkbook.getNumberOfSheets(); i++) {
+                XSSFSheet expectedSheet = expectedWorkbook.getSheetAt(i);
+                XSSFSheet actualSheet = actualWorkbook.getSheetAt(i);
+                assertThat(actualSheet.getSheetName()).isEqualTo(expectedSheet.getSheetName());
+                assertThat(describe(actualSheet)).as(expectedSheet.getSheetName()).isEqualTo(describe(expectedSheet));
+            }
+        }
+    }
+
+    private static List<String> describeNames(XSSFWorkbook workbook) {
+        List<String> names = new ArrayList<>();
+        for (Name name : workbook.getAllNames()) {
+            names.add(name.getNameName() + " " + name.getSheetIndex() + " " + name.getRefersToFormula());
+        }
+        return names;
+    }
+
+    /**
+     * Lists everything about a sheet the template could get wrong: its cells with their values and styles,
+     * row heights, column widths, merged regions, links, frozen panes and charts
+     */
+    private static List<String> describe(XSSFSheet sheet) {
+        List<String> lines = new ArrayList<>();
+        for (Row row : sheet) {
+            lines.add("row " + row.getRowNum() + " height " + row.getHeight());
+            for (Cell cell : row) {
+                String value = switch (cell.getCellType()) {
+                    case STRING -> cell.getStringCellValue();
+                    case NUMERIC -> String.valueOf(cell.getNumericCellValue());
+                    case FORMULA -> "=" + cell.getCellFormula();
+                    default -> cell.getCellType().toString();
+                };
+                lines.add(cell.getAddress() + " " + cell.getCellStyle().getIndex() + " " + value);
+            }
+        }
+        for (int column = 0; column < 16; column++) {
+            lines.add("column " + column + " width " + sheet.getColumnWidth(column));
+        }
+        for (CellRangeAddress region : sheet.getMergedRegions()) {
+            lines.add("merged " + region.formatAsString());
+        }
+        for (Hyperlink link : sheet.getHyperlinkList()) {
+            lines.add("link " + link.getType() + " " + link.getAddress());
+        }
+        lines.add("pane " + (sheet.getPaneInformation() != null ? sheet.getPaneInformation().getHorizontalSplitPosition() : -1));
+        XSSFDrawing drawing = sheet.getDrawingPatriarch();
+        lines.add("charts " + (drawing != null ? drawing.getCharts().size() : 0));
+        return lines;
+    }
+
+    private static ExcelService excelService(boolean directSheets, boolean incremental, int compressionThreads) {
+        SheetPartCache sheetPartCache = new SheetPartCache();
+        ReflectionTestUtils.setField(sheetPartCache, "maxPartBytes", 32 * 1024 * 1024);
+        ExcelService excelService = new ExcelService(new ReportMetrics(new SimpleMeterRegistry()), null,
+                sheetPartCache, new ReportRecordingService());
+        ReflectionTestUtils.setField(excelService, "directSheetsEnabled", directSheets);
+        ReflectionTestUtils.setField(excelService, "incrementalEnabled", incremental);
+        ReflectionTestUtils.setField(excelService, "parallelSheetsEnabled", true);
+        ReflectionTestUtils.setField(excelService, "compressStreamingTempFiles", true);
+        ReflectionTestUtils.setField(excelService, "streamingItemThreshold", 100_000);
+        ReflectionTestUtils.setField(excelService, "streamingRowWindow", 100);
+        ReflectionTestUtils.setField(excelService, "compressionLevel", -1);
+        ReflectionTestUtils.setField(excelService, "compressionThreads", compressionThreads);
+        ReflectionTestUtils.setField(excelService, "compressionBlockBytes", 128 * 1024);
+        excelService.init();
+        return excelService;
+    }
+}
@@ -0,0 +1,143 @@
+package com.example.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Compresses parts in blocks and inflates the result as one raw deflate stream, as a zip reader would
+ */
+class ParallelDeflaterTest {
+
+    private static final int BLOCK_BYTES = 64 * 1024;
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 4})
+    void compressesAnEmptyPart(int threads) throws Exception {
+        assertRoundTrip(new byte[0], threads);
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 4})
+    void compressesPartsOfExactlyWholeBlocks(int threads) throws Exception {
+        assertRoundTrip(sheetLikeContent(BLOCK_BYTES), threads);
+        assertRoundTrip(sheetLikeContent(3 * BLOCK_BYTES), threads);
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 2, 4})
+    void compressesPartsSpanningManyBlocks(int threads) throws Exception {
+        // More blocks than threads, ending part way through a block
+        assertRoundTrip(sheetLikeContent(10 * BLOCK_BYTES + 12345), threads);
+        assertRoundTrip(sheetLikeContent(1), threads);
+    }
+
+    @Test
+    void compressesIncompressibleContent() throws Exception {
+        byte[] content = new byte[2 * BLOCK_BYTES + 7];
+        new Random(1).nextBytes(content);
+        assertRoundTrip(content, 3);
+    }
+
+    @Test
+    void matchesAcrossBlocks() throws Exception {
+        // Random bytes repeated within deflate's window: only the first copy costs much, provided each block
+        // can match against the end of the block before it
+        int period = 16 * 1024;
+        byte[] pattern = new byte[period];
+        new Random(1).nextBytes(pattern);
+        byte[] content = new byte[4 * BLOCK_BYTES];
+        for (int offset = 0; offset < content.length; offset += period) {
+            System.arraycopy(pattern, 0, content, offset, period);
+        }
+
+        ParallelDeflater.DeflatedPart deflated = assertRoundTrip(content, 4);
+        assertThat(deflated.compressedSize()).isLessThan(2L * period);
+    }
+
+    @Test
+    void removesTheCompressedDataWhenThePartFails() throws IOException {
+        ParallelDeflater deflater = new ParallelDeflater(6, BLOCK_BYTES, 2);
+        long tempFilesBefore = countTempParts();
+        assertThatThrownBy(() -> deflater.deflate(out -> {
+            out.write(sheetLikeContent(3 * BLOCK_BYTES));
+            throw new IOException("Part failed");
+        })).hasMessage("Part failed");
+        assertThat(countTempParts()).isEqualTo(tempFilesBefore);
+    }
+
+    @Test
+    void rejectsInvalidLevels() {
+        assertThatThrownBy(() -> new ParallelDeflater(10, BLOCK_BYTES, 1)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new ParallelDeflater(0, BLOCK_BYTES, 1)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static ParallelDeflater.DeflatedPart assertRoundTrip(byte[] content, int threads)
+            throws IOException, DataFormatException {
+        ParallelDeflater deflater = new ParallelDeflater(6, BLOCK_BYTES, threads);
+        ParallelDeflater.DeflatedPart deflated = deflater.deflate(WorkbookPartSplicer.Part.of(content));
+        try {
+            byte[] compressed = Files.readAllBytes(deflated.file());
+            assertThat(deflated.compressedSize()).isEqualTo(compressed.length);
+            assertThat(deflated.size()).isEqualTo(content.length);
+            CRC32 crc = new CRC32();
+            crc.update(content);
+            assertThat(deflated.crc()).isEqualTo(crc.getValue());
+
+            // Raw inflate needs a dummy byte after the data; the stream must end exactly where the data does
+            Inflater inflater = new Inflater(true);
+            try {
+                inflater.setInput(Arrays.copyOf(compressed, compressed.length + 1));
+                ByteArrayOutputStream inflated = new ByteArrayOutputStream();
+                byte[] buffer = new byte[16 * 1024];
+                while (!inflater.finished()) {
+                    int read = inflater.inflate(buffer);
+                    assertThat(read > 0 || !inflater.needsInput()).as("stream ends before the data").isTrue();
+                    inflated.write(buffer, 0, read);
+                }
+                assertThat(inflater.getBytesRead()).isEqualTo(compressed.length);
+                assertThat(inflated.toByteArray()).isEqualTo(content);
+            } finally {
+                inflater.end();
+            }
+        } finally {
+            deflated.close();
+        }
+        assertThat(deflated.file()).doesNotExist();
+        return deflated;
+    }
+
+    /**
+     * Repetitive rows with varying numbers, roughly as a worksheet part compresses
+     */
+    private static byte[] sheetLikeContent(int length) {
+        StringBuilder content = new StringBuilder(length + 100);
+        Random random = new Random(length);
+        for (int row = 1; content.length() < length; row++) {
+            content.append("<row r=\"").append(row).append("\"><c r=\"A").append(row).append("\"><v>")
+                    .append(random.nextInt(100_000)).append("</v></c></row>");
+        }
+        content.setLength(length);
+        return content.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static long countTempParts() throws IOException {
+        try (var files = Files.list(Path.of(System.getProperty("java.io.tmpdir")))) {
+            return files.filter(file -> file.getFileName().toString().endsWith(".deflate")).count();
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.example.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.Resource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ReportCacheTest {
+
+    private static final Instant VERSION = Instant.parse("2024-03-01T06:00:00Z");
+
+    @TempDir
+    Path spillDir;
+
+    private ReportCache cache;
+
+    @BeforeEach
+    void setUp() {
+        cache = newCache(300, 100, "");
+    }
+
+    @Test
+    void cachesACapturedReportOnceCommitted() throws IOException {
+        ReportCache.Key key = new ReportCache.Key("A", VERSION);
+        ReportCache.Capture capture = cache.capture(key);
+        capture.write(report(1, 40), 0, 40);
+        capture.write(7);
+        assertThat(cache.get(key)).isNull();
+
+        capture.commit();
+        byte[] expected = Arrays.copyOf(report(1, 40), 41);
+        expected[40] = 7;
+        assertThat(cache.get(key).getContentAsByteArray()).isEqualTo(expected);
+        // Another data load is another version of the report
+        assertThat(cache.get(new ReportCache.Key("A", VERSION.plusSeconds(1)))).isNull();
+    }
+
+    @Test
+    void skipsReportsLargerThanAnEntry() {
+        ReportCache.Key key = new ReportCache.Key("A", VERSION);
+        ReportCache.Capture capture = cache.capture(key);
+        capture.write(report(1, 60), 0, 60);
+        capture.write(report(1, 60), 0, 60);
+        capture.commit();
+        assertThat(cache.get(key)).isNull();
+
+        cache.put(key, report(1, 101));
+        assertThat(cache.get(key)).isNull();
+    }
+
+    @Test
+    void evictsTheLeastRecentlyUsedReports() throws IOException {
+        cache.put(key("A"), report(1, 100));
+        cache.put(key("B"), report(2, 100));
+        cache.put(key("C"), report(3, 100));
+        // Using A makes B the least recently used
+        assertThat(cache.get(key("A"))).isNotNull();
+        cache.put(key("D"), report(4, 100));
+
+        assertThat(cache.get(key("B"))).isNull();
+        assertThat(cache.get(key("A")).getContentAsByteArray()).isEqualTo(report(1, 100));
+        assertThat(cache.get(key("C")).getContentAsByteArray()).isEqualTo(report(3, 100));
+        assertThat(cache.get(key("D")).getContentAsByteArray()).isEqualTo(report(4, 100));
+    }
+
+    @Test
+    void spillsEvictedReportsToDisk() throws IOException {
+        cache = newCache(100, 100, spillDir.toString());
+        cache.put(key("A"), report(1, 100));
+        cache.put(key("B"), report(2, 100));
+        assertThat(spillFiles()).isEqualTo(1);
+
+        // Reading a spilled report moves it back into memory, spilling the other one
+        Resource spilled = cache.get(key("A"));
+        assertThat(spilled.getContentAsByteArray()).isEqualTo(report(1, 100));
+        assertThat(cache.get(key("B")).getContentAsByteArray()).isEqualTo(report(2, 100));
+        assertThat(spillFiles()).isEqualTo(1);
+    }
+
+    @Test
+    void boundsTheSpilledReports() throws IOException {
+        cache = newCache(100, 100, spillDir.toString());
+        ReflectionTestUtils.setField(cache, "spillMaxBytes", 200L);
+        for (String company : new String[] {"A", "B", "C", "D"}) {
+            cache.put(key(company), report(company.charAt(0), 100));
+        }
+
+        // D is in memory, B and C on disk, and A was dropped
+        assertThat(spillFiles()).isEqualTo(2);
+        assertThat(cache.get(key("A"))).isNull();
+        assertThat(cache.get(key("B")).getContentAsByteArray()).isEqualTo(report('B', 100));
+    }
+
+    @Test
+    void clearsReportsSpilledByAnEarlierRun() throws IOException {
+        Files.write(spillDir.resolve("QQ-1.xlsx.cache"), report(1, 10));
+        Files.write(spillDir.resolve("other.txt"), report(1, 10));
+
+        cache = newCache(100, 100, spillDir.toString());
+        cache.clearSpillDirectory();
+        assertThat(spillFiles()).isZero();
+        assertThat(spillDir.resolve("other.txt")).exists();
+    }
+
+    private static ReportCache newCache(long maxBytes, int maxEntryBytes, String spillDir) {
+        ReportCache cache = new ReportCache();
+        ReflectionTestUtils.setField(cache, "maxBytes", maxBytes);
+        ReflectionTestUtils.setField(cache, "maxEntryBytes", maxEntryBytes);
+        ReflectionTestUtils.setField(cache, "spillDir", spillDir);
+        ReflectionTestUtils.setField(cache, "spillMaxBytes", Long.MAX_VALUE);
+        return cache;
+    }
+
+    private static ReportCache.Key key(String companyId) {
+        return new ReportCache.Key(companyId, VERSION);
+    }
+
+    private static byte[] report(int seed, int length) {
+        byte[] report = new byte[length];
+        Arrays.fill(report, (byte) seed);
+        return report;
+    }
+
+    private long spillFiles() throws IOException {
+        try (var files = Files.list(spillDir)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(".xlsx.cache")).count();
+        }
+    }
+}
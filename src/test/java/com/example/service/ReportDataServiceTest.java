@@ -0,0 +1,76 @@
+package com.example.service;
+
+import com.example.model.ReportData;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.core.convert.support.DefaultConversionService;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.core.env.MutablePropertySources;
+import org.springframework.core.io.support.ResourcePropertySource;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs reports on data fetched through {@link ReportDataService}, so the report sees the cached, unmodifiable
+ * datasets the controllers pass it rather than freshly generated lists
+ */
+class ReportDataServiceTest {
+
+    private static final String COMPANY_ID = "TEST";
+
+    private AnnotationConfigApplicationContext context;
+    private ReportDataService reportDataService;
+    private ExcelService excelService;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        context = new AnnotationConfigApplicationContext();
+        context.getBeanFactory().setConversionService(new DefaultConversionService());
+        MutablePropertySources properties = context.getEnvironment().getPropertySources();
+        properties.addLast(new MapPropertySource("test", Map.of("mock.seed", "1")));
+        properties.addLast(new ResourcePropertySource("classpath:application.properties"));
+
+        context.registerBean(MeterRegistry.class, SimpleMeterRegistry::new);
+        context.register(MockDataGenerator.class, SnapshotStore.class, CompanyDataCache.class,
+                AgeingDataService.class, CustomerService.class, ItemService.class, CompanySummaryService.class,
+                ReportDataService.class, ReportMetrics.class, ReportFileWriter.class, SheetPartCache.class,
+                ReportRecordingService.class, ExcelService.class);
+        context.refresh();
+        reportDataService = context.getBean(ReportDataService.class);
+        excelService = context.getBean(ExcelService.class);
+    }
+
+    @AfterEach
+    void tearDown() {
+        context.close();
+    }
+
+    @Test
+    void generatesReportsFromCachedData() throws IOException {
+        // The second report reuses the datasets cached by the first
+        for (int i = 0; i < 2; i++) {
+            ReportData data = reportDataService.getReportData(COMPANY_ID);
+            byte[] report = excelService.generateAgeingReport(data.getAgeingData(), data.getCustomerData(),
+                    data.getItemData(), data.getCompanySummary());
+
+            try (XSSFWorkbook workbook = new XSSFWorkbook(new ByteArrayInputStream(report))) {
+                assertThat(workbook.getNumberOfSheets()).isEqualTo(4);
+                Sheet ageingSheet = workbook.getSheet("Ageing Report");
+                // Title rows, the header and a row per month
+                assertThat(ageingSheet.getLastRowNum()).isGreaterThanOrEqualTo(5 + data.getAgeingData().size());
+                Sheet itemsSheet = workbook.getSheet("Open Items");
+                assertThat(itemsSheet.getLastRowNum()).isGreaterThanOrEqualTo(data.getItemData().size());
+            }
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.example.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Writes files through the background writer. Its thread handles files in the order they are queued, so
+ * once a later file appears everything queued before it has been handled.
+ */
+class ReportFileWriterTest {
+
+    @TempDir
+    Path dir;
+
+    private ReportFileWriter writer;
+
+    @BeforeEach
+    void setUp() {
+        writer = new ReportFileWriter();
+        ReflectionTestUtils.setField(writer, "queueChunks", 64);
+        writer.start();
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        writer.stop();
+    }
+
+    @Test
+    void savesCompleteFiles() throws Exception {
+        byte[] content = content(200_000);
+        Path target = dir.resolve("reports/report.xlsx");
+        writer.save(content, target);
+
+        awaitFile(target);
+        assertThat(target).hasBinaryContent(content);
+    }
+
+    @Test
+    void writesAFileOnlyOnceCommitted() throws Exception {
+        byte[] content = content(150_000);
+        Path target = dir.resolve("report.xlsx");
+        Instant dataVersion = Instant.parse("2024-03-01T06:00:00Z");
+        try (ReportFileWriter.PendingFile file = writer.open(target)) {
+            file.write(content, 0, 100_000);
+            for (int i = 100_000; i < content.length; i++) {
+                file.write(content[i]);
+            }
+            assertThat(target).doesNotExist();
+            file.commit(dataVersion);
+        }
+
+        awaitFile(target);
+        assertThat(target).hasBinaryContent(content);
+        // The modification time is the data version, so a saved report can be matched to the data it shows
+        assertThat(Files.getLastModifiedTime(target)).isEqualTo(FileTime.from(dataVersion));
+    }
+
+    @Test
+    void replacesAnEarlierFile() throws Exception {
+        Path target = dir.resolve("report.xlsx");
+        Files.write(target, content(10));
+        byte[] content = new byte[0];
+        try (ReportFileWriter.PendingFile file = writer.open(target)) {
+            file.commit();
+        }
+
+        awaitContent(target, content);
+        assertThat(target).hasBinaryContent(content);
+    }
+
+    @Test
+    void discardsFilesClosedWithoutCommitting() throws Exception {
+        Path abandoned = dir.resolve("abandoned.xlsx");
+        try (ReportFileWriter.PendingFile file = writer.open(abandoned)) {
+            file.write(content(200_000));
+        }
+
+        Path committed = dir.resolve("committed.xlsx");
+        writer.save(content(10), committed);
+        awaitFile(committed);
+
+        // Neither the abandoned file nor its temporary file is left behind
+        try (var files = Files.list(dir)) {
+            assertThat(files).containsExactly(committed);
+        }
+    }
+
+    @Test
+    void rejectsWritesOnceClosed() throws IOException {
+        ReportFileWriter.PendingFile file = writer.open(dir.resolve("report.xlsx"));
+        file.commit();
+        assertThatThrownBy(() -> file.write(1)).isInstanceOf(IOException.class);
+        assertThatThrownBy(file::commit).isInstanceOf(IOException.class);
+    }
+
+    private static byte[] content(int length) {
+        byte[] content = new byte[length];
+        new Random(length).nextBytes(content);
+        return content;
+    }
+
+    private static void awaitFile(Path target) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!Files.exists(target) && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    private static void awaitContent(Path target, byte[] content) throws InterruptedException, IOException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (Files.size(target) != content.length && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+}
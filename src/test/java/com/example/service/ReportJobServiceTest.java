@@ -0,0 +1,112 @@
+package com.example.service;
+
+import com.example.model.ReportJob;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.core.convert.support.DefaultConversionService;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.core.env.MutablePropertySources;
+import org.springframework.core.io.support.ResourcePropertySource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs report jobs, which stream their open items rather than fetching them with the rest of the report data
+ */
+class ReportJobServiceTest {
+
+    private static final String COMPANY_ID = "TEST";
+
+    // Row of the table header on the Customer List and Open Items sheets
+    private static final int TABLE_START_ROW = 3;
+
+    @TempDir
+    Path outputDir;
+
+    private AnnotationConfigApplicationContext context;
+    private ReportJobService reportJobService;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        context = new AnnotationConfigApplicationContext();
+        context.getBeanFactory().setConversionService(new DefaultConversionService());
+        MutablePropertySources properties = context.getEnvironment().getPropertySources();
+        // Without mock.seed every fetch generates different data, so items streamed separately from the
+        // customers would belong to customers the report doesn't show; small pages stream many of them
+        properties.addLast(new MapPropertySource("test", Map.of("mock.seed", "", "items.page-size", "10",
+                "report.jobs.output-dir", outputDir.toString())));
+        properties.addLast(new ResourcePropertySource("classpath:application.properties"));
+
+        context.registerBean(MeterRegistry.class, SimpleMeterRegistry::new);
+        context.register(MockDataGenerator.class, SnapshotStore.class, CompanyDataCache.class,
+                AgeingDataService.class, CustomerService.class, ItemService.class, CompanySummaryService.class,
+                ReportDataService.class, ReportMetrics.class, ReportFileWriter.class, SheetPartCache.class,
+                ReportRecordingService.class, ExcelService.class, ReportAdmissionService.class,
+                ReportJobService.class);
+        context.refresh();
+        reportJobService = context.getBean(ReportJobService.class);
+    }
+
+    @AfterEach
+    void tearDown() {
+        context.close();
+    }
+
+    @Test
+    void streamsItemsForTheCustomersInTheReport() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            ReportJob job = reportJobService.submit(COMPANY_ID);
+            awaitCompletion(job);
+            assertThat(job.getStatus()).isEqualTo(ReportJob.Status.COMPLETED);
+
+            try (InputStream report = Files.newInputStream(reportJobService.getOutput(job.getJobId()));
+                 XSSFWorkbook workbook = new XSSFWorkbook(report)) {
+                Set<String> customerIds = new HashSet<>();
+                Sheet customerSheet = workbook.getSheet("Customer List");
+                for (int rowNum = TABLE_START_ROW + 1; rowNum <= customerSheet.getLastRowNum(); rowNum++) {
+                    Row row = customerSheet.getRow(rowNum);
+                    if (row != null && row.getCell(0) != null) {
+                        customerIds.add(row.getCell(0).getStringCellValue());
+                    }
+                }
+
+                // Customer column text is "<customer ID> - <name>"; the item rows end at the total row
+                Sheet itemsSheet = workbook.getSheet("Open Items");
+                int itemCount = 0;
+                for (int rowNum = TABLE_START_ROW + 1; ; rowNum++) {
+                    String customerText = itemsSheet.getRow(rowNum).getCell(0).getStringCellValue();
+                    if (customerText.equals("TOTAL")) {
+                        break;
+                    }
+                    assertThat(customerIds).contains(customerText.substring(0, customerText.indexOf(" - ")));
+                    itemCount++;
+                }
+                assertThat(itemCount).isGreaterThan(10);
+            }
+        }
+    }
+
+    private static void awaitCompletion(ReportJob job) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (job.getCompletedAt() == null && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+}
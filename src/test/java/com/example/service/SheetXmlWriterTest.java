@@ -0,0 +1,251 @@
+package com.example.service;
+
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.Hyperlink;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Writes sheet parts directly, splices them into a workbook written by POI and opens the result with POI,
+ * so the XML is checked by the reader that matters rather than against expected strings
+ */
+class SheetXmlWriterTest {
+
+    private static final String SHEET_NAME = "Sheet";
+    private static final String SHEET_PART = "xl/worksheets/sheet1.xml";
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void writesCellsThatReadBackWithPoi() throws IOException {
+        try (SheetXmlWriter part = new SheetXmlWriter(8, false)) {
+            part.startRow(0, 20);
+            part.text(0, "Title <&> \"quoted\"", 0);
+            part.endRow();
+            part.startRow(2);
+            part.text(0, " padded ", 0);
+            part.text(1, "bell\u0007 and nul\u0000", 0);
+            part.text(2, "_x0041_ is literal", 0);
+            part.number(3, 1234.5, 0);
+            part.number(4, -0.05, 0);
+            part.isoDate(5, LocalDate.of(2024, 2, 9), 0);
+            part.formula(6, "D3*2&\"<\"", 0);
+            part.blank(7, 0);
+            part.endRow();
+            part.startRow(3);
+            part.number(0, Double.NaN, 0);
+            part.number(1, 0.1 + 0.2, 0);
+            part.text(2, null, 0);
+            part.isoDate(3, null, 0);
+            part.endRow();
+
+            try (XSSFWorkbook workbook = spliceAndOpen(part)) {
+                XSSFSheet sheet = workbook.getSheet(SHEET_NAME);
+                assertThat(sheet.getRow(0).getHeightInPoints()).isEqualTo(20);
+                assertThat(sheet.getRow(0).getCell(0).getStringCellValue()).isEqualTo("Title <&> \"quoted\"");
+                // Rows 0, 2 and 3; the skipped row isn't written
+                assertThat(sheet.getPhysicalNumberOfRows()).isEqualTo(3);
+
+                var row = sheet.getRow(2);
+                assertThat(row.getCell(0).getStringCellValue()).isEqualTo(" padded ");
+                // Characters XML can't hold are written as _xHHHH_, and literal text of that form is escaped
+                assertThat(row.getCell(1).getStringCellValue()).isEqualTo("bell\u0007 and nul\u0000");
+                assertThat(row.getCell(2).getStringCellValue()).isEqualTo("_x0041_ is literal");
+                assertThat(row.getCell(3).getNumericCellValue()).isEqualTo(1234.5);
+                assertThat(row.getCell(4).getNumericCellValue()).isEqualTo(-0.05);
+                assertThat(row.getCell(5).getStringCellValue()).isEqualTo("2024-02-09");
+                assertThat(row.getCell(6).getCellFormula()).isEqualTo("D3*2&\"<\"");
+                assertThat(row.getCell(7).getCellType()).isEqualTo(CellType.BLANK);
+
+                row = sheet.getRow(3);
+                assertThat(row.getCell(0).getCellType()).isEqualTo(CellType.ERROR);
+                assertThat(row.getCell(1).getNumericCellValue()).isEqualTo(0.1 + 0.2);
+                assertThat(row.getCell(2).getCellType()).isEqualTo(CellType.BLANK);
+                assertThat(row.getCell(3).getCellType()).isEqualTo(CellType.BLANK);
+            }
+        }
+    }
+
+    @Test
+    void writesSheetSettingsInSchemaOrder() throws IOException {
+        try (SheetXmlWriter part = new SheetXmlWriter(30, false)) {
+            part.columnWidth(1, 20 * 256);
+            part.columnWidth(27, 12 * 256);
+            part.freezeRows(3);
+            part.mergeCells(0, 0, 0, 2);
+            part.mergeCells(1, 1, 26, 27);
+            part.autoFilter(2, 0, 27);
+            part.hyperlink(3, 0, "'Open Items'!A4", "Go to <items> & back");
+            for (int rowIndex = 0; rowIndex < 4; rowIndex++) {
+                part.startRow(rowIndex);
+                part.text(0, "Row " + rowIndex, 0);
+                part.number(27, rowIndex, 0);
+                part.endRow();
+            }
+
+            String xml = write(part);
+            // Elements of a worksheet must appear in the order the schema gives, or Excel reports the file as damaged
+            assertThat(xml).contains("<dimension ref=\"A1:AB4\"/>");
+            assertThat(xml.indexOf("<dimension")).isLessThan(xml.indexOf("<sheetViews>"));
+            assertThat(xml.indexOf("<sheetViews>")).isLessThan(xml.indexOf("<sheetFormatPr"));
+            assertThat(xml.indexOf("<sheetFormatPr")).isLessThan(xml.indexOf("<cols>"));
+            assertThat(xml.indexOf("<cols>")).isLessThan(xml.indexOf("<sheetData>"));
+            assertThat(xml.indexOf("</sheetData>")).isLessThan(xml.indexOf("<autoFilter"));
+            assertThat(xml.indexOf("<autoFilter")).isLessThan(xml.indexOf("<mergeCells"));
+            assertThat(xml.indexOf("<mergeCells")).isLessThan(xml.indexOf("<hyperlinks>"));
+            assertThat(xml.indexOf("<hyperlinks>")).isLessThan(xml.indexOf("<pageMargins"));
+
+            try (XSSFWorkbook workbook = spliceAndOpen(part)) {
+                XSSFSheet sheet = workbook.getSheet(SHEET_NAME);
+                assertThat(sheet.getColumnWidth(1)).isEqualTo(20 * 256);
+                assertThat(sheet.getColumnWidth(27)).isEqualTo(12 * 256);
+                assertThat(sheet.getPaneInformation().isFreezePane()).isTrue();
+                assertThat(sheet.getPaneInformation().getHorizontalSplitPosition()).isEqualTo((short) 3);
+                assertThat(sheet.getMergedRegions()).containsExactly(
+                        new CellRangeAddress(0, 0, 0, 2), new CellRangeAddress(1, 1, 26, 27));
+                assertThat(sheet.getCTWorksheet().getAutoFilter().getRef()).isEqualTo("A3:AB3");
+                Hyperlink link = sheet.getHyperlink(3, 0);
+                assertThat(link.getAddress()).isEqualTo("'Open Items'!A4");
+                assertThat(sheet.getHyperlinkList().get(0).getTooltip()).isEqualTo("Go to <items> & back");
+                assertThat(sheet.getRow(3).getCell(27).getNumericCellValue()).isEqualTo(3);
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void writesRowsLargerThanTheBuffer(boolean compress) throws IOException {
+        int rowCount = 5000;
+        try (SheetXmlWriter part = new SheetXmlWriter(3, compress)) {
+            for (int rowIndex = 0; rowIndex < rowCount; rowIndex++) {
+                part.startRow(rowIndex);
+                part.text(0, "Customer " + rowIndex + " & Sons", 0);
+                part.number(1, rowIndex / 100.0, 0);
+                part.isoDate(2, LocalDate.of(2024, 1, 1).plusDays(rowIndex), 0);
+                part.endRow();
+            }
+
+            // The part can be written more than once, e.g. to the response and to the sheet cache
+            assertThat(write(part)).isEqualTo(write(part));
+            try (XSSFWorkbook workbook = spliceAndOpen(part)) {
+                XSSFSheet sheet = workbook.getSheet(SHEET_NAME);
+                assertThat(sheet.getLastRowNum()).isEqualTo(rowCount - 1);
+                for (int rowIndex = 0; rowIndex < rowCount; rowIndex += 997) {
+                    var row = sheet.getRow(rowIndex);
+                    assertThat(row.getCell(0).getStringCellValue()).isEqualTo("Customer " + rowIndex + " & Sons");
+                    assertThat(row.getCell(1).getNumericCellValue()).isEqualTo(rowIndex / 100.0);
+                    assertThat(row.getCell(2).getStringCellValue())
+                            .isEqualTo(LocalDate.of(2024, 1, 1).plusDays(rowIndex).toString());
+                }
+            }
+        }
+    }
+
+    @Test
+    void writesAnEmptySheet() throws IOException {
+        try (SheetXmlWriter part = new SheetXmlWriter(1, false)) {
+            assertThat(write(part)).contains("<dimension ref=\"A1\"/>").contains("<sheetData></sheetData>");
+            try (XSSFWorkbook workbook = spliceAndOpen(part)) {
+                assertThat(workbook.getSheet(SHEET_NAME).getPhysicalNumberOfRows()).isZero();
+            }
+        }
+    }
+
+    @Test
+    void overlaysCellsOnATemplate() throws IOException {
+        SheetTemplate template;
+        try (SheetXmlWriter templatePart = new SheetXmlWriter(2, false)) {
+            templatePart.startRow(0, 30);
+            templatePart.text(0, "Title", 0);
+            templatePart.endRow();
+            templatePart.startRow(2);
+            templatePart.text(0, "Label:", 0);
+            templatePart.text(1, "placeholder", 0);
+            templatePart.endRow();
+            templatePart.startRow(5);
+            templatePart.text(0, "Footer", 0);
+            templatePart.endRow();
+            templatePart.mergeCells(0, 0, 0, 1);
+            templatePart.columnWidth(1, 8000);
+            template = SheetTemplate.parse(write(templatePart));
+        }
+
+        try (SheetXmlWriter part = new SheetXmlWriter(template, 2, false)) {
+            part.startRow(2);
+            part.number(1, 42, 0);
+            part.endRow();
+            part.startRow(3);
+            part.text(0, "Added", 0);
+            part.endRow();
+
+            try (XSSFWorkbook workbook = spliceAndOpen(part)) {
+                XSSFSheet sheet = workbook.getSheet(SHEET_NAME);
+                assertThat(sheet.getRow(0).getHeightInPoints()).isEqualTo(30);
+                assertThat(sheet.getRow(0).getCell(0).getStringCellValue()).isEqualTo("Title");
+                assertThat(sheet.getMergedRegions()).containsExactly(CellRangeAddress.valueOf("A1:B1"));
+                assertThat(sheet.getColumnWidth(1)).isEqualTo(8000);
+                // The written cell replaces the template's; the rest of the row is kept
+                assertThat(sheet.getRow(2).getCell(0).getStringCellValue()).isEqualTo("Label:");
+                assertThat(sheet.getRow(2).getCell(1).getNumericCellValue()).isEqualTo(42);
+                assertThat(sheet.getRow(3).getCell(0).getStringCellValue()).isEqualTo("Added");
+                assertThat(sheet.getRow(5).getCell(0).getStringCellValue()).isEqualTo("Footer");
+                assertThat(sheet.getPhysicalNumberOfRows()).isEqualTo(4);
+            }
+        }
+    }
+
+    @Test
+    void rejectsRowsOutOfOrder() throws IOException {
+        try (SheetXmlWriter part = new SheetXmlWriter(1, false)) {
+            part.startRow(1);
+            part.endRow();
+            assertThatThrownBy(() -> part.startRow(1)).isInstanceOf(IllegalArgumentException.class);
+
+            write(part);
+            assertThatThrownBy(() -> part.startRow(2)).isInstanceOf(IllegalStateException.class);
+        }
+    }
+
+    private static String write(SheetXmlWriter part) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        part.writeTo(out);
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Puts the part in place of the only sheet of a workbook written by POI, the way reports are put together
+     */
+    private XSSFWorkbook spliceAndOpen(SheetXmlWriter part) throws IOException {
+        Path workbookFile = tempDir.resolve("workbook.xlsx");
+        try (XSSFWorkbook workbook = new XSSFWorkbook();
+             OutputStream fileStream = Files.newOutputStream(workbookFile)) {
+            workbook.createSheet(SHEET_NAME);
+            workbook.write(fileStream);
+        }
+
+        ByteArrayOutputStream spliced = new ByteArrayOutputStream();
+        WorkbookPartSplicer.splice(workbookFile, spliced, Map.of(SHEET_PART, part), Set.of(), 0,
+                new ParallelDeflater(1, 64 * 1024, 2));
+        return new XSSFWorkbook(new ByteArrayInputStream(spliced.toByteArray()));
+    }
+}
@@ -0,0 +1,135 @@
+package com.example.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SingleFlightTest {
+
+    @Test
+    void sharesAnInFlightLoad() throws Exception {
+        SingleFlight<String, String> flight = new SingleFlight<>(0);
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        CompletableFuture<String> leader = CompletableFuture.supplyAsync(() -> flight.get("A", key -> {
+            loads.incrementAndGet();
+            loading.countDown();
+            await(release);
+            return "loaded";
+        }));
+        assertThat(loading.await(10, TimeUnit.SECONDS)).isTrue();
+        Caller follower = startCaller(flight, "A", "not loaded");
+        awaitWaiting(follower);
+        release.countDown();
+
+        assertThat(leader.get(10, TimeUnit.SECONDS)).isEqualTo("loaded");
+        assertThat(follower.result().get(10, TimeUnit.SECONDS)).isEqualTo("loaded");
+        assertThat(loads).hasValue(1);
+    }
+
+    @Test
+    void reusesAValueUntilItExpires() {
+        SingleFlight<String, Integer> flight = new SingleFlight<>(60_000);
+        AtomicInteger loads = new AtomicInteger();
+
+        assertThat(flight.get("A", key -> loads.incrementAndGet())).isEqualTo(1);
+        assertThat(flight.get("A", key -> loads.incrementAndGet())).isEqualTo(1);
+        assertThat(flight.get("B", key -> loads.incrementAndGet())).isEqualTo(2);
+
+        flight.invalidate("A");
+        assertThat(flight.get("A", key -> loads.incrementAndGet())).isEqualTo(3);
+    }
+
+    @Test
+    void loadsAgainOnceAValueHasExpired() {
+        SingleFlight<String, Integer> flight = new SingleFlight<>(0);
+        AtomicInteger loads = new AtomicInteger();
+
+        assertThat(flight.get("A", key -> loads.incrementAndGet())).isEqualTo(1);
+        assertThat(flight.get("A", key -> loads.incrementAndGet())).isEqualTo(2);
+    }
+
+    @Test
+    void neverCachesAFailure() {
+        SingleFlight<String, String> flight = new SingleFlight<>(60_000);
+
+        assertThatThrownBy(() -> flight.get("A", key -> {
+            throw new IllegalStateException("Upstream failed");
+        })).hasMessage("Upstream failed");
+        assertThat(flight.get("A", key -> "loaded")).isEqualTo("loaded");
+    }
+
+    @Test
+    void sharesTheLeadersFailure() throws Exception {
+        SingleFlight<String, String> flight = new SingleFlight<>(0);
+        Caller[] follower = new Caller[1];
+
+        assertThatThrownBy(() -> flight.get("A", key -> {
+            follower[0] = startCaller(flight, "A", "not loaded");
+            awaitWaiting(follower[0]);
+            throw new IllegalStateException("Upstream failed");
+        })).hasMessage("Upstream failed");
+
+        assertThatThrownBy(() -> follower[0].result().get(10, TimeUnit.SECONDS))
+                .hasCauseInstanceOf(IllegalStateException.class)
+                .hasRootCauseMessage("Upstream failed");
+    }
+
+    @Test
+    void waitingCallersLoadAgainWhenTheLeaderIsInterrupted() throws Exception {
+        SingleFlight<String, String> flight = new SingleFlight<>(0);
+        Caller[] follower = new Caller[1];
+
+        // The leader's request was cancelled; the follower's wasn't, so it loads the value itself
+        assertThatThrownBy(() -> flight.get("A", key -> {
+            follower[0] = startCaller(flight, "A", "reloaded");
+            awaitWaiting(follower[0]);
+            throw new IllegalStateException("Fetch cancelled", new CancellationException());
+        })).hasMessage("Fetch cancelled");
+
+        assertThat(follower[0].result().get(10, TimeUnit.SECONDS)).isEqualTo("reloaded");
+    }
+
+    /**
+     * A call made on its own thread
+     */
+    private record Caller(Thread thread, FutureTask<String> result) {
+    }
+
+    /**
+     * Starts a call for the key on its own thread, loading the given value if it leads a flight
+     */
+    private static Caller startCaller(SingleFlight<String, String> flight, String key, String value) {
+        FutureTask<String> result = new FutureTask<>(() -> flight.get(key, k -> value));
+        return new Caller(Thread.ofPlatform().start(result), result);
+    }
+
+    /**
+     * Waits for a caller to block on the flight it joined
+     */
+    private static void awaitWaiting(Caller caller) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (caller.thread().getState() != Thread.State.WAITING && System.nanoTime() < deadline) {
+            Thread.onSpinWait();
+        }
+        assertThat(caller.thread().getState()).isEqualTo(Thread.State.WAITING);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
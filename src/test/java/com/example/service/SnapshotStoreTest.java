@@ -0,0 +1,199 @@
+package com.example.service;
+
+import com.example.client.Validators;
+import com.example.model.AgeingByMonth;
+import com.example.model.Customer;
+import com.example.model.Item;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Writes snapshots and reads them back from disk. Stopping the store waits for its background writes, so
+ * each test reads through a new store, as after a restart.
+ */
+class SnapshotStoreTest {
+
+    private static final LocalDateTime VERSION = LocalDateTime.of(2024, 3, 1, 6, 0, 0, 123_456_789);
+
+    @TempDir
+    Path snapshotDir;
+
+    private SnapshotStore store;
+
+    @BeforeEach
+    void setUp() {
+        store = newStore();
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        store.stop();
+    }
+
+    @Test
+    void readsBackCustomers() throws InterruptedException {
+        List<Customer> customers = List.of(
+                new Customer("C1", "Müller & Söhne <GmbH>", new BigDecimal("-1234.50"), "REF-1", "1 High St",
+                        null, "Zürich", "ZH", "8001", "CH", true, LocalDate.of(2024, 2, 29)),
+                new Customer("C2", "", BigDecimal.ZERO, null, null, null, null, null, null, null, false, null));
+
+        List<Customer> read = roundTrip("customers", customers, SnapshotCodec.CUSTOMER);
+        assertThat(read).usingRecursiveFieldByFieldElementComparator().containsExactlyElementsOf(customers);
+    }
+
+    @Test
+    void readsBackItems() throws InterruptedException {
+        List<Item> items = List.of(
+                new Item("C1", new BigDecimal("99999999999999999999.99"), new BigDecimal("0.01"),
+                        LocalDate.of(2023, 12, 31), LocalDate.of(2024, 1, 30), LocalDate.of(1970, 1, 1),
+                        "user", "INV-1", "PO 7", "INV"),
+                new Item("C2", null, null, null, null, null, null, null, null, null));
+
+        List<Item> read = roundTrip("items", items, SnapshotCodec.ITEM);
+        assertThat(read).usingRecursiveFieldByFieldElementComparator().containsExactlyElementsOf(items);
+    }
+
+    @Test
+    void readsBackAgeing() throws InterruptedException {
+        AgeingByMonth month = new AgeingByMonth(YearMonth.of(2024, 2), new BigDecimal("1000.00"),
+                new BigDecimal("100.00"), new BigDecimal("200.00"), new BigDecimal("300.00"),
+                new BigDecimal("400.00"), new BigDecimal("50.00"), new BigDecimal("-25.00"));
+        AgeingByMonth empty = new AgeingByMonth();
+
+        List<AgeingByMonth> read = roundTrip("ageing", List.of(month, empty), SnapshotCodec.AGEING_BY_MONTH);
+        assertThat(read).usingRecursiveFieldByFieldElementComparator().containsExactly(month, empty);
+        assertThat(read.get(0).getPercentOver90Days()).isEqualTo(new BigDecimal("40.00"));
+    }
+
+    @Test
+    void readsBackTheDataVersionAndValidators() throws IOException, InterruptedException {
+        CompanyDataCache.Key key = new CompanyDataCache.Key("../A/B", "customers");
+        List<Validators> validators = Arrays.asList(new Validators("\"v1\"", "Fri, 01 Mar 2024 06:00:00 GMT"),
+                new Validators(null, null));
+        store.write(key, VERSION, new CompanyDataCache.Dataset<>(List.of(), validators), SnapshotCodec.CUSTOMER);
+        store.stop();
+        store = newStore();
+
+        SnapshotStore.Snapshot<Customer> snapshot = store.read(key, SnapshotCodec.CUSTOMER);
+        assertThat(snapshot.dataVersion()).isEqualTo(VERSION);
+        assertThat(snapshot.dataset().records()).isEmpty();
+        assertThat(snapshot.dataset().validators()).containsExactlyElementsOf(validators);
+        // The company ID can't reach outside the snapshot directory
+        try (var files = Files.list(snapshotDir)) {
+            assertThat(files).hasSize(1);
+        }
+    }
+
+    @Test
+    void ignoresMissingAndCorruptSnapshots() throws IOException, InterruptedException {
+        CompanyDataCache.Key key = new CompanyDataCache.Key("A", "customers");
+        assertThat(store.read(key, SnapshotCodec.CUSTOMER)).isNull();
+
+        List<Customer> customers = List.of(new Customer("C1", "Name", BigDecimal.TEN, "REF", "Line 1", "Line 2",
+                "City", "State", "Code", "Country", false, LocalDate.of(2024, 1, 1)));
+        store.write(key, VERSION, new CompanyDataCache.Dataset<>(customers, List.of()), SnapshotCodec.CUSTOMER);
+        store.stop();
+        store = newStore();
+        Path file = snapshotFile();
+
+        // Cut off part way through a record
+        byte[] snapshot = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(snapshot, snapshot.length - 10));
+        assertThat(store.read(key, SnapshotCodec.CUSTOMER)).isNull();
+
+        // A record count far larger than the file
+        byte[] count = Arrays.copyOf(snapshot, snapshot.length);
+        int countOffset = 4 + 4 + 8 + 8 + 4;
+        count[countOffset] = 0x7F;
+        Files.write(file, count);
+        assertThat(store.read(key, SnapshotCodec.CUSTOMER)).isNull();
+
+        Files.write(file, new byte[] {1, 2, 3});
+        assertThat(store.read(key, SnapshotCodec.CUSTOMER)).isNull();
+    }
+
+    @Test
+    void doesNothingWithoutADirectory() throws InterruptedException {
+        store.stop();
+        store = new SnapshotStore();
+        ReflectionTestUtils.setField(store, "snapshotDir", "");
+        store.start();
+
+        CompanyDataCache.Key key = new CompanyDataCache.Key("A", "customers");
+        store.write(key, VERSION, new CompanyDataCache.Dataset<>(List.of(), List.of()), SnapshotCodec.CUSTOMER);
+        assertThat(store.isEnabled()).isFalse();
+        assertThat(store.read(key, SnapshotCodec.CUSTOMER)).isNull();
+    }
+
+    @Test
+    void prunesSnapshotsNotWrittenRecently() throws IOException, InterruptedException {
+        CompanyDataCache.Dataset<Customer> dataset = new CompanyDataCache.Dataset<>(List.of(), List.of());
+        store.write(new CompanyDataCache.Key("A", "customers"), VERSION, dataset, SnapshotCodec.CUSTOMER);
+        store.stop();
+        store = newStore();
+        Path old = snapshotFile();
+        Files.setLastModifiedTime(old, FileTime.from(Instant.now().minus(Duration.ofDays(31))));
+        store.write(new CompanyDataCache.Key("B", "customers"), VERSION, dataset, SnapshotCodec.CUSTOMER);
+        store.stop();
+        store = newStore();
+        Path other = snapshotDir.resolve("notes.txt");
+        Files.writeString(other, "kept");
+
+        store.pruneSnapshots();
+        try (var files = Files.list(snapshotDir)) {
+            assertThat(files).hasSize(2).doesNotContain(old).contains(other);
+        }
+    }
+
+    @Test
+    void removesTemporaryFilesOnStart() throws IOException, InterruptedException {
+        Path temp = Files.createFile(snapshotDir.resolve("snapshot123.tmp"));
+        store.stop();
+        store = newStore();
+        assertThat(temp).doesNotExist();
+    }
+
+    private <E> List<E> roundTrip(String dataset, List<E> records, SnapshotCodec<E> codec)
+            throws InterruptedException {
+        CompanyDataCache.Key key = new CompanyDataCache.Key("A", dataset);
+        store.write(key, VERSION, new CompanyDataCache.Dataset<>(records, List.of()), codec);
+        store.stop();
+        store = newStore();
+
+        SnapshotStore.Snapshot<E> snapshot = store.read(key, codec);
+        assertThat(snapshot.dataVersion()).isEqualTo(VERSION);
+        return snapshot.dataset().records();
+    }
+
+    private SnapshotStore newStore() {
+        SnapshotStore store = new SnapshotStore();
+        ReflectionTestUtils.setField(store, "snapshotDir", snapshotDir.toString());
+        ReflectionTestUtils.setField(store, "maxAgeDays", 30L);
+        store.start();
+        return store;
+    }
+
+    private Path snapshotFile() throws IOException {
+        try (var files = Files.list(snapshotDir)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(".snapshot")).findFirst().orElseThrow();
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.example.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Splices parts into a package and reads it back with the JDK's zip reader, which checks each entry's
+ * sizes and CRC against its content
+ */
+class WorkbookPartSplicerTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void replacesPartsAndCopiesTheRest() throws IOException {
+        Map<String, byte[]> parts = new LinkedHashMap<>();
+        parts.put("[Content_Types].xml", "<Types/>".getBytes(StandardCharsets.UTF_8));
+        parts.put("xl/worksheets/sheet1.xml", "<worksheet>kept</worksheet>".getBytes(StandardCharsets.UTF_8));
+        parts.put("xl/worksheets/sheet2.xml", "<worksheet>old</worksheet>".getBytes(StandardCharsets.UTF_8));
+        parts.put("xl/styles.xml", repeat("<xf/>", 1000));
+        Path workbookFile = writePackage(parts);
+
+        // Larger than a block, so the replacement is compressed in several blocks
+        byte[] replacement = repeat("<row r=\"1\"><c r=\"A1\"><v>42</v></c></row>", 10_000);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Map<String, byte[]> captured = WorkbookPartSplicer.splice(workbookFile, out,
+                Map.of("xl/worksheets/sheet2.xml", WorkbookPartSplicer.Part.of(replacement)),
+                Set.of(), 0, new ParallelDeflater(6, 64 * 1024, 4));
+
+        assertThat(captured).isEmpty();
+        Map<String, byte[]> expected = new LinkedHashMap<>(parts);
+        expected.put("xl/worksheets/sheet2.xml", replacement);
+        assertPackage(out.toByteArray(), expected);
+    }
+
+    @Test
+    void capturesPartsThatFit() throws IOException {
+        byte[] kept = "<worksheet>kept</worksheet>".getBytes(StandardCharsets.UTF_8);
+        byte[] large = repeat("<xf/>", 1000);
+        Map<String, byte[]> parts = new LinkedHashMap<>();
+        parts.put("xl/worksheets/sheet1.xml", kept);
+        parts.put("xl/worksheets/sheet2.xml", "<worksheet>old</worksheet>".getBytes(StandardCharsets.UTF_8));
+        parts.put("xl/worksheets/sheet3.xml", "<worksheet>old</worksheet>".getBytes(StandardCharsets.UTF_8));
+        parts.put("xl/styles.xml", large);
+        Path workbookFile = writePackage(parts);
+
+        byte[] small = "<worksheet>new</worksheet>".getBytes(StandardCharsets.UTF_8);
+        byte[] tooLarge = repeat("<row/>", 1000);
+        Map<String, WorkbookPartSplicer.Part> replacements = Map.of(
+                "xl/worksheets/sheet2.xml", WorkbookPartSplicer.Part.of(small),
+                "xl/worksheets/sheet3.xml", writeInPieces(tooLarge));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Map<String, byte[]> captured = WorkbookPartSplicer.splice(workbookFile, out, replacements,
+                parts.keySet(), 1000, new ParallelDeflater(6, 64 * 1024, 1));
+
+        // Parts over the limit are still written, just not returned
+        assertThat(captured).containsOnlyKeys("xl/worksheets/sheet1.xml", "xl/worksheets/sheet2.xml");
+        assertThat(captured.get("xl/worksheets/sheet1.xml")).isEqualTo(kept);
+        assertThat(captured.get("xl/worksheets/sheet2.xml")).isEqualTo(small);
+        Map<String, byte[]> expected = new LinkedHashMap<>(parts);
+        expected.put("xl/worksheets/sheet2.xml", small);
+        expected.put("xl/worksheets/sheet3.xml", tooLarge);
+        assertPackage(out.toByteArray(), expected);
+    }
+
+    private Path writePackage(Map<String, byte[]> parts) throws IOException {
+        Path workbookFile = tempDir.resolve("workbook.xlsx");
+        try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(workbookFile))) {
+            for (Map.Entry<String, byte[]> part : parts.entrySet()) {
+                zip.putNextEntry(new ZipEntry(part.getKey()));
+                zip.write(part.getValue());
+                zip.closeEntry();
+            }
+        }
+        return workbookFile;
+    }
+
+    private static void assertPackage(byte[] workbook, Map<String, byte[]> expected) throws IOException {
+        List<String> names = new ArrayList<>();
+        try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(workbook))) {
+            for (ZipEntry entry = zip.getNextEntry(); entry != null; entry = zip.getNextEntry()) {
+                names.add(entry.getName());
+                assertThat(zip.readAllBytes()).as(entry.getName()).isEqualTo(expected.get(entry.getName()));
+            }
+        }
+        // Parts keep their order, so [Content_Types].xml stays first
+        assertThat(names).containsExactlyElementsOf(expected.keySet());
+    }
+
+    private static WorkbookPartSplicer.Part writeInPieces(byte[] content) {
+        return out -> {
+            for (int offset = 0; offset < content.length; offset += 100) {
+                out.write(content, offset, Math.min(100, content.length - offset));
+            }
+        };
+    }
+
+    private static byte[] repeat(String value, int count) {
+        return value.repeat(count).getBytes(StandardCharsets.UTF_8);
+    }
+}